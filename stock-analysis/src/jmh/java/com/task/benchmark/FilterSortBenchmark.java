@@ -0,0 +1,133 @@
+package com.task.benchmark;
+
+import com.task.model.StockData;
+import com.task.model.TickStore;
+import com.task.service.DataService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two filters and the date/time sort, on the List of StockData and on the columnar
+ * TickStore. The store variants work in place, so each invocation gets a fresh copy; the
+ * copy is made outside the measured time and takes a few milliseconds at most, which keeps
+ * invocation-level setup small next to the operations measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FilterSortBenchmark {
+
+    @Param({"100000", "1000000"})
+    int rows;
+
+    @Param({"20", "500"})
+    int instruments;
+
+    private final DataService dataService = new DataService();
+    private List<StockData> list;
+    private List<StockData> filteredList;
+    private TickStore store;
+    private TickStore filteredStore;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Path file = SyntheticTicks.write(rows, instruments, 42);
+        try {
+            list = dataService.loadCSVData(file.toString());
+            filteredList = dataService.filterByConditionCode(dataService.filterAuctionPeriods(list));
+            store = dataService.loadTickStore(file.toString());
+            filteredStore = dataService.loadTickStore(file.toString(), DataService.ANALYSIS_FILTER, null);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * A fresh copy of the loaded stores for the in-place operations.
+     */
+    @State(Scope.Thread)
+    public static class Copies {
+        TickStore all;
+        TickStore filtered;
+
+        @Setup(Level.Invocation)
+        public void copy(FilterSortBenchmark benchmark) {
+            all = copyOf(benchmark.store);
+            filtered = copyOf(benchmark.filteredStore);
+        }
+    }
+
+    @Benchmark
+    public List<StockData> filterAuctionPeriodsList() {
+        return dataService.filterAuctionPeriods(list);
+    }
+
+    @Benchmark
+    public List<StockData> filterByConditionCodeList() {
+        return dataService.filterByConditionCode(list);
+    }
+
+    @Benchmark
+    public List<StockData> sortDataByDateTimeList() {
+        return dataService.sortDataByDateTime(filteredList);
+    }
+
+    @Benchmark
+    public TickStore filterAuctionPeriodsStore(Copies copies) {
+        return dataService.filterAuctionPeriods(copies.all);
+    }
+
+    @Benchmark
+    public TickStore filterByConditionCodeStore(Copies copies) {
+        return dataService.filterByConditionCode(copies.all);
+    }
+
+    @Benchmark
+    public TickStore sortDataByDateTimeStore(Copies copies) {
+        return dataService.sortDataByDateTime(copies.filtered);
+    }
+
+    @Benchmark
+    public TickStore sortByCodeDateTimeStore(Copies copies) {
+        return dataService.sortByCodeDateTime(copies.filtered);
+    }
+
+    @Benchmark
+    public int[] groupByCodeStore(Copies copies) {
+        return dataService.groupByCode(copies.filtered);
+    }
+
+    static TickStore copyOf(TickStore source) {
+        TickStore copy = new TickStore(source.getCodes(), source.getDates(), source.getConditions(), source.size());
+        copy.appendAll(source, identity(source.getCodes().size()), identity(source.getDates().size()),
+                identity(source.getConditions().size()));
+        return copy;
+    }
+
+    private static int[] identity(int size) {
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,79 @@
+package com.task.benchmark;
+
+import com.opencsv.exceptions.CsvException;
+import com.task.model.StockData;
+import com.task.model.TickStore;
+import com.task.service.DataService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a tick file: the OpenCSV reference loader, the memory-mapped List loader, the
+ * columnar loader and the columnar loader with the analysis filter pushed down.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IngestBenchmark {
+
+    @Param({"100000", "1000000"})
+    int rows;
+
+    @Param({"20", "500"})
+    int instruments;
+
+    private Path file;
+    private DataService dataService;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        file = SyntheticTicks.write(rows, instruments, 42);
+        // built outside Spring, so the tick cache is off and every load parses
+        dataService = new DataService();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<StockData> loadCSVDataWithOpenCsv() throws IOException, CsvException {
+        return dataService.loadCSVDataWithOpenCsv(file.toString());
+    }
+
+    @Benchmark
+    public List<StockData> loadCSVData() throws IOException {
+        return dataService.loadCSVData(file.toString());
+    }
+
+    @Benchmark
+    public TickStore loadTickStore() throws IOException {
+        return dataService.loadTickStore(file.toString());
+    }
+
+    @Benchmark
+    public TickStore loadTickStoreWithPushedDownFilter() throws IOException {
+        return dataService.loadTickStore(file.toString(), DataService.ANALYSIS_FILTER, null);
+    }
+}
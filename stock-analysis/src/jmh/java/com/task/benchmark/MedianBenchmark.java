@@ -0,0 +1,86 @@
+package com.task.benchmark;
+
+import com.task.metrics.ExactQuantiles;
+import com.task.metrics.LogHistogramSketch;
+import com.task.metrics.QuantileSketch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The median of a list of gaps: the original sort-a-boxed-list helper, selection over a
+ * primitive array, and the log-histogram sketch. Each benchmark feeds the values in and
+ * takes the median, as the metrics kernel does per instrument.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MedianBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int values;
+
+    private double[] gaps;
+    private List<Double> boxedGaps;
+    private final QuantileSketch exact = new ExactQuantiles();
+    private final QuantileSketch sketch = new LogHistogramSketch(0.01);
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(7);
+        gaps = new double[values];
+        boxedGaps = new ArrayList<>(values);
+        for (int i = 0; i < values; i++) {
+            // heavy tailed, like gaps between trades
+            gaps[i] = Math.round(-Math.log(1 - random.nextDouble()) * 5000) / 1000.0 + 0.001;
+            boxedGaps.add(gaps[i]);
+        }
+    }
+
+    @Benchmark
+    public double sortedListMedian() {
+        // the helper the metrics used before the quantile engines
+        int size = boxedGaps.size();
+        List<Double> sortedValues = boxedGaps.stream().sorted().collect(Collectors.toList());
+        if (size % 2 == 1) {
+            return sortedValues.get(size / 2);
+        }
+        return (sortedValues.get((size / 2) - 1) + sortedValues.get(size / 2)) / 2.0;
+    }
+
+    @Benchmark
+    public double exactQuantilesMedian() {
+        return median(exact);
+    }
+
+    @Benchmark
+    public double sketchMedian() {
+        return median(sketch);
+    }
+
+    private double median(QuantileSketch quantiles) {
+        quantiles.clear();
+        for (double gap : gaps) {
+            quantiles.add(gap);
+        }
+        return quantiles.quantile(0.5);
+    }
+}
@@ -0,0 +1,90 @@
+package com.task.benchmark;
+
+import com.task.StockAnalysisApplication;
+import com.task.service.AnalysisProgress;
+import com.task.service.MetricsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole pipeline as wired by Spring: {@code calculateMetrics}, which also writes
+ * {@code ../analysis.csv}, and {@code analyzeFile}, which stops before the report. The tick
+ * and result caches are turned off so every invocation parses the file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PipelineBenchmark {
+
+    @Param({"100000", "1000000"})
+    int rows;
+
+    @Param({"20", "500"})
+    int instruments;
+
+    @Param({"exact", "approximate"})
+    String quantiles;
+
+    private Path file;
+    private ConfigurableApplicationContext context;
+    private MetricsService metricsService;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        file = SyntheticTicks.write(rows, instruments, 42);
+        context = new SpringApplicationBuilder(StockAnalysisApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                // arguments, not default properties, so they win over application.properties
+                .run("--stock-analysis.cache.enabled=false", "--stock-analysis.result-cache.enabled=false",
+                        "--stock-analysis.quantiles.mode=" + quantiles);
+        metricsService = context.getBean(MetricsService.class);
+        // a cached run loads nothing, and the benchmark would time a map lookup
+        for (int run = 0; run < 2; run++) {
+            AnalysisProgress progress = new AnalysisProgress();
+            metricsService.analyzeFile(file.toString(), progress);
+            if (progress.getRowsLoaded() == 0) {
+                throw new IllegalStateException("Run " + (run + 1) + " didn't load " + file + ", is a cache still on?");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        context.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void calculateMetrics() throws IOException {
+        metricsService.calculateMetrics(file.toString());
+    }
+
+    @Benchmark
+    public List<String[]> analyzeFile() throws IOException {
+        return metricsService.analyzeFile(file.toString());
+    }
+}
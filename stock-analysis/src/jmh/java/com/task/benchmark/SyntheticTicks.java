@@ -0,0 +1,82 @@
+package com.task.benchmark;
+
+import com.task.generator.TickGenerator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Writes seeded synthetic tick files in the scandi.csv layout for the benchmarks.
+ *
+ * Rows are spread evenly over two trading days from 08:00 to 18:30, in time order, so about a
+ * quarter of them fall outside the 09:00-17:00 window the pipeline keeps. Roughly a third
+ * are trades, one quote in a hundred is crossed and the condition codes mix empty, XT and
+ * codes the pipeline drops. Quotes carry the last price and a zero trade volume, so every
+ * field parses and the loaders aren't measured logging parse errors, which is why the rows
+ * are drawn here rather than by {@link TickGenerator}, whose quotes leave them empty.
+ */
+final class SyntheticTicks {
+
+    private static final String[] CONDITION_CODES = {"", "", "", "", "XT", "XT", "R", "AU", "OB", "XT"};
+    private static final String[] DATES = {"20170424", "20170425"};
+    private static final double OPEN = 8 * 3600;
+    private static final double CLOSE = 18.5 * 3600;
+
+    private SyntheticTicks() {
+    }
+
+    /**
+     * @param rows Number of rows.
+     * @param instruments Number of distinct Bloomberg codes.
+     * @param seed Seed of the generator; the same arguments always give the same file.
+     * @return A temporary file, deleted when the JVM exits.
+     */
+    static Path write(int rows, int instruments, long seed) throws IOException {
+        Path file = Files.createTempFile("scandi-" + rows + "-" + instruments + "-", ".csv");
+        file.toFile().deleteOnExit();
+        Random random = new Random(seed);
+        double[] prices = new double[instruments];
+        for (int i = 0; i < instruments; i++) {
+            prices[i] = 20 + random.nextInt(2000) / 4.0;
+        }
+        String[] codes = new String[instruments];
+        for (int i = 0; i < instruments; i++) {
+            codes[i] = "INSTR" + i + " SS Equity";
+        }
+        int rowsPerDay = (rows + DATES.length - 1) / DATES.length;
+        StringBuilder line = new StringBuilder(128);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int row = 0; row < rows; row++) {
+                String date = DATES[row / rowsPerDay];
+                double time = OPEN + (CLOSE - OPEN) * (row % rowsPerDay) / rowsPerDay;
+                int instrument = random.nextInt(instruments);
+                double price = prices[instrument] = Math.max(1, prices[instrument] + (random.nextInt(5) - 2) * 0.05);
+                double bid = round(price - 0.05 * (1 + random.nextInt(3)));
+                double ask = round(price + 0.05 * (1 + random.nextInt(3)));
+                if (random.nextInt(100) == 0) {
+                    double swap = bid;
+                    bid = ask;
+                    ask = swap;
+                }
+                boolean trade = random.nextInt(3) == 0;
+                int bidVolume = 100 * (1 + random.nextInt(20));
+                int askVolume = 100 * (1 + random.nextInt(20));
+                int tradeVolume = trade ? 10 * (1 + random.nextInt(50)) + random.nextInt(2) * 5 : 0;
+                int updateType = trade ? 1 : 2 + random.nextInt(2);
+                line.setLength(0);
+                TickGenerator.appendRow(line, codes[instrument], bid, ask, round(price), bidVolume, askVolume, tradeVolume,
+                        updateType, date, time, round(price), CONDITION_CODES[random.nextInt(CONDITION_CODES.length)]);
+                writer.append(line).append('\n');
+            }
+        }
+        return file;
+    }
+
+    private static double round(double price) {
+        return Math.round(price * 100) / 100.0;
+    }
+}
@@ -0,0 +1,198 @@
+package com.task;
+
+import com.task.service.BatchAnalysisService;
+import com.task.service.BatchResult;
+import com.task.service.MetricsService;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Command line entry point for batch runs: analyses one or more files into one report without
+ * starting the web application.
+ *
+ * The context it starts holds the analysis services and nothing else. There is no
+ * auto-configuration, no web server and no Actuator, and beans are created lazily, so a run
+ * only builds the services it calls. A single file gives the same {stock code, metric, value}
+ * report as {@code /analyze}; several files, a directory or a glob give the batch report of
+ * {@code /analyze-batch}. The time from JVM start to the first report row goes to standard
+ * error with the other timings.
+ *
+ * Run from the packaged jar with
+ * {@code java -Dloader.main=com.task.BatchRunner -cp target/stock-analysis-1.0-SNAPSHOT.jar
+ * org.springframework.boot.loader.PropertiesLauncher --output=analysis.csv /data/scandi.csv}.
+ * Options:
+ * <ul>
+ *     <li>{@code --output=PATH} the report, "-" (the default) for standard output;</li>
+ *     <li>{@code --format=csv|tsv|json} defaults to the output's extension, else csv;</li>
+ *     <li>{@code --threads=N} threads parsing a file and computing metrics, 0 for every core;</li>
+ *     <li>{@code --file-threads=N} files of a batch read at once;</li>
+ *     <li>{@code --name=value} with a dotted name sets any application property, for example
+ *     {@code --stock-analysis.quantiles.mode=approximate}.</li>
+ * </ul>
+ * The exit code is {@value #EXIT_OK} on success, {@value #EXIT_FAILED} when the analysis
+ * fails, {@value #EXIT_USAGE} for bad arguments, {@value #EXIT_NO_INPUT} when an input is
+ * missing or matches no file and {@value #EXIT_OUTPUT_FAILED} when the report can't be written.
+ */
+@ComponentScan("com.task.service")
+public class BatchRunner {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_NO_INPUT = 3;
+    public static final int EXIT_OUTPUT_FAILED = 4;
+
+    private static final String USAGE = "Usage: BatchRunner [--output=PATH|-] [--format=csv|tsv|json] [--threads=N]"
+            + " [--file-threads=N] [--property.name=value ...] INPUT...\n"
+            + "  INPUT is a CSV file, a directory of them or a glob such as data/scandi-2017-04-*.csv";
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.err));
+    }
+
+    /**
+     * Runs one batch.
+     *
+     * @param args The command line.
+     * @param log Receives the timings and errors.
+     * @return The exit code.
+     */
+    static int run(String[] args, PrintStream log) {
+        List<String> inputs = new ArrayList<>();
+        List<String> properties = new ArrayList<>();
+        String output = "-";
+        String format = null;
+        for (String arg : args) {
+            if (arg.equals("--help") || arg.equals("-h")) {
+                log.println(USAGE);
+                return EXIT_OK;
+            }
+            if (!arg.startsWith("--")) {
+                inputs.add(arg);
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 3) {
+                return usage(log, "options are --name=value, got " + arg);
+            }
+            String name = arg.substring(2, equals);
+            String value = arg.substring(equals + 1);
+            switch (name) {
+                case "output":
+                    output = value;
+                    break;
+                case "format":
+                    format = value.toLowerCase(Locale.ROOT);
+                    break;
+                case "threads":
+                    if (!isCount(value)) {
+                        return usage(log, "threads must be a number, 0 for every core, got " + value);
+                    }
+                    properties.add("--stock-analysis.ingest.parallelism=" + value);
+                    properties.add("--stock-analysis.metrics.parallelism=" + value);
+                    break;
+                case "file-threads":
+                    if (!isCount(value) || Integer.parseInt(value) == 0) {
+                        return usage(log, "file-threads must be a positive number, got " + value);
+                    }
+                    properties.add("--stock-analysis.batch.file-parallelism=" + value);
+                    break;
+                default:
+                    if (name.indexOf('.') < 0) {
+                        return usage(log, "unknown option " + arg);
+                    }
+                    properties.add(arg);
+            }
+        }
+        if (inputs.isEmpty()) {
+            return usage(log, "no input files");
+        }
+        if (format == null) {
+            format = formatOf(output);
+        }
+        if (!MetricsService.REPORT_FORMATS.contains(format)) {
+            return usage(log, "unknown format " + format + ", expected one of " + MetricsService.REPORT_FORMATS);
+        }
+
+        long started = System.nanoTime();
+        SpringApplication application = new SpringApplication(BatchRunner.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        application.setLazyInitialization(true);
+        application.setBannerMode(Banner.Mode.OFF);
+        application.setLogStartupInfo(false);
+        try (ConfigurableApplicationContext context = application.run(properties.toArray(new String[0]))) {
+            long contextStarted = System.nanoTime();
+            List<String[]> rows;
+            int files;
+            try {
+                if (inputs.size() == 1 && Files.isRegularFile(Paths.get(inputs.get(0)))) {
+                    rows = new ArrayList<>();
+                    rows.add(new String[]{"Stock Code", "Metric", "Value"});
+                    rows.addAll(context.getBean(MetricsService.class).analyzeFile(inputs.get(0)));
+                    files = 1;
+                } else {
+                    BatchResult result = context.getBean(BatchAnalysisService.class).analyzeInputs(inputs);
+                    rows = result.toReportRows();
+                    files = result.getFileResults().size();
+                }
+            } catch (NoSuchFileException e) {
+                log.println("Input not found: " + e.getMessage());
+                return EXIT_NO_INPUT;
+            } catch (IOException | RuntimeException e) {
+                log.println("Analysis failed: " + e);
+                return EXIT_FAILED;
+            }
+
+            long analysed = System.nanoTime();
+            long firstRowMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+            try {
+                context.getBean(MetricsService.class).writeReport(rows, output, format);
+            } catch (IOException e) {
+                log.println("Could not write the report to " + output + ": " + e);
+                return EXIT_OUTPUT_FAILED;
+            }
+            long written = System.nanoTime();
+            log.println(String.format("%d report rows from %d file%s written to %s as %s; context %d ms, analysis %d ms,"
+                            + " write %d ms, %d ms from JVM start to the first row",
+                    rows.size() - 1, files, files == 1 ? "" : "s", output.equals("-") ? "standard output" : output, format,
+                    (contextStarted - started) / 1_000_000, (analysed - contextStarted) / 1_000_000,
+                    (written - analysed) / 1_000_000, firstRowMillis));
+            return EXIT_OK;
+        } catch (RuntimeException e) {
+            // the context itself failed to start, for example on a malformed property
+            log.println("Could not start: " + e);
+            return EXIT_FAILED;
+        }
+    }
+
+    private static int usage(PrintStream log, String message) {
+        log.println(message);
+        log.println(USAGE);
+        return EXIT_USAGE;
+    }
+
+    private static boolean isCount(String value) {
+        return value.matches("[0-9]{1,6}");
+    }
+
+    private static String formatOf(String output) {
+        String name = output.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".json")) {
+            return "json";
+        }
+        return name.endsWith(".tsv") ? "tsv" : "csv";
+    }
+}
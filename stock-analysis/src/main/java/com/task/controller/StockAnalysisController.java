@@ -1,13 +1,36 @@
 package com.task.controller;
 
-import com.opencsv.exceptions.CsvException;
+import com.task.parser.TickFilter;
+import com.task.service.AnalysisJob;
+import com.task.service.AnalysisJobService;
+import com.task.service.AnalysisResultCache;
+import com.task.service.BatchAnalysisService;
+import com.task.service.BatchResult;
+import com.task.service.DataService;
+import com.task.service.IntradayService;
 import com.task.service.MetricsService;
+import com.task.service.TailService;
+import com.task.service.TailSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 public class StockAnalysisController {
@@ -15,19 +38,296 @@ public class StockAnalysisController {
     @Autowired
     private MetricsService metricsService;
 
+    @Autowired
+    private AnalysisJobService analysisJobService;
+
+    @Autowired
+    private IntradayService intradayService;
+
+    @Autowired
+    private BatchAnalysisService batchAnalysisService;
+
+    @Autowired
+    private TailService tailService;
+
+    @Autowired
+    private AnalysisResultCache resultCache;
+
     /**
      * Endpoint to analyze stock data from the given CSV file.
-     * 
+     *
+     * Narrowing the analysis to a code, a date or a time window reads only the parts of the file
+     * that the file's block index points to.
+     *
      * @param filePath The path to the CSV file.
+     * @param code Only this instrument, optional.
+     * @param date Only this date as in the file, optional.
+     * @param from Only rows from this time on, as HH:mm, HH:mm:ss or seconds past midnight, optional.
+     * @param to Only rows before this time, in the same forms, optional.
      * @return A message indicating whether the analysis was successful or if an error occurred.
      */
     @GetMapping("/analyze")
-    public String analyzeStockData(@RequestParam String filePath) {
+    public String analyzeStockData(@RequestParam String filePath,
+                                   @RequestParam(required = false) String code,
+                                   @RequestParam(required = false) String date,
+                                   @RequestParam(required = false) String from,
+                                   @RequestParam(required = false) String to) {
         try {
-            metricsService.calculateMetrics(filePath);
+            TickFilter filter = DataService.ANALYSIS_FILTER;
+            if (code != null) {
+                filter = filter.allowCodes(code);
+            }
+            if (date != null) {
+                filter = filter.allowDates(date);
+            }
+            if (from != null || to != null) {
+                filter = filter.requireTimeWindow(parseSecondOfDay(from != null ? from : "00:00"),
+                        parseSecondOfDay(to != null ? to : "24:00"));
+            }
+            metricsService.calculateMetrics(filePath, filter);
             return "Analysis completed. Check the report.";
-        } catch (IOException | CsvException e) {
+        } catch (IllegalArgumentException | IOException e) {
             return "Error processing the file: " + e.getMessage();
         }
     }
+
+    /**
+     * Endpoint to analyze many CSV files, for example one per trading day, into one report
+     * with the metrics of every file and of every instrument over all files.
+     *
+     * @param input A directory (its .csv and .csv.gz files) or a glob pattern such as /data/scandi-201704*.csv.
+     * @param outputPath The path of the report.
+     * @return A message indicating whether the analysis was successful or if an error occurred.
+     */
+    @GetMapping("/analyze-batch")
+    public String analyzeBatch(@RequestParam String input,
+                               @RequestParam(defaultValue = "../batch-analysis.csv") String outputPath) {
+        try {
+            BatchResult result = batchAnalysisService.analyzeAndWrite(input, outputPath);
+            return "Batch analysis of " + result.getFileResults().size() + " files completed. Check the report.";
+        } catch (IOException e) {
+            return "Error processing the files: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Submits an analysis of the given CSV file to run in the background.
+     *
+     * @param filePath The path to the CSV file.
+     * @return The queued job with its id, or 429 when too many jobs are already waiting.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<?> submitJob(@RequestParam String filePath) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(analysisJobService.submit(filePath));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body("Too many analysis jobs, try again later");
+        }
+    }
+
+    /**
+     * @return Every retained job with its status and progress.
+     */
+    @GetMapping("/jobs")
+    public List<AnalysisJob> listJobs() {
+        return analysisJobService.getJobs();
+    }
+
+    /**
+     * @param id The job id returned on submission.
+     * @return The job's status and progress, bytes and rows processed so far.
+     */
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<AnalysisJob> getJob(@PathVariable String id) {
+        AnalysisJob job = analysisJobService.getJob(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    /**
+     * Cancels a queued or running job.
+     *
+     * @param id The job id returned on submission.
+     * @return The job after cancellation.
+     */
+    @DeleteMapping("/jobs/{id}")
+    public ResponseEntity<AnalysisJob> cancelJob(@PathVariable String id) {
+        AnalysisJob job = analysisJobService.cancel(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    /**
+     * Returns the metrics of a finished job as JSON.
+     *
+     * @param id The job id returned on submission.
+     * @return One {stockCode, metric, value} object per metric and instrument, or 409 while the
+     *         job hasn't succeeded.
+     */
+    @GetMapping("/jobs/{id}/results")
+    public ResponseEntity<?> getJobResults(@PathVariable String id) {
+        AnalysisJob job = analysisJobService.getJob(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (job.getStatus() != AnalysisJob.Status.SUCCEEDED) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Job " + id + " is " + job.getStatus());
+        }
+        List<Map<String, String>> results = new ArrayList<>(job.getResults().size());
+        for (String[] row : job.getResults()) {
+            Map<String, String> result = new LinkedHashMap<>();
+            result.put("stockCode", row[0]);
+            result.put("metric", row[1]);
+            result.put("value", row[2]);
+            results.add(result);
+        }
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Returns intraday metric buckets of one instrument. The file is indexed on its first query,
+     * later queries and coarser rollups are answered from the index.
+     *
+     * @param filePath The path to the CSV file.
+     * @param code The instrument code.
+     * @param date The date as in the file, all dates when omitted.
+     * @param from Start of the range as HH:mm, HH:mm:ss or seconds past midnight, inclusive.
+     * @param to End of the range in the same forms, exclusive.
+     * @param rollup Minutes per returned bucket, a multiple of the configured bucket length;
+     *               1440 gives one bucket per day. The bucket length when omitted.
+     * @return The non-empty buckets in the range, 400 for invalid arguments.
+     */
+    @GetMapping("/intraday")
+    public ResponseEntity<?> getIntradayMetrics(@RequestParam String filePath, @RequestParam String code,
+                                                @RequestParam(required = false) String date,
+                                                @RequestParam(defaultValue = "00:00") String from,
+                                                @RequestParam(defaultValue = "24:00") String to,
+                                                @RequestParam(defaultValue = "0") int rollup) {
+        try {
+            return ResponseEntity.ok(intradayService.query(filePath, code, date, parseSecondOfDay(from), parseSecondOfDay(to), rollup));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error processing the file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Follows a growing CSV file and returns the metrics of every instrument read so far. The
+     * first request reads the file up to its end, later ones return what the polls since have
+     * added.
+     *
+     * @param filePath The path to the CSV file.
+     * @return The file's offset, row counts and per-instrument metrics, 400 for a compressed file,
+     *         429 when too many files are followed.
+     */
+    @GetMapping("/tail")
+    public ResponseEntity<?> tail(@RequestParam String filePath) {
+        try {
+            return ResponseEntity.ok(tailService.follow(filePath));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error processing the file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the metrics of a growing CSV file as server-sent events: a "snapshot" event with
+     * every instrument, then an "update" event with the instruments each poll changed. The
+     * stream ends when the file is unfollowed, and with an error when following it fails or the
+     * client falls too far behind.
+     *
+     * @param filePath The path to the CSV file.
+     * @return The event stream, 400 for a compressed file, 429 when too many files are followed.
+     */
+    @GetMapping("/tail/stream")
+    public SseEmitter tailStream(@RequestParam String filePath) {
+        SseEmitter emitter = new SseEmitter(0L);
+        try {
+            Runnable unsubscribe = tailService.subscribe(filePath, new TailService.Listener() {
+                private boolean first = true;
+
+                @Override
+                public void onSnapshot(TailSnapshot snapshot) throws IOException {
+                    emitter.send(SseEmitter.event().name(first ? "snapshot" : "update").data(snapshot));
+                    first = false;
+                }
+
+                @Override
+                public void onClose(Throwable cause) {
+                    if (cause == null) {
+                        emitter.complete();
+                    } else {
+                        emitter.completeWithError(cause);
+                    }
+                }
+            });
+            emitter.onCompletion(unsubscribe);
+            emitter.onTimeout(unsubscribe);
+            emitter.onError(e -> unsubscribe.run());
+            return emitter;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, e.getMessage());
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error processing the file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops following a file.
+     *
+     * @param filePath The path of a followed file.
+     * @return 204, or 404 when the file wasn't followed.
+     */
+    @DeleteMapping("/tail")
+    public ResponseEntity<Void> stopTail(@RequestParam String filePath) {
+        return tailService.unfollow(filePath) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Returns the counters of the analysis result cache, for sizing it.
+     *
+     * @return Hits, misses, requests that shared a running analysis, evictions, invalidations,
+     *         the entries and their estimated size against the limit.
+     */
+    @GetMapping("/cache/results")
+    public Map<String, Object> getResultCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", resultCache.isEnabled());
+        stats.put("hits", resultCache.getHits());
+        stats.put("misses", resultCache.getMisses());
+        stats.put("shared", resultCache.getShared());
+        stats.put("evictions", resultCache.getEvictions());
+        stats.put("invalidations", resultCache.getInvalidations());
+        stats.put("entries", resultCache.getEntryCount());
+        stats.put("bytes", resultCache.getBytes());
+        stats.put("maxBytes", resultCache.getMaxBytes());
+        return stats;
+    }
+
+    /**
+     * Drops cached analysis results.
+     *
+     * @param filePath Only the results of this file, every result when omitted.
+     * @return The number of results dropped.
+     */
+    @DeleteMapping("/cache/results")
+    public Map<String, Integer> invalidateResultCache(@RequestParam(required = false) String filePath) {
+        int dropped = filePath == null ? resultCache.invalidateAll() : resultCache.invalidate(filePath);
+        return Collections.singletonMap("invalidated", dropped);
+    }
+
+    private static int parseSecondOfDay(String time) {
+        if ("24:00".equals(time)) {
+            return 24 * 60 * 60;
+        }
+        try {
+            return time.contains(":") ? LocalTime.parse(time).toSecondOfDay() : (int) Double.parseDouble(time);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid time: " + time);
+        }
+    }
 }
@@ -0,0 +1,504 @@
+package com.task.generator;
+
+import com.task.parser.BgzfOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Writes synthetic tick files in the scandi.csv layout read by {@code DataService.loadCSVData},
+ * for load and soak tests at production scale.
+ *
+ * The output is a function of the settings alone: the same seed and knobs always give the same
+ * bytes. Rows are generated one at a time and streamed to the writer, so memory only holds a
+ * few values per instrument however many rows are written.
+ *
+ * Each trading day spreads its rows over the session in time order. A share of them falls in
+ * the auction windows, by default the 09:00-17:00 window the analysis filter drops. Instruments
+ * are drawn from a Zipf distribution, so with a positive skew a few of them carry most of the
+ * rows. Like the real feed, quotes leave the trade price and volume empty, and only trades
+ * carry condition codes. Malformed rows replace a share of the rows: short lines the parser
+ * skips, unparseable prices it defaults to 0, and garbage lines.
+ *
+ * Run from the stock-analysis directory with
+ * {@code mvn -q compile exec:java -Dexec.mainClass=com.task.generator.TickGenerator -Dexec.args="--rows-per-day=1000000 out.csv"};
+ * every setter is available as a {@code --name=value} option.
+ */
+public class TickGenerator {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final int BUFFER_CHARS = 1 << 16;
+
+    private long seed = 42;
+    private int instruments = 50;
+    private double skew = 1.0;
+    private long rowsPerDay = 100_000;
+    private int days = 2;
+    private LocalDate startDate = LocalDate.of(2017, 4, 24);
+    private int sessionOpen = 8 * 3600;
+    private int sessionClose = 18 * 3600 + 1800;
+    private List<int[]> auctionWindows = new ArrayList<>(Arrays.asList(new int[]{9 * 3600, 17 * 3600}));
+    private double auctionShare = -1;
+    private double tradeShare = 1.0 / 3;
+    private double crossedQuoteRate = 0.01;
+    private Map<String, Double> conditionMix = parseConditionMix(":4,XT:3,R:1,AU:1,OB:1");
+    private double malformedRate = 0;
+
+    /** Seed of the generator. */
+    public TickGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /** Number of distinct Bloomberg codes. */
+    public TickGenerator instruments(int instruments) {
+        require(instruments > 0, "instruments must be positive");
+        this.instruments = instruments;
+        return this;
+    }
+
+    /** Zipf exponent of the instruments' row counts: 0 spreads rows evenly, 1 and above concentrates them. */
+    public TickGenerator skew(double skew) {
+        require(skew >= 0, "skew must not be negative");
+        this.skew = skew;
+        return this;
+    }
+
+    /** Rows of each trading day. */
+    public TickGenerator rowsPerDay(long rowsPerDay) {
+        require(rowsPerDay >= 0, "rows per day must not be negative");
+        this.rowsPerDay = rowsPerDay;
+        return this;
+    }
+
+    /** Number of trading days; weekends are skipped. */
+    public TickGenerator days(int days) {
+        require(days > 0, "days must be positive");
+        this.days = days;
+        return this;
+    }
+
+    /** First trading day. */
+    public TickGenerator startDate(LocalDate startDate) {
+        this.startDate = startDate;
+        return this;
+    }
+
+    /** Time of the first and last rows of a day, in seconds past midnight. */
+    public TickGenerator session(int open, int close) {
+        require(0 <= open && open < close && close <= 86_400, "session must be a range within the day");
+        this.sessionOpen = open;
+        this.sessionClose = close;
+        return this;
+    }
+
+    /** Auction windows of the day as {from, to} seconds past midnight; none with an empty list. */
+    public TickGenerator auctionWindows(List<int[]> windows) {
+        List<int[]> sorted = new ArrayList<>(windows);
+        sorted.sort((a, b) -> Integer.compare(a[0], b[0]));
+        for (int i = 0; i < sorted.size(); i++) {
+            require(sorted.get(i)[0] < sorted.get(i)[1], "auction windows must not be empty");
+            require(i == 0 || sorted.get(i - 1)[1] <= sorted.get(i)[0], "auction windows must not overlap");
+        }
+        this.auctionWindows = sorted;
+        return this;
+    }
+
+    /** Share of the rows inside the auction windows; negative for their share of the session's length. */
+    public TickGenerator auctionShare(double auctionShare) {
+        require(auctionShare <= 1, "auction share must be at most 1");
+        this.auctionShare = auctionShare;
+        return this;
+    }
+
+    /** Share of the rows that are trades (update type 1) rather than quotes. */
+    public TickGenerator tradeShare(double tradeShare) {
+        require(0 <= tradeShare && tradeShare <= 1, "trade share must be between 0 and 1");
+        this.tradeShare = tradeShare;
+        return this;
+    }
+
+    /** Share of the quotes whose bid is above their ask. */
+    public TickGenerator crossedQuoteRate(double crossedQuoteRate) {
+        require(0 <= crossedQuoteRate && crossedQuoteRate <= 1, "crossed quote rate must be between 0 and 1");
+        this.crossedQuoteRate = crossedQuoteRate;
+        return this;
+    }
+
+    /** Relative weights of the trades' condition codes, the empty code for none. */
+    public TickGenerator conditionMix(Map<String, Double> conditionMix) {
+        require(!conditionMix.isEmpty(), "condition mix must not be empty");
+        this.conditionMix = new LinkedHashMap<>(conditionMix);
+        return this;
+    }
+
+    /** Share of the rows replaced by malformed lines. */
+    public TickGenerator malformedRate(double malformedRate) {
+        require(0 <= malformedRate && malformedRate <= 1, "malformed rate must be between 0 and 1");
+        this.malformedRate = malformedRate;
+        return this;
+    }
+
+    /**
+     * @return Rows the settings produce, malformed ones included.
+     */
+    public long getRows() {
+        return rowsPerDay * days;
+    }
+
+    /**
+     * Writes the file, BGZF-compressed when its name ends with ".gz".
+     *
+     * @param file The output file, replaced if it exists.
+     * @return The number of rows written.
+     * @throws IOException If the file can't be written.
+     */
+    public long write(Path file) throws IOException {
+        if (file.getFileName().toString().endsWith(".gz")) {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new BgzfOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file), BUFFER_CHARS)), StandardCharsets.UTF_8), BUFFER_CHARS)) {
+                return write(writer);
+            }
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return write(writer);
+        }
+    }
+
+    /**
+     * Streams the rows to a writer, which is flushed but left open.
+     *
+     * @param writer Receives the lines.
+     * @return The number of rows written.
+     * @throws IOException If writing fails.
+     */
+    public long write(Writer writer) throws IOException {
+        Random random = new Random(seed);
+        double[] instrumentCdf = zipfCdf(instruments, skew);
+        double[] prices = new double[instruments];
+        for (int i = 0; i < instruments; i++) {
+            prices[i] = 20 + random.nextInt(2000) / 4.0;
+        }
+        String[] conditionCodes = conditionMix.keySet().toArray(new String[0]);
+        double[] conditionCdf = cdf(conditionMix.values());
+        double[][] segments = timeSegments();
+        double[] referencePrices = new double[instruments];
+        String[] codes = new String[instruments];
+        for (int i = 0; i < instruments; i++) {
+            codes[i] = "INSTR" + i + " SS Equity";
+        }
+
+        StringBuilder line = new StringBuilder(128);
+        long written = 0;
+        LocalDate date = startDate;
+        for (int day = 0; day < days; day++) {
+            while (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                date = date.plusDays(1);
+            }
+            String dateText = date.format(DATE_FORMAT);
+            for (int i = 0; i < instruments; i++) {
+                referencePrices[i] = round(prices[i]);
+            }
+            for (long row = 0; row < rowsPerDay; row++) {
+                line.setLength(0);
+                double time = timeOf((row + 0.5) / rowsPerDay, segments);
+                int instrument = Arrays.binarySearch(instrumentCdf, random.nextDouble());
+                instrument = Math.min(instruments - 1, instrument < 0 ? -instrument - 1 : instrument);
+                double price = prices[instrument] = Math.max(1, prices[instrument] + (random.nextInt(5) - 2) * 0.05);
+                double bid = round(price - 0.05 * (1 + random.nextInt(3)));
+                double ask = round(price + 0.05 * (1 + random.nextInt(3)));
+                boolean trade = random.nextDouble() < tradeShare;
+                if (!trade && random.nextDouble() < crossedQuoteRate) {
+                    double swap = bid;
+                    bid = ask;
+                    ask = swap;
+                }
+                int bidVolume = 100 * (1 + random.nextInt(20));
+                int askVolume = 100 * (1 + random.nextInt(20));
+                int tradeVolume = trade ? 10 * (1 + random.nextInt(50)) + random.nextInt(2) * 5 : -1;
+                int updateType = trade ? 1 : 2 + random.nextInt(2);
+                appendRow(line, codes[instrument], bid, ask, trade ? round(price) : Double.NaN, bidVolume, askVolume,
+                        tradeVolume, updateType, dateText, time, referencePrices[instrument],
+                        trade ? conditionCodes[pick(conditionCdf, random.nextDouble())] : "");
+                if (malformedRate > 0 && random.nextDouble() < malformedRate) {
+                    malform(line, random.nextInt(3));
+                }
+                writer.append(line).append('\n');
+                written++;
+            }
+            date = date.plusDays(1);
+        }
+        writer.flush();
+        return written;
+    }
+
+    /**
+     * Appends one row in the scandi.csv layout, without its line terminator. Tests and
+     * benchmarks that need rows of their own shape write them through here too.
+     *
+     * @param line Receives the row.
+     * @param tradePrice The trade price, NaN to leave it empty as the feed's quotes do.
+     * @param tradeVolume The trade volume, negative to leave it empty.
+     * @param date The date as yyyyMMdd.
+     * @param time Seconds past midnight, written to the millisecond.
+     * @param referencePrice The price column after the time, which the loaders skip.
+     * @param conditionCodes The condition codes, empty for none.
+     * @return The line.
+     */
+    public static StringBuilder appendRow(StringBuilder line, String code, double bidPrice, double askPrice,
+                                          double tradePrice, int bidVolume, int askVolume, int tradeVolume,
+                                          int updateType, String date, double time, double referencePrice,
+                                          String conditionCodes) {
+        line.append(code).append(",0,").append(bidPrice).append(',').append(askPrice).append(',');
+        if (!Double.isNaN(tradePrice)) {
+            line.append(tradePrice);
+        }
+        line.append(',').append(bidVolume).append(',').append(askVolume).append(',');
+        if (tradeVolume >= 0) {
+            line.append(tradeVolume);
+        }
+        line.append(',').append(updateType).append(",0,").append(date).append(',');
+        appendTime(line, time);
+        return line.append(',').append(referencePrice).append(",,").append(conditionCodes);
+    }
+
+    /**
+     * Breaks a generated line: a short line, an unparseable bid price or a garbage line.
+     */
+    private static void malform(StringBuilder line, int kind) {
+        switch (kind) {
+            case 0:
+                int commas = 0;
+                int cut = 0;
+                while (commas < 8 && (cut = line.indexOf(",", cut) + 1) > 0) {
+                    commas++;
+                }
+                line.setLength(Math.max(0, cut - 1));
+                break;
+            case 1:
+                int bidStart = line.indexOf(",0,") + 3;
+                line.replace(bidStart, line.indexOf(",", bidStart), "n/a");
+                break;
+            default:
+                line.setLength(0);
+                line.append("#corrupt");
+        }
+    }
+
+    /**
+     * Cuts the session into segments weighted so that the auction windows hold their share of
+     * the rows and each segment's rows are spread evenly over its length.
+     *
+     * @return {from, to, cumulative share at its end} per segment, in time order.
+     */
+    private double[][] timeSegments() {
+        List<double[]> segments = new ArrayList<>();
+        double auctionLength = 0;
+        double openLength = 0;
+        int cursor = sessionOpen;
+        for (int[] window : auctionWindows) {
+            int from = Math.max(window[0], sessionOpen);
+            int to = Math.min(window[1], sessionClose);
+            if (from >= to) {
+                continue;
+            }
+            if (from > cursor) {
+                segments.add(new double[]{cursor, from, 0});
+                openLength += from - cursor;
+            }
+            segments.add(new double[]{from, to, 1});
+            auctionLength += to - from;
+            cursor = to;
+        }
+        if (cursor < sessionClose) {
+            segments.add(new double[]{cursor, sessionClose, 0});
+            openLength += sessionClose - cursor;
+        }
+        double share = auctionShare < 0 ? auctionLength / (auctionLength + openLength)
+                : auctionLength == 0 ? 0 : openLength == 0 ? 1 : auctionShare;
+        double cumulative = 0;
+        for (double[] segment : segments) {
+            double length = segment[1] - segment[0];
+            cumulative += segment[2] == 1 ? share * length / auctionLength : (1 - share) * length / openLength;
+            segment[2] = cumulative;
+        }
+        return segments.toArray(new double[0][]);
+    }
+
+    /**
+     * @param u Position of the row in its day, in (0, 1).
+     * @return The row's time: u mapped through the segments, non-decreasing in u.
+     */
+    private static double timeOf(double u, double[][] segments) {
+        double previous = 0;
+        for (double[] segment : segments) {
+            if (u <= segment[2] || segment == segments[segments.length - 1]) {
+                double within = segment[2] > previous ? (u - previous) / (segment[2] - previous) : 0;
+                return segment[0] + Math.min(1, Math.max(0, within)) * (segment[1] - segment[0]);
+            }
+            previous = segment[2];
+        }
+        return segments.length == 0 ? 0 : segments[0][0];
+    }
+
+    private static void appendTime(StringBuilder line, double time) {
+        long millis = Math.round(time * 1000);
+        long fraction = millis % 1000;
+        line.append(millis / 1000).append('.');
+        if (fraction < 100) {
+            line.append('0');
+        }
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction);
+    }
+
+    private static double[] zipfCdf(int instruments, double skew) {
+        List<Double> weights = new ArrayList<>(instruments);
+        for (int rank = 1; rank <= instruments; rank++) {
+            weights.add(1 / Math.pow(rank, skew));
+        }
+        return cdf(weights);
+    }
+
+    private static double[] cdf(Iterable<Double> weights) {
+        List<Double> cumulative = new ArrayList<>();
+        double sum = 0;
+        for (double weight : weights) {
+            require(weight >= 0, "weights must not be negative");
+            sum += weight;
+            cumulative.add(sum);
+        }
+        require(sum > 0, "weights must not all be zero");
+        double[] cdf = new double[cumulative.size()];
+        for (int i = 0; i < cdf.length; i++) {
+            cdf[i] = cumulative.get(i) / sum;
+        }
+        return cdf;
+    }
+
+    private static int pick(double[] cdf, double u) {
+        int index = Arrays.binarySearch(cdf, u);
+        return Math.min(cdf.length - 1, index < 0 ? -index - 1 : index);
+    }
+
+    private static double round(double price) {
+        return Math.round(price * 100) / 100.0;
+    }
+
+    static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    /**
+     * Parses a condition mix such as {@code ":4,XT:3,R:1"}, where the empty code stands for none.
+     */
+    static Map<String, Double> parseConditionMix(String mix) {
+        Map<String, Double> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            int colon = entry.lastIndexOf(':');
+            require(colon >= 0, "condition mix entries are code:weight, got " + entry);
+            weights.put(entry.substring(0, colon).trim(), Double.parseDouble(entry.substring(colon + 1).trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Parses auction windows such as {@code "08:50-09:00,17:25-17:30"}; an empty string for none.
+     */
+    static List<int[]> parseWindows(String windows) {
+        List<int[]> parsed = new ArrayList<>();
+        for (String window : windows.split(",")) {
+            if (!window.trim().isEmpty()) {
+                String[] bounds = window.trim().split("-");
+                require(bounds.length == 2, "windows are from-to, got " + window);
+                parsed.add(new int[]{parseTime(bounds[0]), parseTime(bounds[1])});
+            }
+        }
+        return parsed;
+    }
+
+    private static int parseTime(String time) {
+        String[] parts = time.trim().split(":");
+        int seconds = 0;
+        for (int i = 0; i < 3; i++) {
+            seconds = seconds * 60 + (i < parts.length ? Integer.parseInt(parts[i]) : 0);
+        }
+        return seconds;
+    }
+
+    /**
+     * Applies a {@code --name=value} command-line option to a generator.
+     *
+     * @return False when the name isn't a generator option.
+     */
+    static boolean applyOption(TickGenerator generator, String name, String value) {
+        switch (name) {
+            case "seed": generator.seed(Long.parseLong(value)); break;
+            case "instruments": generator.instruments(Integer.parseInt(value)); break;
+            case "skew": generator.skew(Double.parseDouble(value)); break;
+            case "rows-per-day": generator.rowsPerDay(Long.parseLong(value)); break;
+            case "days": generator.days(Integer.parseInt(value)); break;
+            case "start-date": generator.startDate(LocalDate.parse(value, DATE_FORMAT)); break;
+            case "session": {
+                int[] session = parseWindows(value).get(0);
+                generator.session(session[0], session[1]);
+                break;
+            }
+            case "auction-windows": generator.auctionWindows(parseWindows(value)); break;
+            case "auction-share": generator.auctionShare(Double.parseDouble(value)); break;
+            case "trade-share": generator.tradeShare(Double.parseDouble(value)); break;
+            case "crossed-quote-rate": generator.crossedQuoteRate(Double.parseDouble(value)); break;
+            case "condition-mix": generator.conditionMix(parseConditionMix(value)); break;
+            case "malformed-rate": generator.malformedRate(Double.parseDouble(value)); break;
+            default: return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a file from {@code --name=value} options and an output path, "-" for standard output.
+     */
+    public static void main(String[] args) throws IOException {
+        TickGenerator generator = new TickGenerator();
+        String output = null;
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                output = arg;
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            require(equals > 2, "options are --name=value, got " + arg);
+            require(applyOption(generator, arg.substring(2, equals), arg.substring(equals + 1)), "Unknown option " + arg);
+        }
+        require(output != null, "usage: TickGenerator [--name=value ...] <output.csv | ->");
+        long started = System.nanoTime();
+        long rows;
+        if ("-".equals(output)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), BUFFER_CHARS);
+            rows = generator.write(writer);
+        } else {
+            rows = generator.write(Paths.get(output));
+        }
+        System.err.println("Wrote " + rows + " rows in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,310 @@
+package com.task.generator;
+
+import com.task.metrics.QuantileEngine;
+import com.task.metrics.QuantileSketch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Soak test harness: pushes tick files through a running instance's {@code /analyze} endpoint
+ * at a fixed rate, for example files written by {@link TickGenerator}.
+ *
+ * Requests are started on schedule by a pool of client threads, whether or not earlier ones
+ * have returned, so a server that falls behind shows up as growing latency rather than as a
+ * lower request rate. Latency is measured from each request's scheduled start. Every report
+ * interval a line with the requests so far, their latency quantiles and the server's heap use
+ * (from Actuator, when it is exposed) goes to standard error.
+ *
+ * The server reads the files by path, so it must run on the same host or share the files.
+ * Run with {@code mvn -q compile exec:java -Dexec.mainClass=com.task.generator.TickReplay
+ * -Dexec.args="--rate=2 --requests=100 /data/scandi-1.csv /data/scandi-2.csv"}. Without file
+ * arguments, {@code --files=N} files are generated into a temporary directory with the
+ * generator options given, seeds counting up from {@code --seed}, and deleted afterwards.
+ */
+public class TickReplay {
+
+    private static final Pattern VALUE = Pattern.compile("\"value\"\\s*:\\s*([0-9.Ee+-]+)");
+
+    private String baseUrl = "http://localhost:8080";
+    private String endpoint = "/analyze";
+    private double rate = 1;
+    private int threads = 4;
+    private long requests = 10;
+    private long reportSeconds = 10;
+    private int timeoutMillis = 600_000;
+
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final Map<Integer, Integer> statuses = new TreeMap<>();
+    private final QuantileSketch latencies = QuantileEngine.logHistogram(0.01).newSketch();
+    private final List<String> errors = new ArrayList<>();
+
+    /** Base URL of the running instance. */
+    public TickReplay baseUrl(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        return this;
+    }
+
+    /** Path of the endpoint called with each file as its filePath parameter. */
+    public TickReplay endpoint(String endpoint) {
+        this.endpoint = endpoint;
+        return this;
+    }
+
+    /** Requests started per second. */
+    public TickReplay rate(double rate) {
+        TickGenerator.require(rate > 0, "rate must be positive");
+        this.rate = rate;
+        return this;
+    }
+
+    /** Client threads, the most requests in flight at once. */
+    public TickReplay threads(int threads) {
+        TickGenerator.require(threads > 0, "threads must be positive");
+        this.threads = threads;
+        return this;
+    }
+
+    /** Requests to send in total, cycling through the files. */
+    public TickReplay requests(long requests) {
+        TickGenerator.require(requests > 0, "requests must be positive");
+        this.requests = requests;
+        return this;
+    }
+
+    /** Seconds between progress lines. */
+    public TickReplay reportSeconds(long reportSeconds) {
+        TickGenerator.require(reportSeconds > 0, "report interval must be positive");
+        this.reportSeconds = reportSeconds;
+        return this;
+    }
+
+    /** Connect and read timeout of each request. */
+    public TickReplay timeoutMillis(int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * Sends the requests and waits for all of them.
+     *
+     * @param files The files to analyse, in turn.
+     * @return The summary printed at the end.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public String run(List<Path> files) throws InterruptedException {
+        TickGenerator.require(!files.isEmpty(), "no files to replay");
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        long started = System.nanoTime();
+        long nextReport = started + TimeUnit.SECONDS.toNanos(reportSeconds);
+        try {
+            for (long i = 0; i < requests; i++) {
+                long scheduled = started + (long) (i * 1e9 / rate);
+                nextReport = sleepUntil(scheduled, nextReport, started);
+                Path file = files.get((int) (i % files.size()));
+                clients.execute(() -> send(file, scheduled));
+            }
+            clients.shutdown();
+            while (!clients.awaitTermination(Math.max(1, nextReport - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                report(started);
+                nextReport += TimeUnit.SECONDS.toNanos(reportSeconds);
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        String summary = summary(started);
+        System.err.println(summary);
+        return summary;
+    }
+
+    private long sleepUntil(long deadline, long nextReport, long started) throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= nextReport) {
+                report(started);
+                nextReport += TimeUnit.SECONDS.toNanos(reportSeconds);
+                continue;
+            }
+            if (now >= deadline) {
+                return nextReport;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(deadline, nextReport) - now);
+        }
+    }
+
+    private void send(Path file, long scheduled) {
+        int status;
+        try {
+            String query = "?filePath=" + URLEncoder.encode(file.toAbsolutePath().toString(), StandardCharsets.UTF_8.name());
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + endpoint + query).openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            status = connection.getResponseCode();
+            String body = read(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            // the analyze endpoint reports its failures with a 200
+            if (status >= 400 || body.startsWith("Error")) {
+                recordError(file + ": " + status + " " + body);
+            }
+        } catch (IOException e) {
+            status = -1;
+            recordError(file + ": " + e);
+        }
+        double seconds = (System.nanoTime() - scheduled) / 1e9;
+        synchronized (this) {
+            statuses.merge(status, 1, Integer::sum);
+            latencies.add(Math.max(seconds, 1e-6));
+        }
+        completed.incrementAndGet();
+    }
+
+    private synchronized void recordError(String error) {
+        failed.incrementAndGet();
+        if (errors.size() < 20) {
+            errors.add(error);
+        }
+    }
+
+    private static String read(InputStream input) throws IOException {
+        if (input == null) {
+            return "";
+        }
+        try (InputStream in = input) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void report(long started) {
+        System.err.println(progress(started) + ", server heap " + serverHeap());
+    }
+
+    private synchronized String progress(long started) {
+        return String.format("%.0fs: %d/%d requests, %d failed, statuses %s, latency p50 %.3fs p95 %.3fs p99 %.3fs",
+                (System.nanoTime() - started) / 1e9, completed.get(), requests, failed.get(), statuses,
+                latencies.quantile(0.5), latencies.quantile(0.95), latencies.quantile(0.99));
+    }
+
+    private String summary(long started) {
+        StringBuilder summary = new StringBuilder(progress(started));
+        summary.append(", server heap ").append(serverHeap());
+        synchronized (this) {
+            for (String error : errors) {
+                summary.append("\n  ").append(error);
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @return The heap the server uses according to Actuator, or "unknown".
+     */
+    private String serverHeap() {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl
+                    + "/actuator/metrics/jvm.memory.used?tag=area:heap").openConnection();
+            connection.setConnectTimeout(2000);
+            connection.setReadTimeout(2000);
+            if (connection.getResponseCode() != 200) {
+                return "unknown";
+            }
+            Matcher value = VALUE.matcher(read(connection.getInputStream()));
+            return value.find() ? (long) Double.parseDouble(value.group(1)) / (1 << 20) + " MB" : "unknown";
+        } catch (IOException | RuntimeException e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * @return Responses per HTTP status, -1 for requests that failed without one.
+     */
+    public synchronized Map<Integer, Integer> getStatuses() {
+        return new TreeMap<>(statuses);
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * @return Requests that failed, got an error status or an error message.
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Replays files, or generated ones, from {@code --name=value} options and file paths.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        TickReplay replay = new TickReplay();
+        TickGenerator generator = new TickGenerator();
+        long seed = 42;
+        int generatedFiles = 1;
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                files.add(Paths.get(arg));
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            TickGenerator.require(equals > 2, "options are --name=value, got " + arg);
+            String name = arg.substring(2, equals);
+            String value = arg.substring(equals + 1);
+            switch (name) {
+                case "url": replay.baseUrl(value); break;
+                case "endpoint": replay.endpoint(value); break;
+                case "rate": replay.rate(Double.parseDouble(value)); break;
+                case "threads": replay.threads(Integer.parseInt(value)); break;
+                case "requests": replay.requests(Long.parseLong(value)); break;
+                case "report-seconds": replay.reportSeconds(Long.parseLong(value)); break;
+                case "timeout-millis": replay.timeoutMillis(Integer.parseInt(value)); break;
+                case "files": generatedFiles = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                default:
+                    TickGenerator.require(TickGenerator.applyOption(generator, name, value), "Unknown option " + arg);
+            }
+        }
+        if (!files.isEmpty()) {
+            replay.run(files);
+            return;
+        }
+        Path directory = Files.createTempDirectory("tick-replay");
+        try {
+            for (int i = 0; i < generatedFiles; i++) {
+                Path file = directory.resolve("scandi-" + (seed + i) + ".csv");
+                generator.seed(seed + i).write(file);
+                files.add(file);
+            }
+            replay.run(files);
+        } finally {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+}
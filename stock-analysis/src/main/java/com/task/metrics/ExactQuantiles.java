@@ -0,0 +1,104 @@
+package com.task.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Exact quantiles over a growable {@code double[]}. Queries use quickselect, which reorders
+ * the buffer in place and runs in linear expected time, with no boxing.
+ *
+ * The median equals the one of a fully sorted copy bit for bit, including the
+ * {@code (a + b) / 2.0} average of the two middle values.
+ */
+public class ExactQuantiles implements QuantileSketch {
+
+    private double[] values = new double[256];
+    private int size;
+
+    @Override
+    public void add(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    @Override
+    public long count() {
+        return size;
+    }
+
+    @Override
+    public double quantile(double q) {
+        if (size == 0) {
+            return 0;
+        }
+        double rank = q * (size - 1);
+        int lower = (int) Math.floor(rank);
+        double low = select(lower);
+        if (lower == rank) {
+            return low;
+        }
+        // after select(lower) everything above index lower is >= low, the next rank is their minimum
+        double high = values[lower + 1];
+        for (int i = lower + 2; i < size; i++) {
+            if (values[i] < high) {
+                high = values[i];
+            }
+        }
+        double fraction = rank - lower;
+        return fraction == 0.5 ? (low + high) / 2.0 : low + fraction * (high - low);
+    }
+
+    @Override
+    public void merge(QuantileSketch other) {
+        ExactQuantiles exact = (ExactQuantiles) other;
+        if (size + exact.size > values.length) {
+            values = Arrays.copyOf(values, Math.max(size + exact.size, values.length * 2));
+        }
+        System.arraycopy(exact.values, 0, values, size, exact.size);
+        size += exact.size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+    }
+
+    private double select(int k) {
+        int left = 0;
+        int right = size - 1;
+        while (right > left) {
+            // median of three keeps sorted and reverse-sorted input linear
+            int mid = (left + right) >>> 1;
+            if (values[mid] < values[left]) swap(mid, left);
+            if (values[right] < values[left]) swap(right, left);
+            if (values[right] < values[mid]) swap(right, mid);
+            double pivot = values[mid];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+
+    private void swap(int a, int b) {
+        double tmp = values[a];
+        values[a] = values[b];
+        values[b] = tmp;
+    }
+}
@@ -0,0 +1,63 @@
+package com.task.metrics;
+
+/**
+ * The metrics of one instrument, as computed by {@link InstrumentMetricsKernel}.
+ */
+public class InstrumentMetrics {
+    private final String stockCode;
+    private double meanTimeBetweenTrades;
+    private double medianTimeBetweenTrades;
+    private double longestTimeBetweenTrades;
+    private double meanTimeBetweenTickChanges;
+    private double medianTimeBetweenTickChanges;
+    private double longestTimeBetweenTickChanges;
+    private double meanBidAskSpread;
+    private double medianBidAskSpread;
+    private double roundNumberTradePercentage;
+    private double roundNumberVolumePercentage;
+    private double[] tradeGapPercentiles = new double[0];
+    private double[] tickGapPercentiles = new double[0];
+
+    public InstrumentMetrics(String stockCode) {
+        this.stockCode = stockCode;
+    }
+
+    public String getStockCode() { return stockCode; }
+
+    public double getMeanTimeBetweenTrades() { return meanTimeBetweenTrades; }
+    public void setMeanTimeBetweenTrades(double meanTimeBetweenTrades) { this.meanTimeBetweenTrades = meanTimeBetweenTrades; }
+
+    public double getMedianTimeBetweenTrades() { return medianTimeBetweenTrades; }
+    public void setMedianTimeBetweenTrades(double medianTimeBetweenTrades) { this.medianTimeBetweenTrades = medianTimeBetweenTrades; }
+
+    public double getLongestTimeBetweenTrades() { return longestTimeBetweenTrades; }
+    public void setLongestTimeBetweenTrades(double longestTimeBetweenTrades) { this.longestTimeBetweenTrades = longestTimeBetweenTrades; }
+
+    public double getMeanTimeBetweenTickChanges() { return meanTimeBetweenTickChanges; }
+    public void setMeanTimeBetweenTickChanges(double meanTimeBetweenTickChanges) { this.meanTimeBetweenTickChanges = meanTimeBetweenTickChanges; }
+
+    public double getMedianTimeBetweenTickChanges() { return medianTimeBetweenTickChanges; }
+    public void setMedianTimeBetweenTickChanges(double medianTimeBetweenTickChanges) { this.medianTimeBetweenTickChanges = medianTimeBetweenTickChanges; }
+
+    public double getLongestTimeBetweenTickChanges() { return longestTimeBetweenTickChanges; }
+    public void setLongestTimeBetweenTickChanges(double longestTimeBetweenTickChanges) { this.longestTimeBetweenTickChanges = longestTimeBetweenTickChanges; }
+
+    public double getMeanBidAskSpread() { return meanBidAskSpread; }
+    public void setMeanBidAskSpread(double meanBidAskSpread) { this.meanBidAskSpread = meanBidAskSpread; }
+
+    public double getMedianBidAskSpread() { return medianBidAskSpread; }
+    public void setMedianBidAskSpread(double medianBidAskSpread) { this.medianBidAskSpread = medianBidAskSpread; }
+
+    public double getRoundNumberTradePercentage() { return roundNumberTradePercentage; }
+    public void setRoundNumberTradePercentage(double roundNumberTradePercentage) { this.roundNumberTradePercentage = roundNumberTradePercentage; }
+
+    public double getRoundNumberVolumePercentage() { return roundNumberVolumePercentage; }
+    public void setRoundNumberVolumePercentage(double roundNumberVolumePercentage) { this.roundNumberVolumePercentage = roundNumberVolumePercentage; }
+
+    /** Values of the configured gap percentiles, in configuration order. */
+    public double[] getTradeGapPercentiles() { return tradeGapPercentiles; }
+    public void setTradeGapPercentiles(double[] tradeGapPercentiles) { this.tradeGapPercentiles = tradeGapPercentiles; }
+
+    public double[] getTickGapPercentiles() { return tickGapPercentiles; }
+    public void setTickGapPercentiles(double[] tickGapPercentiles) { this.tickGapPercentiles = tickGapPercentiles; }
+}
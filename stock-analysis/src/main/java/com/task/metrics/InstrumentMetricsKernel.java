@@ -0,0 +1,130 @@
+package com.task.metrics;
+
+import com.task.model.TickStore;
+
+import java.util.DoubleSummaryStatistics;
+
+/**
+ * Computes every metric of one instrument in a single pass over its rows.
+ *
+ * Trade gaps, tick-change gaps and spreads are fed into {@link QuantileSketch}es that are
+ * reused from one instrument to the next, so a kernel should be kept per thread rather than
+ * shared. Means go through {@link DoubleSummaryStatistics}, which uses the same compensated
+ * summation as {@code DoubleStream.average()}, so the results match the per-metric
+ * stream implementation bit for bit.
+ */
+public class InstrumentMetricsKernel {
+
+    private final QuantileSketch tradeGaps;
+    private final QuantileSketch tickGaps;
+    private final QuantileSketch spreads;
+    private final double[] gapPercentiles;
+
+    /**
+     * Creates a kernel with exact medians and no extra percentiles.
+     */
+    public InstrumentMetricsKernel() {
+        this(QuantileEngine.exact(), new double[0]);
+    }
+
+    /**
+     * @param quantileEngine Creates the sketches behind the medians and percentiles.
+     * @param gapPercentiles Extra percentiles of the trade and tick-change gaps, for example {90, 99}.
+     */
+    public InstrumentMetricsKernel(QuantileEngine quantileEngine, double[] gapPercentiles) {
+        this.tradeGaps = quantileEngine.newSketch();
+        this.tickGaps = quantileEngine.newSketch();
+        this.spreads = quantileEngine.newSketch();
+        this.gapPercentiles = gapPercentiles.clone();
+    }
+
+    /**
+     * Computes the metrics of the rows [from, to) of a store. The rows must all belong to one
+     * instrument and be sorted by date and time.
+     *
+     * @param stockCode The instrument code reported with the metrics.
+     * @param data The store holding the rows.
+     * @param from First row of the instrument.
+     * @param to One past the last row of the instrument.
+     * @return The metrics of the instrument.
+     */
+    public InstrumentMetrics compute(String stockCode, TickStore data, int from, int to) {
+        tradeGaps.clear();
+        tickGaps.clear();
+        spreads.clear();
+        DoubleSummaryStatistics tradeGapStats = new DoubleSummaryStatistics();
+        DoubleSummaryStatistics tickGapStats = new DoubleSummaryStatistics();
+        DoubleSummaryStatistics spreadStats = new DoubleSummaryStatistics();
+        long totalTrades = 0;
+        long roundNumberTrades = 0;
+        long roundNumberVolumes = 0;
+        // the longest tick change also counts non-positive gaps, the mean and median do not
+        boolean anyTickChange = false;
+        double longestTickChange = 0;
+        double previousTradeTime = 0;
+
+        for (int i = from; i < to; i++) {
+            double time = data.getTimeInSecondsPastMidnight(i);
+            double tradePrice = data.getTradePrice(i);
+
+            if (data.getUpdateType(i) == 1) {
+                if (totalTrades > 0) {
+                    double timeDifference = time - previousTradeTime;
+                    if (timeDifference > 0.0) {
+                        tradeGaps.add(timeDifference);
+                        tradeGapStats.accept(timeDifference);
+                    }
+                }
+                previousTradeTime = time;
+                totalTrades++;
+                if (tradePrice % 10 == 0) {
+                    roundNumberTrades++;
+                }
+                if (data.getTradeVolume(i) % 10 == 0) {
+                    roundNumberVolumes++;
+                }
+            }
+
+            if (i > from && Math.abs(tradePrice - data.getTradePrice(i - 1)) >= 0.1) {
+                double timeDifference = time - data.getTimeInSecondsPastMidnight(i - 1);
+                longestTickChange = anyTickChange ? Math.max(longestTickChange, timeDifference) : timeDifference;
+                anyTickChange = true;
+                if (timeDifference > 0.0) {
+                    tickGaps.add(timeDifference);
+                    tickGapStats.accept(timeDifference);
+                }
+            }
+
+            double bidPrice = data.getBidPrice(i);
+            double askPrice = data.getAskPrice(i);
+            if (bidPrice > 0 && askPrice > 0) {
+                double spread = askPrice - bidPrice;
+                spreads.add(spread);
+                spreadStats.accept(spread);
+            }
+        }
+
+        InstrumentMetrics metrics = new InstrumentMetrics(stockCode);
+        metrics.setMeanTimeBetweenTrades(tradeGapStats.getCount() == 0 ? 0 : tradeGapStats.getAverage());
+        metrics.setMedianTimeBetweenTrades(tradeGaps.quantile(0.5));
+        metrics.setLongestTimeBetweenTrades(tradeGapStats.getCount() == 0 ? 0 : tradeGapStats.getMax());
+        metrics.setMeanTimeBetweenTickChanges(tickGapStats.getCount() == 0 ? 0 : tickGapStats.getAverage());
+        metrics.setMedianTimeBetweenTickChanges(tickGaps.quantile(0.5));
+        metrics.setLongestTimeBetweenTickChanges(anyTickChange ? longestTickChange : 0);
+        metrics.setMeanBidAskSpread(spreadStats.getCount() == 0 ? 0 : spreadStats.getAverage());
+        metrics.setMedianBidAskSpread(spreads.quantile(0.5));
+        metrics.setRoundNumberTradePercentage(((double) roundNumberTrades / totalTrades) * 100);
+        metrics.setRoundNumberVolumePercentage(((double) roundNumberVolumes / totalTrades) * 100);
+        metrics.setTradeGapPercentiles(percentiles(tradeGaps));
+        metrics.setTickGapPercentiles(percentiles(tickGaps));
+        return metrics;
+    }
+
+    private double[] percentiles(QuantileSketch gaps) {
+        double[] values = new double[gapPercentiles.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = gaps.quantile(gapPercentiles[i] / 100.0);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,168 @@
+package com.task.metrics;
+
+import com.task.model.TickStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * In-memory index of {@link MetricBucket}s per instrument, date and fixed window of the day.
+ *
+ * The index is built in one pass over a sorted and grouped store and only holds windows that
+ * contain rows. Queries over a time range merge the fine buckets into coarser ones, an hour or
+ * a whole day for example, so no rows are read again. Gaps never span two dates: the first
+ * trade and first row of a date start afresh.
+ */
+public class IntradayIndex {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final int bucketMinutes;
+    private final QuantileEngine quantileEngine;
+    // code -> date -> window number -> bucket
+    private final Map<String, NavigableMap<String, NavigableMap<Integer, MetricBucket>>> buckets = new HashMap<>();
+    private int bucketCount;
+
+    private IntradayIndex(int bucketMinutes, QuantileEngine quantileEngine) {
+        this.bucketMinutes = bucketMinutes;
+        this.quantileEngine = quantileEngine;
+    }
+
+    /**
+     * Builds the index of a store.
+     *
+     * @param data The filtered store, sorted by date and time.
+     * @param groupOffsets Row ranges per code id, as returned by {@code DataService.groupByCode}.
+     * @param bucketMinutes Length of the finest window; must divide a day.
+     * @param quantileEngine Creates the sketches behind the medians. Only mergeable sketches keep
+     *                       rollups cheap, see {@link QuantileEngine#logHistogram(double)}.
+     * @return The index.
+     */
+    public static IntradayIndex build(TickStore data, int[] groupOffsets, int bucketMinutes, QuantileEngine quantileEngine) {
+        if (bucketMinutes <= 0 || MINUTES_PER_DAY % bucketMinutes != 0) {
+            throw new IllegalArgumentException("Bucket minutes must divide a day: " + bucketMinutes);
+        }
+        IntradayIndex index = new IntradayIndex(bucketMinutes, quantileEngine);
+        for (int codeId = 0; codeId < groupOffsets.length - 1; codeId++) {
+            if (groupOffsets[codeId + 1] > groupOffsets[codeId]) {
+                index.addInstrument(data, groupOffsets[codeId], groupOffsets[codeId + 1]);
+            }
+        }
+        return index;
+    }
+
+    private void addInstrument(TickStore data, int from, int to) {
+        String stockCode = data.getBloombergCode(from);
+        NavigableMap<String, NavigableMap<Integer, MetricBucket>> dates = buckets.computeIfAbsent(stockCode, code -> new TreeMap<>());
+        int bucketSeconds = bucketMinutes * 60;
+        NavigableMap<Integer, MetricBucket> windows = null;
+        MetricBucket bucket = null;
+        int dateId = -1;
+        int window = -1;
+        boolean anyTrade = false;
+        double previousTradeTime = 0;
+
+        for (int i = from; i < to; i++) {
+            double time = data.getTimeInSecondsPastMidnight(i);
+            boolean newDate = data.getDateId(i) != dateId;
+            if (newDate) {
+                dateId = data.getDateId(i);
+                windows = dates.computeIfAbsent(data.getDate(i), date -> new TreeMap<>());
+                bucket = null;
+                anyTrade = false;
+            }
+            int rowWindow = (int) (time / bucketSeconds);
+            if (bucket == null || rowWindow != window) {
+                window = rowWindow;
+                bucket = windows.get(window);
+                if (bucket == null) {
+                    bucket = new MetricBucket(stockCode, data.getDate(i), window * bucketSeconds, bucketSeconds, quantileEngine);
+                    windows.put(window, bucket);
+                    bucketCount++;
+                }
+            }
+
+            double tradePrice = data.getTradePrice(i);
+            if (data.getUpdateType(i) == 1) {
+                if (anyTrade) {
+                    bucket.addTradeGap(time - previousTradeTime);
+                }
+                anyTrade = true;
+                previousTradeTime = time;
+                bucket.addTrade(tradePrice, data.getTradeVolume(i));
+            }
+            if (!newDate && Math.abs(tradePrice - data.getTradePrice(i - 1)) >= 0.1) {
+                bucket.addTickChange(time - data.getTimeInSecondsPastMidnight(i - 1));
+            }
+            double bidPrice = data.getBidPrice(i);
+            double askPrice = data.getAskPrice(i);
+            if (bidPrice > 0 && askPrice > 0) {
+                bucket.addSpread(askPrice - bidPrice);
+            }
+        }
+    }
+
+    /**
+     * Returns the buckets of one instrument over a time range of the day, merged to a coarser window.
+     *
+     * @param stockCode The instrument.
+     * @param date The date, or null for every date.
+     * @param fromSecond Start of the range in seconds past midnight, inclusive.
+     * @param toSecond End of the range in seconds past midnight, exclusive.
+     * @param rollupMinutes Length of the returned windows, a multiple of the bucket length, for
+     *                      example 60 for hours or {@link #MINUTES_PER_DAY} for whole days.
+     * @return The non-empty windows overlapping the range, ordered by date and time.
+     */
+    public List<MetricBucket> query(String stockCode, String date, int fromSecond, int toSecond, int rollupMinutes) {
+        if (rollupMinutes <= 0 || rollupMinutes % bucketMinutes != 0) {
+            throw new IllegalArgumentException("Rollup minutes must be a multiple of " + bucketMinutes + ": " + rollupMinutes);
+        }
+        NavigableMap<String, NavigableMap<Integer, MetricBucket>> dates = buckets.get(stockCode);
+        if (dates == null || fromSecond >= toSecond) {
+            return Collections.emptyList();
+        }
+        if (date != null) {
+            dates = dates.subMap(date, true, date, true);
+        }
+        int bucketSeconds = bucketMinutes * 60;
+        int rollupSeconds = rollupMinutes * 60;
+        // the fine windows overlapping [fromSecond, toSecond)
+        int firstWindow = Math.floorDiv(fromSecond, bucketSeconds);
+        int lastWindow = Math.floorDiv(toSecond - 1, bucketSeconds);
+
+        List<MetricBucket> result = new ArrayList<>();
+        for (Map.Entry<String, NavigableMap<Integer, MetricBucket>> day : dates.entrySet()) {
+            MetricBucket rollup = null;
+            for (MetricBucket fine : day.getValue().subMap(firstWindow, true, lastWindow, true).values()) {
+                int rollupStart = fine.getStartSecond() / rollupSeconds * rollupSeconds;
+                if (rollup == null || rollup.getStartSecond() != rollupStart) {
+                    rollup = new MetricBucket(stockCode, day.getKey(), rollupStart, rollupSeconds, quantileEngine);
+                    result.add(rollup);
+                }
+                rollup.merge(fine);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The indexed instruments, ordered by code.
+     */
+    public List<String> getStockCodes() {
+        List<String> codes = new ArrayList<>(buckets.keySet());
+        Collections.sort(codes);
+        return codes;
+    }
+
+    public int getBucketMinutes() { return bucketMinutes; }
+
+    /**
+     * @return The number of non-empty fine buckets.
+     */
+    public int getBucketCount() { return bucketCount; }
+}
@@ -0,0 +1,201 @@
+package com.task.metrics;
+
+/**
+ * Bounded-memory quantile sketch that counts values in logarithmically sized buckets.
+ *
+ * A positive value {@code v} goes to bucket {@code ceil(log(v) / log(gamma))} with
+ * {@code gamma = (1 + a) / (1 - a)}, and every bucket is reported as the point that is at
+ * most a relative distance {@code a} from each value in it. A quantile is therefore within a
+ * relative error {@code a} of the exact interpolated quantile, whatever the data
+ * distribution. Negative values are kept in a mirrored set of buckets and zeros are counted
+ * separately.
+ *
+ * Each side keeps at most {@code maxBuckets} buckets. If values span a wider range, the
+ * lowest buckets are folded together, and only the smallest magnitudes lose the error bound.
+ * At 1% accuracy, 2048 buckets cover a ratio of about 10^17 between the smallest and largest
+ * value, so folding does not happen with tick data.
+ *
+ * Two sketches with the same accuracy merge by adding bucket counts. The result is
+ * identical to a sketch fed with both inputs, so sketches can be built per thread, chunk or
+ * file and combined afterwards.
+ */
+public class LogHistogramSketch implements QuantileSketch {
+
+    public static final int DEFAULT_MAX_BUCKETS = 2048;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final Buckets positive;
+    private final Buckets negative;
+    private long zeroCount;
+
+    public LogHistogramSketch(double relativeAccuracy) {
+        this(relativeAccuracy, DEFAULT_MAX_BUCKETS);
+    }
+
+    public LogHistogramSketch(double relativeAccuracy, int maxBuckets) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.positive = new Buckets(maxBuckets);
+        this.negative = new Buckets(maxBuckets);
+    }
+
+    @Override
+    public void add(double value) {
+        if (value > 0) {
+            positive.add(index(value), 1);
+        } else if (value < 0) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+    }
+
+    @Override
+    public long count() {
+        return negative.total + zeroCount + positive.total;
+    }
+
+    @Override
+    public double quantile(double q) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        double rank = q * (count - 1);
+        long lower = (long) Math.floor(rank);
+        double low = valueAtRank(lower);
+        if (lower == rank) {
+            return low;
+        }
+        double high = valueAtRank(lower + 1);
+        double fraction = rank - lower;
+        return fraction == 0.5 ? (low + high) / 2.0 : low + fraction * (high - low);
+    }
+
+    @Override
+    public void merge(QuantileSketch other) {
+        LogHistogramSketch sketch = (LogHistogramSketch) other;
+        if (sketch.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with accuracy " + relativeAccuracy
+                    + " and " + sketch.relativeAccuracy);
+        }
+        positive.addAll(sketch.positive);
+        negative.addAll(sketch.negative);
+        zeroCount += sketch.zeroCount;
+    }
+
+    @Override
+    public void clear() {
+        positive.clear();
+        negative.clear();
+        zeroCount = 0;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * @return Approximate heap used by the bucket counts.
+     */
+    public long estimatedBytes() {
+        return (long) (positive.counts.length + negative.counts.length) * Long.BYTES;
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private double bucketValue(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private double valueAtRank(long rank) {
+        // negatives first, largest magnitude first, then zeros, then positives ascending
+        if (rank < negative.total) {
+            long seen = 0;
+            for (int i = negative.counts.length - 1; i >= 0; i--) {
+                seen += negative.counts[i];
+                if (seen > rank) {
+                    return -bucketValue(negative.offset + i);
+                }
+            }
+        }
+        rank -= negative.total;
+        if (rank < zeroCount) {
+            return 0;
+        }
+        rank -= zeroCount;
+        long seen = 0;
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return bucketValue(positive.offset + i);
+            }
+        }
+        return bucketValue(positive.offset + positive.counts.length - 1);
+    }
+
+    /**
+     * Dense bucket counts for the index range [offset, offset + counts.length).
+     */
+    private static class Buckets {
+        private final int maxBuckets;
+        private long[] counts = new long[0];
+        private int offset;
+        private long total;
+
+        Buckets(int maxBuckets) {
+            this.maxBuckets = maxBuckets;
+        }
+
+        void add(int index, long count) {
+            if (counts.length == 0) {
+                counts = new long[Math.min(16, maxBuckets)];
+                offset = index;
+            }
+            if (index < offset || index >= offset + counts.length) {
+                index = grow(index);
+            }
+            counts[index - offset] += count;
+            total += count;
+        }
+
+        void addAll(Buckets other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        void clear() {
+            counts = new long[0];
+            total = 0;
+        }
+
+        private int grow(int index) {
+            int oldLow = offset;
+            int low = Math.min(oldLow, index);
+            int high = Math.max(oldLow + counts.length - 1, index);
+            int length = Math.min(maxBuckets, Math.max(counts.length * 2, high - low + 1));
+            // keep the top of the range; when growing downwards put the spare room below
+            int newOffset = high - low + 1 > length || index < oldLow ? high - length + 1 : low;
+            long[] newCounts = new long[length];
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    newCounts[Math.max(oldLow + i, newOffset) - newOffset] += counts[i];
+                }
+            }
+            counts = newCounts;
+            offset = newOffset;
+            return Math.max(index, newOffset);
+        }
+    }
+}
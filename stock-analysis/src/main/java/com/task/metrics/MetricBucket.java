@@ -0,0 +1,272 @@
+package com.task.metrics;
+
+import com.task.model.TickStore;
+
+import java.time.LocalTime;
+
+/**
+ * Mergeable metric state of one instrument over one time window of one date, or over all its
+ * rows, see {@link #ofInstrument}.
+ *
+ * A bucket keeps only counts, sums, maxima and {@link QuantileSketch}es, so the buckets of
+ * adjacent windows merge into the bucket of the combined window without going back to the
+ * rows. Gaps belong to the bucket of the row that ends them. The getters make up the JSON
+ * returned by the intraday endpoint.
+ */
+public class MetricBucket {
+
+    private final String stockCode;
+    private final String date;
+    private final int startSecond;
+    private final int lengthSeconds;
+    private final QuantileEngine quantileEngine;
+
+    private long trades;
+    private long roundNumberTrades;
+    private long roundNumberVolumes;
+
+    private long tradeGapCount;
+    private double tradeGapSum;
+    private double tradeGapMax;
+    private QuantileSketch tradeGaps;
+
+    // the longest tick change also counts non-positive gaps, the mean and median do not
+    private long tickChanges;
+    private double longestTickChange;
+    private long tickGapCount;
+    private double tickGapSum;
+    private QuantileSketch tickGaps;
+
+    private long spreadCount;
+    private double spreadSum;
+    private QuantileSketch spreads;
+
+    /**
+     * @param stockCode The instrument.
+     * @param date The date, as it appears in the input.
+     * @param startSecond Start of the window in seconds past midnight.
+     * @param lengthSeconds Length of the window.
+     * @param quantileEngine Creates the sketches behind the medians; they are only created once a value arrives.
+     */
+    public MetricBucket(String stockCode, String date, int startSecond, int lengthSeconds, QuantileEngine quantileEngine) {
+        this.stockCode = stockCode;
+        this.date = date;
+        this.startSecond = startSecond;
+        this.lengthSeconds = lengthSeconds;
+        this.quantileEngine = quantileEngine;
+    }
+
+    /**
+     * Builds the bucket of every row of one instrument. Gaps are measured as
+     * {@link InstrumentMetricsKernel} measures them, from one row to the next whatever their
+     * dates, so the bucket reports the kernel's metrics up to the accuracy of its sketches.
+     *
+     * @param stockCode The instrument.
+     * @param data The store holding the rows.
+     * @param from First row of the instrument.
+     * @param to One past the last row of the instrument; the rows are sorted by date and time.
+     * @param quantileEngine Creates the sketches behind the medians.
+     * @return A bucket without a date, spanning the whole day.
+     */
+    public static MetricBucket ofInstrument(String stockCode, TickStore data, int from, int to, QuantileEngine quantileEngine) {
+        MetricBucket bucket = new MetricBucket(stockCode, null, 0, IntradayIndex.MINUTES_PER_DAY * 60, quantileEngine);
+        boolean anyTrade = false;
+        double previousTradeTime = 0;
+        for (int i = from; i < to; i++) {
+            double time = data.getTimeInSecondsPastMidnight(i);
+            double tradePrice = data.getTradePrice(i);
+            if (data.getUpdateType(i) == 1) {
+                if (anyTrade) {
+                    bucket.addTradeGap(time - previousTradeTime);
+                }
+                anyTrade = true;
+                previousTradeTime = time;
+                bucket.addTrade(tradePrice, data.getTradeVolume(i));
+            }
+            if (i > from && Math.abs(tradePrice - data.getTradePrice(i - 1)) >= 0.1) {
+                bucket.addTickChange(time - data.getTimeInSecondsPastMidnight(i - 1));
+            }
+            double bidPrice = data.getBidPrice(i);
+            double askPrice = data.getAskPrice(i);
+            if (bidPrice > 0 && askPrice > 0) {
+                bucket.addSpread(askPrice - bidPrice);
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Counts a trade.
+     */
+    public void addTrade(double tradePrice, int tradeVolume) {
+        trades++;
+        if (tradePrice % 10 == 0) {
+            roundNumberTrades++;
+        }
+        if (tradeVolume % 10 == 0) {
+            roundNumberVolumes++;
+        }
+    }
+
+    /**
+     * Adds the time between a trade and the previous trade; only positive gaps count.
+     */
+    public void addTradeGap(double gap) {
+        if (gap > 0.0) {
+            if (tradeGaps == null) {
+                tradeGaps = quantileEngine.newSketch();
+            }
+            tradeGaps.add(gap);
+            tradeGapMax = tradeGapCount == 0 ? gap : Math.max(tradeGapMax, gap);
+            tradeGapCount++;
+            tradeGapSum += gap;
+        }
+    }
+
+    /**
+     * Adds the time since the previous row of a row whose trade price moved by a tick.
+     */
+    public void addTickChange(double gap) {
+        longestTickChange = tickChanges == 0 ? gap : Math.max(longestTickChange, gap);
+        tickChanges++;
+        if (gap > 0.0) {
+            if (tickGaps == null) {
+                tickGaps = quantileEngine.newSketch();
+            }
+            tickGaps.add(gap);
+            tickGapCount++;
+            tickGapSum += gap;
+        }
+    }
+
+    /**
+     * Adds the bid-ask spread of a row with both prices set.
+     */
+    public void addSpread(double spread) {
+        if (spreads == null) {
+            spreads = quantileEngine.newSketch();
+        }
+        spreads.add(spread);
+        spreadCount++;
+        spreadSum += spread;
+    }
+
+    /**
+     * Adds the state of another bucket to this one. Sketches must come from the same kind of engine.
+     *
+     * @param other The bucket to fold in, left unchanged.
+     */
+    public void merge(MetricBucket other) {
+        trades += other.trades;
+        roundNumberTrades += other.roundNumberTrades;
+        roundNumberVolumes += other.roundNumberVolumes;
+
+        if (other.tradeGapCount > 0) {
+            tradeGapMax = tradeGapCount == 0 ? other.tradeGapMax : Math.max(tradeGapMax, other.tradeGapMax);
+            tradeGapCount += other.tradeGapCount;
+            tradeGapSum += other.tradeGapSum;
+            tradeGaps = mergeSketch(tradeGaps, other.tradeGaps);
+        }
+        if (other.tickChanges > 0) {
+            longestTickChange = tickChanges == 0 ? other.longestTickChange : Math.max(longestTickChange, other.longestTickChange);
+            tickChanges += other.tickChanges;
+            tickGapCount += other.tickGapCount;
+            tickGapSum += other.tickGapSum;
+            tickGaps = mergeSketch(tickGaps, other.tickGaps);
+        }
+        if (other.spreadCount > 0) {
+            spreadCount += other.spreadCount;
+            spreadSum += other.spreadSum;
+            spreads = mergeSketch(spreads, other.spreads);
+        }
+    }
+
+    private QuantileSketch mergeSketch(QuantileSketch into, QuantileSketch from) {
+        if (from == null) {
+            return into;
+        }
+        if (into == null) {
+            into = quantileEngine.newSketch();
+        }
+        into.merge(from);
+        return into;
+    }
+
+    public String getStockCode() { return stockCode; }
+    public String getDate() { return date; }
+    public int getStartSecond() { return startSecond; }
+    public int getLengthSeconds() { return lengthSeconds; }
+
+    /**
+     * @return Start of the window as HH:mm:ss.
+     */
+    public String getStart() {
+        return LocalTime.ofSecondOfDay(Math.min(startSecond, 86399)).toString();
+    }
+
+    public long getTrades() { return trades; }
+    public long getTickChanges() { return tickChanges; }
+    public long getSpreadCount() { return spreadCount; }
+
+    public double getMeanTimeBetweenTrades() { return tradeGapCount == 0 ? 0 : tradeGapSum / tradeGapCount; }
+    public double getMedianTimeBetweenTrades() { return tradeGaps == null ? 0 : tradeGaps.quantile(0.5); }
+    public double getLongestTimeBetweenTrades() { return tradeGapMax; }
+
+    public double getMeanTimeBetweenTickChanges() { return tickGapCount == 0 ? 0 : tickGapSum / tickGapCount; }
+    public double getMedianTimeBetweenTickChanges() { return tickGaps == null ? 0 : tickGaps.quantile(0.5); }
+    public double getLongestTimeBetweenTickChanges() { return longestTickChange; }
+
+    public double getMeanBidAskSpread() { return spreadCount == 0 ? 0 : spreadSum / spreadCount; }
+    public double getMedianBidAskSpread() { return spreads == null ? 0 : spreads.quantile(0.5); }
+
+    /**
+     * @param q The fraction, between 0 and 1.
+     * @return The quantile of the positive trade gaps, 0 without any.
+     */
+    public double tradeGapQuantile(double q) { return tradeGaps == null ? 0 : tradeGaps.quantile(q); }
+
+    /**
+     * @param q The fraction, between 0 and 1.
+     * @return The quantile of the positive tick-change gaps, 0 without any.
+     */
+    public double tickGapQuantile(double q) { return tickGaps == null ? 0 : tickGaps.quantile(q); }
+
+    /**
+     * @return Share of trades at a price divisible by 10, in percent; 0 without trades.
+     */
+    public double getRoundNumberTradePercentage() { return trades == 0 ? 0 : ((double) roundNumberTrades / trades) * 100; }
+
+    /**
+     * @return Share of trades with a volume divisible by 10, in percent; 0 without trades.
+     */
+    public double getRoundNumberVolumePercentage() { return trades == 0 ? 0 : ((double) roundNumberVolumes / trades) * 100; }
+
+    /**
+     * Reports the bucket in the form of whole-file metrics.
+     *
+     * @param gapPercentiles Extra percentiles of the trade and tick-change gaps, for example {90, 99}.
+     * @return The metrics of the bucket's instrument.
+     */
+    public InstrumentMetrics toInstrumentMetrics(double[] gapPercentiles) {
+        InstrumentMetrics metrics = new InstrumentMetrics(stockCode);
+        metrics.setMeanTimeBetweenTrades(getMeanTimeBetweenTrades());
+        metrics.setMedianTimeBetweenTrades(getMedianTimeBetweenTrades());
+        metrics.setLongestTimeBetweenTrades(getLongestTimeBetweenTrades());
+        metrics.setMeanTimeBetweenTickChanges(getMeanTimeBetweenTickChanges());
+        metrics.setMedianTimeBetweenTickChanges(getMedianTimeBetweenTickChanges());
+        metrics.setLongestTimeBetweenTickChanges(getLongestTimeBetweenTickChanges());
+        metrics.setMeanBidAskSpread(getMeanBidAskSpread());
+        metrics.setMedianBidAskSpread(getMedianBidAskSpread());
+        metrics.setRoundNumberTradePercentage(getRoundNumberTradePercentage());
+        metrics.setRoundNumberVolumePercentage(getRoundNumberVolumePercentage());
+        double[] tradeGapPercentiles = new double[gapPercentiles.length];
+        double[] tickGapPercentiles = new double[gapPercentiles.length];
+        for (int i = 0; i < gapPercentiles.length; i++) {
+            tradeGapPercentiles[i] = tradeGapQuantile(gapPercentiles[i] / 100.0);
+            tickGapPercentiles[i] = tickGapQuantile(gapPercentiles[i] / 100.0);
+        }
+        metrics.setTradeGapPercentiles(tradeGapPercentiles);
+        metrics.setTickGapPercentiles(tickGapPercentiles);
+        return metrics;
+    }
+}
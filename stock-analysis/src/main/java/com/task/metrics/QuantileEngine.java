@@ -0,0 +1,42 @@
+package com.task.metrics;
+
+/**
+ * Creates the {@link QuantileSketch} used for median and percentile metrics.
+ */
+@FunctionalInterface
+public interface QuantileEngine {
+
+    QuantileSketch newSketch();
+
+    /**
+     * @return An engine keeping every value in a primitive buffer and selecting exact order statistics.
+     */
+    static QuantileEngine exact() {
+        return ExactQuantiles::new;
+    }
+
+    /**
+     * @param relativeAccuracy Bound on the relative error of every quantile, for example 0.01.
+     * @return An engine using bounded-memory, mergeable log histograms.
+     */
+    static QuantileEngine logHistogram(double relativeAccuracy) {
+        return () -> new LogHistogramSketch(relativeAccuracy);
+    }
+
+    /**
+     * Picks an engine from its configuration name.
+     *
+     * @param mode "exact" or "approximate".
+     * @param relativeAccuracy Error bound used by the approximate mode.
+     * @return The engine.
+     */
+    static QuantileEngine forMode(String mode, double relativeAccuracy) {
+        if ("exact".equalsIgnoreCase(mode)) {
+            return exact();
+        }
+        if ("approximate".equalsIgnoreCase(mode)) {
+            return logHistogram(relativeAccuracy);
+        }
+        throw new IllegalArgumentException("Unknown quantile mode: " + mode);
+    }
+}
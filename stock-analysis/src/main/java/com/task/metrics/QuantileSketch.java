@@ -0,0 +1,40 @@
+package com.task.metrics;
+
+/**
+ * Accumulates values and answers quantile queries over them.
+ *
+ * Quantiles use linear interpolation between the closest ranks: for {@code n} values and
+ * fraction {@code q} the rank is {@code h = q * (n - 1)}, and the result lies between the
+ * values at ranks {@code floor(h)} and {@code ceil(h)}. With {@code q = 0.5} that is the middle
+ * value, or the average of the two middle values for an even count.
+ */
+public interface QuantileSketch {
+
+    /**
+     * @param value The value to add, never NaN.
+     */
+    void add(double value);
+
+    /**
+     * @return The number of values added.
+     */
+    long count();
+
+    /**
+     * @param q The fraction, between 0 and 1.
+     * @return The quantile, or 0 when no value has been added.
+     */
+    double quantile(double q);
+
+    /**
+     * Adds every value of another sketch of the same kind to this one.
+     *
+     * @param other The sketch to fold in, left unchanged.
+     */
+    void merge(QuantileSketch other);
+
+    /**
+     * Removes every value so the sketch can be reused.
+     */
+    void clear();
+}
@@ -0,0 +1,67 @@
+package com.task.metrics;
+
+/**
+ * Metric state of one instrument that is updated row by row, for a feed that keeps growing.
+ *
+ * Besides the running sums, maxima and sketches of a {@link MetricBucket}, it remembers the
+ * last trade time and the last row's trade price and time, so the next row's trade gap and
+ * tick change are found without looking back at earlier rows. Fed with an instrument's rows in
+ * date and time order, it reports what {@link InstrumentMetricsKernel} reports for those rows,
+ * up to the accuracy of the sketches.
+ */
+public class RunningInstrumentMetrics {
+
+    private final MetricBucket totals;
+    private long rows;
+    private boolean anyTrade;
+    private double lastTradeTime;
+    private double lastTradePrice;
+    private double previousRowTime;
+    private double previousRowPrice;
+
+    /**
+     * @param stockCode The instrument.
+     * @param quantileEngine Creates the sketches behind the medians and percentiles.
+     */
+    public RunningInstrumentMetrics(String stockCode, QuantileEngine quantileEngine) {
+        this.totals = new MetricBucket(stockCode, null, 0, IntradayIndex.MINUTES_PER_DAY * 60, quantileEngine);
+    }
+
+    /**
+     * Adds the next row of the instrument.
+     */
+    public void add(double time, int updateType, double tradePrice, int tradeVolume, double bidPrice, double askPrice) {
+        if (updateType == 1) {
+            if (anyTrade) {
+                totals.addTradeGap(time - lastTradeTime);
+            }
+            anyTrade = true;
+            lastTradeTime = time;
+            lastTradePrice = tradePrice;
+            totals.addTrade(tradePrice, tradeVolume);
+        }
+        if (rows > 0 && Math.abs(tradePrice - previousRowPrice) >= 0.1) {
+            totals.addTickChange(time - previousRowTime);
+        }
+        if (bidPrice > 0 && askPrice > 0) {
+            totals.addSpread(askPrice - bidPrice);
+        }
+        previousRowTime = time;
+        previousRowPrice = tradePrice;
+        rows++;
+    }
+
+    public String getStockCode() { return totals.getStockCode(); }
+    public long getRows() { return rows; }
+    public long getTrades() { return totals.getTrades(); }
+    public double getLastTradeTime() { return lastTradeTime; }
+    public double getLastTradePrice() { return lastTradePrice; }
+
+    /**
+     * @param gapPercentiles Extra percentiles of the trade and tick-change gaps, for example {90, 99}.
+     * @return The metrics of the rows added so far.
+     */
+    public InstrumentMetrics toInstrumentMetrics(double[] gapPercentiles) {
+        return totals.toInstrumentMetrics(gapPercentiles);
+    }
+}
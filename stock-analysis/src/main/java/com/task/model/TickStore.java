@@ -0,0 +1,279 @@
+package com.task.model;
+
+import com.task.parser.ByteStringDictionary;
+import com.task.parser.TickRow;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Column-oriented store of tick rows: one primitive array per {@link StockData} field, with
+ * instrument codes, dates and condition codes dictionary-encoded as int ids.
+ *
+ * A row costs 60 bytes here against roughly 80 bytes of object plus list slot for a
+ * StockData, before counting its three Strings.
+ */
+public class TickStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ByteStringDictionary codes;
+    private final ByteStringDictionary dates;
+    private final ByteStringDictionary conditions;
+
+    private int size;
+    private int[] codeIds;
+    private double[] bidPrices;
+    private double[] askPrices;
+    private double[] tradePrices;
+    private int[] bidVolumes;
+    private int[] askVolumes;
+    private int[] tradeVolumes;
+    private int[] updateTypes;
+    private int[] dateIds;
+    private double[] times;
+    private int[] conditionIds;
+
+    public TickStore(ByteStringDictionary codes, ByteStringDictionary dates, ByteStringDictionary conditions) {
+        this(codes, dates, conditions, INITIAL_CAPACITY);
+    }
+
+    public TickStore(ByteStringDictionary codes, ByteStringDictionary dates, ByteStringDictionary conditions, int capacity) {
+        this.codes = codes;
+        this.dates = dates;
+        this.conditions = conditions;
+        allocate(Math.max(capacity, 1));
+    }
+
+    /**
+     * Wraps existing columns without copying them. Every column must hold at least {@code size} values.
+     *
+     * @return A store backed by the given arrays.
+     */
+    public static TickStore wrap(ByteStringDictionary codes, ByteStringDictionary dates, ByteStringDictionary conditions,
+                                 int size, int[] codeIds, double[] bidPrices, double[] askPrices, double[] tradePrices,
+                                 int[] bidVolumes, int[] askVolumes, int[] tradeVolumes, int[] updateTypes,
+                                 int[] dateIds, double[] times, int[] conditionIds) {
+        TickStore store = new TickStore(codes, dates, conditions, 1);
+        store.size = size;
+        store.codeIds = codeIds;
+        store.bidPrices = bidPrices;
+        store.askPrices = askPrices;
+        store.tradePrices = tradePrices;
+        store.bidVolumes = bidVolumes;
+        store.askVolumes = askVolumes;
+        store.tradeVolumes = tradeVolumes;
+        store.updateTypes = updateTypes;
+        store.dateIds = dateIds;
+        store.times = times;
+        store.conditionIds = conditionIds;
+        return store;
+    }
+
+    /**
+     * Appends a parsed row. The row's dictionary ids must come from this store's dictionaries.
+     *
+     * @param row The row to copy.
+     */
+    public void add(TickRow row) {
+        if (size == codeIds.length) {
+            allocate(Math.max(INITIAL_CAPACITY, size * 2));
+        }
+        int i = size++;
+        codeIds[i] = row.getCodeId();
+        bidPrices[i] = row.getBidPrice();
+        askPrices[i] = row.getAskPrice();
+        tradePrices[i] = row.getTradePrice();
+        bidVolumes[i] = row.getBidVolume();
+        askVolumes[i] = row.getAskVolume();
+        tradeVolumes[i] = row.getTradeVolume();
+        updateTypes[i] = row.getUpdateType();
+        dateIds[i] = row.getDateId();
+        times[i] = row.getTimeInSecondsPastMidnight();
+        conditionIds[i] = row.getConditionId();
+    }
+
+    /**
+     * Appends every row of another store, translating its dictionary ids into this store's ids.
+     *
+     * @param other The store to copy from.
+     * @param codeIds Maps the other store's code ids to this store's.
+     * @param dateIds Maps the other store's date ids to this store's.
+     * @param conditionIds Maps the other store's condition ids to this store's.
+     */
+    public void appendAll(TickStore other, int[] codeIds, int[] dateIds, int[] conditionIds) {
+        int count = other.size;
+        if (size + count > this.codeIds.length) {
+            allocate(Math.max(size + count, this.codeIds.length * 2));
+        }
+        System.arraycopy(other.bidPrices, 0, bidPrices, size, count);
+        System.arraycopy(other.askPrices, 0, askPrices, size, count);
+        System.arraycopy(other.tradePrices, 0, tradePrices, size, count);
+        System.arraycopy(other.bidVolumes, 0, bidVolumes, size, count);
+        System.arraycopy(other.askVolumes, 0, askVolumes, size, count);
+        System.arraycopy(other.tradeVolumes, 0, tradeVolumes, size, count);
+        System.arraycopy(other.updateTypes, 0, updateTypes, size, count);
+        System.arraycopy(other.times, 0, times, size, count);
+        for (int i = 0; i < count; i++) {
+            this.codeIds[size + i] = codeIds[other.codeIds[i]];
+            this.dateIds[size + i] = dateIds[other.dateIds[i]];
+            this.conditionIds[size + i] = conditionIds[other.conditionIds[i]];
+        }
+        size += count;
+    }
+
+    /**
+     * Drops every row the predicate rejects, compacting the columns in place and keeping the
+     * order of the surviving rows.
+     *
+     * @param keep Tested with each row index.
+     */
+    public void retainRows(IntPredicate keep) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep.test(i)) {
+                if (kept != i) {
+                    copyRow(i, kept);
+                }
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * Reorders the rows so that row {@code i} becomes the old row {@code order[i]}.
+     *
+     * @param order A permutation of [0, size).
+     */
+    public void permute(int[] order) {
+        codeIds = permute(codeIds, order);
+        bidPrices = permute(bidPrices, order);
+        askPrices = permute(askPrices, order);
+        tradePrices = permute(tradePrices, order);
+        bidVolumes = permute(bidVolumes, order);
+        askVolumes = permute(askVolumes, order);
+        tradeVolumes = permute(tradeVolumes, order);
+        updateTypes = permute(updateTypes, order);
+        dateIds = permute(dateIds, order);
+        times = permute(times, order);
+        conditionIds = permute(conditionIds, order);
+    }
+
+    /**
+     * Releases the spare capacity left over from loading.
+     */
+    public void trimToSize() {
+        if (codeIds.length != size) {
+            allocate(size);
+        }
+    }
+
+    /**
+     * @return Approximate heap used by the columns, excluding the dictionaries.
+     */
+    public long estimatedBytes() {
+        return (long) codeIds.length * (4 * Double.BYTES + 7 * Integer.BYTES);
+    }
+
+    public int size() { return size; }
+
+    public ByteStringDictionary getCodes() { return codes; }
+    public ByteStringDictionary getDates() { return dates; }
+    public ByteStringDictionary getConditions() { return conditions; }
+
+    public int getCodeId(int row) { return codeIds[row]; }
+    public String getBloombergCode(int row) { return codes.get(codeIds[row]); }
+    public double getBidPrice(int row) { return bidPrices[row]; }
+    public double getAskPrice(int row) { return askPrices[row]; }
+    public double getTradePrice(int row) { return tradePrices[row]; }
+    public int getBidVolume(int row) { return bidVolumes[row]; }
+    public int getAskVolume(int row) { return askVolumes[row]; }
+    public int getTradeVolume(int row) { return tradeVolumes[row]; }
+    public int getUpdateType(int row) { return updateTypes[row]; }
+    public int getDateId(int row) { return dateIds[row]; }
+    public String getDate(int row) { return dates.get(dateIds[row]); }
+    public double getTimeInSecondsPastMidnight(int row) { return times[row]; }
+    public int getConditionId(int row) { return conditionIds[row]; }
+    public String getConditionCodes(int row) { return conditions.get(conditionIds[row]); }
+
+    /**
+     * Materializes one row as a StockData object.
+     *
+     * @param row The row index.
+     * @return A new StockData holding the row's values.
+     */
+    public StockData toStockData(int row) {
+        StockData data = new StockData();
+        data.setBloombergCode(getBloombergCode(row));
+        data.setBidPrice(bidPrices[row]);
+        data.setAskPrice(askPrices[row]);
+        data.setTradePrice(tradePrices[row]);
+        data.setBidVolume(bidVolumes[row]);
+        data.setAskVolume(askVolumes[row]);
+        data.setTradeVolume(tradeVolumes[row]);
+        data.setUpdateType(updateTypes[row]);
+        data.setDate(getDate(row));
+        data.setTimeInSecondsPastMidnight(times[row]);
+        data.setConditionCodes(getConditionCodes(row));
+        return data;
+    }
+
+    private void copyRow(int from, int to) {
+        codeIds[to] = codeIds[from];
+        bidPrices[to] = bidPrices[from];
+        askPrices[to] = askPrices[from];
+        tradePrices[to] = tradePrices[from];
+        bidVolumes[to] = bidVolumes[from];
+        askVolumes[to] = askVolumes[from];
+        tradeVolumes[to] = tradeVolumes[from];
+        updateTypes[to] = updateTypes[from];
+        dateIds[to] = dateIds[from];
+        times[to] = times[from];
+        conditionIds[to] = conditionIds[from];
+    }
+
+    private void allocate(int capacity) {
+        if (codeIds == null) {
+            codeIds = new int[capacity];
+            bidPrices = new double[capacity];
+            askPrices = new double[capacity];
+            tradePrices = new double[capacity];
+            bidVolumes = new int[capacity];
+            askVolumes = new int[capacity];
+            tradeVolumes = new int[capacity];
+            updateTypes = new int[capacity];
+            dateIds = new int[capacity];
+            times = new double[capacity];
+            conditionIds = new int[capacity];
+            return;
+        }
+        codeIds = Arrays.copyOf(codeIds, capacity);
+        bidPrices = Arrays.copyOf(bidPrices, capacity);
+        askPrices = Arrays.copyOf(askPrices, capacity);
+        tradePrices = Arrays.copyOf(tradePrices, capacity);
+        bidVolumes = Arrays.copyOf(bidVolumes, capacity);
+        askVolumes = Arrays.copyOf(askVolumes, capacity);
+        tradeVolumes = Arrays.copyOf(tradeVolumes, capacity);
+        updateTypes = Arrays.copyOf(updateTypes, capacity);
+        dateIds = Arrays.copyOf(dateIds, capacity);
+        times = Arrays.copyOf(times, capacity);
+        conditionIds = Arrays.copyOf(conditionIds, capacity);
+    }
+
+    private int[] permute(int[] column, int[] order) {
+        int[] result = new int[column.length];
+        for (int i = 0; i < size; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    private double[] permute(double[] column, int[] order) {
+        double[] result = new double[column.length];
+        for (int i = 0; i < size; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,150 @@
+package com.task.parser;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes BGZF, the blocked gzip of bgzip and samtools: a series of gzip members of at most
+ * 64 KB each, every one recording its own compressed size, followed by an empty end-of-file
+ * member. Any gzip reader reads the result as one stream, and {@link CompressedTickReader}
+ * decompresses its blocks in parallel.
+ */
+public class BgzfOutputStream extends FilterOutputStream {
+
+    /** Uncompressed bytes per block, as bgzip writes them, so a block always fits in 64 KB. */
+    static final int BLOCK_INPUT_BYTES = 0xff00;
+
+    static final int HEADER_BYTES = 18;
+    static final int TRAILER_BYTES = 8;
+    static final int MAX_BLOCK_BYTES = 1 << 16;
+
+    private static final byte[] EOF_BLOCK = {
+            0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0,
+            3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final byte[] input = new byte[BLOCK_INPUT_BYTES];
+    private final byte[] block = new byte[MAX_BLOCK_BYTES];
+    private final Deflater deflater;
+    private final int level;
+    private final CRC32 crc = new CRC32();
+    private int length;
+    private boolean closed;
+
+    public BgzfOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param out Receives the blocks.
+     * @param level Deflate level, 1 (fastest) to 9 (smallest).
+     */
+    public BgzfOutputStream(OutputStream out, int level) {
+        super(out);
+        this.deflater = new Deflater(level, true);
+        this.level = level;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == input.length) {
+            writeBlock();
+        }
+        input[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (length == input.length) {
+                writeBlock();
+            }
+            int n = Math.min(len, input.length - length);
+            System.arraycopy(b, off, input, length, n);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Ends the current block early; a flush mid-block costs a little compression.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (length > 0) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (length > 0) {
+                writeBlock();
+            }
+            out.write(EOF_BLOCK);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        int limit = MAX_BLOCK_BYTES - HEADER_BYTES - TRAILER_BYTES;
+        deflater.reset();
+        deflater.setInput(input, 0, length);
+        deflater.finish();
+        int compressed = deflater.deflate(block, HEADER_BYTES, limit);
+        if (!deflater.finished()) {
+            // incompressible input: stored blocks add a few bytes and always fit
+            deflater.reset();
+            deflater.setLevel(Deflater.NO_COMPRESSION);
+            deflater.setInput(input, 0, length);
+            deflater.finish();
+            compressed = deflater.deflate(block, HEADER_BYTES, limit);
+            deflater.setLevel(level);
+        }
+        int size = HEADER_BYTES + compressed + TRAILER_BYTES;
+        crc.reset();
+        crc.update(input, 0, length);
+
+        block[0] = 0x1f;
+        block[1] = (byte) 0x8b;
+        block[2] = 8;
+        block[3] = 4;
+        for (int i = 4; i < 10; i++) {
+            block[i] = 0;
+        }
+        block[9] = (byte) 0xff;
+        block[10] = 6;
+        block[11] = 0;
+        block[12] = 'B';
+        block[13] = 'C';
+        block[14] = 2;
+        block[15] = 0;
+        putShort(block, 16, size - 1);
+        putInt(block, size - 8, (int) crc.getValue());
+        putInt(block, size - 4, length);
+        out.write(block, 0, size);
+        length = 0;
+    }
+
+    private static void putShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        putShort(bytes, offset, value);
+        putShort(bytes, offset + 2, value >>> 16);
+    }
+}
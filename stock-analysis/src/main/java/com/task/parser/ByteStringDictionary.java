@@ -0,0 +1,157 @@
+package com.task.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns short byte sequences (instrument codes, dates, condition codes) into dense int ids.
+ * A String is only created the first time a distinct value is seen, so repeated values in
+ * the tick file never allocate.
+ */
+public class ByteStringDictionary {
+
+    private static final int EMPTY = -1;
+
+    private byte[] arena = new byte[1024];
+    private int arenaSize;
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private int[] hashes = new int[16];
+    private String[] values = new String[16];
+    private int size;
+
+    private int[] table;
+
+    public ByteStringDictionary() {
+        this.table = new int[64];
+        Arrays.fill(table, EMPTY);
+    }
+
+    /**
+     * Returns the id of the given bytes, adding them to the dictionary if they are new.
+     *
+     * @param bytes The buffer holding the value.
+     * @param length The number of bytes of the value, starting at index 0.
+     * @return The dense id of the value.
+     */
+    public int intern(byte[] bytes, int length) {
+        int hash = hash(bytes, length);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int id = table[slot];
+            if (id == EMPTY) {
+                return insert(bytes, length, hash, slot);
+            }
+            if (hashes[id] == hash && equalsAt(id, bytes, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the id of the given value, adding it to the dictionary if it is new.
+     *
+     * @param value The value to intern.
+     * @return The dense id of the value.
+     */
+    public int intern(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return intern(bytes, bytes.length);
+    }
+
+    /**
+     * Returns the canonical String for an id.
+     *
+     * @param id The id returned by {@link #intern}.
+     * @return The value for that id.
+     */
+    public String get(int id) {
+        return values[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Ranks every id by the natural String order of its value, so ids can be compared
+     * the same way the Strings would be.
+     *
+     * @return An array where {@code ranks[id]} is the position of the value in sorted order.
+     */
+    public int[] ranks() {
+        Integer[] ids = new Integer[size];
+        for (int id = 0; id < size; id++) {
+            ids[id] = id;
+        }
+        Arrays.sort(ids, (a, b) -> values[a].compareTo(values[b]));
+        int[] ranks = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            ranks[ids[rank]] = rank;
+        }
+        return ranks;
+    }
+
+    private int insert(byte[] bytes, int length, int hash, int slot) {
+        if (size == values.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+        }
+        System.arraycopy(bytes, 0, arena, arenaSize, length);
+        int id = size++;
+        offsets[id] = arenaSize;
+        lengths[id] = length;
+        hashes[id] = hash;
+        values[id] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        arenaSize += length;
+        table[slot] = id;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        Arrays.fill(newTable, EMPTY);
+        int mask = newTable.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (newTable[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = id;
+        }
+        table = newTable;
+    }
+
+    private boolean equalsAt(int id, byte[] bytes, int length) {
+        if (lengths[id] != length) {
+            return false;
+        }
+        int offset = offsets[id];
+        for (int i = 0; i < length; i++) {
+            if (arena[offset + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] bytes, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + bytes[i];
+        }
+        // spread the low bits, the table is indexed by a power-of-two mask
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,448 @@
+package com.task.parser;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Parses gzip-compressed tick files as a two-stage pipeline: a reader thread decompresses the
+ * file into buffers while the calling thread parses the buffers it already filled.
+ *
+ * The stages are joined by a bounded queue of filled buffers, and the buffers come from a
+ * fixed pool that the parser hands back once it is done with one, so decompression stays at
+ * most a few buffers ahead and a load allocates nothing per buffer. A line cut by the end of a
+ * buffer is carried over and parsed with the start of the next one.
+ *
+ * BGZF files, the blocked gzip written by bgzip and {@link BgzfOutputStream}, record the size
+ * of every block, so the reader thread only splits the file into groups of blocks and the
+ * groups are inflated on an executor in parallel; the parser still takes them in file order.
+ * Other gzip files, single or multi-member, are inflated sequentially on the reader thread.
+ *
+ * The rows' {@link TickRow#getLineStart() line offsets} and the parser's
+ * {@link TickCsvParser#getBytesRead() bytes read} count compressed bytes, so progress is
+ * reported against the size of the file on disk. Within a buffer, line offsets are
+ * interpolated; they are only meant for progress.
+ *
+ * A reader holds no state of its own and can parse several files at once.
+ */
+public class CompressedTickReader {
+
+    /** How a tick file is stored. */
+    public enum Format { PLAIN, GZIP, BGZF }
+
+    public static final int DEFAULT_BUFFERS = 4;
+    public static final int DEFAULT_BUFFER_BYTES = 4 << 20;
+
+    // a line longer than this is taken for a file that isn't a tick file
+    private static final int MAX_LINE_BYTES = 16 << 20;
+    private static final int INPUT_BUFFER_BYTES = 1 << 16;
+
+    private final ExecutorService inflaters;
+    private final int buffers;
+    private final int bufferBytes;
+
+    /**
+     * A reader inflating BGZF blocks on its reader thread, like any other gzip file.
+     */
+    public CompressedTickReader() {
+        this(null, 1, DEFAULT_BUFFERS, DEFAULT_BUFFER_BYTES);
+    }
+
+    /**
+     * @param inflaters Inflates BGZF block groups in parallel, or null to inflate them on the
+     *                  reader thread.
+     * @param inflaterThreads Threads of the executor; the pool gets enough buffers to keep
+     *                        them all busy.
+     * @param buffers Decompressed buffers of the pool.
+     * @param bufferBytes Size of one buffer, at least 64 KB.
+     */
+    public CompressedTickReader(ExecutorService inflaters, int inflaterThreads, int buffers, int bufferBytes) {
+        this.inflaters = inflaters;
+        this.bufferBytes = Math.max(BgzfOutputStream.MAX_BLOCK_BYTES, bufferBytes);
+        // the parser holds two buffers, the chunk it parses and the next one
+        int minimum = inflaters == null ? 3 : Math.max(1, inflaterThreads) + 2;
+        this.buffers = Math.max(minimum, buffers);
+    }
+
+    /**
+     * Tells plain, gzip and BGZF files apart by their first bytes.
+     *
+     * @param file The tick file.
+     * @return How the file is stored.
+     * @throws IOException If the file can't be read.
+     */
+    public static Format detect(Path file) throws IOException {
+        byte[] header = new byte[BgzfOutputStream.HEADER_BYTES];
+        int read;
+        try (InputStream in = Files.newInputStream(file)) {
+            read = readFully(in, header, 0, header.length);
+        }
+        if (read < 2 || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b) {
+            return Format.PLAIN;
+        }
+        return read == header.length && bgzfBlockSize(header) > 0 ? Format.BGZF : Format.GZIP;
+    }
+
+    /**
+     * @return True if the file is gzip or BGZF compressed.
+     */
+    public static boolean isCompressed(Path file) throws IOException {
+        return detect(file) != Format.PLAIN;
+    }
+
+    /**
+     * Parses a compressed file.
+     *
+     * @param file The gzip or BGZF file.
+     * @param parser Parses the decompressed bytes; its filter and counters apply as usual.
+     * @param handler Receives each decoded row.
+     * @return The number of rows passed to the handler.
+     * @throws IOException If the file can't be read or isn't valid gzip.
+     */
+    public long parse(Path file, TickCsvParser parser, TickRowHandler handler) throws IOException {
+        Format format = detect(file);
+        if (format == Format.PLAIN) {
+            return parser.parse(file, handler);
+        }
+        Pipeline pipeline = new Pipeline(file, format == Format.BGZF && inflaters != null);
+        Thread reader = new Thread(pipeline::produce, "decompress-" + file.getFileName());
+        reader.setDaemon(true);
+        reader.start();
+        long before = parser.getRowsParsed();
+        try {
+            pipeline.consume(parser, handler);
+        } finally {
+            // stops a reader still filling buffers nobody will parse
+            reader.interrupt();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return parser.getRowsParsed() - before;
+    }
+
+    /**
+     * One decompressed buffer and the span of the file it came from.
+     */
+    private static final class Chunk {
+        final byte[] data;
+        // BGZF only: the compressed block group
+        byte[] compressed;
+        int compressedLength;
+        int blocks;
+        int length;
+        long sourceStart;
+        long sourceEnd;
+
+        Chunk(int bytes) {
+            this.data = new byte[bytes];
+        }
+    }
+
+    private final class Pipeline {
+        private final Path file;
+        private final boolean parallel;
+        private final BlockingQueue<Chunk> free;
+        // filled chunks in file order; the future of a BGZF group completes once it's inflated
+        private final BlockingQueue<Future<Chunk>> filled;
+        private final CompletableFuture<Chunk> end = CompletableFuture.completedFuture(null);
+
+        Pipeline(Path file, boolean parallel) {
+            this.file = file;
+            this.parallel = parallel;
+            this.free = new ArrayBlockingQueue<>(buffers);
+            for (int i = 0; i < buffers; i++) {
+                free.add(new Chunk(bufferBytes));
+            }
+            // every buffer plus the end marker, so the reader never waits for this queue
+            this.filled = new ArrayBlockingQueue<>(buffers + 1);
+        }
+
+        void produce() {
+            try {
+                if (parallel) {
+                    splitBlocks();
+                } else {
+                    inflate();
+                }
+                filled.put(end);
+            } catch (InterruptedException | InterruptedIOException e) {
+                // the parser stopped
+            } catch (IOException | RuntimeException | Error e) {
+                CompletableFuture<Chunk> failure = new CompletableFuture<>();
+                failure.completeExceptionally(e);
+                filled.offer(failure);
+            }
+        }
+
+        private void inflate() throws IOException, InterruptedException {
+            long[] position = new long[1];
+            InputStream counting = new FilterInputStream(Files.newInputStream(file)) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        position[0]++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        position[0] += n;
+                    }
+                    return n;
+                }
+            };
+            try (InputStream in = new GZIPInputStream(counting, INPUT_BUFFER_BYTES)) {
+                // the first chunk also spans the header the stream read when it was opened
+                long sourceEnd = 0;
+                while (true) {
+                    Chunk chunk = free.take();
+                    chunk.sourceStart = sourceEnd;
+                    chunk.length = readFully(in, chunk.data, 0, chunk.data.length);
+                    chunk.sourceEnd = position[0];
+                    if (chunk.length < chunk.data.length) {
+                        // the whole file has been read by now, including trailers
+                        chunk.sourceEnd = Files.size(file);
+                    }
+                    sourceEnd = chunk.sourceEnd;
+                    if (chunk.length == 0) {
+                        if (chunk.sourceEnd > chunk.sourceStart) {
+                            filled.put(CompletableFuture.completedFuture(chunk));
+                        }
+                        return;
+                    }
+                    filled.put(CompletableFuture.completedFuture(chunk));
+                    if (chunk.length < chunk.data.length) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void splitBlocks() throws IOException, InterruptedException {
+            int groupBlocks = bufferBytes / BgzfOutputStream.MAX_BLOCK_BYTES;
+            try (InputStream in = Files.newInputStream(file)) {
+                long position = 0;
+                boolean more = true;
+                while (more) {
+                    Chunk chunk = free.take();
+                    if (chunk.compressed == null) {
+                        chunk.compressed = new byte[groupBlocks * BgzfOutputStream.MAX_BLOCK_BYTES];
+                    }
+                    chunk.sourceStart = position;
+                    chunk.compressedLength = 0;
+                    chunk.blocks = 0;
+                    while (chunk.blocks < groupBlocks) {
+                        int size = readBlock(in, chunk.compressed, chunk.compressedLength, position);
+                        if (size == 0) {
+                            more = false;
+                            break;
+                        }
+                        chunk.compressedLength += size;
+                        chunk.blocks++;
+                        position += size;
+                    }
+                    chunk.sourceEnd = position;
+                    if (chunk.blocks == 0) {
+                        free.put(chunk);
+                        return;
+                    }
+                    filled.put(inflaters.submit(() -> inflateBlocks(chunk)));
+                }
+            }
+        }
+
+        void consume(TickCsvParser parser, TickRowHandler handler) throws IOException {
+            byte[] carry = new byte[1024];
+            int carryLength = 0;
+            // compressed offset where the carried line started
+            long carryStart = 0;
+            Chunk chunk = next();
+            while (chunk != null) {
+                Chunk following = next();
+                boolean last = following == null;
+                double scale = chunk.length == 0 ? 0 : (double) (chunk.sourceEnd - chunk.sourceStart) / chunk.length;
+                int start = 0;
+                if (carryLength > 0) {
+                    // parse the carried line with as much of this chunk as it takes to end it
+                    int take = Math.min(chunk.length, Math.max(carryLength, 4096));
+                    while (true) {
+                        if (carryLength + take > carry.length) {
+                            carry = Arrays.copyOf(carry, Math.max(carryLength + take, carry.length * 2));
+                        }
+                        System.arraycopy(chunk.data, 0, carry, carryLength, take);
+                        boolean endOfInput = last && take == chunk.length;
+                        // the line spans two chunks, it is placed where this one starts
+                        int consumed = parser.parseDecompressed(ByteBuffer.wrap(carry), carryLength + take, endOfInput,
+                                chunk.sourceStart, 0, handler);
+                        if (consumed > 0) {
+                            start = consumed - carryLength;
+                            carryLength = 0;
+                            break;
+                        }
+                        if (take == chunk.length) {
+                            // the line goes on into the next chunk
+                            carryLength += take;
+                            start = take;
+                            break;
+                        }
+                        take = Math.min(chunk.length, take * 2);
+                    }
+                }
+                if (start < chunk.length) {
+                    ByteBuffer window = ByteBuffer.wrap(chunk.data, start, chunk.length - start).slice();
+                    long windowStart = chunk.sourceStart + (long) (start * scale);
+                    int consumed = parser.parseDecompressed(window, chunk.length - start, last, windowStart, scale, handler);
+                    carryLength = chunk.length - start - consumed;
+                    if (carryLength > carry.length) {
+                        carry = Arrays.copyOf(carry, Math.max(carryLength, carry.length * 2));
+                    }
+                    System.arraycopy(chunk.data, start + consumed, carry, 0, carryLength);
+                    carryStart = windowStart + (long) (consumed * scale);
+                }
+                if (carryLength > MAX_LINE_BYTES) {
+                    throw new IOException("Line at compressed offset " + carryStart + " of " + file
+                            + " is longer than " + MAX_LINE_BYTES + " bytes");
+                }
+                parser.addBytesRead(chunk.sourceEnd - chunk.sourceStart);
+                free.offer(chunk);
+                chunk = following;
+            }
+        }
+
+        private Chunk next() throws IOException {
+            try {
+                return filled.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + file);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof CancellationException) {
+                    throw (CancellationException) cause;
+                }
+                throw new IOException("Failed to decompress " + file, cause);
+            }
+        }
+
+        private int readBlock(InputStream in, byte[] buffer, int offset, long position) throws IOException {
+            int header = readFully(in, buffer, offset, BgzfOutputStream.HEADER_BYTES);
+            if (header == 0) {
+                return 0;
+            }
+            byte[] fields = Arrays.copyOfRange(buffer, offset, offset + header);
+            int size = header == BgzfOutputStream.HEADER_BYTES ? bgzfBlockSize(fields) : -1;
+            if (size <= 0) {
+                throw new ZipException("Not a BGZF block at offset " + position + " of " + file);
+            }
+            int rest = size - BgzfOutputStream.HEADER_BYTES;
+            if (readFully(in, buffer, offset + BgzfOutputStream.HEADER_BYTES, rest) < rest) {
+                throw new EOFException("Truncated BGZF block at offset " + position + " of " + file);
+            }
+            return size;
+        }
+
+        private Chunk inflateBlocks(Chunk chunk) throws IOException {
+            Inflater inflater = new Inflater(true);
+            CRC32 crc = new CRC32();
+            try {
+                int in = 0;
+                int out = 0;
+                for (int block = 0; block < chunk.blocks; block++) {
+                    byte[] compressed = chunk.compressed;
+                    int size = bgzfBlockSize(Arrays.copyOfRange(compressed, in, in + BgzfOutputStream.HEADER_BYTES));
+                    int extra = (compressed[in + 10] & 0xff) | (compressed[in + 11] & 0xff) << 8;
+                    int dataStart = in + 12 + extra;
+                    int trailer = in + size - BgzfOutputStream.TRAILER_BYTES;
+                    int expected = readInt(compressed, trailer + 4);
+                    if (expected < 0 || expected > BgzfOutputStream.MAX_BLOCK_BYTES) {
+                        throw new ZipException("Corrupt BGZF block at offset " + (chunk.sourceStart + in) + " of " + file);
+                    }
+                    inflater.reset();
+                    inflater.setInput(compressed, dataStart, trailer - dataStart);
+                    int inflated = 0;
+                    while (inflated < expected && !inflater.finished()) {
+                        int n = inflater.inflate(chunk.data, out + inflated, expected - inflated);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        inflated += n;
+                    }
+                    crc.reset();
+                    crc.update(chunk.data, out, inflated);
+                    if (inflated != expected || (int) crc.getValue() != readInt(compressed, trailer)) {
+                        throw new ZipException("Corrupt BGZF block at offset "
+                                + (chunk.sourceStart + in) + " of " + file);
+                    }
+                    in += size;
+                    out += inflated;
+                }
+                chunk.length = out;
+                return chunk;
+            } catch (DataFormatException e) {
+                throw new ZipException("Corrupt BGZF block in " + file + ": " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * @return The total size of the BGZF block starting with this header, or -1 if it isn't
+     *         one. The extra field must fit in the header, as bgzip writes it.
+     */
+    private static int bgzfBlockSize(byte[] header) {
+        if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || header[2] != 8 || (header[3] & 4) == 0) {
+            return -1;
+        }
+        int extra = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+        if (extra != 6 || header[12] != 'B' || header[13] != 'C' || header[14] != 2 || header[15] != 0) {
+            return -1;
+        }
+        return ((header[16] & 0xff) | (header[17] & 0xff) << 8) + 1;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buffer, offset + read, length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+}
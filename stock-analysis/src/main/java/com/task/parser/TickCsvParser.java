@@ -0,0 +1,485 @@
+package com.task.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Parses scandi-format tick files straight from a memory-mapped file.
+ *
+ * Delimiters are found by scanning raw bytes and numbers are decoded without creating
+ * Strings. Only the eleven columns used by {@link com.task.model.StockData} are decoded,
+ * the others are skipped. String columns go through a {@link ByteStringDictionary}, so
+ * every distinct code, date and condition code is allocated once per parser.
+ */
+public class TickCsvParser {
+
+    // Column positions in the scandi layout
+    public static final int CODE = 0;
+    public static final int BID_PRICE = 2;
+    public static final int ASK_PRICE = 3;
+    public static final int TRADE_PRICE = 4;
+    public static final int BID_VOLUME = 5;
+    public static final int ASK_VOLUME = 6;
+    public static final int TRADE_VOLUME = 7;
+    public static final int UPDATE_TYPE = 8;
+    public static final int DATE = 10;
+    public static final int TIME = 11;
+    public static final int CONDITION_CODES = 14;
+
+    /** Number of columns a row needs to be decoded. */
+    public static final int REQUIRED_COLUMNS = CONDITION_CODES + 1;
+
+    /** Default size of one mapped window, kept under the 2 GB limit of a MappedByteBuffer. */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final ByteStringDictionary codes = new ByteStringDictionary();
+    private final ByteStringDictionary dates = new ByteStringDictionary();
+    private final ByteStringDictionary conditions = new ByteStringDictionary();
+
+    private final int segmentSize;
+    private final TickRow row = new TickRow();
+    private final int[] fieldStart = new int[REQUIRED_COLUMNS];
+    private final int[] fieldEnd = new int[REQUIRED_COLUMNS];
+    private final boolean[] fieldQuoted = new boolean[REQUIRED_COLUMNS];
+    private byte[] scratch = new byte[64];
+    // file offset of the mapped window being parsed
+    private long windowStart;
+    // file bytes per parsed byte: 1 for a plain file, less for decompressed input
+    private double windowScale = 1;
+    private CompressedTickReader decompressor;
+    private TickFilter filter = TickFilter.ALL;
+    private final Verdicts conditionVerdicts = new Verdicts(TickFilter.ALL::acceptsConditionCodes);
+    private final Verdicts codeVerdicts = new Verdicts(TickFilter.ALL::acceptsCode);
+    private final Verdicts dateVerdicts = new Verdicts(TickFilter.ALL::acceptsDate);
+
+    private long rowsParsed;
+    private long rowsSkipped;
+    private long rowsFiltered;
+    private long fieldsDefaulted;
+    private long bytesRead;
+    private boolean endedInQuotes;
+
+    public TickCsvParser() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize Size of each mapped window in bytes. A single line must fit in one window.
+     */
+    public TickCsvParser(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Pushes a filter into the parser. Rows it rejects are dropped as soon as the columns it
+     * looks at are decoded, before the rest of the row is parsed or interned, and never reach
+     * the handler.
+     */
+    public void setFilter(TickFilter filter) {
+        this.filter = filter;
+        conditionVerdicts.reset(filter::acceptsConditionCodes);
+        codeVerdicts.reset(filter::acceptsCode);
+        dateVerdicts.reset(filter::acceptsDate);
+    }
+
+    /**
+     * Sets the reader that streams gzip and BGZF files through {@link #parse(Path, TickRowHandler)};
+     * by default one that inflates on a single thread.
+     */
+    public void setDecompressor(CompressedTickReader decompressor) {
+        this.decompressor = decompressor;
+    }
+
+    /**
+     * Parses the whole file. Gzip and BGZF files are decompressed while they are parsed, see
+     * {@link CompressedTickReader}.
+     *
+     * @param file The tick file.
+     * @param handler Receives each decoded row.
+     * @return The number of rows passed to the handler.
+     * @throws IOException If the file cannot be read or a line is longer than a mapped window.
+     */
+    public long parse(Path file, TickRowHandler handler) throws IOException {
+        if (CompressedTickReader.isCompressed(file)) {
+            return (decompressor != null ? decompressor : new CompressedTickReader()).parse(file, this, handler);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return parse(channel, 0, channel.size(), handler);
+        }
+    }
+
+    /**
+     * Parses the bytes in [start, end) of the channel. The range must start at the beginning of
+     * a line; a line that is not terminated before {@code end} is parsed as the last line.
+     *
+     * @param channel The open file.
+     * @param start First byte to parse.
+     * @param end One past the last byte to parse.
+     * @param handler Receives each decoded row.
+     * @return The number of rows passed to the handler.
+     * @throws IOException If the file cannot be read or a line is longer than a mapped window.
+     */
+    public long parse(FileChannel channel, long start, long end, TickRowHandler handler) throws IOException {
+        long before = rowsParsed;
+        long position = start;
+        while (position < end) {
+            int length = (int) Math.min(segmentSize, end - position);
+            boolean last = position + length >= end;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            windowStart = position;
+            windowScale = 1;
+            int consumed = parseBuffer(buffer, length, last, handler);
+            if (consumed == 0) {
+                throw new IOException("Line at offset " + position + " is longer than the mapped window of " + segmentSize + " bytes");
+            }
+            position += consumed;
+            bytesRead += consumed;
+        }
+        return rowsParsed - before;
+    }
+
+    /**
+     * Parses decompressed bytes like {@link #parseBuffer}, giving the rows line offsets in the
+     * compressed file: {@code sourceStart} plus their position in the buffer times
+     * {@code sourceBytesPerByte}. Bytes read are counted by the caller.
+     *
+     * @return The number of bytes consumed.
+     */
+    int parseDecompressed(ByteBuffer buffer, int limit, boolean endOfInput, long sourceStart, double sourceBytesPerByte,
+                          TickRowHandler handler) {
+        windowStart = sourceStart;
+        windowScale = sourceBytesPerByte;
+        return parseBuffer(buffer, limit, endOfInput, handler);
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    /**
+     * Parses complete lines in buffer[0, limit). When {@code endOfInput} is false a trailing
+     * partial line is left unparsed so the caller can hand it over with the next window.
+     *
+     * @return The number of bytes consumed.
+     */
+    int parseBuffer(ByteBuffer buffer, int limit, boolean endOfInput, TickRowHandler handler) {
+        int pos = 0;
+        while (pos < limit) {
+            int lineStart = pos;
+            int field = 0;
+            int start = pos;
+            boolean quoted = false;
+            boolean inQuotes = false;
+            boolean terminated = false;
+            while (pos < limit) {
+                byte b = buffer.get(pos);
+                if (inQuotes) {
+                    if (b == '"') {
+                        if (pos + 1 == limit && !endOfInput) {
+                            // can't tell a closing quote from an escaped one yet
+                            break;
+                        }
+                        if (pos + 1 < limit && buffer.get(pos + 1) == '"') {
+                            pos += 2;
+                            continue;
+                        }
+                        inQuotes = false;
+                    }
+                    pos++;
+                } else if (b == ',') {
+                    markField(field++, start, pos, quoted);
+                    pos++;
+                    start = pos;
+                    quoted = false;
+                } else if (b == '\n') {
+                    int end = pos > start && buffer.get(pos - 1) == '\r' ? pos - 1 : pos;
+                    markField(field++, start, end, quoted);
+                    pos++;
+                    terminated = true;
+                    break;
+                } else {
+                    if (b == '"' && pos == start) {
+                        quoted = true;
+                        inQuotes = true;
+                    }
+                    pos++;
+                }
+            }
+            if (!terminated) {
+                if (!endOfInput) {
+                    return lineStart;
+                }
+                int end = pos > start && buffer.get(pos - 1) == '\r' ? pos - 1 : pos;
+                markField(field++, start, end, quoted);
+                endedInQuotes = inQuotes;
+            }
+            emitRow(buffer, field, lineStart, pos, handler);
+        }
+        return pos;
+    }
+
+    private void markField(int field, int start, int end, boolean quoted) {
+        if (field < REQUIRED_COLUMNS) {
+            fieldStart[field] = start;
+            fieldEnd[field] = end;
+            fieldQuoted[field] = quoted;
+        }
+    }
+
+    private void emitRow(ByteBuffer buffer, int fieldCount, int lineStart, int lineEnd, TickRowHandler handler) {
+        if (fieldCount < REQUIRED_COLUMNS) {
+            // blank lines are not worth reporting, anything else is a malformed row
+            if (fieldCount > 1 || fieldEnd[0] > fieldStart[0]) {
+                rowsSkipped++;
+            }
+            return;
+        }
+        // the columns the filter looks at come first so rejected rows stop here
+        row.updateType = parseInt(buffer, UPDATE_TYPE);
+        row.bidPrice = parseDouble(buffer, BID_PRICE);
+        row.askPrice = parseDouble(buffer, ASK_PRICE);
+        row.timeInSecondsPastMidnight = parseDouble(buffer, TIME);
+        if (!filter.acceptsQuote(row.updateType, row.bidPrice, row.askPrice, row.timeInSecondsPastMidnight)) {
+            rowsFiltered++;
+            return;
+        }
+        row.conditionId = intern(buffer, CONDITION_CODES, conditions);
+        row.conditionCodes = conditions.get(row.conditionId);
+        if (!conditionVerdicts.accepts(row.conditionId, row.conditionCodes)) {
+            rowsFiltered++;
+            return;
+        }
+        row.codeId = intern(buffer, CODE, codes);
+        row.bloombergCode = codes.get(row.codeId);
+        if (!codeVerdicts.accepts(row.codeId, row.bloombergCode)) {
+            rowsFiltered++;
+            return;
+        }
+        row.dateId = intern(buffer, DATE, dates);
+        row.date = dates.get(row.dateId);
+        if (!dateVerdicts.accepts(row.dateId, row.date)) {
+            rowsFiltered++;
+            return;
+        }
+        row.tradePrice = parseDouble(buffer, TRADE_PRICE);
+        row.bidVolume = parseInt(buffer, BID_VOLUME);
+        row.askVolume = parseInt(buffer, ASK_VOLUME);
+        row.tradeVolume = parseInt(buffer, TRADE_VOLUME);
+        row.lineStart = fileOffset(lineStart);
+        row.lineEnd = fileOffset(lineEnd);
+        rowsParsed++;
+        handler.onRow(row);
+    }
+
+    private long fileOffset(int position) {
+        return windowStart + (windowScale == 1 ? position : (long) (position * windowScale));
+    }
+
+    private int intern(ByteBuffer buffer, int field, ByteStringDictionary dictionary) {
+        int length = copyField(buffer, field);
+        return dictionary.intern(scratch, length);
+    }
+
+    /**
+     * Copies a field into the scratch buffer, removing the surrounding quotes and
+     * collapsing doubled quotes.
+     *
+     * @return The number of bytes copied.
+     */
+    private int copyField(ByteBuffer buffer, int field) {
+        int start = fieldStart[field];
+        int end = fieldEnd[field];
+        if (scratch.length < end - start) {
+            scratch = new byte[Math.max(scratch.length * 2, end - start)];
+        }
+        int length = 0;
+        if (!fieldQuoted[field]) {
+            for (int i = start; i < end; i++) {
+                scratch[length++] = buffer.get(i);
+            }
+            return length;
+        }
+        for (int i = start + 1; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                if (i + 1 < end && buffer.get(i + 1) == '"') {
+                    i++;
+                } else {
+                    continue;
+                }
+            }
+            scratch[length++] = b;
+        }
+        return length;
+    }
+
+    private double parseDouble(ByteBuffer buffer, int field) {
+        // fast path for plain decimals: the mantissa and the power of ten are both exact doubles,
+        // so one division gives the same correctly rounded value as Double.parseDouble
+        int i = fieldStart[field];
+        int end = fieldEnd[field];
+        if (fieldQuoted[field]) {
+            i++;
+            end--;
+        }
+        boolean negative = false;
+        if (i < end) {
+            byte first = buffer.get(i);
+            if (first == '-') {
+                negative = true;
+                i++;
+            } else if (first == '+') {
+                i++;
+            }
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return slowParseDouble(buffer, field);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenDot) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                return slowParseDouble(buffer, field);
+            }
+        }
+        if (digits == 0 || mantissa > MAX_EXACT_MANTISSA || fractionDigits >= POW10.length) {
+            return slowParseDouble(buffer, field);
+        }
+        double value = fractionDigits == 0 ? (double) mantissa : mantissa / POW10[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private double slowParseDouble(ByteBuffer buffer, int field) {
+        String value = fieldAsString(buffer, field);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            fieldsDefaulted++;
+            return 0.0;
+        }
+    }
+
+    private int parseInt(ByteBuffer buffer, int field) {
+        int i = fieldStart[field];
+        int end = fieldEnd[field];
+        if (fieldQuoted[field]) {
+            i++;
+            end--;
+        }
+        boolean negative = false;
+        if (i < end) {
+            byte first = buffer.get(i);
+            if (first == '-') {
+                negative = true;
+                i++;
+            } else if (first == '+') {
+                i++;
+            }
+        }
+        // nine digits can't overflow an int, anything longer goes through Integer.parseInt
+        if (i == end || end - i > 9) {
+            return slowParseInt(buffer, field);
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return slowParseInt(buffer, field);
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private int slowParseInt(ByteBuffer buffer, int field) {
+        String value = fieldAsString(buffer, field);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            fieldsDefaulted++;
+            return 0;
+        }
+    }
+
+    private String fieldAsString(ByteBuffer buffer, int field) {
+        int length = copyField(buffer, field);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public ByteStringDictionary getCodes() { return codes; }
+    public ByteStringDictionary getDates() { return dates; }
+    public ByteStringDictionary getConditions() { return conditions; }
+
+    /** Rows decoded and passed to a handler. */
+    public long getRowsParsed() { return rowsParsed; }
+
+    /** Non-blank rows dropped because they had fewer than {@link #REQUIRED_COLUMNS} columns. */
+    public long getRowsSkipped() { return rowsSkipped; }
+
+    /** Well-formed rows rejected by the filter. */
+    public long getRowsFiltered() { return rowsFiltered; }
+
+    /** Numeric fields that could not be parsed and were defaulted to zero. */
+    public long getFieldsDefaulted() { return fieldsDefaulted; }
+
+    public long getBytesRead() { return bytesRead; }
+
+    /**
+     * Whether the input ended inside a quoted field, so its last row was cut short. A range
+     * cut at a line break inside a quoted field ends this way.
+     */
+    public boolean isEndedInQuotes() { return endedInQuotes; }
+
+    /**
+     * Remembers the filter's verdict per dictionary id, so each distinct value of a column is
+     * checked once.
+     */
+    private static final class Verdicts {
+        // 0 not checked yet, 1 accepted, 2 rejected
+        private byte[] verdicts = new byte[16];
+        private Predicate<String> predicate;
+
+        Verdicts(Predicate<String> predicate) {
+            this.predicate = predicate;
+        }
+
+        boolean accepts(int id, String value) {
+            if (id >= verdicts.length) {
+                verdicts = Arrays.copyOf(verdicts, Math.max(verdicts.length * 2, id + 1));
+            }
+            if (verdicts[id] == 0) {
+                verdicts[id] = predicate.test(value) ? (byte) 1 : (byte) 2;
+            }
+            return verdicts[id] == 1;
+        }
+
+        void reset(Predicate<String> predicate) {
+            this.predicate = predicate;
+            Arrays.fill(verdicts, (byte) 0);
+        }
+    }
+}
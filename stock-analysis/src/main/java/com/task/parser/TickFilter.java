@@ -0,0 +1,222 @@
+package com.task.parser;
+
+import com.task.model.TickStore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Declarative row filter that can be pushed into {@link TickCsvParser}, so rejected rows are
+ * never added to a store.
+ *
+ * A filter is a conjunction of simple predicates over the columns the parser decodes first:
+ * excluded and required time windows, crossed quotes, a required update type and sets of
+ * allowed condition codes, instrument codes and dates. Filters are immutable; each predicate
+ * method returns a narrower copy. {@link #describe()} gives a canonical form, used to key
+ * caches of filtered loads.
+ */
+public final class TickFilter {
+
+    /** Accepts every row. */
+    public static final TickFilter ALL = new TickFilter(new double[0], null, false, null, null, null, null);
+
+    private final double[] excludedWindows;
+    private final double[] requiredWindow;
+    private final boolean excludeCrossed;
+    private final Integer updateType;
+    private final Set<String> conditionCodes;
+    private final Set<String> codes;
+    private final Set<String> dates;
+
+    private TickFilter(double[] excludedWindows, double[] requiredWindow, boolean excludeCrossed, Integer updateType,
+                       Set<String> conditionCodes, Set<String> codes, Set<String> dates) {
+        this.excludedWindows = excludedWindows;
+        this.requiredWindow = requiredWindow;
+        this.excludeCrossed = excludeCrossed;
+        this.updateType = updateType;
+        this.conditionCodes = conditionCodes;
+        this.codes = codes;
+        this.dates = dates;
+    }
+
+    /**
+     * Rejects rows whose time in seconds past midnight lies in [from, to].
+     */
+    public TickFilter excludeTimeWindow(double from, double to) {
+        double[] windows = Arrays.copyOf(excludedWindows, excludedWindows.length + 2);
+        windows[windows.length - 2] = from;
+        windows[windows.length - 1] = to;
+        return new TickFilter(windows, requiredWindow, excludeCrossed, updateType, conditionCodes, codes, dates);
+    }
+
+    /**
+     * Keeps only rows whose time in seconds past midnight lies in [from, to).
+     */
+    public TickFilter requireTimeWindow(double from, double to) {
+        return new TickFilter(excludedWindows, new double[]{from, to}, excludeCrossed, updateType, conditionCodes, codes, dates);
+    }
+
+    /**
+     * Rejects rows whose bid price is above their ask price.
+     */
+    public TickFilter excludeCrossedQuotes() {
+        return new TickFilter(excludedWindows, requiredWindow, true, updateType, conditionCodes, codes, dates);
+    }
+
+    /**
+     * Keeps only rows of one update type.
+     */
+    public TickFilter requireUpdateType(int type) {
+        return new TickFilter(excludedWindows, requiredWindow, excludeCrossed, type, conditionCodes, codes, dates);
+    }
+
+    /**
+     * Keeps only rows whose condition codes field is exactly one of the given values; the
+     * empty string stands for rows without condition codes.
+     */
+    public TickFilter allowConditionCodes(String... codes) {
+        return new TickFilter(excludedWindows, requiredWindow, excludeCrossed, updateType, new TreeSet<>(Arrays.asList(codes)),
+                this.codes, dates);
+    }
+
+    /**
+     * Keeps only rows of the given instrument codes.
+     */
+    public TickFilter allowCodes(String... codes) {
+        return new TickFilter(excludedWindows, requiredWindow, excludeCrossed, updateType, conditionCodes,
+                new TreeSet<>(Arrays.asList(codes)), dates);
+    }
+
+    /**
+     * Keeps only rows of the given dates, as they appear in the file.
+     */
+    public TickFilter allowDates(String... dates) {
+        return new TickFilter(excludedWindows, requiredWindow, excludeCrossed, updateType, conditionCodes, codes,
+                new TreeSet<>(Arrays.asList(dates)));
+    }
+
+    /**
+     * @return True if the filter accepts every row.
+     */
+    public boolean acceptsAll() {
+        return excludedWindows.length == 0 && requiredWindow == null && !excludeCrossed && updateType == null
+                && conditionCodes == null && codes == null && dates == null;
+    }
+
+    /**
+     * @return True if the filter keeps only some codes, dates or a time window, the predicates
+     *         a block index can turn into byte ranges.
+     */
+    public boolean isSelective() {
+        return codes != null || dates != null || requiredWindow != null;
+    }
+
+    /**
+     * Checks the numeric predicates of a row.
+     */
+    public boolean acceptsQuote(int type, double bidPrice, double askPrice, double timeInSecondsPastMidnight) {
+        if (updateType != null && type != updateType) {
+            return false;
+        }
+        if (excludeCrossed && bidPrice > askPrice) {
+            return false;
+        }
+        if (requiredWindow != null && (timeInSecondsPastMidnight < requiredWindow[0] || timeInSecondsPastMidnight >= requiredWindow[1])) {
+            return false;
+        }
+        for (int i = 0; i < excludedWindows.length; i += 2) {
+            if (timeInSecondsPastMidnight >= excludedWindows[i] && timeInSecondsPastMidnight <= excludedWindows[i + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the condition codes of a row.
+     */
+    public boolean acceptsConditionCodes(String codes) {
+        return conditionCodes == null || conditionCodes.contains(codes);
+    }
+
+    /**
+     * Checks the instrument code of a row.
+     */
+    public boolean acceptsCode(String code) {
+        return codes == null || codes.contains(code);
+    }
+
+    /**
+     * Checks the date of a row.
+     */
+    public boolean acceptsDate(String date) {
+        return dates == null || dates.contains(date);
+    }
+
+    /**
+     * Checks a row that is already in a store.
+     */
+    public boolean accepts(TickStore data, int row) {
+        return acceptsQuote(data.getUpdateType(row), data.getBidPrice(row), data.getAskPrice(row), data.getTimeInSecondsPastMidnight(row))
+                && acceptsConditionCodes(data.getConditionCodes(row))
+                && acceptsCode(data.getBloombergCode(row))
+                && acceptsDate(data.getDate(row));
+    }
+
+    /**
+     * @return The allowed instrument codes, or null if every code is accepted.
+     */
+    public Set<String> getCodes() {
+        return codes == null ? null : Collections.unmodifiableSet(codes);
+    }
+
+    /**
+     * @return The allowed dates, or null if every date is accepted.
+     */
+    public Set<String> getDates() {
+        return dates == null ? null : Collections.unmodifiableSet(dates);
+    }
+
+    /**
+     * @return The required time window {from, to}, or null if rows of any time are accepted.
+     */
+    public double[] getRequiredTimeWindow() {
+        return requiredWindow == null ? null : requiredWindow.clone();
+    }
+
+    /**
+     * @return A canonical description of the filter; equal filters describe the same way.
+     */
+    public String describe() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < excludedWindows.length; i += 2) {
+            description.append("time not in [").append(excludedWindows[i]).append(", ").append(excludedWindows[i + 1]).append("]; ");
+        }
+        if (requiredWindow != null) {
+            description.append("time in [").append(requiredWindow[0]).append(", ").append(requiredWindow[1]).append("); ");
+        }
+        if (excludeCrossed) {
+            description.append("bid <= ask; ");
+        }
+        if (updateType != null) {
+            description.append("updateType = ").append(updateType).append("; ");
+        }
+        if (conditionCodes != null) {
+            description.append("conditionCodes in ").append(conditionCodes).append("; ");
+        }
+        if (codes != null) {
+            description.append("code in ").append(codes).append("; ");
+        }
+        if (dates != null) {
+            description.append("date in ").append(dates).append("; ");
+        }
+        return description.length() == 0 ? "all rows" : description.substring(0, description.length() - 2);
+    }
+
+    @Override
+    public String toString() {
+        return describe();
+    }
+}
@@ -0,0 +1,44 @@
+package com.task.parser;
+
+/**
+ * Mutable view of the row currently being parsed. The parser reuses a single instance,
+ * so handlers must copy out whatever they want to keep.
+ */
+public class TickRow {
+    int codeId;
+    String bloombergCode;
+    double bidPrice;
+    double askPrice;
+    double tradePrice;
+    int bidVolume;
+    int askVolume;
+    int tradeVolume;
+    int updateType;
+    int dateId;
+    String date;
+    double timeInSecondsPastMidnight;
+    int conditionId;
+    String conditionCodes;
+    long lineStart;
+    long lineEnd;
+
+    public int getCodeId() { return codeId; }
+    public String getBloombergCode() { return bloombergCode; }
+    public double getBidPrice() { return bidPrice; }
+    public double getAskPrice() { return askPrice; }
+    public double getTradePrice() { return tradePrice; }
+    public int getBidVolume() { return bidVolume; }
+    public int getAskVolume() { return askVolume; }
+    public int getTradeVolume() { return tradeVolume; }
+    public int getUpdateType() { return updateType; }
+    public int getDateId() { return dateId; }
+    public String getDate() { return date; }
+    public double getTimeInSecondsPastMidnight() { return timeInSecondsPastMidnight; }
+    public int getConditionId() { return conditionId; }
+    public String getConditionCodes() { return conditionCodes; }
+
+    /** File offset of the first byte of the row's line. */
+    public long getLineStart() { return lineStart; }
+    /** File offset just past the row's line, including its line terminator. */
+    public long getLineEnd() { return lineEnd; }
+}
@@ -0,0 +1,15 @@
+package com.task.parser;
+
+/**
+ * Receives every row decoded by {@link TickCsvParser}.
+ */
+@FunctionalInterface
+public interface TickRowHandler {
+
+    /**
+     * Called once per parsed row. The row instance is reused for the next call.
+     *
+     * @param row The decoded row.
+     */
+    void onRow(TickRow row);
+}
@@ -0,0 +1,136 @@
+package com.task.parser;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Estimates how many rows of a tick file a filter keeps from a few small samples, without
+ * reading the whole file.
+ *
+ * A plain file is sampled in {@value #WINDOWS} windows spread evenly over it, so a file sorted
+ * by time or instrument is sampled across the day and the instruments. A compressed file can
+ * only be read from its start; its first megabyte of text is parsed, and its text size is
+ * extrapolated from how much of the file that megabyte took.
+ */
+public final class TickSample {
+
+    static final int WINDOWS = 16;
+    static final int WINDOW_BYTES = 64 * 1024;
+    static final int COMPRESSED_SAMPLE_BYTES = 1 << 20;
+
+    private final long textBytes;
+    private final long sampledBytes;
+    private final long sampledRows;
+    private final long acceptedRows;
+
+    private TickSample(long textBytes, long sampledBytes, TickCsvParser parser) {
+        this.textBytes = textBytes;
+        this.sampledBytes = sampledBytes;
+        this.sampledRows = parser.getRowsParsed() + parser.getRowsFiltered() + parser.getRowsSkipped();
+        this.acceptedRows = parser.getRowsParsed();
+    }
+
+    /**
+     * Samples a file.
+     *
+     * @param file The tick file, plain or compressed.
+     * @param filter The rows to count as kept.
+     * @return The sample.
+     * @throws IOException If the file can't be read.
+     */
+    public static TickSample of(Path file, TickFilter filter) throws IOException {
+        TickCsvParser parser = new TickCsvParser();
+        parser.setFilter(filter);
+        if (CompressedTickReader.isCompressed(file)) {
+            return sampleCompressed(file, parser);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long sampled = 0;
+            int windows = size <= (long) WINDOWS * WINDOW_BYTES ? 1 : WINDOWS;
+            for (int i = 0; i < windows; i++) {
+                long start = windows == 1 ? 0 : size / windows * i;
+                int length = (int) (windows == 1 ? size : Math.min(WINDOW_BYTES, size - start));
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                int lineStart = 0;
+                if (start > 0) {
+                    // a window starting mid-line skips to the next line
+                    while (lineStart < length && buffer.get(lineStart) != '\n') {
+                        lineStart++;
+                    }
+                    lineStart++;
+                }
+                if (lineStart >= length) {
+                    continue;
+                }
+                buffer.position(lineStart);
+                ByteBuffer lines = buffer.slice();
+                sampled += parser.parseBuffer(lines, length - lineStart, start + length == size, row -> { });
+            }
+            return new TickSample(size, sampled, parser);
+        }
+    }
+
+    private static TickSample sampleCompressed(Path file, TickCsvParser parser) throws IOException {
+        long[] compressed = new long[1];
+        InputStream counting = new FilterInputStream(Files.newInputStream(file)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    compressed[0] += n;
+                }
+                return n;
+            }
+        };
+        byte[] text = new byte[COMPRESSED_SAMPLE_BYTES];
+        int length = 0;
+        boolean ended = false;
+        // a small input buffer keeps the count close to what the sample took
+        try (InputStream in = new GZIPInputStream(counting, 8192)) {
+            while (length < text.length) {
+                int n = in.read(text, length, text.length - length);
+                if (n < 0) {
+                    ended = true;
+                    break;
+                }
+                length += n;
+            }
+        }
+        long textBytes = ended || compressed[0] == 0 ? length
+                : (long) ((double) Files.size(file) * length / compressed[0]);
+        int sampled = parser.parseBuffer(ByteBuffer.wrap(text), length, ended, row -> { });
+        return new TickSample(textBytes, sampled, parser);
+    }
+
+    /**
+     * @return The size of the file's text: its size, or the estimated size of its decompressed text.
+     */
+    public long getTextBytes() { return textBytes; }
+
+    public long getSampledBytes() { return sampledBytes; }
+
+    /** Rows in the sample, kept or not; blank lines aren't counted. */
+    public long getSampledRows() { return sampledRows; }
+
+    /** Rows of the sample the filter kept. */
+    public long getAcceptedRows() { return acceptedRows; }
+
+    /**
+     * @return The estimated number of rows of the whole file the filter keeps.
+     */
+    public long estimateAcceptedRows() {
+        if (sampledBytes == 0) {
+            return 0;
+        }
+        return (long) Math.ceil((double) textBytes * acceptedRows / sampledBytes);
+    }
+}
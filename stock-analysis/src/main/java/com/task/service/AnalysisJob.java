@@ -0,0 +1,102 @@
+package com.task.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * One submitted analysis of a file. The job owns its progress and, once it has succeeded,
+ * its own metric rows, so concurrent jobs never share result state.
+ *
+ * The getters make up the JSON status returned by the job endpoints.
+ */
+public class AnalysisJob {
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED }
+
+    private final String id;
+    private final String filePath;
+    private final long submittedAt;
+    private final AnalysisProgress progress = new AnalysisProgress();
+    private volatile Status status = Status.QUEUED;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+    private volatile List<String[]> results = Collections.emptyList();
+    private volatile Future<?> future;
+
+    AnalysisJob(String id, String filePath) {
+        this.id = id;
+        this.filePath = filePath;
+        this.submittedAt = System.currentTimeMillis();
+    }
+
+    public String getId() { return id; }
+    public String getFilePath() { return filePath; }
+    public Status getStatus() { return status; }
+    public long getSubmittedAt() { return submittedAt; }
+    public long getStartedAt() { return startedAt; }
+    public long getFinishedAt() { return finishedAt; }
+    public String getError() { return error; }
+    public AnalysisProgress getProgress() { return progress; }
+
+    public boolean isFinished() {
+        Status current = status;
+        return current == Status.SUCCEEDED || current == Status.FAILED || current == Status.CANCELLED;
+    }
+
+    /**
+     * @return The metric rows, {stock code, metric, value}; empty until the job has succeeded.
+     */
+    @JsonIgnore
+    public List<String[]> getResults() { return results; }
+
+    void setFuture(Future<?> future) { this.future = future; }
+
+    Future<?> getFuture() { return future; }
+
+    synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        startedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    synchronized void succeed(List<String[]> rows) {
+        if (status == Status.RUNNING) {
+            results = Collections.unmodifiableList(rows);
+            finish(Status.SUCCEEDED);
+        }
+    }
+
+    synchronized void fail(String message) {
+        if (status == Status.RUNNING) {
+            error = message;
+            finish(Status.FAILED);
+        }
+    }
+
+    /**
+     * Marks the job cancelled. A queued job never starts; a running job stops at its next
+     * progress check.
+     *
+     * @return False if the job had already finished.
+     */
+    synchronized boolean cancel() {
+        if (isFinished()) {
+            return false;
+        }
+        progress.cancel();
+        finish(Status.CANCELLED);
+        return true;
+    }
+
+    private void finish(Status finalStatus) {
+        status = finalStatus;
+        finishedAt = System.currentTimeMillis();
+    }
+}
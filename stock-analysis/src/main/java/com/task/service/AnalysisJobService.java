@@ -0,0 +1,146 @@
+package com.task.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs analyses in the background so requests don't hold a web thread for the whole run.
+ *
+ * Jobs run on a fixed number of threads behind a bounded queue. When both are full a
+ * submission is rejected straight away instead of piling up threads or heap. Finished jobs
+ * keep their results until they are among the oldest beyond {@code retained-jobs}.
+ */
+@Service
+public class AnalysisJobService {
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Value("${stock-analysis.jobs.concurrency:2}")
+    private int concurrency;
+
+    @Value("${stock-analysis.jobs.queue-capacity:16}")
+    private int queueCapacity;
+
+    @Value("${stock-analysis.jobs.retained-jobs:64}")
+    private int retainedJobs;
+
+    private final Map<String, AnalysisJob> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void startExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        int threads = Math.max(1, concurrency);
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+            Thread thread = new Thread(runnable, "analysis-job-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void stopExecutor() {
+        jobs.values().forEach(AnalysisJob::cancel);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues an analysis of a file.
+     *
+     * @param filePath The path to the CSV file.
+     * @return The queued job.
+     * @throws RejectedExecutionException If every worker is busy and the queue is full.
+     */
+    public AnalysisJob submit(String filePath) {
+        AnalysisJob job = new AnalysisJob(UUID.randomUUID().toString(), filePath);
+        jobs.put(job.getId(), job);
+        try {
+            job.setFuture(executor.submit(() -> run(job)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        evictFinishedJobs();
+        return job;
+    }
+
+    /**
+     * @return The job, or null if it is unknown or has been evicted.
+     */
+    public AnalysisJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * @return Every retained job, oldest first.
+     */
+    public List<AnalysisJob> getJobs() {
+        List<AnalysisJob> all = new ArrayList<>(jobs.values());
+        all.sort((a, b) -> Long.compare(a.getSubmittedAt(), b.getSubmittedAt()));
+        return all;
+    }
+
+    /**
+     * Cancels a job. A queued job is dropped from the queue, a running job stops at its next
+     * progress check.
+     *
+     * @return The job, or null if it is unknown.
+     */
+    public AnalysisJob cancel(String id) {
+        AnalysisJob job = jobs.get(id);
+        if (job != null && job.cancel() && job.getFuture() != null) {
+            // frees the queue slot of a job that hasn't started; running jobs aren't interrupted
+            // because an interrupt closes the file channels they are reading
+            job.getFuture().cancel(false);
+            executor.purge();
+        }
+        return job;
+    }
+
+    private void run(AnalysisJob job) {
+        if (!job.start()) {
+            return;
+        }
+        try {
+            job.succeed(metricsService.analyzeFile(job.getFilePath(), job.getProgress()));
+        } catch (CancellationException e) {
+            job.cancel();
+        } catch (Exception e) {
+            System.err.println("Analysis job " + job.getId() + " failed: " + e);
+            job.fail(e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private void evictFinishedJobs() {
+        int excess = jobs.size() - Math.max(0, retainedJobs);
+        if (excess <= 0) {
+            return;
+        }
+        Iterator<AnalysisJob> oldest = getJobs().iterator();
+        while (excess > 0 && oldest.hasNext()) {
+            AnalysisJob job = oldest.next();
+            if (job.isFinished()) {
+                jobs.remove(job.getId());
+                excess--;
+            }
+        }
+    }
+}
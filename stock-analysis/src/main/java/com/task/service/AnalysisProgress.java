@@ -0,0 +1,87 @@
+package com.task.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and cancellation of one analysis run.
+ *
+ * The pipeline reports into it in batches rather than per row, and checks
+ * {@link #checkCancelled()} at the same points, so a cancelled run stops within one batch of
+ * rows or one instrument. Readers on other threads see a consistent enough snapshot for a
+ * progress display; the counters are not updated atomically together.
+ */
+public class AnalysisProgress {
+
+    /** Rows parsed between two progress updates of a loader thread. */
+    public static final int REPORT_EVERY_ROWS = 16 * 1024;
+
+    public enum Stage { QUEUED, LOADING, SORTING, COMPUTING, DONE }
+
+    private volatile Stage stage = Stage.QUEUED;
+    private volatile boolean cancelled;
+    private volatile long totalBytes;
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong rowsLoaded = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+    private volatile long rowsRetained;
+    private volatile int instrumentsTotal;
+    private final AtomicInteger instrumentsDone = new AtomicInteger();
+    private final List<StageTiming> stageTimings = new CopyOnWriteArrayList<>();
+
+    public void setStage(Stage stage) { this.stage = stage; }
+
+    public void setTotalBytes(long totalBytes) { this.totalBytes = totalBytes; }
+
+    public void addLoaded(long rows, long bytes) {
+        rowsLoaded.addAndGet(rows);
+        bytesRead.addAndGet(bytes);
+    }
+
+    /**
+     * Counts rows dropped by a filter pushed into the loader.
+     */
+    public void addRejected(long rows) {
+        rowsRejected.addAndGet(rows);
+    }
+
+    public void setRowsRetained(long rowsRetained) { this.rowsRetained = rowsRetained; }
+
+    public void setInstrumentsTotal(int instrumentsTotal) { this.instrumentsTotal = instrumentsTotal; }
+
+    public void instrumentDone() { instrumentsDone.incrementAndGet(); }
+
+    public void addStageTiming(StageTiming timing) { stageTimings.add(timing); }
+
+    /**
+     * Asks the run to stop at its next check.
+     */
+    public void cancel() { cancelled = true; }
+
+    public boolean isCancelled() { return cancelled; }
+
+    /**
+     * @throws CancellationException If the run has been cancelled.
+     */
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Analysis cancelled");
+        }
+    }
+
+    public Stage getStage() { return stage; }
+    public long getTotalBytes() { return totalBytes; }
+    public long getBytesRead() { return bytesRead.get(); }
+    public long getRowsLoaded() { return rowsLoaded.get(); }
+    public long getRowsRejected() { return rowsRejected.get(); }
+    public long getRowsRetained() { return rowsRetained; }
+    public int getInstrumentsTotal() { return instrumentsTotal; }
+    public int getInstrumentsDone() { return instrumentsDone.get(); }
+
+    /** Timings of the stages finished so far, in order; empty when instrumentation is off. */
+    public List<StageTiming> getStageTimings() { return new ArrayList<>(stageTimings); }
+}
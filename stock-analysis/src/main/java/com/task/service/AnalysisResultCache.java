@@ -0,0 +1,383 @@
+package com.task.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Keeps the report rows of recent analyses in memory, with their instrument buckets where
+ * the analysis built them, keyed by the analysed file and the options of the analysis, and lets concurrent requests for the same analysis share one scan.
+ *
+ * A file is identified by its absolute path, size, modification time and a checksum of sampled
+ * blocks, as in {@link TickFileCache}, so an entry is never served once its file changed. A
+ * request arriving while the same analysis runs waits for that run instead of starting its
+ * own; if the run is cancelled, the waiting requests start a new one. Entries are evicted least
+ * recently used first once their estimated size exceeds {@code max-bytes}.
+ *
+ * Hits, misses, requests that joined a running analysis and evictions are counted, and
+ * published to Micrometer as {@code cache.gets}, {@code cache.evictions}, {@code cache.size}
+ * and {@code cache.bytes} with the tag {@code cache=analysis-results}.
+ */
+@Component
+public class AnalysisResultCache {
+
+    static final String CACHE_NAME = "analysis-results";
+
+    // wait this long at a time for a shared run, then check whether the waiter was cancelled
+    private static final long WAIT_MILLIS = 100;
+
+    @Value("${stock-analysis.result-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${stock-analysis.result-cache.max-bytes:67108864}")
+    private long maxBytes = 64L << 20;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, CompletableFuture<FileAnalysis>> inFlight = new HashMap<>();
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long shared;
+    private long evictions;
+    private long invalidations;
+
+    public AnalysisResultCache() {
+    }
+
+    public AnalysisResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Runs an analysis whose results are cached.
+     */
+    @FunctionalInterface
+    public interface Analysis {
+        List<String[]> run() throws IOException;
+    }
+
+    /**
+     * Runs an analysis whose rows and instrument buckets are cached.
+     */
+    @FunctionalInterface
+    public interface DetailedAnalysis {
+        FileAnalysis run() throws IOException;
+    }
+
+    @PostConstruct
+    void registerMeters() {
+        if (meterRegistry == null) {
+            return;
+        }
+        counter("cache.gets", "result", "hit", cache -> cache.getHits());
+        counter("cache.gets", "result", "miss", cache -> cache.getMisses());
+        counter("cache.gets", "result", "shared", cache -> cache.getShared());
+        counter("cache.evictions", null, null, cache -> cache.getEvictions());
+        counter("cache.invalidations", null, null, cache -> cache.getInvalidations());
+        Gauge.builder("cache.size", this, cache -> cache.getEntryCount()).tag("cache", CACHE_NAME).register(meterRegistry);
+        Gauge.builder("cache.bytes", this, cache -> cache.getBytes()).tag("cache", CACHE_NAME)
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    private void counter(String name, String tag, String tagValue, ToDoubleFunction<AnalysisResultCache> count) {
+        FunctionCounter.Builder<AnalysisResultCache> counter = FunctionCounter.builder(name, this, count).tag("cache", CACHE_NAME);
+        if (tag != null) {
+            counter.tag(tag, tagValue);
+        }
+        counter.register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the cached results of an analysis, the results of the same analysis already
+     * running, or runs it.
+     *
+     * @param filePath The analysed file.
+     * @param options Everything besides the file that changes the results; equal options
+     *                must mean equal results.
+     * @param progress Tracker of the request. A request answered from the cache or by another
+     *                 run only moves to {@link AnalysisProgress.Stage#DONE}; cancelling it stops
+     *                 the wait with a {@link CancellationException}.
+     * @param analysis Runs the analysis.
+     * @return The report rows, unmodifiable.
+     * @throws IOException If the analysis, this one or the shared one, fails to read the file.
+     */
+    public List<String[]> get(String filePath, String options, AnalysisProgress progress, Analysis analysis) throws IOException {
+        return getAnalysis(filePath, options, progress,
+                () -> new FileAnalysis(analysis.run(), Collections.emptyList())).getRows();
+    }
+
+    /**
+     * Returns the cached results of an analysis that also yields instrument buckets, see
+     * {@link #get(String, String, AnalysisProgress, Analysis)}.
+     *
+     * @param options Everything besides the file that changes the results, including whether
+     *                buckets are built.
+     * @return The results, unmodifiable.
+     * @throws IOException If the analysis, this one or the shared one, fails to read the file.
+     */
+    public FileAnalysis getAnalysis(String filePath, String options, AnalysisProgress progress, DetailedAnalysis analysis) throws IOException {
+        progress.checkCancelled();
+        if (!enabled) {
+            return analysis.run();
+        }
+        Path path = Paths.get(filePath).toAbsolutePath().normalize();
+        Key key;
+        try {
+            key = new Key(path, TickFileCache.SourceKey.of(path), options);
+        } catch (NoSuchFileException e) {
+            // the analysis reports the missing file the way it always does
+            return analysis.run();
+        }
+
+        while (true) {
+            CompletableFuture<FileAnalysis> run;
+            boolean leader = false;
+            synchronized (this) {
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    hits++;
+                    progress.setStage(AnalysisProgress.Stage.DONE);
+                    return entry.analysis;
+                }
+                run = inFlight.get(key);
+                if (run == null) {
+                    misses++;
+                    run = new CompletableFuture<>();
+                    inFlight.put(key, run);
+                    leader = true;
+                } else {
+                    shared++;
+                }
+            }
+            if (leader) {
+                return runAndStore(key, analysis, run);
+            }
+            try {
+                FileAnalysis results = await(run, progress);
+                progress.setStage(AnalysisProgress.Stage.DONE);
+                return results;
+            } catch (CancellationException e) {
+                // the run we joined was cancelled by its own requester, not by ours
+                progress.checkCancelled();
+            }
+        }
+    }
+
+    private FileAnalysis runAndStore(Key key, DetailedAnalysis analysis, CompletableFuture<FileAnalysis> run) throws IOException {
+        FileAnalysis results;
+        try {
+            results = analysis.run();
+        } catch (IOException | RuntimeException | Error e) {
+            synchronized (this) {
+                inFlight.remove(key);
+            }
+            run.completeExceptionally(e);
+            throw e;
+        }
+        // results of a file that changed while it was read are returned but not kept
+        boolean unchanged;
+        try {
+            unchanged = key.source.equals(TickFileCache.SourceKey.of(key.path));
+        } catch (IOException e) {
+            unchanged = false;
+        }
+        synchronized (this) {
+            inFlight.remove(key);
+            if (unchanged) {
+                store(key, results);
+            }
+        }
+        run.complete(results);
+        return results;
+    }
+
+    private static FileAnalysis await(CompletableFuture<FileAnalysis> run, AnalysisProgress progress) throws IOException {
+        try {
+            while (true) {
+                try {
+                    return run.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    progress.checkCancelled();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a shared analysis", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CancellationException) {
+                throw (CancellationException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void store(Key key, FileAnalysis results) {
+        long size = results.estimateBytes();
+        if (size > maxBytes) {
+            return;
+        }
+        // an older version of the file, or a file that was replaced, won't be asked for again
+        Iterator<Map.Entry<Key, Entry>> stale = entries.entrySet().iterator();
+        while (stale.hasNext()) {
+            Map.Entry<Key, Entry> entry = stale.next();
+            if (entry.getKey().path.equals(key.path) && !entry.getKey().source.equals(key.source)) {
+                bytes -= entry.getValue().bytes;
+                invalidations++;
+                stale.remove();
+            }
+        }
+        entries.put(key, new Entry(results, size));
+        bytes += size;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes;
+            evictions++;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return A rough estimate of the heap the rows take: the arrays, their strings and the
+     *         list that holds them.
+     */
+    static long estimateBytes(List<String[]> rows) {
+        long size = 64;
+        for (String[] row : rows) {
+            size += 8 + 16 + 8L * row.length;
+            for (String value : row) {
+                size += value == null ? 0 : 40 + value.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Drops the cached results of a file, whatever their options.
+     *
+     * @param filePath The analysed file.
+     * @return The number of entries dropped.
+     */
+    public synchronized int invalidate(String filePath) {
+        Path path = Paths.get(filePath).toAbsolutePath().normalize();
+        int dropped = 0;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            if (entry.getKey().path.equals(path)) {
+                bytes -= entry.getValue().bytes;
+                iterator.remove();
+                dropped++;
+            }
+        }
+        invalidations += dropped;
+        return dropped;
+    }
+
+    /**
+     * Drops every cached result.
+     *
+     * @return The number of entries dropped.
+     */
+    public synchronized int invalidateAll() {
+        int dropped = entries.size();
+        entries.clear();
+        bytes = 0;
+        invalidations += dropped;
+        return dropped;
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+
+    /**
+     * @return Requests that joined an analysis another request had started.
+     */
+    public synchronized long getShared() { return shared; }
+
+    public synchronized long getEvictions() { return evictions; }
+
+    /**
+     * @return Entries dropped explicitly or because their file changed.
+     */
+    public synchronized long getInvalidations() { return invalidations; }
+
+    public synchronized int getEntryCount() { return entries.size(); }
+
+    /**
+     * @return The estimated size of the cached results.
+     */
+    public synchronized long getBytes() { return bytes; }
+
+    public long getMaxBytes() { return maxBytes; }
+
+    private static final class Key {
+        final Path path;
+        final TickFileCache.SourceKey source;
+        final String options;
+
+        Key(Path path, TickFileCache.SourceKey source, String options) {
+            this.path = path;
+            this.source = source;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return path.equals(other.path) && source.equals(other.source) && options.equals(other.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return (path.hashCode() * 31 + source.hashCode()) * 31 + options.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        final FileAnalysis analysis;
+        final long bytes;
+
+        Entry(FileAnalysis analysis, long bytes) {
+            this.analysis = analysis;
+            this.bytes = bytes;
+        }
+    }
+}
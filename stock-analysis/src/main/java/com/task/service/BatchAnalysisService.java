@@ -0,0 +1,207 @@
+package com.task.service;
+
+import com.task.metrics.MetricBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Analyses many files, typically one per trading day, and combines them per instrument.
+ *
+ * Files are analysed on a small pool of {@code file-parallelism} threads shared by every
+ * batch, so the number of files being read at once stays bounded. Each file goes through
+ * {@link MetricsService#analyzeFileWithBuckets}, so it is served from the result cache when
+ * unchanged and spilled when it is too large to hold, and yields its own report rows and,
+ * per instrument, a {@link MetricBucket} of counts, sums, maxima and log-histogram sketches.
+ * Only those buckets are kept for the combined metrics, so memory does not grow with the
+ * number of files.
+ *
+ * Combined gaps are the per-file gaps: within a file they span dates as in the per-file
+ * rows, but the time from the last row of one file to the first row of the next is not a
+ * gap. Combined medians are within the configured relative accuracy.
+ */
+@Service
+public class BatchAnalysisService {
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Value("${stock-analysis.batch.file-parallelism:2}")
+    private int fileParallelism;
+
+    private ExecutorService filePool;
+
+    @PostConstruct
+    void startFilePool() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        filePool = Executors.newFixedThreadPool(Math.max(1, fileParallelism), runnable -> {
+            Thread thread = new Thread(runnable, "batch-file-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stopFilePool() {
+        filePool.shutdownNow();
+    }
+
+    /**
+     * Analyses every file of a directory or glob pattern and writes one report.
+     *
+     * @param input A file, a directory (its .csv and .csv.gz files) or a glob such as {@code data/scandi-2017-04-*.csv}.
+     * @param outputPath The path of the report, see {@link BatchResult#toReportRows()}.
+     * @return The results.
+     * @throws IOException If no file matches or a file can't be read.
+     */
+    public BatchResult analyzeAndWrite(String input, String outputPath) throws IOException {
+        BatchResult result = analyze(input);
+        metricsService.writeMetricsToCSV(result.toReportRows(), outputPath);
+        return result;
+    }
+
+    /**
+     * Analyses every file of a directory or glob pattern.
+     *
+     * @param input A file, a directory (its .csv and .csv.gz files) or a glob such as {@code data/scandi-2017-04-*.csv}.
+     * @return The per-file and combined results.
+     * @throws IOException If no file matches or a file can't be read.
+     */
+    public BatchResult analyze(String input) throws IOException {
+        return analyzeFiles(resolveInputs(input));
+    }
+
+    /**
+     * Analyses the files of several batch inputs as one batch.
+     *
+     * @param inputs Files, directories or glob patterns, see {@link #analyze(String)}. A file
+     *               named by more than one input is analysed once.
+     * @return The per-file results, in input order, and the combined results.
+     * @throws IOException If an input matches no file or a file can't be read.
+     */
+    public BatchResult analyzeInputs(List<String> inputs) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String input : inputs) {
+            files.addAll(resolveInputs(input));
+        }
+        return analyzeFiles(new ArrayList<>(files));
+    }
+
+    private BatchResult analyzeFiles(List<Path> files) throws IOException {
+        List<Future<FileAnalysis>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            futures.add(filePool.submit(() -> metricsService.analyzeFileWithBuckets(file.toString(), new AnalysisProgress())));
+        }
+
+        Map<Path, List<String[]>> fileResults = new LinkedHashMap<>();
+        Map<String, MetricBucket> combined = new TreeMap<>();
+        try {
+            // merged in input order, so the combined sums are the same from run to run
+            for (int i = 0; i < futures.size(); i++) {
+                FileAnalysis result = futures.get(i).get();
+                fileResults.put(files.get(i), result.getRows());
+                for (MetricBucket instrument : result.getInstruments()) {
+                    // the file's buckets may be cached, they are merged into new ones
+                    combined.computeIfAbsent(instrument.getStockCode(), code -> new MetricBucket(code, null, 0,
+                            instrument.getLengthSeconds(), metricsService.getBucketEngine())).merge(instrument);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IOException("Batch analysis interrupted", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+
+        double[] gapPercentiles = metricsService.getGapPercentiles();
+        List<String[]> combinedRows = new ArrayList<>();
+        for (MetricBucket instrument : combined.values()) {
+            metricsService.addMetricRows(combinedRows, instrument.toInstrumentMetrics(gapPercentiles));
+        }
+        return new BatchResult(fileResults, combinedRows);
+    }
+
+    /**
+     * Lists the files named by a batch input.
+     *
+     * @param input A file, a directory or a glob pattern.
+     * @return The matching regular files, sorted by path.
+     * @throws IOException If nothing matches.
+     */
+    static List<Path> resolveInputs(String input) throws IOException {
+        Path path = Paths.get(input);
+        if (Files.isRegularFile(path)) {
+            List<Path> single = new ArrayList<>();
+            single.add(path);
+            return single;
+        }
+        Path base;
+        PathMatcher matcher;
+        int maxDepth;
+        if (Files.isDirectory(path)) {
+            base = path;
+            matcher = FileSystems.getDefault().getPathMatcher("glob:*.{csv,csv.gz}");
+            maxDepth = 1;
+        } else {
+            // the directory part before the first element with a wildcard is walked
+            int firstPattern = 0;
+            while (firstPattern < path.getNameCount() && !isPattern(path.getName(firstPattern).toString())) {
+                firstPattern++;
+            }
+            if (firstPattern == path.getNameCount()) {
+                throw new NoSuchFileException(input);
+            }
+            base = firstPattern == 0 ? (path.getRoot() != null ? path.getRoot() : Paths.get(".")) :
+                    (path.getRoot() != null ? path.getRoot().resolve(path.subpath(0, firstPattern)) : path.subpath(0, firstPattern));
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.subpath(firstPattern, path.getNameCount()));
+            maxDepth = input.contains("**") ? Integer.MAX_VALUE : path.getNameCount() - firstPattern;
+        }
+        if (!Files.isDirectory(base)) {
+            throw new NoSuchFileException(base.toString());
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(base, maxDepth)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(file -> matcher.matches(base.relativize(file)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        if (files.isEmpty()) {
+            throw new NoSuchFileException(input, null, "no input files match");
+        }
+        return files;
+    }
+
+    private static boolean isPattern(String name) {
+        return name.indexOf('*') >= 0 || name.indexOf('?') >= 0 || name.indexOf('[') >= 0 || name.indexOf('{') >= 0;
+    }
+}
@@ -0,0 +1,53 @@
+package com.task.service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a batch analysis: the metric rows of every input file and the rows of every
+ * instrument over all files combined.
+ */
+public class BatchResult {
+
+    public static final String COMBINED = "ALL";
+
+    private final Map<Path, List<String[]>> fileResults;
+    private final List<String[]> combinedResults;
+
+    BatchResult(Map<Path, List<String[]>> fileResults, List<String[]> combinedResults) {
+        this.fileResults = Collections.unmodifiableMap(fileResults);
+        this.combinedResults = Collections.unmodifiableList(combinedResults);
+    }
+
+    /**
+     * @return The {stock code, metric, value} rows per input file, in input order.
+     */
+    public Map<Path, List<String[]>> getFileResults() { return fileResults; }
+
+    /**
+     * @return The {stock code, metric, value} rows of every instrument over all files.
+     */
+    public List<String[]> getCombinedResults() { return combinedResults; }
+
+    /**
+     * @return Report rows {file, stock code, metric, value} with a header, the per-file rows
+     *         first and then the combined rows under the file name {@value #COMBINED}.
+     */
+    public List<String[]> toReportRows() {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[]{"File", "Stock Code", "Metric", "Value"});
+        for (Map.Entry<Path, List<String[]>> file : fileResults.entrySet()) {
+            String name = file.getKey().getFileName().toString();
+            for (String[] row : file.getValue()) {
+                rows.add(new String[]{name, row[0], row[1], row[2]});
+            }
+        }
+        for (String[] row : combinedResults) {
+            rows.add(new String[]{COMBINED, row[0], row[1], row[2]});
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,108 @@
+package com.task.service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the disk use of the cache directory that {@link TickFileCache} and
+ * {@link TickBlockIndexCache} share.
+ *
+ * Both caches touch a file whenever they use it, so its modification time tells when it was
+ * last needed. After each write, files unused for longer than the age limit are deleted, then
+ * the least recently used ones until the rest fit the size limit. Deleting a file another
+ * process is about to read only costs that process a rebuild.
+ */
+final class CacheEviction {
+
+    private static final String[] SUFFIXES = {".ticks", ".idx"};
+
+    private CacheEviction() {
+    }
+
+    /**
+     * Marks a cache file as used now.
+     */
+    static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // evicted first at worst
+        }
+    }
+
+    /**
+     * Deletes the cache files of a directory that are too old or don't fit.
+     *
+     * @param directory The cache directory.
+     * @param maxBytes Size limit of the cache files together, 0 for none.
+     * @param maxAgeDays Days a file may go unused, 0 for no limit.
+     */
+    static void evict(Path directory, long maxBytes, int maxAgeDays) {
+        if (maxBytes <= 0 && maxAgeDays <= 0) {
+            return;
+        }
+        List<CacheFile> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (isCacheFile(entry)) {
+                    try {
+                        BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                        files.add(new CacheFile(entry, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    } catch (IOException e) {
+                        // deleted meanwhile
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Can't list cache directory " + directory + ": " + e);
+            return;
+        }
+        files.sort(Comparator.comparingLong((CacheFile file) -> file.lastUsed).reversed());
+        long oldest = maxAgeDays > 0 ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAgeDays) : Long.MIN_VALUE;
+        long kept = 0;
+        boolean full = false;
+        for (CacheFile file : files) {
+            // once a file doesn't fit, every less recently used one goes too
+            full = full || (maxBytes > 0 && kept + file.size > maxBytes);
+            if (!full && file.lastUsed >= oldest) {
+                kept += file.size;
+                continue;
+            }
+            try {
+                Files.deleteIfExists(file.path);
+            } catch (IOException e) {
+                // in use on Windows, tried again after the next write
+            }
+        }
+    }
+
+    private static boolean isCacheFile(Path file) {
+        String name = file.getFileName().toString();
+        for (String suffix : SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class CacheFile {
+        final Path path;
+        final long size;
+        final long lastUsed;
+
+        CacheFile(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -3,27 +3,347 @@ package com.task.service;
 import com.opencsv.CSVReader;
 import com.opencsv.exceptions.CsvException;
 import com.task.model.StockData;
+import com.task.model.TickStore;
+import com.task.parser.ByteStringDictionary;
+import com.task.parser.CompressedTickReader;
+import com.task.parser.TickCsvParser;
+import com.task.parser.TickFilter;
+import com.task.parser.TickSample;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Service
 public class DataService {
 
+    /** Rows outside auction periods: {@link #filterAuctionPeriods(TickStore)} as a pushable filter. */
+    public static final TickFilter AUCTION_FILTER = TickFilter.ALL
+            .excludeTimeWindow(32400.0, 61200.0)
+            .excludeCrossedQuotes()
+            .requireUpdateType(1);
+
+    /** Rows with the 'XT' condition code or none: {@link #filterByConditionCode(TickStore)} as a pushable filter. */
+    public static final TickFilter CONDITION_CODE_FILTER = TickFilter.ALL.allowConditionCodes("XT", "");
+
+    /** Both filters of the analysis pipeline, applied while parsing. */
+    public static final TickFilter ANALYSIS_FILTER = AUCTION_FILTER.allowConditionCodes("XT", "");
+
+    /**
+     * Heap taken by one analysed row: its columns, its sort permutation and keys, and its share
+     * of the metrics kernel's gap and spread buffers.
+     */
+    static final int ANALYSED_ROW_BYTES = TickSpill.RECORD_BYTES + 2 * Integer.BYTES + Long.BYTES + 3 * Double.BYTES;
+
+    private static final int MAX_SPILL_PARTITIONS = 256;
+
+    @Value("${stock-analysis.ingest.parallelism:0}")
+    private int ingestParallelism;
+
+    @Value("${stock-analysis.ingest.decompression.buffers:4}")
+    private int decompressionBuffers = CompressedTickReader.DEFAULT_BUFFERS;
+
+    @Value("${stock-analysis.ingest.decompression.buffer-bytes:4194304}")
+    private int decompressionBufferBytes = CompressedTickReader.DEFAULT_BUFFER_BYTES;
+
+    @Value("${stock-analysis.out-of-core.mode:auto}")
+    private String outOfCoreMode = "auto";
+
+    @Value("${stock-analysis.out-of-core.memory-budget-bytes:0}")
+    private long memoryBudgetBytes;
+
+    @Value("${stock-analysis.out-of-core.directory:${java.io.tmpdir}/stock-analysis-spill}")
+    private String spillDirectory = System.getProperty("java.io.tmpdir") + "/stock-analysis-spill";
+
+    @Autowired(required = false)
+    private TickFileCache tickFileCache;
+
+    @Autowired(required = false)
+    private TickBlockIndexCache blockIndexCache;
+
+    private ExecutorService ingestPool;
+
     /**
      * Loads CSV data from the specified file path.
-     * 
+     *
+     * The file is memory-mapped and parsed from raw bytes by {@link TickCsvParser}; rows with
+     * fewer columns than the scandi layout are skipped. Gzip and BGZF files are decompressed
+     * while they are parsed.
+     *
+     * @param filePath The path to the CSV file.
+     * @return A list of StockData objects representing the data in the CSV file.
+     * @throws IOException If there is an issue reading the file.
+     */
+    public List<StockData> loadCSVData(String filePath) throws IOException {
+        List<StockData> stockDataList = new ArrayList<>();
+        TickCsvParser parser = new TickCsvParser();
+        parser.setDecompressor(decompressor());
+        parser.parse(Paths.get(filePath), row -> {
+            StockData data = new StockData();
+            data.setBloombergCode(row.getBloombergCode());
+            data.setBidPrice(row.getBidPrice());
+            data.setAskPrice(row.getAskPrice());
+            data.setTradePrice(row.getTradePrice());
+            data.setBidVolume(row.getBidVolume());
+            data.setAskVolume(row.getAskVolume());
+            data.setTradeVolume(row.getTradeVolume());
+            data.setUpdateType(row.getUpdateType());
+            data.setDate(row.getDate());
+            data.setTimeInSecondsPastMidnight(row.getTimeInSecondsPastMidnight());
+            data.setConditionCodes(row.getConditionCodes());
+            stockDataList.add(data);
+        });
+        reportParseProblems(filePath, parser.getRowsSkipped(), parser.getFieldsDefaulted());
+        return stockDataList;
+    }
+
+    /**
+     * Loads CSV data from the specified file path into a columnar {@link TickStore}.
+     *
+     * When the {@link TickFileCache} is enabled, a file that was loaded before is read back from
+     * its binary cache instead of being parsed again.
+     *
+     * @param filePath The path to the CSV file.
+     * @return A TickStore holding every row of the file.
+     * @throws IOException If there is an issue reading the file.
+     */
+    public TickStore loadTickStore(String filePath) throws IOException {
+        return loadTickStore(filePath, TickFilter.ALL, null);
+    }
+
+    /**
+     * Loads the rows of a CSV file that pass a filter into a {@link TickStore}, reporting rows
+     * and bytes to a progress tracker. The filter is applied while parsing, so rejected rows
+     * never take up memory.
+     *
+     * A filter that keeps only some codes, dates or a time window is answered from the file's
+     * {@link TickBlockIndex} when it is enabled: only the byte ranges that can hold matching rows
+     * are parsed, and the result isn't cached. Compressed files have no block index and are
+     * always parsed whole.
+     *
+     * @param filePath The path to the CSV file.
+     * @param filter Rows to keep, for example {@link #ANALYSIS_FILTER}.
+     * @param progress Tracker of this load, or null. The load stops with a
+     *                 {@link java.util.concurrent.CancellationException} once it is cancelled.
+     * @return A TickStore holding the accepted rows of the file, in file order.
+     * @throws IOException If there is an issue reading the file.
+     */
+    public TickStore loadTickStore(String filePath, TickFilter filter, AnalysisProgress progress) throws IOException {
+        Path path = Paths.get(filePath);
+        if (filter.isSelective() && blockIndexCache != null && blockIndexCache.isEnabled()
+                && !CompressedTickReader.isCompressed(path)) {
+            return loadRanges(path, filter, progress);
+        }
+        if (progress != null) {
+            progress.setTotalBytes(Files.size(path));
+        }
+        TickStore store;
+        if (filter.isSelective()) {
+            // one cache file per selection would only fill the cache directory
+            store = parseTickStore(path, filter, progress);
+        } else if (tickFileCache != null && tickFileCache.isEnabled()) {
+            String variant = filter.acceptsAll() ? "" : filter.describe();
+            store = tickFileCache.load(path, variant, () -> parseTickStore(path, filter, progress));
+        } else {
+            store = parseTickStore(path, filter, progress);
+        }
+        if (progress != null) {
+            // a cache hit reads everything at once
+            progress.addLoaded(store.size() - progress.getRowsLoaded(), progress.getTotalBytes() - progress.getBytesRead());
+        }
+        return store;
+    }
+
+    /**
+     * Whether a file is analysed out of core with {@link #ANALYSIS_FILTER}, see
+     * {@link #isOutOfCore(String, TickFilter)}.
+     */
+    public boolean isOutOfCore(String filePath) throws IOException {
+        return isOutOfCore(filePath, ANALYSIS_FILTER);
+    }
+
+    /**
+     * Whether a file is analysed out of core, one partition of instruments at a time, rather
+     * than loaded whole. In "auto" mode that is the case once the rows the filter keeps, as
+     * estimated by a {@link TickSample}, would take more than the memory budget once loaded and
+     * analysed. Rows the filter drops never take memory, so a large file of mostly auction rows
+     * still stays in memory.
+     *
+     * @param filePath The path to the CSV file.
+     * @param filter The rows the analysis keeps.
+     * @return True to analyse the file through {@link #spillByCode(String, TickFilter, AnalysisProgress)}.
+     * @throws IOException If the file can't be read.
+     */
+    public boolean isOutOfCore(String filePath, TickFilter filter) throws IOException {
+        switch (outOfCoreMode) {
+            case "always":
+                return true;
+            case "never":
+                return false;
+            case "auto":
+                return estimateAnalysedBytes(Paths.get(filePath), filter) > getMemoryBudgetBytes();
+            default:
+                throw new IllegalStateException("Unknown stock-analysis.out-of-core.mode: " + outOfCoreMode);
+        }
+    }
+
+    private static long estimateAnalysedBytes(Path path, TickFilter filter) throws IOException {
+        return TickSample.of(path, filter).estimateAcceptedRows() * ANALYSED_ROW_BYTES;
+    }
+
+    /**
+     * @return Heap the analysed rows of a file may fill: the configured budget, or half of the
+     *         maximum heap. The other half is left to the copies a load makes while its columns
+     *         grow and to the rest of the application.
+     */
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes > 0 ? memoryBudgetBytes : Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    /**
+     * @return Most rows an out-of-core analysis loads at once within the memory budget.
+     */
+    public long getRowsPerLoad() {
+        return Math.max(1, getMemoryBudgetBytes() / ANALYSED_ROW_BYTES);
+    }
+
+    /**
+     * Streams the rows of a CSV file that pass a filter into temporary partition files, hashed
+     * by instrument. There are about twice as many partitions as budgets its kept rows would fill, so
+     * most partitions load in one read of {@link #getRowsPerLoad()} rows.
+     *
+     * @param filePath The path to the CSV file.
+     * @param filter Rows to keep.
+     * @param progress Tracker of this run, or null. The spill stops with a
+     *                 {@link java.util.concurrent.CancellationException} once it is cancelled.
+     * @return The spilled rows. Closing it removes the partition files.
+     * @throws IOException If there is an issue reading the file or writing a partition.
+     */
+    public TickSpill spillByCode(String filePath, TickFilter filter, AnalysisProgress progress) throws IOException {
+        Path path = Paths.get(filePath);
+        long size = Files.size(path);
+        if (progress != null) {
+            progress.setTotalBytes(size);
+        }
+        long budgets = (estimateAnalysedBytes(path, filter) + getMemoryBudgetBytes() - 1) / getMemoryBudgetBytes();
+        int partitions = (int) Math.max(1, Math.min(MAX_SPILL_PARTITIONS, 2 * budgets));
+        TickSpill spill = TickSpill.write(path, filter, partitions, Paths.get(spillDirectory), progress, decompressor());
+        reportParseProblems(filePath, spill.getRowsSkipped(), spill.getFieldsDefaulted());
+        return spill;
+    }
+
+    private TickStore loadRanges(Path path, TickFilter filter, AnalysisProgress progress) throws IOException {
+        TickBlockIndex index = blockIndexCache.load(path, blockBytes -> buildBlockIndex(path, blockBytes));
+        long[] ranges = index.ranges(filter);
+        if (progress != null) {
+            long bytes = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                bytes += ranges[i + 1] - ranges[i];
+            }
+            progress.setTotalBytes(bytes);
+        }
+        ParallelTickLoader loader = new ParallelTickLoader(ingestPool(), ingestThreads(), ParallelTickLoader.DEFAULT_MIN_CHUNK_BYTES);
+        loader.setFilter(filter);
+        loader.setProgress(progress);
+        TickStore store = loader.load(path, ranges);
+        reportParseProblems(path.toString(), loader.getRowsSkipped(), loader.getFieldsDefaulted(), loader.getRangesReparsed());
+        return store;
+    }
+
+    /**
+     * Scans a file for its {@link TickBlockIndex}, splitting it like a load.
+     *
+     * @param path The tick file.
+     * @param blockBytes Target size of an index block.
+     * @return The index.
+     * @throws IOException If there is an issue reading the file.
+     */
+    public TickBlockIndex buildBlockIndex(Path path, long blockBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] bounds = ParallelTickLoader.splitPoints(channel, ingestThreads(), ParallelTickLoader.DEFAULT_MIN_CHUNK_BYTES);
+            return TickBlockIndex.build(channel, bounds, blockBytes, ingestPool());
+        }
+    }
+
+    private TickStore parseTickStore(Path path, TickFilter filter, AnalysisProgress progress) throws IOException {
+        ParallelTickLoader loader = new ParallelTickLoader(ingestPool(), ingestThreads(), ParallelTickLoader.DEFAULT_MIN_CHUNK_BYTES);
+        loader.setFilter(filter);
+        loader.setProgress(progress);
+        loader.setDecompressor(decompressor());
+        TickStore store = loader.load(path);
+        reportParseProblems(path.toString(), loader.getRowsSkipped(), loader.getFieldsDefaulted(), loader.getRangesReparsed());
+        return store;
+    }
+
+    private CompressedTickReader decompressor() {
+        return new CompressedTickReader(ingestPool(), ingestThreads(), decompressionBuffers, decompressionBufferBytes);
+    }
+
+    private void reportParseProblems(String filePath, long rowsSkipped, long fieldsDefaulted) {
+        reportParseProblems(filePath, rowsSkipped, fieldsDefaulted, 0);
+    }
+
+    private void reportParseProblems(String filePath, long rowsSkipped, long fieldsDefaulted, long rangesReparsed) {
+        if (rowsSkipped > 0 || fieldsDefaulted > 0) {
+            System.err.println("Parsed " + filePath + ": " + rowsSkipped + " malformed rows skipped, "
+                    + fieldsDefaulted + " unparseable numeric fields defaulted to 0");
+        }
+        if (rangesReparsed > 0) {
+            System.err.println("Parsed " + filePath + ": " + rangesReparsed
+                    + " ranges again on one thread, a chunk cut fell inside a quoted field");
+        }
+    }
+
+    private int ingestThreads() {
+        return ingestParallelism > 0 ? ingestParallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    private synchronized ExecutorService ingestPool() {
+        // created on first use so a DataService built outside Spring works too
+        if (ingestPool == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            ingestPool = Executors.newFixedThreadPool(ingestThreads(), runnable -> {
+                Thread thread = new Thread(runnable, "ingest-worker-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return ingestPool;
+    }
+
+    @PreDestroy
+    synchronized void stopIngestPool() {
+        if (ingestPool != null) {
+            ingestPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Loads CSV data through OpenCSV. This was the original loader and is kept as a reference
+     * for {@link #loadCSVData(String)} in tests and benchmarks.
+     *
      * @param filePath The path to the CSV file.
      * @return A list of StockData objects representing the data in the CSV file.
      * @throws IOException If there is an issue reading the file.
      * @throws CsvException If there is an issue parsing the CSV file.
      */
-    public List<StockData> loadCSVData(String filePath) throws IOException, CsvException {
+    public List<StockData> loadCSVDataWithOpenCsv(String filePath) throws IOException, CsvException {
         List<StockData> stockDataList = new ArrayList<>();
         try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
             String[] nextLine;
@@ -84,6 +404,19 @@ public class DataService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Filters out auction periods based on specific condition codes and crossed spreads.
+     * The store is compacted in place.
+     *
+     * @param data The TickStore to filter.
+     * @return The same store, holding only the rows outside auction periods.
+     */
+    public TickStore filterAuctionPeriods(TickStore data) {
+        data.retainRows(row -> AUCTION_FILTER.acceptsQuote(data.getUpdateType(row), data.getBidPrice(row),
+                data.getAskPrice(row), data.getTimeInSecondsPastMidnight(row)));
+        return data;
+    }
+
     /**
      * Determines if a StockData entry is within an auction period based on specific condition codes and crossed spreads.
      * 
@@ -108,6 +441,23 @@ public class DataService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Excludes entries without the 'XT' condition code or with no condition code.
+     * The check runs once per distinct condition code and the store is compacted in place.
+     *
+     * @param data The TickStore to filter.
+     * @return The same store, holding only rows with the 'XT' condition code or no condition code.
+     */
+    public TickStore filterByConditionCode(TickStore data) {
+        ByteStringDictionary conditions = data.getConditions();
+        boolean[] accepted = new boolean[conditions.size()];
+        for (int id = 0; id < accepted.length; id++) {
+            accepted[id] = CONDITION_CODE_FILTER.acceptsConditionCodes(conditions.get(id));
+        }
+        data.retainRows(row -> accepted[data.getConditionId(row)]);
+        return data;
+    }
+
     /**
      * Sorts the data by date and time in seconds past midnight.
      * 
@@ -120,4 +470,72 @@ public class DataService {
                                   .thenComparing(StockData::getTimeInSecondsPastMidnight))
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Sorts the data by date and time in seconds past midnight. The sort is stable and works on
+     * primitive keys, see {@link TickSorter}; rows that are already in order aren't moved.
+     *
+     * @param data The TickStore to sort.
+     * @return The same store with its rows reordered by date and time.
+     */
+    public TickStore sortDataByDateTime(TickStore data) {
+        int[] order = TickSorter.sortOrder(data, false);
+        if (order != null) {
+            data.permute(order);
+        }
+        return data;
+    }
+
+    /**
+     * Sorts the data by instrument, then date and time, in one stable permutation. This is the
+     * order {@link #sortDataByDateTime(TickStore)} followed by {@link #groupByCode(TickStore)}
+     * produces, and {@link #groupByCode(TickStore)} on the result only computes the offsets.
+     *
+     * @param data The TickStore to sort.
+     * @return The same store with its rows reordered by code id, date and time.
+     */
+    public TickStore sortByCodeDateTime(TickStore data) {
+        int[] order = TickSorter.sortOrder(data, true);
+        if (order != null) {
+            data.permute(order);
+        }
+        return data;
+    }
+
+    /**
+     * Groups the rows by instrument. Rows of the same instrument become contiguous and keep
+     * their relative order, so a date/time sort done beforehand still holds inside each group.
+     *
+     * @param data The TickStore to group.
+     * @return Offsets indexed by code id: the rows of code {@code id} are [offsets[id], offsets[id + 1]).
+     */
+    public int[] groupByCode(TickStore data) {
+        int size = data.size();
+        int[] offsets = new int[data.getCodes().size() + 1];
+        for (int row = 0; row < size; row++) {
+            offsets[data.getCodeId(row) + 1]++;
+        }
+        for (int id = 1; id < offsets.length; id++) {
+            offsets[id] += offsets[id - 1];
+        }
+        if (isGroupedByCode(data)) {
+            return offsets;
+        }
+        int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+        int[] order = new int[size];
+        for (int row = 0; row < size; row++) {
+            order[next[data.getCodeId(row)]++] = row;
+        }
+        data.permute(order);
+        return offsets;
+    }
+
+    private static boolean isGroupedByCode(TickStore data) {
+        for (int row = 1; row < data.size(); row++) {
+            if (data.getCodeId(row) < data.getCodeId(row - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
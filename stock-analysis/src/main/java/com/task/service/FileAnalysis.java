@@ -0,0 +1,43 @@
+package com.task.service;
+
+import com.task.metrics.MetricBucket;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Results of analysing one file: its report rows and, for analyses that ask for them, one
+ * {@link MetricBucket} per instrument holding the same metrics in mergeable form. Both are
+ * unmodifiable, and the buckets are shared with the {@link AnalysisResultCache}, so they are
+ * merged into new buckets rather than into each other.
+ */
+public class FileAnalysis {
+
+    // a bucket holds three log-histogram sketches of at most a few hundred counts each
+    private static final long BUCKET_BYTES = 4096;
+
+    private final List<String[]> rows;
+    private final List<MetricBucket> instruments;
+
+    FileAnalysis(List<String[]> rows, List<MetricBucket> instruments) {
+        this.rows = Collections.unmodifiableList(rows);
+        this.instruments = Collections.unmodifiableList(instruments);
+    }
+
+    /**
+     * @return One {stock code, metric, value} row per metric and instrument.
+     */
+    public List<String[]> getRows() { return rows; }
+
+    /**
+     * @return One bucket per instrument, ordered by stock code, or none if they weren't asked for.
+     */
+    public List<MetricBucket> getInstruments() { return instruments; }
+
+    /**
+     * @return A rough estimate of the heap the results take.
+     */
+    long estimateBytes() {
+        return AnalysisResultCache.estimateBytes(rows) + instruments.size() * BUCKET_BYTES;
+    }
+}
@@ -0,0 +1,189 @@
+package com.task.service;
+
+import com.task.metrics.IntradayIndex;
+import com.task.metrics.MetricBucket;
+import com.task.metrics.QuantileEngine;
+import com.task.model.TickStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps {@link IntradayIndex}es of recently queried files so range queries are answered from
+ * memory.
+ *
+ * An index is built on the first query of a file, with the same filters as the report, and is
+ * rebuilt once the file's size or modification time changes. Concurrent first queries of a
+ * file share one build. Only the most recently used {@code retained-indexes} stay in memory.
+ * Medians come from log-histogram sketches within the configured relative accuracy, because
+ * those merge into hour and day rollups without keeping every value.
+ */
+@Service
+public class IntradayService {
+
+    @Autowired
+    private DataService dataService;
+
+    @Value("${stock-analysis.intraday.bucket-minutes:5}")
+    private int bucketMinutes;
+
+    @Value("${stock-analysis.intraday.retained-indexes:4}")
+    private int retainedIndexes;
+
+    @Value("${stock-analysis.quantiles.relative-accuracy:0.01}")
+    private double quantileRelativeAccuracy;
+
+    private final Map<Path, IndexedFile> indexes = new LinkedHashMap<Path, IndexedFile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, IndexedFile> eldest) {
+            return size() > Math.max(1, retainedIndexes);
+        }
+    };
+
+    // builds in progress, and queries that joined one, guarded by the indexes lock
+    private final Map<Path, Build> building = new HashMap<>();
+    private long shared;
+
+    /**
+     * Returns the buckets of one instrument over a time range, building the file's index if needed.
+     *
+     * @param filePath The path to the CSV file.
+     * @param stockCode The instrument.
+     * @param date The date, or null for every date.
+     * @param fromSecond Start of the range in seconds past midnight, inclusive.
+     * @param toSecond End of the range in seconds past midnight, exclusive.
+     * @param rollupMinutes Length of the returned windows, 0 for the bucket length.
+     * @return The non-empty windows overlapping the range, ordered by date and time.
+     * @throws IOException If there is an issue reading the file.
+     */
+    public List<MetricBucket> query(String filePath, String stockCode, String date, int fromSecond, int toSecond,
+                                    int rollupMinutes) throws IOException {
+        IntradayIndex index = getIndex(filePath);
+        return index.query(stockCode, date, fromSecond, toSecond, rollupMinutes > 0 ? rollupMinutes : index.getBucketMinutes());
+    }
+
+    /**
+     * @param filePath The path to the CSV file.
+     * @return The index of the file, built now unless an index of its current contents is retained.
+     * @throws IOException If there is an issue reading the file.
+     */
+    public IntradayIndex getIndex(String filePath) throws IOException {
+        Path path = Paths.get(filePath).toAbsolutePath();
+        long size = Files.size(path);
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        Build build;
+        boolean leader = false;
+        synchronized (indexes) {
+            IndexedFile indexed = indexes.get(path);
+            if (indexed != null && indexed.size == size && indexed.modified == modified) {
+                return indexed.index;
+            }
+            build = building.get(path);
+            if (build == null || build.size != size || build.modified != modified) {
+                build = new Build(size, modified);
+                building.put(path, build);
+                leader = true;
+            } else {
+                shared++;
+            }
+        }
+        if (!leader) {
+            // another query of the same file is building its index
+            return await(build);
+        }
+        // built outside the lock, queries of other files don't wait for it
+        IntradayIndex index;
+        try {
+            TickStore data = dataService.loadTickStore(filePath, DataService.ANALYSIS_FILTER, new AnalysisProgress());
+            data = dataService.sortByCodeDateTime(data);
+            int[] groupOffsets = dataService.groupByCode(data);
+            index = IntradayIndex.build(data, groupOffsets, bucketMinutes,
+                    QuantileEngine.logHistogram(quantileRelativeAccuracy));
+        } catch (IOException | RuntimeException | Error e) {
+            synchronized (indexes) {
+                building.remove(path, build);
+            }
+            build.index.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (indexes) {
+            building.remove(path, build);
+            indexes.put(path, new IndexedFile(index, size, modified));
+        }
+        build.index.complete(index);
+        return index;
+    }
+
+    private static IntradayIndex await(Build build) throws IOException {
+        try {
+            return build.index.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a shared index build", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return Queries that waited for an index another query was building.
+     */
+    long getShared() {
+        synchronized (indexes) {
+            return shared;
+        }
+    }
+
+    /**
+     * Drops the index of a file, if any.
+     */
+    public void invalidate(String filePath) {
+        synchronized (indexes) {
+            indexes.remove(Paths.get(filePath).toAbsolutePath());
+        }
+    }
+
+    /**
+     * An index being built from a file of a given size and modification time.
+     */
+    private static final class Build {
+        final CompletableFuture<IntradayIndex> index = new CompletableFuture<>();
+        final long size;
+        final long modified;
+
+        Build(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private static final class IndexedFile {
+        final IntradayIndex index;
+        final long size;
+        final long modified;
+
+        IndexedFile(IntradayIndex index, long size, long modified) {
+            this.index = index;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
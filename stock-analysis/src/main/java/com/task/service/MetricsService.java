@@ -1,33 +1,97 @@
 package com.task.service;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.opencsv.CSVWriter;
-import com.opencsv.exceptions.CsvException;
-import com.task.model.StockData;
+import com.task.metrics.InstrumentMetrics;
+import com.task.metrics.InstrumentMetricsKernel;
+import com.task.metrics.MetricBucket;
+import com.task.metrics.QuantileEngine;
+import com.task.model.TickStore;
+import com.task.parser.TickFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.FileWriter;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 @Service
 public class MetricsService {
 
+    /** Formats {@link #writeReport(List, String, String)} writes. */
+    public static final List<String> REPORT_FORMATS = Collections.unmodifiableList(Arrays.asList("csv", "tsv", "json"));
+
     @Autowired
     private DataService dataService;
 
-    private List<String[]> metricsData;
+    @Autowired
+    private PipelineInstrumentation instrumentation;
 
-    public MetricsService() {
-        this.metricsData = new ArrayList<>();
-        // Add CSV header
-        this.metricsData.add(new String[]{
-                "Stock Code", "Metric", "Value"
-        });
+    @Autowired
+    private AnalysisResultCache resultCache;
+
+    @Value("${stock-analysis.metrics.parallelism:0}")
+    private int parallelism;
+
+    @Value("${stock-analysis.quantiles.mode:exact}")
+    private String quantileMode;
+
+    @Value("${stock-analysis.quantiles.relative-accuracy:0.01}")
+    private double quantileRelativeAccuracy;
+
+    @Value("${stock-analysis.metrics.gap-percentiles:}")
+    private double[] gapPercentiles = new double[0];
+
+    @Value("${stock-analysis.report.path:../analysis.csv}")
+    private String reportPath = "../analysis.csv";
+
+    // concurrent runs write the report one at a time
+    private final Object reportLock = new Object();
+
+    // work-stealing pool for per-instrument metrics, each worker keeps its own kernel buffers
+    private ForkJoinPool metricsPool;
+    private QuantileEngine quantileEngine;
+    // instrument buckets are merged across files, so their sketches must be mergeable
+    private QuantileEngine bucketEngine;
+    private final ThreadLocal<InstrumentMetricsKernel> kernels =
+            ThreadLocal.withInitial(() -> new InstrumentMetricsKernel(quantileEngine, gapPercentiles));
+
+    @PostConstruct
+    void startMetricsPool() {
+        this.quantileEngine = QuantileEngine.forMode(quantileMode, quantileRelativeAccuracy);
+        this.bucketEngine = QuantileEngine.logHistogram(quantileRelativeAccuracy);
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.metricsPool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("metrics-worker-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    @PreDestroy
+    void stopMetricsPool() {
+        metricsPool.shutdownNow();
     }
 
     /**
@@ -35,217 +99,360 @@ public class MetricsService {
      *
      * @param filePath The path to the CSV file.
      * @throws IOException If there is an issue reading the file.
-     * @throws CsvException If there is an issue parsing the CSV file.
      */
-    public void calculateMetrics(String filePath) throws IOException, CsvException {
-        List<StockData> data = dataService.loadCSVData(filePath);
-        data = dataService.filterAuctionPeriods(data);
-        data = dataService.filterByConditionCode(data);
-        data = dataService.sortDataByDateTime(data);
-
-        // Group data by stock identifier
-        Map<String, List<StockData>> groupedData = data.stream()
-                .collect(Collectors.groupingBy(StockData::getBloombergCode));
-
-        // Calculate metrics for each stock
-        for (Map.Entry<String, List<StockData>> entry : groupedData.entrySet()) {
-            String stockCode = entry.getKey();
-            List<StockData> stockData = entry.getValue();
-
-            calculateMeanTimeBetweenTrades(stockCode, stockData);
-            calculateMedianTimeBetweenTrades(stockCode, stockData);
-            calculateLongestTimeBetweenTrades(stockCode, stockData);
-            calculateMeanTimeBetweenTickChanges(stockCode, stockData);
-            calculateMedianTimeBetweenTickChanges(stockCode, stockData);
-            calculateLongestTimeBetweenTickChanges(stockCode, stockData);
-            calculateMeanBidAskSpread(stockCode, stockData);
-            calculateMedianBidAskSpread(stockCode, stockData);
-            analyzeRoundNumberEffect(stockCode, stockData);
-        }
-
-        // Correct file path to store the output in analysis.csv
-        writeMetricsToCSV("../analysis.csv");
+    public void calculateMetrics(String filePath) throws IOException {
+        calculateMetrics(filePath, DataService.ANALYSIS_FILTER);
     }
 
-    private void calculateMeanTimeBetweenTrades(String stockCode, List<StockData> data) {
-        // function to calculate Mean Time Between Trades
-        List<StockData> trades = data.stream()
-                .filter(d -> d.getUpdateType() == 1)
-                .sorted(Comparator.comparing(StockData::getDate)
-                        .thenComparing(StockData::getTimeInSecondsPastMidnight))
-                .collect(Collectors.toList());
-
-        List<Double> timeDifferences = new ArrayList<>();
-        for (int i = 1; i < trades.size(); i++) {
-            Double timeDifference = trades.get(i).getTimeInSecondsPastMidnight() - trades.get(i - 1).getTimeInSecondsPastMidnight();
-            // System.out.println(data.get(i).getTimeInSecondsPastMidnight()+ " " + data.get(i-1).getTimeInSecondsPastMidnight()+ " " + timeDifference);
-            if(timeDifference > 0.0){
-                timeDifferences.add(timeDifference);
-            }
-        }
+    /**
+     * Calculates and prints all required metrics for the rows of the given CSV file that pass
+     * a filter, for example {@link DataService#ANALYSIS_FILTER} narrowed to one instrument.
+     *
+     * @param filePath The path to the CSV file.
+     * @param filter The rows to analyse.
+     * @throws IOException If there is an issue reading the file.
+     */
+    public void calculateMetrics(String filePath, TickFilter filter) throws IOException {
+        List<String[]> metricsData = new ArrayList<>();
+        // Add CSV header
+        metricsData.add(new String[]{
+                "Stock Code", "Metric", "Value"
+        });
+        AnalysisProgress progress = new AnalysisProgress();
+        metricsData.addAll(analyzeFile(filePath, filter, progress));
 
-        double meanTimeBetweenTrades = timeDifferences.stream().mapToDouble(Double::doubleValue).average().orElse(0);
-        metricsData.add(new String[]{stockCode, "Mean Time Between Trades", String.valueOf(meanTimeBetweenTrades)});
+        PipelineInstrumentation.StageStart write = instrumentation.start("write");
+        writeMetricsToCSV(metricsData, reportPath);
+        instrumentation.finish(write, progress, metricsData.size() - 1, metricsData.size() - 1, 0);
     }
 
-    private void calculateMedianTimeBetweenTrades(String stockCode, List<StockData> data) {
-        // function to calculate Median Time Between Trades
-        List<StockData> trades = data.stream()
-                .filter(d -> d.getUpdateType() == 1)
-                .sorted(Comparator.comparing(StockData::getDate)
-                        .thenComparing(StockData::getTimeInSecondsPastMidnight))
-                .collect(Collectors.toList());
+    /**
+     * Runs the full pipeline on a CSV file and returns the metric rows without writing them.
+     *
+     * @param filePath The path to the CSV file.
+     * @return One {stock code, metric, value} row per metric and instrument.
+     * @throws IOException If there is an issue reading the file.
+     */
+    public List<String[]> analyzeFile(String filePath) throws IOException {
+        return analyzeFile(filePath, new AnalysisProgress());
+    }
 
-        List<Double> timeDifferences = new ArrayList<>();
-        for (int i = 1; i < trades.size(); i++) {
-            Double timeDifference = trades.get(i).getTimeInSecondsPastMidnight() - trades.get(i - 1).getTimeInSecondsPastMidnight();
-            if(timeDifference > 0.0){
-                timeDifferences.add(timeDifference);
-            }
-        }
+    /**
+     * Runs the full pipeline on a CSV file, reporting its progress.
+     *
+     * @param filePath The path to the CSV file.
+     * @param progress Tracker of this run. Cancelling it stops the run with a
+     *                 {@link CancellationException} at the next batch of rows or instrument.
+     * @return One {stock code, metric, value} row per metric and instrument.
+     * @throws IOException If there is an issue reading the file.
+     */
+    public List<String[]> analyzeFile(String filePath, AnalysisProgress progress) throws IOException {
+        return analyzeFile(filePath, DataService.ANALYSIS_FILTER, progress);
+    }
 
-        double medianTimeBetweenTrades = calculateMedianDouble(timeDifferences);
-        metricsData.add(new String[]{stockCode, "Median Time Between Trades", String.valueOf(medianTimeBetweenTrades)});
+    /**
+     * Runs the full pipeline on the rows of a CSV file that pass a filter, reporting its progress.
+     * The rows of an unchanged file analysed with the same options come from the
+     * {@link AnalysisResultCache}, and a request for an analysis that is already running waits
+     * for it instead of scanning the file again.
+     *
+     * @param filePath The path to the CSV file.
+     * @param filter The rows to analyse. A filter narrowed to codes, dates or a time window only
+     *               reads the parts of the file its block index points to.
+     * @param progress Tracker of this run. Cancelling it stops the run with a
+     *                 {@link CancellationException} at the next batch of rows or instrument.
+     * @return One {stock code, metric, value} row per metric and instrument, unmodifiable.
+     * @throws IOException If there is an issue reading the file.
+     */
+    public List<String[]> analyzeFile(String filePath, TickFilter filter, AnalysisProgress progress) throws IOException {
+        // requests for the same file and options share one run and its cached rows
+        return resultCache.get(filePath, analysisOptions(filter), progress, () -> runPipeline(filePath, filter, progress, false).getRows());
     }
 
-    private void calculateLongestTimeBetweenTrades(String stockCode, List<StockData> data) {
-        // function to calculate Longest Time Between Trades
-        List<StockData> trades = data.stream()
-                .filter(d -> d.getUpdateType() == 1)
-                .sorted(Comparator.comparing(StockData::getDate)
-                        .thenComparing(StockData::getTimeInSecondsPastMidnight))
-                .collect(Collectors.toList());
+    /**
+     * Runs the full pipeline on a CSV file, as {@link #analyzeFile(String, AnalysisProgress)},
+     * and also returns one {@link MetricBucket} per instrument, built from the same rows with
+     * the same gaps as the report rows. Batches merge these to combine files.
+     *
+     * @param filePath The path to the CSV file.
+     * @param progress Tracker of this run.
+     * @return The report rows and instrument buckets, unmodifiable.
+     * @throws IOException If there is an issue reading the file.
+     */
+    FileAnalysis analyzeFileWithBuckets(String filePath, AnalysisProgress progress) throws IOException {
+        TickFilter filter = DataService.ANALYSIS_FILTER;
+        return resultCache.getAnalysis(filePath, analysisOptions(filter) + "; instrument buckets", progress,
+                () -> runPipeline(filePath, filter, progress, true));
+    }
 
-        List<Double> timeDifferences = new ArrayList<>();
-        for (int i = 1; i < trades.size(); i++) {
-            double timeDifference = trades.get(i).getTimeInSecondsPastMidnight() - trades.get(i - 1).getTimeInSecondsPastMidnight();
-            if(timeDifference > 0.0){
-                timeDifferences.add(timeDifference);
-            }
-        }
+    /**
+     * @return The engine behind the sketches of instrument buckets.
+     */
+    QuantileEngine getBucketEngine() {
+        return bucketEngine;
+    }
 
-        double longestTimeBetweenTrades = timeDifferences.stream().mapToDouble(Double::doubleValue).max().orElse(0);
-        metricsData.add(new String[]{stockCode, "Longest Time Between Trades", String.valueOf(longestTimeBetweenTrades)});
+    /**
+     * @return Everything besides the file that the metric rows of an analysis depend on.
+     */
+    private String analysisOptions(TickFilter filter) {
+        return filter.describe() + "; quantiles " + quantileMode + " " + quantileRelativeAccuracy
+                + "; gap percentiles " + Arrays.toString(gapPercentiles);
     }
 
-    private void calculateMeanTimeBetweenTickChanges(String stockCode, List<StockData> data) {
-        // function to calculate Mean Time Between Tick Changes
-        List<Double> timeDifferences = new ArrayList<>();
-        for (int i = 1; i < data.size(); i++) {
-            if(Math.abs(data.get(i).getTradePrice() - data.get(i-1).getTradePrice()) >= 0.1){
-                double timeDifference = data.get(i).getTimeInSecondsPastMidnight() - data.get(i - 1).getTimeInSecondsPastMidnight();
-                if(timeDifference > 0.0){
-                    timeDifferences.add(timeDifference);
-                }
-            }
+    private FileAnalysis runPipeline(String filePath, TickFilter filter, AnalysisProgress progress, boolean withBuckets) throws IOException {
+        if (dataService.isOutOfCore(filePath, filter)) {
+            return analyzeOutOfCore(filePath, filter, progress, withBuckets);
         }
-
-        double meanTimeBetweenTickChanges = timeDifferences.stream().mapToDouble(Double::doubleValue).average().orElse(0);
-        metricsData.add(new String[]{stockCode, "Mean Time Between Tick Changes", String.valueOf(meanTimeBetweenTickChanges)});
+        progress.setStage(AnalysisProgress.Stage.LOADING);
+        // the auction and condition code filters run inside the parser, rejected rows are never stored
+        PipelineInstrumentation.StageStart stage = instrumentation.start("load");
+        TickStore data = dataService.loadTickStore(filePath, filter, progress);
+        instrumentation.finish(stage, progress, progress.getRowsLoaded() + progress.getRowsRejected(), data.size(), progress.getBytesRead());
+        progress.setRowsRetained(data.size());
+        progress.checkCancelled();
+
+        progress.setStage(AnalysisProgress.Stage.SORTING);
+        stage = instrumentation.start("sort");
+        data = dataService.sortByCodeDateTime(data);
+        instrumentation.finish(stage, progress, data.size(), data.size(), 0);
+
+        // Group data by stock identifier, each group is a contiguous range of rows
+        stage = instrumentation.start("group");
+        int[] groupOffsets = dataService.groupByCode(data);
+        instrumentation.finish(stage, progress, data.size(), data.size(), 0);
+        progress.checkCancelled();
+
+        progress.setStage(AnalysisProgress.Stage.COMPUTING);
+        stage = instrumentation.start("metrics");
+        progress.setInstrumentsTotal(instrumentCount(groupOffsets));
+        List<String[]> rows = new ArrayList<>();
+        MetricBucket[] buckets = withBuckets ? new MetricBucket[instrumentCount(groupOffsets)] : null;
+        for (InstrumentMetrics metrics : computeInstrumentMetrics(data, groupOffsets, progress, buckets)) {
+            addMetricRows(rows, metrics);
+        }
+        instrumentation.finish(stage, progress, data.size(), data.size(), 0);
+        progress.setStage(AnalysisProgress.Stage.DONE);
+        return new FileAnalysis(rows, withBuckets ? Arrays.asList(buckets) : Collections.emptyList());
     }
 
-    private void calculateMedianTimeBetweenTickChanges(String stockCode, List<StockData> data) {
-        // function to calculate Median Time Between Tick Changes
-        List<Double> timeDifferences = new ArrayList<>();
-        for (int i = 1; i < data.size(); i++) {
-            if(Math.abs(data.get(i).getTradePrice() - data.get(i-1).getTradePrice()) >= 0.1){
-                double timeDifference = data.get(i).getTimeInSecondsPastMidnight() - data.get(i - 1).getTimeInSecondsPastMidnight();
-                if(timeDifference > 0.0){
-                    timeDifferences.add(timeDifference);
+    /**
+     * Runs the pipeline on a file too large to hold: the accepted rows are spilled to partition
+     * files by instrument in one pass, then each partition is loaded, sorted and computed on its
+     * own, in groups of instruments that fit the memory budget. The spill files are removed
+     * however the run ends.
+     */
+    private FileAnalysis analyzeOutOfCore(String filePath, TickFilter filter, AnalysisProgress progress, boolean withBuckets) throws IOException {
+        progress.setStage(AnalysisProgress.Stage.LOADING);
+        PipelineInstrumentation.StageStart stage = instrumentation.start("spill");
+        List<String[]> rows = new ArrayList<>();
+        List<MetricBucket> buckets = new ArrayList<>();
+        try (TickSpill spill = dataService.spillByCode(filePath, filter, progress)) {
+            instrumentation.finish(stage, progress, progress.getRowsLoaded() + progress.getRowsRejected(), spill.getRows(), progress.getBytesRead());
+            progress.setRowsRetained(spill.getRows());
+            progress.setInstrumentsTotal(spill.getCodeCount());
+            progress.checkCancelled();
+
+            progress.setStage(AnalysisProgress.Stage.COMPUTING);
+            stage = instrumentation.start("partitions");
+            long rowsPerLoad = dataService.getRowsPerLoad();
+            List<InstrumentMetrics> results = new ArrayList<>();
+            for (int partition = 0; partition < spill.getPartitionCount(); partition++) {
+                for (BitSet codeIds : spill.codeGroups(partition, rowsPerLoad)) {
+                    TickStore data = spill.load(partition, codeIds);
+                    if (data.size() > rowsPerLoad) {
+                        System.err.println("Instrument " + spill.getCodes().get(codeIds.nextSetBit(0)) + " of " + filePath
+                                + " has " + data.size() + " rows, more than the " + rowsPerLoad + " the memory budget allows");
+                    }
+                    data = dataService.sortByCodeDateTime(data);
+                    int[] groupOffsets = dataService.groupByCode(data);
+                    MetricBucket[] partBuckets = withBuckets ? new MetricBucket[instrumentCount(groupOffsets)] : null;
+                    results.addAll(Arrays.asList(computeInstrumentMetrics(data, groupOffsets, progress, partBuckets)));
+                    if (withBuckets) {
+                        buckets.addAll(Arrays.asList(partBuckets));
+                    }
+                    progress.checkCancelled();
                 }
             }
+            results.sort(Comparator.comparing(InstrumentMetrics::getStockCode));
+            buckets.sort(Comparator.comparing(MetricBucket::getStockCode));
+            for (InstrumentMetrics metrics : results) {
+                addMetricRows(rows, metrics);
+            }
+            instrumentation.finish(stage, progress, spill.getRows(), spill.getRows(), 0);
         }
-
-        double medianTimeBetweenTickChanges = calculateMedianDouble(timeDifferences);
-        metricsData.add(new String[]{stockCode, "Median Time Between Tick Changes", String.valueOf(medianTimeBetweenTickChanges)});
+        progress.setStage(AnalysisProgress.Stage.DONE);
+        return new FileAnalysis(rows, buckets);
     }
 
-    private void calculateLongestTimeBetweenTickChanges(String stockCode, List<StockData> data) {
-        // function to calculate Longest Time Between Tick Changes
-        List<Double> timeDifferences = new ArrayList<>();
-        for (int i = 1; i < data.size(); i++) {
-            if(Math.abs(data.get(i).getTradePrice() - data.get(i-1).getTradePrice()) >= 0.1){
-                double timeDifference = data.get(i).getTimeInSecondsPastMidnight() - data.get(i - 1).getTimeInSecondsPastMidnight();
-                timeDifferences.add(timeDifference);
+    /**
+     * Computes the metrics of every instrument on the metrics pool. The largest instruments are
+     * submitted first so they don't end up as the long tail of the run.
+     *
+     * @param data The filtered and sorted store.
+     * @param groupOffsets Row ranges per code id, as returned by {@link DataService#groupByCode(TickStore)}.
+     * @param progress Tracker of the run, counts finished instruments.
+     * @param buckets Filled with the {@link MetricBucket} of every instrument, in the order of
+     *                the metrics, or null to build none.
+     * @return The metrics of every instrument, ordered by stock code.
+     */
+    InstrumentMetrics[] computeInstrumentMetrics(TickStore data, int[] groupOffsets, AnalysisProgress progress,
+                                                 MetricBucket[] buckets) {
+        List<Integer> codeIds = new ArrayList<>();
+        for (int codeId = 0; codeId < groupOffsets.length - 1; codeId++) {
+            if (groupOffsets[codeId + 1] > groupOffsets[codeId]) {
+                codeIds.add(codeId);
             }
         }
+        // output order is fixed by stock code so the report is identical from run to run
+        codeIds.sort(Comparator.comparing(id -> data.getCodes().get(id)));
 
-        double longestTimeBetweenTickChanges = timeDifferences.stream().mapToDouble(Double::doubleValue).max().orElse(0);
-        metricsData.add(new String[]{stockCode, "Longest Time Between Tick Changes", String.valueOf(longestTimeBetweenTickChanges)});
+        Integer[] schedule = new Integer[codeIds.size()];
+        for (int i = 0; i < schedule.length; i++) {
+            schedule[i] = i;
+        }
+        Arrays.sort(schedule, Comparator.comparingInt((Integer i) -> groupSize(groupOffsets, codeIds.get(i))).reversed());
+
+        InstrumentMetrics[] results = new InstrumentMetrics[codeIds.size()];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(schedule.length);
+        for (int position : schedule) {
+            int codeId = codeIds.get(position);
+            tasks.add(metricsPool.submit(() -> {
+                progress.checkCancelled();
+                long start = instrumentation.isEnabled() ? System.nanoTime() : 0;
+                results[position] = kernels.get().compute(data.getCodes().get(codeId), data,
+                        groupOffsets[codeId], groupOffsets[codeId + 1]);
+                if (buckets != null) {
+                    buckets[position] = MetricBucket.ofInstrument(data.getCodes().get(codeId), data,
+                            groupOffsets[codeId], groupOffsets[codeId + 1], bucketEngine);
+                }
+                if (start != 0) {
+                    instrumentation.recordInstrument(System.nanoTime() - start);
+                }
+                progress.instrumentDone();
+            }));
+        }
+        try {
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } catch (CancellationException e) {
+            tasks.forEach(task -> task.cancel(false));
+            throw e;
+        }
+        return results;
     }
 
-    private void calculateMeanBidAskSpread(String stockCode, List<StockData> data) {
-        // function to calculate Mean Bid Ask Spread
-        List<Double> spreads = data.stream()
-                .filter(d -> d.getBidPrice() > 0 && d.getAskPrice() > 0)
-                .map(d -> d.getAskPrice() - d.getBidPrice())
-                .collect(Collectors.toList());
-
-        double meanBidAskSpread = spreads.stream().mapToDouble(Double::doubleValue).average().orElse(0);
-        metricsData.add(new String[]{stockCode, "Mean Bid-Ask Spread", String.valueOf(meanBidAskSpread)});
+    /**
+     * @return The extra gap percentiles added to every instrument's metrics.
+     */
+    double[] getGapPercentiles() {
+        return gapPercentiles.clone();
     }
 
-    private void calculateMedianBidAskSpread(String stockCode, List<StockData> data) {
-        // function to calculate Median Bid Ask Spread
-        List<Double> spreads = data.stream()
-                .filter(d -> d.getBidPrice() > 0 && d.getAskPrice() > 0)
-                .map(d -> d.getAskPrice() - d.getBidPrice())
-                .collect(Collectors.toList());
-
-        double medianBidAskSpread = calculateMedianDouble(spreads);
-        metricsData.add(new String[]{stockCode, "Median Bid-Ask Spread", String.valueOf(medianBidAskSpread)});
+    private static int instrumentCount(int[] groupOffsets) {
+        int count = 0;
+        for (int codeId = 0; codeId < groupOffsets.length - 1; codeId++) {
+            if (groupOffsets[codeId + 1] > groupOffsets[codeId]) {
+                count++;
+            }
+        }
+        return count;
     }
 
-    private void analyzeRoundNumberEffect(String stockCode, List<StockData> data) {
-        // function to analyze Round Number Effect
-        long roundNumberTrades = data.stream()
-                .filter(d -> d.getUpdateType() == 1)
-                .filter(d -> d.getTradePrice() % 10 == 0)
-                .count();
-
-        long totalTrades = data.stream()
-                .filter(d -> d.getUpdateType() == 1)
-                .count();
-
-        double roundNumberTradePercentage = ((double) roundNumberTrades / totalTrades) * 100;
-        metricsData.add(new String[]{stockCode, "Round Number Effect in Trade Prices", roundNumberTradePercentage + "%"});
-
-        long roundNumberVolumes = data.stream()
-                .filter(d -> d.getUpdateType() == 1)
-                .filter(d -> d.getTradeVolume() % 10 == 0)
-                .count();
-
-        long totalVolumes = data.stream()
-                .filter(d -> d.getUpdateType() == 1)
-                .count();
-
-        double roundNumberVolumePercentage = ((double) roundNumberVolumes / totalVolumes) * 100;
-        metricsData.add(new String[]{stockCode, "Round Number Effect in Trade Volumes", roundNumberVolumePercentage + "%"});
+    private static int groupSize(int[] groupOffsets, int codeId) {
+        return groupOffsets[codeId + 1] - groupOffsets[codeId];
     }
 
-    private double calculateMedianDouble(List<Double> values) {
-        // function to calculate the Median value given a list of (double) values
-        int size = values.size();
-        if (size == 0) {
-            return 0;
-        }
-        List<Double> sortedValues = values.stream().sorted().collect(Collectors.toList());
-        if (size % 2 == 1) {
-            return sortedValues.get(size / 2);
-        } else {
-            return (sortedValues.get((size / 2) - 1) + sortedValues.get(size / 2)) / 2.0;
+    void addMetricRows(List<String[]> rows, InstrumentMetrics metrics) {
+        // function to turn the metrics of one stock into output rows, in the report's metric order
+        String stockCode = metrics.getStockCode();
+        rows.add(new String[]{stockCode, "Mean Time Between Trades", String.valueOf(metrics.getMeanTimeBetweenTrades())});
+        rows.add(new String[]{stockCode, "Median Time Between Trades", String.valueOf(metrics.getMedianTimeBetweenTrades())});
+        rows.add(new String[]{stockCode, "Longest Time Between Trades", String.valueOf(metrics.getLongestTimeBetweenTrades())});
+        rows.add(new String[]{stockCode, "Mean Time Between Tick Changes", String.valueOf(metrics.getMeanTimeBetweenTickChanges())});
+        rows.add(new String[]{stockCode, "Median Time Between Tick Changes", String.valueOf(metrics.getMedianTimeBetweenTickChanges())});
+        rows.add(new String[]{stockCode, "Longest Time Between Tick Changes", String.valueOf(metrics.getLongestTimeBetweenTickChanges())});
+        rows.add(new String[]{stockCode, "Mean Bid-Ask Spread", String.valueOf(metrics.getMeanBidAskSpread())});
+        rows.add(new String[]{stockCode, "Median Bid-Ask Spread", String.valueOf(metrics.getMedianBidAskSpread())});
+        rows.add(new String[]{stockCode, "Round Number Effect in Trade Prices", metrics.getRoundNumberTradePercentage() + "%"});
+        rows.add(new String[]{stockCode, "Round Number Effect in Trade Volumes", metrics.getRoundNumberVolumePercentage() + "%"});
+        for (int i = 0; i < gapPercentiles.length; i++) {
+            String label = "P" + BigDecimal.valueOf(gapPercentiles[i]).stripTrailingZeros().toPlainString();
+            rows.add(new String[]{stockCode, label + " Time Between Trades", String.valueOf(metrics.getTradeGapPercentiles()[i])});
+            rows.add(new String[]{stockCode, label + " Time Between Tick Changes", String.valueOf(metrics.getTickGapPercentiles()[i])});
         }
     }
 
     /**
-     * Writes the metrics data to a CSV file.
+     * Writes the metrics data to a CSV file. The rows go to a temporary file first, which then
+     * replaces the report, so concurrent runs never interleave their rows.
      *
+     * @param metricsData The rows to write, header included.
      * @param outputPath The path to the output CSV file.
      * @throws IOException If there is an issue writing to the file.
      */
-    private void writeMetricsToCSV(String outputPath) throws IOException {
-        try (CSVWriter writer = new CSVWriter(new FileWriter(outputPath))) {
-            writer.writeAll(metricsData);
+    void writeMetricsToCSV(List<String[]> metricsData, String outputPath) throws IOException {
+        writeReport(metricsData, outputPath, "csv");
+    }
+
+    /**
+     * Writes report rows as CSV, tab separated values or JSON. A file is written to a temporary
+     * file first, which then replaces the report, so concurrent runs never interleave their rows.
+     *
+     * @param metricsData The rows to write, header first. In JSON every other row becomes an
+     *                    object keyed by the header's column names.
+     * @param outputPath The path of the report, or "-" for standard output.
+     * @param format "csv", "tsv" or "json".
+     * @throws IOException If there is an issue writing the report.
+     * @throws IllegalArgumentException If the format is unknown.
+     */
+    public void writeReport(List<String[]> metricsData, String outputPath, String format) throws IOException {
+        if (!REPORT_FORMATS.contains(format)) {
+            throw new IllegalArgumentException("Unknown report format " + format + ", expected one of " + REPORT_FORMATS);
+        }
+        if (outputPath.equals("-")) {
+            // System.out is left open for whoever prints after the report
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            writeReport(metricsData, out, format);
+            out.flush();
+            return;
+        }
+        Path output = Paths.get(outputPath).toAbsolutePath();
+        synchronized (reportLock) {
+            Path temp = Files.createTempFile(output.getParent(), "analysis", "." + format + ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(temp)) {
+                    writeReport(metricsData, writer, format);
+                }
+                Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static void writeReport(List<String[]> metricsData, Writer out, String format) throws IOException {
+        if (format.equals("json")) {
+            JsonGenerator json = new JsonFactory().createGenerator(out).useDefaultPrettyPrinter();
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            String[] header = metricsData.isEmpty() ? new String[0] : metricsData.get(0);
+            json.writeStartArray();
+            for (int row = 1; row < metricsData.size(); row++) {
+                json.writeStartObject();
+                for (int column = 0; column < header.length; column++) {
+                    json.writeStringField(header[column], metricsData.get(row)[column]);
+                }
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.flush();
+            return;
         }
+        char separator = format.equals("tsv") ? '\t' : CSVWriter.DEFAULT_SEPARATOR;
+        CSVWriter writer = new CSVWriter(out, separator, CSVWriter.DEFAULT_QUOTE_CHARACTER,
+                CSVWriter.DEFAULT_ESCAPE_CHARACTER, CSVWriter.DEFAULT_LINE_END);
+        writer.writeAll(metricsData);
+        writer.flush();
     }
 }
@@ -0,0 +1,396 @@
+package com.task.service;
+
+import com.task.model.TickStore;
+import com.task.parser.ByteStringDictionary;
+import com.task.parser.CompressedTickReader;
+import com.task.parser.TickCsvParser;
+import com.task.parser.TickFilter;
+import com.task.parser.TickRow;
+import com.task.parser.TickRowHandler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a tick file into a {@link TickStore} by splitting it into byte ranges that start on
+ * line boundaries and parsing each range on its own thread.
+ *
+ * Every chunk gets its own parser, dictionaries and store, so the threads share nothing while
+ * parsing. The chunks are then appended in file order with their dictionary ids remapped, so
+ * the result is row for row the same as a sequential load. Splitting looks for the next
+ * newline after each cut, which is a line start unless the newline is inside a quoted field.
+ * A chunk whose parser ends inside quotes shows that the following cut is such a newline; the
+ * range holding it is then parsed again on one thread, which is rare enough not to matter.
+ *
+ * Gzip and BGZF files can't be cut by byte range; they are parsed by one parser while a
+ * {@link CompressedTickReader} decompresses them ahead of it.
+ *
+ * A loader instance is used for one load and is not thread-safe.
+ */
+public class ParallelTickLoader {
+
+    /** Chunks smaller than this aren't worth a thread of their own. */
+    public static final long DEFAULT_MIN_CHUNK_BYTES = 8L << 20;
+
+    private final ExecutorService executor;
+    private final int maxChunks;
+    private final long minChunkBytes;
+
+    private TickFilter filter = TickFilter.ALL;
+    private AnalysisProgress progress;
+    private CompressedTickReader decompressor;
+
+    private long rowsSkipped;
+    private long rowsFiltered;
+    private long fieldsDefaulted;
+    private long rangesReparsed;
+    private long bytesRead;
+
+    /**
+     * @param executor Runs the chunk parsers.
+     * @param maxChunks Upper bound on the number of chunks, normally the number of threads.
+     * @param minChunkBytes Smallest chunk size worth parsing separately.
+     */
+    public ParallelTickLoader(ExecutorService executor, int maxChunks, long minChunkBytes) {
+        this.executor = executor;
+        this.maxChunks = Math.max(1, maxChunks);
+        this.minChunkBytes = Math.max(1, minChunkBytes);
+    }
+
+    /**
+     * Pushes a filter into every chunk parser, so the store only ever holds accepted rows.
+     */
+    public void setFilter(TickFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Reports parsed rows and bytes to a progress tracker while loading, and stops the load with
+     * a {@link CancellationException} once it is cancelled.
+     */
+    public void setProgress(AnalysisProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Sets the reader that decompresses gzip and BGZF files; by default one inflating on a
+     * single thread.
+     */
+    public void setDecompressor(CompressedTickReader decompressor) {
+        this.decompressor = decompressor;
+    }
+
+    /**
+     * Loads the whole file.
+     *
+     * @param file The tick file, plain or compressed.
+     * @return A store holding every row of the file, in file order.
+     * @throws IOException If the file cannot be read.
+     */
+    public TickStore load(Path file) throws IOException {
+        if (CompressedTickReader.isCompressed(file)) {
+            return loadCompressed(file);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return loadChunks(file, channel, new long[]{0, channel.size()});
+        }
+    }
+
+    /**
+     * Loads only some byte ranges of the file, for example the ones a {@link TickBlockIndex}
+     * picked. Ranges must start on line boundaries; large ones are split like a whole file.
+     *
+     * @param file The tick file.
+     * @param ranges Flat {start, end} pairs in file order.
+     * @return A store holding every row of the ranges, in file order.
+     * @throws IOException If the file cannot be read.
+     */
+    public TickStore load(Path file, long[] ranges) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return loadChunks(file, channel, ranges);
+        }
+    }
+
+    private TickStore loadCompressed(Path file) throws IOException {
+        TickCsvParser parser = new TickCsvParser();
+        parser.setFilter(filter);
+        parser.setDecompressor(decompressor);
+        TickStore store = new TickStore(parser.getCodes(), parser.getDates(), parser.getConditions());
+        if (progress == null) {
+            parser.parse(file, store::add);
+        } else {
+            ProgressReporter reporter = new ProgressReporter(store, progress, 0);
+            parser.parse(file, reporter);
+            progress.addLoaded(reporter.rows, parser.getBytesRead() - reporter.reportedOffset);
+            progress.addRejected(parser.getRowsFiltered());
+        }
+        Chunk chunk = new Chunk(parser, store);
+        addCounters(chunk);
+        store.trimToSize();
+        return store;
+    }
+
+    private TickStore loadChunks(Path file, FileChannel channel, long[] ranges) throws IOException {
+        // {start, end, index of the range the chunk was cut from}
+        List<long[]> chunkRanges = new ArrayList<>();
+        for (int i = 0; i < ranges.length; i += 2) {
+            long[] bounds = splitPoints(channel, ranges[i], ranges[i + 1], maxChunks, minChunkBytes);
+            for (int j = 0; j < bounds.length - 1; j++) {
+                chunkRanges.add(new long[]{bounds[j], bounds[j + 1], i});
+            }
+        }
+        if (chunkRanges.size() <= 1) {
+            // a single chunk keeps its parser's dictionaries, there is nothing to merge
+            long[] range = chunkRanges.isEmpty() ? new long[]{0, 0} : chunkRanges.get(0);
+            Chunk chunk = parseChunk(channel, range[0], range[1]);
+            addCounters(chunk);
+            chunk.store.trimToSize();
+            return chunk.store;
+        }
+        List<Future<Chunk>> futures = new ArrayList<>();
+        for (long[] range : chunkRanges) {
+            futures.add(executor.submit(() -> parseChunk(channel, range[0], range[1])));
+        }
+        List<Chunk> chunks = new ArrayList<>(futures.size());
+        try {
+            for (Future<Chunk> future : futures) {
+                chunks.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + file);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof CancellationException) {
+                throw (CancellationException) e.getCause();
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to parse " + file, e.getCause());
+        }
+        // the futures would keep every chunk reachable while merge copies them
+        futures.clear();
+        reparseCutQuotes(file, channel, ranges, chunkRanges, chunks);
+        return merge(chunks);
+    }
+
+    /**
+     * Replaces the chunks of every range that was cut inside a quoted field with one chunk
+     * parsed sequentially over the whole range.
+     */
+    private void reparseCutQuotes(Path file, FileChannel channel, long[] ranges, List<long[]> chunkRanges,
+                                  List<Chunk> chunks) throws IOException {
+        for (int i = chunks.size() - 2; i >= 0; i--) {
+            if (!chunks.get(i).parser.isEndedInQuotes() || chunkRanges.get(i + 1)[2] != chunkRanges.get(i)[2]) {
+                continue;
+            }
+            int range = (int) chunkRanges.get(i)[2];
+            int first = i;
+            while (first > 0 && chunkRanges.get(first - 1)[2] == range) {
+                first--;
+            }
+            int last = i + 1;
+            while (last + 1 < chunks.size() && chunkRanges.get(last + 1)[2] == range) {
+                last++;
+            }
+            rangesReparsed++;
+            List<Chunk> cut = chunks.subList(first, last + 1);
+            long reportedRows = 0;
+            long reportedRejected = 0;
+            for (Chunk chunk : cut) {
+                reportedRows += chunk.store.size();
+                reportedRejected += chunk.parser.getRowsFiltered();
+            }
+            cut.clear();
+            Chunk whole = parseRange(channel, ranges[range], ranges[range + 1]);
+            if (progress != null) {
+                // every byte of the range was reported already, only the row counts change
+                progress.addLoaded(whole.store.size() - reportedRows, 0);
+                progress.addRejected(whole.parser.getRowsFiltered() - reportedRejected);
+            }
+            chunks.add(first, whole);
+            chunkRanges.subList(first, last + 1).clear();
+            chunkRanges.add(first, new long[]{ranges[range], ranges[range + 1], range});
+            i = first;
+        }
+    }
+
+    /**
+     * Cuts [0, size) into at most {@code maxChunks} ranges. Each cut is moved forward to just
+     * after the next newline, so every range starts at the beginning of a line.
+     *
+     * @return The range bounds: chunk i is [bounds[i], bounds[i + 1]).
+     */
+    static long[] splitPoints(FileChannel channel, int maxChunks, long minChunkBytes) throws IOException {
+        return splitPoints(channel, 0, channel.size(), maxChunks, minChunkBytes);
+    }
+
+    /**
+     * Cuts [start, end) the same way; start must be a line start.
+     */
+    static long[] splitPoints(FileChannel channel, long start, long end, int maxChunks, long minChunkBytes) throws IOException {
+        long size = end - start;
+        int chunks = (int) Math.max(1, Math.min(maxChunks, size / minChunkBytes));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for (int i = 1; i < chunks; i++) {
+            long cut = Math.max(start + size / chunks * i, bounds.get(bounds.size() - 1));
+            long lineStart = nextLineStart(channel, cut, buffer);
+            if (lineStart > bounds.get(bounds.size() - 1) && lineStart < end) {
+                bounds.add(lineStart);
+            }
+        }
+        bounds.add(end);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        // a cut right after a newline is already a line start
+        if (position == 0) {
+            return 0;
+        }
+        long offset = position - 1;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    private Chunk parseChunk(FileChannel channel, long start, long end) throws IOException {
+        TickCsvParser parser = new TickCsvParser();
+        parser.setFilter(filter);
+        TickStore store = new TickStore(parser.getCodes(), parser.getDates(), parser.getConditions());
+        if (progress == null) {
+            parser.parse(channel, start, end, store::add);
+        } else {
+            ProgressReporter reporter = new ProgressReporter(store, progress, start);
+            parser.parse(channel, start, end, reporter);
+            progress.addLoaded(reporter.rows, end - reporter.reportedOffset);
+            progress.addRejected(parser.getRowsFiltered());
+        }
+        return new Chunk(parser, store);
+    }
+
+    private Chunk parseRange(FileChannel channel, long start, long end) throws IOException {
+        TickCsvParser parser = new TickCsvParser();
+        parser.setFilter(filter);
+        TickStore store = new TickStore(parser.getCodes(), parser.getDates(), parser.getConditions());
+        parser.parse(channel, start, end, row -> {
+            store.add(row);
+            if (progress != null && store.size() % AnalysisProgress.REPORT_EVERY_ROWS == 0) {
+                progress.checkCancelled();
+            }
+        });
+        return new Chunk(parser, store);
+    }
+
+    /**
+     * Appends the chunks in order. Each chunk is taken out of the list before it is copied, so
+     * its columns can be collected as soon as they are appended.
+     */
+    private TickStore merge(List<Chunk> chunks) {
+        int rows = 0;
+        for (Chunk chunk : chunks) {
+            rows += chunk.store.size();
+        }
+        ByteStringDictionary codes = new ByteStringDictionary();
+        ByteStringDictionary dates = new ByteStringDictionary();
+        ByteStringDictionary conditions = new ByteStringDictionary();
+        TickStore merged = new TickStore(codes, dates, conditions, rows);
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.set(i, null);
+            merged.appendAll(chunk.store, remap(chunk.parser.getCodes(), codes),
+                    remap(chunk.parser.getDates(), dates), remap(chunk.parser.getConditions(), conditions));
+            addCounters(chunk);
+        }
+        return merged;
+    }
+
+    private void addCounters(Chunk chunk) {
+        rowsSkipped += chunk.parser.getRowsSkipped();
+        rowsFiltered += chunk.parser.getRowsFiltered();
+        fieldsDefaulted += chunk.parser.getFieldsDefaulted();
+        bytesRead += chunk.parser.getBytesRead();
+    }
+
+    private static int[] remap(ByteStringDictionary local, ByteStringDictionary global) {
+        int[] ids = new int[local.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = global.intern(local.get(id));
+        }
+        return ids;
+    }
+
+    public long getRowsSkipped() { return rowsSkipped; }
+    public long getRowsFiltered() { return rowsFiltered; }
+    public long getFieldsDefaulted() { return fieldsDefaulted; }
+
+    /**
+     * @return Ranges parsed again on one thread because a chunk cut fell inside a quoted field.
+     */
+    public long getRangesReparsed() { return rangesReparsed; }
+    public long getBytesRead() { return bytesRead; }
+
+    /**
+     * Adds rows to a chunk's store and reports them in batches.
+     */
+    private static class ProgressReporter implements TickRowHandler {
+        private final TickStore store;
+        private final AnalysisProgress progress;
+        private long reportedOffset;
+        private int rows;
+
+        ProgressReporter(TickStore store, AnalysisProgress progress, long start) {
+            this.store = store;
+            this.progress = progress;
+            this.reportedOffset = start;
+        }
+
+        @Override
+        public void onRow(TickRow row) {
+            store.add(row);
+            if (++rows == AnalysisProgress.REPORT_EVERY_ROWS) {
+                progress.addLoaded(rows, row.getLineEnd() - reportedOffset);
+                progress.checkCancelled();
+                reportedOffset = row.getLineEnd();
+                rows = 0;
+            }
+        }
+    }
+
+    private static class Chunk {
+        final TickCsvParser parser;
+        final TickStore store;
+
+        Chunk(TickCsvParser parser, TickStore store) {
+            this.parser = parser;
+            this.store = store;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.task.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the stages of the analysis pipeline and publishes them to Micrometer, where they
+ * show up under {@code /actuator/metrics/stock.analysis.*}, and to the run's
+ * {@link AnalysisProgress}, which carries them into the job summaries.
+ *
+ * Measurements are taken per stage and per instrument, never per row. Allocation is read
+ * from the JVM's per-thread allocation counters summed over all threads, so it includes
+ * other work running at the same time and is only an estimate. With
+ * {@code stock-analysis.instrumentation.enabled=false} nothing is measured or recorded.
+ */
+@Component
+public class PipelineInstrumentation {
+
+    static final String STAGE_TIMER = "stock.analysis.stage";
+    static final String INSTRUMENT_TIMER = "stock.analysis.instrument";
+
+    @Value("${stock-analysis.instrumentation.enabled:true}")
+    private boolean enabled = true;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final com.sun.management.ThreadMXBean allocationCounter = allocationCounter();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing a stage.
+     *
+     * @return The started stage, or null when instrumentation is off.
+     */
+    public StageStart start(String stage) {
+        if (!enabled) {
+            return null;
+        }
+        return new StageStart(stage, System.nanoTime(), allocatedBytes());
+    }
+
+    /**
+     * Ends a stage and records it.
+     *
+     * @param start The value returned by {@link #start(String)}; null is ignored.
+     * @param progress The run the stage belongs to, or null.
+     * @param rowsIn Rows the stage received, or read from the file.
+     * @param rowsOut Rows the stage handed on.
+     * @param bytesRead Input bytes the stage read.
+     */
+    public void finish(StageStart start, AnalysisProgress progress, long rowsIn, long rowsOut, long bytesRead) {
+        if (start == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - start.nanoTime;
+        long allocated = start.allocatedBytes < 0 ? -1 : Math.max(0, allocatedBytes() - start.allocatedBytes);
+        StageTiming timing = new StageTiming(start.stage, nanos, rowsIn, rowsOut, bytesRead, allocated);
+        if (progress != null) {
+            progress.addStageTiming(timing);
+        }
+        if (meterRegistry != null) {
+            Timer.builder(STAGE_TIMER).tag("stage", start.stage).register(meterRegistry).record(nanos, TimeUnit.NANOSECONDS);
+            summary("stock.analysis.stage.rows.in", "rows", start.stage).record(rowsIn);
+            summary("stock.analysis.stage.rows.out", "rows", start.stage).record(rowsOut);
+            summary("stock.analysis.stage.rows.rejected", "rows", start.stage).record(rowsIn - rowsOut);
+            summary("stock.analysis.stage.bytes.read", "bytes", start.stage).record(bytesRead);
+            if (allocated >= 0) {
+                summary("stock.analysis.stage.allocated", "bytes", start.stage).record(allocated);
+            }
+        }
+    }
+
+    /**
+     * Records the time spent computing the metrics of one instrument.
+     */
+    public void recordInstrument(long nanos) {
+        if (enabled && meterRegistry != null) {
+            Timer.builder(INSTRUMENT_TIMER).register(meterRegistry).record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private DistributionSummary summary(String name, String unit, String stage) {
+        return DistributionSummary.builder(name).baseUnit(unit).tag("stage", stage).register(meterRegistry);
+    }
+
+    private long allocatedBytes() {
+        if (allocationCounter == null) {
+            return -1;
+        }
+        long total = 0;
+        for (long allocated : allocationCounter.getThreadAllocatedBytes(allocationCounter.getAllThreadIds())) {
+            // -1 for threads that ended in the meantime
+            total += Math.max(0, allocated);
+        }
+        return total;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+            if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A stage that has been started.
+     */
+    public static final class StageStart {
+        private final String stage;
+        private final long nanoTime;
+        private final long allocatedBytes;
+
+        private StageStart(String stage, long nanoTime, long allocatedBytes) {
+            this.stage = stage;
+            this.nanoTime = nanoTime;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+}
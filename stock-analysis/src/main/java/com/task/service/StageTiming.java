@@ -0,0 +1,34 @@
+package com.task.service;
+
+/**
+ * What one pipeline stage of a run did: how long it took, the rows it took in and handed
+ * on, the input bytes it read and an estimate of the heap it allocated.
+ */
+public class StageTiming {
+    private final String stage;
+    private final long nanos;
+    private final long rowsIn;
+    private final long rowsOut;
+    private final long bytesRead;
+    private final long allocatedBytes;
+
+    public StageTiming(String stage, long nanos, long rowsIn, long rowsOut, long bytesRead, long allocatedBytes) {
+        this.stage = stage;
+        this.nanos = nanos;
+        this.rowsIn = rowsIn;
+        this.rowsOut = rowsOut;
+        this.bytesRead = bytesRead;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public String getStage() { return stage; }
+    public long getNanos() { return nanos; }
+    public double getMillis() { return nanos / 1e6; }
+    public long getRowsIn() { return rowsIn; }
+    public long getRowsOut() { return rowsOut; }
+    /** Rows the stage dropped, for example those rejected by the filters pushed into the parser. */
+    public long getRowsRejected() { return rowsIn - rowsOut; }
+    public long getBytesRead() { return bytesRead; }
+    /** Heap allocated by all threads while the stage ran, or -1 where the JVM can't tell. */
+    public long getAllocatedBytes() { return allocatedBytes; }
+}
@@ -0,0 +1,411 @@
+package com.task.service;
+
+import com.task.metrics.InstrumentMetrics;
+import com.task.metrics.QuantileEngine;
+import com.task.parser.CompressedTickReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Follows growing tick files and publishes their metrics as new rows arrive.
+ *
+ * A file is followed from its first request on: it is read once up to its current end, then
+ * polled at a fixed interval by a {@link TickTail}, which only parses what was appended since.
+ * Listeners receive the metrics of the instruments each poll updated. Each listener has a
+ * bounded queue drained on a pool of sender threads, so a slow listener never holds up the
+ * poller; one that falls too far behind is dropped. Medians come from log-histogram sketches
+ * within the configured relative accuracy, so the state of a followed file stays the same
+ * size however long it is followed.
+ */
+@Service
+public class TailService {
+
+    @Value("${stock-analysis.tail.poll-millis:1000}")
+    private long pollMillis;
+
+    @Value("${stock-analysis.tail.max-files:8}")
+    private int maxFiles;
+
+    @Value("${stock-analysis.quantiles.relative-accuracy:0.01}")
+    private double quantileRelativeAccuracy;
+
+    @Value("${stock-analysis.metrics.gap-percentiles:}")
+    private double[] gapPercentiles = new double[0];
+
+    @Value("${stock-analysis.tail.sender-threads:4}")
+    private int senderThreads = 4;
+
+    @Value("${stock-analysis.tail.max-queued-updates:256}")
+    private int maxQueuedUpdates = 256;
+
+    private final Map<Path, Followed> followed = new ConcurrentHashMap<>();
+    private ScheduledExecutorService poller;
+    private ExecutorService sender;
+
+    /**
+     * Receives the metrics of a followed file. Calls come from a sender thread, one at a time
+     * and in order.
+     */
+    public interface Listener {
+
+        /**
+         * Receives the snapshot of every instrument first, then the instruments of each poll
+         * that read rows. Throwing drops the listener, which is then closed with the exception.
+         */
+        void onSnapshot(TailSnapshot snapshot) throws Exception;
+
+        /**
+         * Called once, after every other call, when no more snapshots will come.
+         *
+         * @param cause Null when the file was unfollowed; otherwise why the file or the listener
+         *              was dropped.
+         */
+        void onClose(Throwable cause);
+    }
+
+    @PostConstruct
+    void startPoller() {
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tail-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger senders = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(Math.max(1, senderThreads), runnable -> {
+            Thread thread = new Thread(runnable, "tail-sender-" + senders.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stopPoller() {
+        poller.shutdownNow();
+        sender.shutdownNow();
+    }
+
+    /**
+     * Starts following a file, unless it is already followed, and returns its current metrics.
+     *
+     * @param filePath The path to the growing CSV file.
+     * @return The metrics of every instrument read so far.
+     * @throws IOException If the file can't be read.
+     * @throws IllegalArgumentException If the file is compressed.
+     * @throws IllegalStateException If the most files allowed are already followed.
+     */
+    public TailSnapshot follow(String filePath) throws IOException {
+        TickTail tail = followed(filePath).tail;
+        return new TailSnapshot(tail, tail.snapshot());
+    }
+
+    /**
+     * Follows a file and registers a listener of its updates. The listener first receives the
+     * metrics of every instrument, then after each poll that read rows the metrics of the
+     * instruments it updated. It is closed when the file is unfollowed or stops being followed
+     * after a failed poll, when it throws, and when it falls more than
+     * {@code max-queued-updates} updates behind.
+     *
+     * @param filePath The path to the growing CSV file.
+     * @param listener Receives the snapshot and the updates, on a sender thread.
+     * @return Removes the listener without closing it.
+     * @throws IOException If the file can't be read.
+     * @throws IllegalArgumentException If the file is compressed.
+     * @throws IllegalStateException If the most files allowed are already followed.
+     */
+    public Runnable subscribe(String filePath, Listener listener) throws IOException {
+        Followed file = followed(filePath);
+        Subscription subscription = new Subscription(file, listener);
+        file.addListener(subscription);
+        return () -> {
+            file.listeners.remove(subscription);
+            subscription.cancel();
+        };
+    }
+
+    /**
+     * Stops following a file and closes its listeners.
+     *
+     * @param filePath The path of a followed file.
+     * @return False when the file wasn't followed.
+     */
+    public boolean unfollow(String filePath) {
+        Path path = Paths.get(filePath).toAbsolutePath();
+        Followed file = followed.get(path);
+        return file != null && stop(path, file, null);
+    }
+
+    private synchronized boolean stop(Path path, Followed file, Throwable cause) {
+        if (!followed.remove(path, file)) {
+            return false;
+        }
+        if (file.poll != null) {
+            file.poll.cancel(false);
+        }
+        file.close(cause);
+        return true;
+    }
+
+    /**
+     * @return The snapshots of every followed file.
+     */
+    public List<TailSnapshot> getFollowed() {
+        List<TailSnapshot> snapshots = new ArrayList<>();
+        for (Followed file : followed.values()) {
+            if (!file.caughtUp.isDone() || file.caughtUp.isCompletedExceptionally()) {
+                // still reading what was in the file when it was first requested
+                continue;
+            }
+            snapshots.add(new TailSnapshot(file.tail, file.tail.snapshot()));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Returns the followed file, registering it on its first request. Only the registration
+     * holds the service lock: the first poll, which reads everything already in the file, runs
+     * outside it, and later requests for the same file wait for that poll to finish.
+     */
+    private Followed followed(String filePath) throws IOException {
+        Path path = Paths.get(filePath).toAbsolutePath();
+        Followed file;
+        boolean registered = false;
+        synchronized (this) {
+            file = followed.get(path);
+            if (file == null) {
+                if (followed.size() >= Math.max(1, maxFiles)) {
+                    throw new IllegalStateException("Already following " + followed.size() + " files");
+                }
+                if (Files.isRegularFile(path) && CompressedTickReader.isCompressed(path)) {
+                    // appended bytes of a gzip file can't be parsed without everything before them
+                    throw new IllegalArgumentException("Can't follow compressed file " + path);
+                }
+                file = new Followed(new TickTail(path, DataService.ANALYSIS_FILTER,
+                        QuantileEngine.logHistogram(quantileRelativeAccuracy), gapPercentiles));
+                followed.put(path, file);
+                registered = true;
+            }
+        }
+        if (!registered) {
+            return awaitCaughtUp(file);
+        }
+        try {
+            // catch up with what is already in the file, a missing file fails here
+            file.tail.poll();
+        } catch (IOException | RuntimeException e) {
+            stop(path, file, e);
+            file.caughtUp.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            // unless it was unfollowed while catching up
+            if (followed.get(path) == file) {
+                Followed started = file;
+                file.poll = poller.scheduleWithFixedDelay(() -> poll(started), pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        file.caughtUp.complete(null);
+        return file;
+    }
+
+    private static Followed awaitCaughtUp(Followed file) throws IOException {
+        try {
+            file.caughtUp.get();
+            return file;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to follow " + file.tail.getFile(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void poll(Followed file) {
+        List<InstrumentMetrics> updated;
+        try {
+            updated = file.tail.poll();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Stopped following " + file.tail.getFile() + ": " + e);
+            stop(file.tail.getFile(), file, e);
+            return;
+        }
+        if (!updated.isEmpty()) {
+            file.publish(new TailSnapshot(file.tail, updated));
+        }
+    }
+
+    private final class Followed {
+        final TickTail tail;
+        final List<Subscription> listeners = new CopyOnWriteArrayList<>();
+        // completes once the first poll has read what was already in the file
+        final CompletableFuture<Void> caughtUp = new CompletableFuture<>();
+        volatile ScheduledFuture<?> poll;
+        private boolean closed;
+        private Throwable closeCause;
+
+        Followed(TickTail tail) {
+            this.tail = tail;
+        }
+
+        // all three run under the same lock, so a new listener sees the snapshot before any
+        // update, and one added after the file stopped being followed is closed right away
+        synchronized void addListener(Subscription subscription) {
+            if (closed) {
+                subscription.close(closeCause, false);
+                return;
+            }
+            listeners.add(subscription);
+            subscription.offer(new TailSnapshot(tail, tail.snapshot()));
+        }
+
+        synchronized void publish(TailSnapshot update) {
+            for (Subscription subscription : listeners) {
+                if (!subscription.offer(update)) {
+                    listeners.remove(subscription);
+                    subscription.close(new IllegalStateException("Listener of " + tail.getFile() + " fell more than "
+                            + maxQueuedUpdates + " updates behind"), true);
+                }
+            }
+        }
+
+        synchronized void close(Throwable cause) {
+            closed = true;
+            closeCause = cause;
+            for (Subscription subscription : listeners) {
+                subscription.close(cause, false);
+            }
+            listeners.clear();
+        }
+    }
+
+    /**
+     * A listener with its queue of snapshots not yet delivered. At most one sender thread
+     * drains the queue at a time.
+     */
+    private final class Subscription implements Runnable {
+        private final Followed file;
+        private final Listener listener;
+        private final ArrayDeque<TailSnapshot> queue = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean closing;
+        private boolean closed;
+        private Throwable cause;
+
+        Subscription(Followed file, Listener listener) {
+            this.file = file;
+            this.listener = listener;
+        }
+
+        /**
+         * @return False when the queue is full.
+         */
+        synchronized boolean offer(TailSnapshot snapshot) {
+            if (closing) {
+                return true;
+            }
+            if (queue.size() >= Math.max(1, maxQueuedUpdates)) {
+                return false;
+            }
+            queue.add(snapshot);
+            schedule();
+            return true;
+        }
+
+        /**
+         * Closes the listener once the queued snapshots are delivered, or right away when they
+         * are discarded.
+         */
+        synchronized void close(Throwable cause, boolean discardQueued) {
+            if (closing) {
+                return;
+            }
+            closing = true;
+            this.cause = cause;
+            if (discardQueued) {
+                queue.clear();
+            }
+            schedule();
+        }
+
+        // removed by its owner, who doesn't want the close call either
+        synchronized void cancel() {
+            closing = true;
+            closed = true;
+            queue.clear();
+        }
+
+        private void schedule() {
+            if (!scheduled) {
+                try {
+                    sender.execute(this);
+                    scheduled = true;
+                } catch (RejectedExecutionException e) {
+                    // shutting down
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                TailSnapshot next;
+                synchronized (this) {
+                    next = queue.poll();
+                    if (next == null) {
+                        scheduled = false;
+                        if (!closing || closed) {
+                            return;
+                        }
+                        closed = true;
+                    }
+                }
+                if (next == null) {
+                    try {
+                        listener.onClose(cause);
+                    } catch (RuntimeException e) {
+                        System.err.println("Failed to close a listener of " + file.tail.getFile() + ": " + e);
+                    }
+                    return;
+                }
+                try {
+                    listener.onSnapshot(next);
+                } catch (Exception e) {
+                    file.listeners.remove(this);
+                    synchronized (this) {
+                        closing = true;
+                        cause = e;
+                        queue.clear();
+                    }
+                }
+            }
+        }
+    }
+}
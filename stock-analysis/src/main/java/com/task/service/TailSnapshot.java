@@ -0,0 +1,48 @@
+package com.task.service;
+
+import com.task.metrics.InstrumentMetrics;
+
+import java.util.List;
+
+/**
+ * The state of a followed file after a poll. The getters make up the JSON returned by the
+ * tail endpoint and sent with each server-sent event.
+ */
+public class TailSnapshot {
+
+    private final String filePath;
+    private final long offset;
+    private final long rowsAccepted;
+    private final long rowsRejected;
+    private final long updatedAt;
+    private final List<InstrumentMetrics> instruments;
+
+    TailSnapshot(TickTail tail, List<InstrumentMetrics> instruments) {
+        this.filePath = tail.getFile().toString();
+        this.offset = tail.getOffset();
+        this.rowsAccepted = tail.getRowsAccepted();
+        this.rowsRejected = tail.getRowsRejected();
+        this.updatedAt = tail.getUpdatedAt();
+        this.instruments = instruments;
+    }
+
+    public String getFilePath() { return filePath; }
+
+    /**
+     * @return Bytes of the file read so far.
+     */
+    public long getOffset() { return offset; }
+
+    public long getRowsAccepted() { return rowsAccepted; }
+    public long getRowsRejected() { return rowsRejected; }
+
+    /**
+     * @return When rows were last read, in epoch milliseconds.
+     */
+    public long getUpdatedAt() { return updatedAt; }
+
+    /**
+     * @return Every instrument of the file, or for an update only the instruments that received rows.
+     */
+    public List<InstrumentMetrics> getInstruments() { return instruments; }
+}
@@ -0,0 +1,368 @@
+package com.task.service;
+
+import com.task.parser.ByteStringDictionary;
+import com.task.parser.TickCsvParser;
+import com.task.parser.TickFilter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Sparse index of a tick file: for every block of about {@code blockBytes} bytes, which
+ * instrument codes and dates it holds and the range of its times.
+ *
+ * A selective load asks for the byte ranges whose blocks can hold matching rows and parses
+ * only those. The index is small, one bit per code and date per block, so it pays off most
+ * on files that are written grouped by instrument or in time order: a single name or an hour
+ * of such a file touches a handful of blocks. On a file that interleaves every instrument in
+ * every block, a code alone can't narrow the ranges, but a time window still can.
+ *
+ * Blocks start on line boundaries and cover the file without gaps.
+ */
+public class TickBlockIndex {
+
+    static final int FORMAT_VERSION = 1;
+
+    private static final long MAGIC = 0x5449434B49445831L; // "TICKIDX1"
+
+    private final long blockBytes;
+    private final List<String> codes;
+    private final List<String> dates;
+    private final List<Block> blocks;
+
+    private TickBlockIndex(long blockBytes, List<String> codes, List<String> dates, List<Block> blocks) {
+        this.blockBytes = blockBytes;
+        this.codes = codes;
+        this.dates = dates;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Scans a file and indexes it, parsing the given ranges on their own threads.
+     *
+     * @param channel The open tick file.
+     * @param bounds Chunk bounds on line starts, chunk i is [bounds[i], bounds[i + 1]).
+     * @param blockBytes Target size of a block.
+     * @param executor Runs the chunk scans.
+     * @return The index.
+     * @throws IOException If the file can't be read.
+     */
+    static TickBlockIndex build(FileChannel channel, long[] bounds, long blockBytes, ExecutorService executor) throws IOException {
+        List<Future<ChunkBlocks>> futures = new ArrayList<>();
+        for (int i = 0; i < bounds.length - 1; i++) {
+            long start = bounds[i];
+            long end = bounds[i + 1];
+            futures.add(executor.submit(() -> scanChunk(channel, start, end, blockBytes)));
+        }
+        ByteStringDictionary codes = new ByteStringDictionary();
+        ByteStringDictionary dates = new ByteStringDictionary();
+        List<Block> blocks = new ArrayList<>();
+        try {
+            for (Future<ChunkBlocks> future : futures) {
+                ChunkBlocks chunk = future.get();
+                int[] codeIds = remap(chunk.codes, codes);
+                int[] dateIds = remap(chunk.dates, dates);
+                for (Block block : chunk.blocks) {
+                    blocks.add(block.remap(codeIds, dateIds));
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing");
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to index", e.getCause());
+        }
+        return new TickBlockIndex(blockBytes, values(codes), values(dates), blocks);
+    }
+
+    private static ChunkBlocks scanChunk(FileChannel channel, long start, long end, long blockBytes) throws IOException {
+        TickCsvParser parser = new TickCsvParser();
+        List<Block> blocks = new ArrayList<>();
+        Block[] current = {new Block(start)};
+        parser.parse(channel, start, end, row -> {
+            Block block = current[0];
+            if (row.getLineStart() - block.start >= blockBytes) {
+                block.end = row.getLineStart();
+                if (block.rows > 0) {
+                    blocks.add(block);
+                }
+                block = new Block(row.getLineStart());
+                current[0] = block;
+            }
+            block.add(row.getCodeId(), row.getDateId(), row.getTimeInSecondsPastMidnight());
+        });
+        current[0].end = end;
+        if (current[0].rows > 0) {
+            blocks.add(current[0]);
+        }
+        return new ChunkBlocks(parser.getCodes(), parser.getDates(), blocks);
+    }
+
+    /**
+     * Lists the byte ranges that can hold rows accepted by a filter's codes, dates and
+     * required time window. Adjacent blocks are joined into one range.
+     *
+     * @param filter The filter of the load; its other predicates don't narrow the ranges.
+     * @return Flat {start, end} pairs in file order.
+     */
+    public long[] ranges(TickFilter filter) {
+        BitSet wantedCodes = ids(codes, filter.getCodes());
+        BitSet wantedDates = ids(dates, filter.getDates());
+        double[] window = filter.getRequiredTimeWindow();
+        List<Long> ranges = new ArrayList<>();
+        for (Block block : blocks) {
+            if (wantedCodes != null && !block.codes.intersects(wantedCodes)) {
+                continue;
+            }
+            if (wantedDates != null && !block.dates.intersects(wantedDates)) {
+                continue;
+            }
+            if (window != null && (block.maxTime < window[0] || block.minTime >= window[1])) {
+                continue;
+            }
+            if (!ranges.isEmpty() && ranges.get(ranges.size() - 1) == block.start) {
+                ranges.set(ranges.size() - 1, block.end);
+            } else {
+                ranges.add(block.start);
+                ranges.add(block.end);
+            }
+        }
+        long[] result = new long[ranges.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ranges.get(i);
+        }
+        return result;
+    }
+
+    private static BitSet ids(List<String> dictionary, Set<String> wanted) {
+        if (wanted == null) {
+            return null;
+        }
+        BitSet ids = new BitSet();
+        for (int id = 0; id < dictionary.size(); id++) {
+            if (wanted.contains(dictionary.get(id))) {
+                ids.set(id);
+            }
+        }
+        return ids;
+    }
+
+    public long getBlockBytes() { return blockBytes; }
+    public int getBlockCount() { return blocks.size(); }
+
+    /**
+     * Writes the index to a temporary file and atomically moves it over the index file.
+     */
+    void write(Path indexFile, TickFileCache.SourceKey key) throws IOException {
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)), crc))) {
+                out.writeLong(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(key.size);
+                out.writeLong(key.lastModified);
+                out.writeLong(key.fingerprint);
+                out.writeLong(blockBytes);
+                writeStrings(out, codes);
+                writeStrings(out, dates);
+                out.writeInt(blocks.size());
+                for (Block block : blocks) {
+                    out.writeLong(block.start);
+                    out.writeLong(block.end);
+                    out.writeInt(block.rows);
+                    out.writeDouble(block.minTime);
+                    out.writeDouble(block.maxTime);
+                    writeBits(out, block.codes);
+                    writeBits(out, block.dates);
+                }
+                out.flush();
+                out.writeLong(crc.getValue());
+            }
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads an index file if it exists and matches the source key and block size.
+     *
+     * @return The index, or null when it is missing, stale or corrupt.
+     */
+    static TickBlockIndex read(Path indexFile, TickFileCache.SourceKey key, long blockBytes) {
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile)), crc))) {
+            if (in.readLong() != MAGIC) {
+                return corrupt(indexFile, "bad magic number");
+            }
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (in.readLong() != key.size || in.readLong() != key.lastModified || in.readLong() != key.fingerprint
+                    || in.readLong() != blockBytes) {
+                return null;
+            }
+            List<String> codes = readStrings(in);
+            List<String> dates = readStrings(in);
+            int blockCount = in.readInt();
+            List<Block> blocks = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                Block block = new Block(in.readLong());
+                block.end = in.readLong();
+                block.rows = in.readInt();
+                block.minTime = in.readDouble();
+                block.maxTime = in.readDouble();
+                block.codes = readBits(in);
+                block.dates = readBits(in);
+                blocks.add(block);
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                return corrupt(indexFile, "checksum mismatch");
+            }
+            return new TickBlockIndex(blockBytes, codes, dates, blocks);
+        } catch (IOException | RuntimeException e) {
+            return corrupt(indexFile, e.toString());
+        }
+    }
+
+    private static TickBlockIndex corrupt(Path indexFile, String reason) {
+        System.err.println("Ignoring tick index " + indexFile + ": " + reason);
+        return null;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    private static void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    private static BitSet readBits(DataInputStream in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+
+    private static int[] remap(ByteStringDictionary local, ByteStringDictionary global) {
+        int[] ids = new int[local.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = global.intern(local.get(id));
+        }
+        return ids;
+    }
+
+    private static List<String> values(ByteStringDictionary dictionary) {
+        List<String> values = new ArrayList<>(dictionary.size());
+        for (int id = 0; id < dictionary.size(); id++) {
+            values.add(dictionary.get(id));
+        }
+        return values;
+    }
+
+    /**
+     * One block of the file and a summary of its rows.
+     */
+    private static final class Block {
+        final long start;
+        long end;
+        int rows;
+        double minTime = Double.POSITIVE_INFINITY;
+        double maxTime = Double.NEGATIVE_INFINITY;
+        BitSet codes = new BitSet();
+        BitSet dates = new BitSet();
+
+        Block(long start) {
+            this.start = start;
+        }
+
+        void add(int codeId, int dateId, double time) {
+            rows++;
+            codes.set(codeId);
+            dates.set(dateId);
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+        }
+
+        Block remap(int[] codeIds, int[] dateIds) {
+            Block block = new Block(start);
+            block.end = end;
+            block.rows = rows;
+            block.minTime = minTime;
+            block.maxTime = maxTime;
+            for (int id = codes.nextSetBit(0); id >= 0; id = codes.nextSetBit(id + 1)) {
+                block.codes.set(codeIds[id]);
+            }
+            for (int id = dates.nextSetBit(0); id >= 0; id = dates.nextSetBit(id + 1)) {
+                block.dates.set(dateIds[id]);
+            }
+            return block;
+        }
+    }
+
+    private static final class ChunkBlocks {
+        final ByteStringDictionary codes;
+        final ByteStringDictionary dates;
+        final List<Block> blocks;
+
+        ChunkBlocks(ByteStringDictionary codes, ByteStringDictionary dates, List<Block> blocks) {
+            this.codes = codes;
+            this.dates = dates;
+            this.blocks = blocks;
+        }
+    }
+}
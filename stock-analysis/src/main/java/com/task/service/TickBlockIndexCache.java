@@ -0,0 +1,107 @@
+package com.task.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the {@link TickBlockIndex} of each tick file as a sidecar file in the cache directory,
+ * so a file is scanned for its index once and reused while its size, modification time and
+ * sampled content are unchanged. Index files count towards the cache directory's limits, see
+ * {@link CacheEviction}.
+ */
+@Component
+public class TickBlockIndexCache {
+
+    @Value("${stock-analysis.index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stock-analysis.index.block-bytes:1048576}")
+    private long blockBytes;
+
+    @Value("${stock-analysis.cache.directory:${java.io.tmpdir}/stock-analysis-cache}")
+    private String directory;
+
+    @Value("${stock-analysis.cache.max-bytes:4294967296}")
+    private long maxBytes = 4L << 30;
+
+    @Value("${stock-analysis.cache.max-age-days:30}")
+    private int maxAgeDays = 30;
+
+    private final ConcurrentMap<Path, ReentrantLock> buildLocks = new ConcurrentHashMap<>();
+
+    public TickBlockIndexCache() {
+    }
+
+    public TickBlockIndexCache(Path directory, long blockBytes) {
+        this.enabled = true;
+        this.directory = directory.toString();
+        this.blockBytes = blockBytes;
+    }
+
+    /**
+     * Scans a source file into an index.
+     */
+    @FunctionalInterface
+    public interface Builder {
+        TickBlockIndex build(long blockBytes) throws IOException;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the index of a source file, building and storing it when it is missing, stale
+     * or corrupt.
+     *
+     * @param source The tick file.
+     * @param builder Scans the source when the stored index can't be used.
+     * @return The index of the source file.
+     * @throws IOException If the source can't be read.
+     */
+    public TickBlockIndex load(Path source, Builder builder) throws IOException {
+        Path indexFile = indexFileFor(source);
+        TickFileCache.SourceKey key = TickFileCache.SourceKey.of(source);
+        TickBlockIndex index = TickBlockIndex.read(indexFile, key, blockBytes);
+        if (index != null) {
+            CacheEviction.touch(indexFile);
+            return index;
+        }
+        ReentrantLock lock = buildLocks.computeIfAbsent(indexFile, f -> new ReentrantLock());
+        lock.lock();
+        try {
+            index = TickBlockIndex.read(indexFile, key, blockBytes);
+            if (index != null) {
+                return index;
+            }
+            index = builder.build(blockBytes);
+            if (key.equals(TickFileCache.SourceKey.of(source))) {
+                index.write(indexFile, key);
+                CacheEviction.evict(indexFile.getParent(), maxBytes, maxAgeDays);
+            } else {
+                System.err.println("Not storing the index of " + source + ": it changed while being scanned");
+            }
+            return index;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The index file used for a source file.
+     */
+    public Path indexFileFor(Path source) throws IOException {
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        String absolute = source.toAbsolutePath().normalize().toString();
+        return dir.resolve(TickFileCache.sha256(absolute).substring(0, 32) + ".idx");
+    }
+}
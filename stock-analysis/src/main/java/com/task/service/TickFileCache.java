@@ -0,0 +1,532 @@
+package com.task.service;
+
+import com.task.model.TickStore;
+import com.task.parser.ByteStringDictionary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Caches parsed tick files in a binary columnar format so that later loads map a file
+ * instead of parsing text.
+ *
+ * Cache files live in one directory, named after a hash of the source's absolute path.
+ * The header records the source size, modification time and a fingerprint of sampled
+ * content. A cache whose key doesn't match the source is stale and gets rebuilt. Corruption
+ * is caught by the magic numbers, the format version, a header checksum and the expected file
+ * length. A CRC of the whole payload is recorded too, but only checked when
+ * {@code stock-analysis.cache.verify-checksum} is set, since it reads every byte of the file.
+ *
+ * Layout, little-endian, every column 8-byte aligned (int columns are padded to a multiple of
+ * 8 bytes):
+ * <pre>
+ * header (64 bytes) | bid, ask, trade, time (double x rows each)
+ *   | code, bid volume, ask volume, trade volume, update type, date, condition (int x rows each, padded)
+ *   | code, date and condition dictionaries (count, then length + UTF-8 bytes per value) | trailer magic
+ * </pre>
+ *
+ * A hit maps the file and bulk-copies each column into the heap arrays of a {@link TickStore}.
+ * The copy is kept on purpose: the analysis compacts and permutes the store in place right
+ * after loading it, which a read-only mapping can't take, and a mapping can't be released
+ * before the garbage collector gets to it, which keeps the cache file from being rebuilt on
+ * some platforms.
+ *
+ * Builds are written to a temporary file and atomically renamed into place, under an
+ * exclusive lock on one byte of the directory's permanent {@code builds.lock} file, picked by
+ * the cache file's name. A second process building the same cache waits for the lock and then
+ * reads the finished file instead of parsing again. Unrelated builds rarely share a byte, and
+ * the lock file never needs deleting.
+ *
+ * The directory is kept within {@code stock-analysis.cache.max-bytes} and files unused for
+ * {@code max-age-days} are dropped, see {@link CacheEviction}.
+ */
+@Component
+public class TickFileCache {
+
+    static final int FORMAT_VERSION = 2;
+
+    private static final long MAGIC = 0x5449434B43414348L; // "TICKCACH"
+    private static final long TRAILER = 0x5449434B454E4421L; // "TICKEND!"
+    private static final int HEADER_BYTES = 64;
+    private static final int MAX_WINDOW = 1 << 30;
+    private static final int SAMPLE_BLOCKS = 16;
+    private static final int SAMPLE_BYTES = 64 * 1024;
+    private static final String LOCK_FILE = "builds.lock";
+    private static final int LOCK_SLOTS = 4096;
+
+    @Value("${stock-analysis.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stock-analysis.cache.directory:${java.io.tmpdir}/stock-analysis-cache}")
+    private String directory;
+
+    @Value("${stock-analysis.cache.verify-checksum:false}")
+    private boolean verifyChecksum;
+
+    @Value("${stock-analysis.cache.max-bytes:4294967296}")
+    private long maxBytes = 4L << 30;
+
+    @Value("${stock-analysis.cache.max-age-days:30}")
+    private int maxAgeDays = 30;
+
+    // file locks are per process and can't overlap within one, threads of this JVM queue up
+    // here first, one lock per slot
+    private final ConcurrentMap<Integer, ReentrantLock> buildLocks = new ConcurrentHashMap<>();
+
+    public TickFileCache() {
+    }
+
+    public TickFileCache(Path directory, boolean verifyChecksum) {
+        this.enabled = true;
+        this.directory = directory.toString();
+        this.verifyChecksum = verifyChecksum;
+    }
+
+    /**
+     * Produces the tick store of a file without parsing the source again.
+     */
+    @FunctionalInterface
+    public interface Parser {
+        TickStore parse() throws IOException;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the cached store of a source file, building the cache with the given parser when
+     * it is missing, stale or corrupt.
+     *
+     * @param source The tick file.
+     * @param parser Parses the source when the cache can't be used.
+     * @return The store of the source file.
+     * @throws IOException If the source can't be read or parsed.
+     */
+    public TickStore load(Path source, Parser parser) throws IOException {
+        return load(source, "", parser);
+    }
+
+    /**
+     * Returns the cached store of one variant of a source file, for example the rows kept by a
+     * filter. Each variant has its own cache file.
+     *
+     * @param source The tick file.
+     * @param variant Canonical description of how the store was derived from the file.
+     * @param parser Parses the source when the cache can't be used.
+     * @return The store of the source file.
+     * @throws IOException If the source can't be read or parsed.
+     */
+    public TickStore load(Path source, String variant, Parser parser) throws IOException {
+        Path cacheFile = cacheFileFor(source, variant);
+        SourceKey key = SourceKey.of(source);
+        TickStore cached = read(cacheFile, key);
+        if (cached != null) {
+            CacheEviction.touch(cacheFile);
+            return cached;
+        }
+        int slot = lockSlot(cacheFile);
+        ReentrantLock lock = buildLocks.computeIfAbsent(slot, s -> new ReentrantLock());
+        lock.lock();
+        try (FileChannel lockChannel = FileChannel.open(cacheFile.resolveSibling(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock fileLock = lockChannel.lock(slot, 1, false);
+            try {
+                // another thread or process may have built it while we waited
+                cached = read(cacheFile, key);
+                if (cached != null) {
+                    CacheEviction.touch(cacheFile);
+                    return cached;
+                }
+                TickStore store = parser.parse();
+                if (key.equals(SourceKey.of(source))) {
+                    write(cacheFile, key, store);
+                    CacheEviction.evict(cacheFile.getParent(), maxBytes, maxAgeDays);
+                } else {
+                    System.err.println("Not caching " + source + ": it changed while being parsed");
+                }
+                return store;
+            } finally {
+                fileLock.release();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The cache file used for a source file.
+     */
+    public Path cacheFileFor(Path source) throws IOException {
+        return cacheFileFor(source, "");
+    }
+
+    /**
+     * @return The cache file used for a variant of a source file.
+     */
+    public Path cacheFileFor(Path source, String variant) throws IOException {
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        String absolute = source.toAbsolutePath().normalize().toString();
+        String key = variant.isEmpty() ? absolute : absolute + "\n" + variant;
+        return dir.resolve(sha256(key).substring(0, 32) + ".ticks");
+    }
+
+    /**
+     * @return The byte of the lock file that guards builds of a cache file, from the hex
+     *         digits its name starts with.
+     */
+    private static int lockSlot(Path cacheFile) {
+        return Integer.parseInt(cacheFile.getFileName().toString().substring(0, 3), 16) % LOCK_SLOTS;
+    }
+
+    /**
+     * Reads a cache file if it exists and matches the source key.
+     *
+     * @return The cached store, or null when the cache is missing, stale or corrupt.
+     */
+    TickStore read(Path cacheFile, SourceKey key) {
+        if (!Files.exists(cacheFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES + Long.BYTES) {
+                return corrupt(cacheFile, "file is truncated");
+            }
+            ByteBuffer header = map(channel, 0, HEADER_BYTES);
+            if (header.getLong(0) != MAGIC) {
+                return corrupt(cacheFile, "bad magic number");
+            }
+            if (header.getInt(60) != headerChecksum(header)) {
+                return corrupt(cacheFile, "header checksum mismatch");
+            }
+            if (header.getInt(8) != FORMAT_VERSION) {
+                // written by another version of the format, rebuild quietly
+                return null;
+            }
+            if (header.getLong(16) != key.size || header.getLong(24) != key.lastModified || header.getLong(32) != key.fingerprint) {
+                return null;
+            }
+            int rows = header.getInt(12);
+            long payloadBytes = header.getLong(40);
+            if (fileSize != HEADER_BYTES + payloadBytes + Long.BYTES || map(channel, fileSize - Long.BYTES, Long.BYTES).getLong(0) != TRAILER) {
+                return corrupt(cacheFile, "unexpected length or trailer");
+            }
+            if (verifyChecksum && checksum(channel, HEADER_BYTES, payloadBytes) != header.getLong(48)) {
+                return corrupt(cacheFile, "payload checksum mismatch");
+            }
+
+            long position = HEADER_BYTES;
+            double[] bidPrices = readDoubles(channel, position, rows);
+            position += (long) rows * Double.BYTES;
+            double[] askPrices = readDoubles(channel, position, rows);
+            position += (long) rows * Double.BYTES;
+            double[] tradePrices = readDoubles(channel, position, rows);
+            position += (long) rows * Double.BYTES;
+            double[] times = readDoubles(channel, position, rows);
+            position += (long) rows * Double.BYTES;
+            int[][] ints = new int[7][];
+            for (int i = 0; i < ints.length; i++) {
+                ints[i] = readInts(channel, position, rows);
+                position += padded((long) rows * Integer.BYTES);
+            }
+            ByteBuffer dictionaries = map(channel, position, fileSize - Long.BYTES - position);
+            ByteStringDictionary codes = readDictionary(dictionaries);
+            ByteStringDictionary dates = readDictionary(dictionaries);
+            ByteStringDictionary conditions = readDictionary(dictionaries);
+            return TickStore.wrap(codes, dates, conditions, rows, ints[0], bidPrices, askPrices, tradePrices,
+                    ints[1], ints[2], ints[3], ints[4], ints[5], times, ints[6]);
+        } catch (IOException | RuntimeException e) {
+            return corrupt(cacheFile, e.toString());
+        }
+    }
+
+    /**
+     * Writes a store to a temporary file and atomically moves it over the cache file.
+     */
+    void write(Path cacheFile, SourceKey key, TickStore store) throws IOException {
+        Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            long payloadBytes;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ColumnWriter writer = new ColumnWriter(channel, HEADER_BYTES, crc);
+                int rows = store.size();
+                for (int i = 0; i < rows; i++) writer.putDouble(store.getBidPrice(i));
+                for (int i = 0; i < rows; i++) writer.putDouble(store.getAskPrice(i));
+                for (int i = 0; i < rows; i++) writer.putDouble(store.getTradePrice(i));
+                for (int i = 0; i < rows; i++) writer.putDouble(store.getTimeInSecondsPastMidnight(i));
+                for (int i = 0; i < rows; i++) writer.putInt(store.getCodeId(i));
+                writer.align();
+                for (int i = 0; i < rows; i++) writer.putInt(store.getBidVolume(i));
+                writer.align();
+                for (int i = 0; i < rows; i++) writer.putInt(store.getAskVolume(i));
+                writer.align();
+                for (int i = 0; i < rows; i++) writer.putInt(store.getTradeVolume(i));
+                writer.align();
+                for (int i = 0; i < rows; i++) writer.putInt(store.getUpdateType(i));
+                writer.align();
+                for (int i = 0; i < rows; i++) writer.putInt(store.getDateId(i));
+                writer.align();
+                for (int i = 0; i < rows; i++) writer.putInt(store.getConditionId(i));
+                writer.align();
+                writer.putDictionary(store.getCodes());
+                writer.putDictionary(store.getDates());
+                writer.putDictionary(store.getConditions());
+                payloadBytes = writer.finish();
+
+                ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                trailer.putLong(0, TRAILER);
+                channel.write(trailer, HEADER_BYTES + payloadBytes);
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putLong(0, MAGIC);
+                header.putInt(8, FORMAT_VERSION);
+                header.putInt(12, rows);
+                header.putLong(16, key.size);
+                header.putLong(24, key.lastModified);
+                header.putLong(32, key.fingerprint);
+                header.putLong(40, payloadBytes);
+                header.putLong(48, crc.getValue());
+                header.putInt(60, headerChecksum(header));
+                channel.write(header, 0);
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static TickStore corrupt(Path cacheFile, String reason) {
+        System.err.println("Ignoring tick cache " + cacheFile + ": " + reason);
+        return null;
+    }
+
+    private static int headerChecksum(ByteBuffer header) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < 60; i++) {
+            crc.update(header.get(i));
+        }
+        return (int) crc.getValue();
+    }
+
+    private static long padded(long bytes) {
+        return (bytes + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+    }
+
+    private static long checksum(FileChannel channel, long start, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        for (long done = 0; done < length; ) {
+            int window = (int) Math.min(MAX_WINDOW, length - done);
+            crc.update(map(channel, start + done, window));
+            done += window;
+        }
+        return crc.getValue();
+    }
+
+    private static double[] readDoubles(FileChannel channel, long position, int count) throws IOException {
+        double[] values = new double[count];
+        for (int done = 0; done < count; ) {
+            int n = Math.min(MAX_WINDOW / Double.BYTES, count - done);
+            map(channel, position + (long) done * Double.BYTES, (long) n * Double.BYTES).asDoubleBuffer().get(values, done, n);
+            done += n;
+        }
+        return values;
+    }
+
+    private static int[] readInts(FileChannel channel, long position, int count) throws IOException {
+        int[] values = new int[count];
+        for (int done = 0; done < count; ) {
+            int n = Math.min(MAX_WINDOW / Integer.BYTES, count - done);
+            map(channel, position + (long) done * Integer.BYTES, (long) n * Integer.BYTES).asIntBuffer().get(values, done, n);
+            done += n;
+        }
+        return values;
+    }
+
+    private static ByteStringDictionary readDictionary(ByteBuffer buffer) {
+        ByteStringDictionary dictionary = new ByteStringDictionary();
+        int count = buffer.getInt();
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt();
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            buffer.get(bytes, 0, length);
+            dictionary.intern(bytes, length);
+        }
+        return dictionary;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    static String sha256(String value) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Identity of a source file: size, modification time and a CRC of sampled content (the
+     * first and last 64 KB plus evenly spaced blocks in between), which catches in-place
+     * rewrites that keep size and timestamp without reading the whole file.
+     */
+    static final class SourceKey {
+        final long size;
+        final long lastModified;
+        final long fingerprint;
+
+        SourceKey(long size, long lastModified, long fingerprint) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fingerprint = fingerprint;
+        }
+
+        static SourceKey of(Path source) throws IOException {
+            long lastModified = Files.getLastModifiedTime(source).toMillis();
+            try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                long size = channel.size();
+                CRC32 crc = new CRC32();
+                ByteBuffer block = ByteBuffer.allocate(SAMPLE_BYTES);
+                for (int i = 0; i <= SAMPLE_BLOCKS; i++) {
+                    long position = Math.max(0, (size - SAMPLE_BYTES) / SAMPLE_BLOCKS * i);
+                    block.clear();
+                    while (block.hasRemaining() && channel.read(block, position + block.position()) > 0) {
+                        // keep reading until the block is full or the file ends
+                    }
+                    block.flip();
+                    crc.update(block);
+                }
+                return new SourceKey(size, lastModified, crc.getValue());
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SourceKey)) {
+                return false;
+            }
+            SourceKey other = (SourceKey) o;
+            return size == other.size && lastModified == other.lastModified && fingerprint == other.fingerprint;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(fingerprint);
+        }
+    }
+
+    /**
+     * Buffers writes to the cache file and checksums everything it writes.
+     */
+    private static final class ColumnWriter {
+        private final FileChannel channel;
+        private final CRC32 crc;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private final long start;
+        private long position;
+
+        ColumnWriter(FileChannel channel, long start, CRC32 crc) {
+            this.channel = channel;
+            this.crc = crc;
+            this.start = start;
+            this.position = start;
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putDictionary(ByteStringDictionary dictionary) throws IOException {
+            putInt(dictionary.size());
+            for (int id = 0; id < dictionary.size(); id++) {
+                byte[] bytes = dictionary.get(id).getBytes(StandardCharsets.UTF_8);
+                putInt(bytes.length);
+                for (byte b : bytes) {
+                    ensure(1);
+                    buffer.put(b);
+                }
+            }
+        }
+
+        /**
+         * Pads the payload with zeros to a multiple of 8 bytes, so the next column is aligned.
+         */
+        void align() throws IOException {
+            while ((position + buffer.position() - start) % Long.BYTES != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        /**
+         * Flushes the buffer, padding the payload to a multiple of 8 bytes.
+         *
+         * @return The payload length.
+         */
+        long finish() throws IOException {
+            align();
+            flush();
+            return position - start;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            ByteBuffer forChecksum = buffer.duplicate();
+            crc.update(forChecksum);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.task.service;
+
+import com.task.model.TickStore;
+
+/**
+ * Computes the permutation that orders a store by date and time, optionally grouped by
+ * instrument first, without comparing Strings or boxing.
+ *
+ * Every row gets primitive sort keys: its code id, the rank of its date and its time in whole
+ * microseconds. Before sorting, one pass checks whether the rows are already in order, and a
+ * second whether they are at least in date and time order. A time-ordered feed grouped by
+ * instrument then costs a single counting pass by code id. Anything else goes through a stable
+ * LSD radix sort over the keys, skipping digits every row shares.
+ *
+ * Times are only rounded to microseconds for the radix passes. The result is checked against
+ * the exact times, and inputs the keys can't order, such as negative, NaN or sub-microsecond
+ * distinct times, fall back to a stable merge sort on the exact values.
+ */
+public final class TickSorter {
+
+    private static final int TIME_DIGIT_BITS = 13;
+    private static final int TIME_DIGITS = 3;
+    private static final double MAX_PACKED_TIME = (double) (1L << (TIME_DIGIT_BITS * TIME_DIGITS)) / 1e6;
+
+    private TickSorter() {
+    }
+
+    /**
+     * @param data The store to order.
+     * @param byCode Whether rows are grouped by code id before date and time.
+     * @return The stable permutation, {@code order[i]} being the row that goes to position i,
+     *         or null when the rows are already in order.
+     */
+    public static int[] sortOrder(TickStore data, boolean byCode) {
+        int size = data.size();
+        int[] dateRanks = data.getDates().ranks();
+        if (isOrdered(data, dateRanks, byCode)) {
+            return null;
+        }
+        int[] order = identity(size);
+        if (byCode && isOrdered(data, dateRanks, false)) {
+            // already in time order, grouping by instrument keeps it
+            return countingPass(order, new int[size], data.getCodes().size(), row -> data.getCodeId(row));
+        }
+        long[] micros = new long[size];
+        for (int row = 0; row < size; row++) {
+            double time = data.getTimeInSecondsPastMidnight(row);
+            if (!(time >= 0 && time < MAX_PACKED_TIME)) {
+                return mergeSortOrder(data, dateRanks, byCode);
+            }
+            micros[row] = Math.round(time * 1e6);
+        }
+
+        int[] buffer = new int[size];
+        int timeMask = (1 << TIME_DIGIT_BITS) - 1;
+        for (int digit = 0; digit < TIME_DIGITS; digit++) {
+            int shift = digit * TIME_DIGIT_BITS;
+            int[] sorted = countingPass(order, buffer, 1 << TIME_DIGIT_BITS, row -> (int) (micros[row] >>> shift) & timeMask);
+            buffer = sorted == order ? buffer : order;
+            order = sorted;
+        }
+        int[] sorted = countingPass(order, buffer, dateRanks.length, row -> dateRanks[data.getDateId(row)]);
+        buffer = sorted == order ? buffer : order;
+        order = sorted;
+        if (byCode) {
+            order = countingPass(order, buffer, data.getCodes().size(), row -> data.getCodeId(row));
+        }
+
+        // distinct times closer than a microsecond may share a key, check against the exact values
+        for (int i = 1; i < size; i++) {
+            if (compare(data, dateRanks, byCode, order[i - 1], order[i]) > 0) {
+                return mergeSortOrder(data, dateRanks, byCode);
+            }
+        }
+        return order;
+    }
+
+    @FunctionalInterface
+    private interface Digit {
+        int of(int row);
+    }
+
+    /**
+     * One stable counting-sort pass of {@code order} by a digit.
+     *
+     * @return The reordered rows in {@code buffer}, or {@code order} itself when every row has
+     *         the same digit and there is nothing to move.
+     */
+    private static int[] countingPass(int[] order, int[] buffer, int radix, Digit digit) {
+        int size = order.length;
+        int[] counts = new int[radix + 1];
+        for (int row : order) {
+            counts[digit.of(row) + 1]++;
+        }
+        for (int d = 0; d < radix; d++) {
+            if (counts[d + 1] == size) {
+                return order;
+            }
+        }
+        for (int d = 1; d <= radix; d++) {
+            counts[d] += counts[d - 1];
+        }
+        for (int row : order) {
+            buffer[counts[digit.of(row)]++] = row;
+        }
+        return buffer;
+    }
+
+    private static boolean isOrdered(TickStore data, int[] dateRanks, boolean byCode) {
+        for (int row = 1; row < data.size(); row++) {
+            if (compare(data, dateRanks, byCode, row - 1, row) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compare(TickStore data, int[] dateRanks, boolean byCode, int a, int b) {
+        if (byCode) {
+            int byCodeId = Integer.compare(data.getCodeId(a), data.getCodeId(b));
+            if (byCodeId != 0) {
+                return byCodeId;
+            }
+        }
+        int byDate = Integer.compare(dateRanks[data.getDateId(a)], dateRanks[data.getDateId(b)]);
+        if (byDate != 0) {
+            return byDate;
+        }
+        return Double.compare(data.getTimeInSecondsPastMidnight(a), data.getTimeInSecondsPastMidnight(b));
+    }
+
+    private static int[] mergeSortOrder(TickStore data, int[] dateRanks, boolean byCode) {
+        int size = data.size();
+        int[] order = identity(size);
+        int[] buffer = new int[size];
+        // bottom-up merge sort over row indexes
+        for (int width = 1; width < size; width *= 2) {
+            for (int low = 0; low < size; low += 2 * width) {
+                int mid = Math.min(low + width, size);
+                int high = Math.min(low + 2 * width, size);
+                int left = low;
+                int right = mid;
+                for (int k = low; k < high; k++) {
+                    if (left < mid && (right >= high || compare(data, dateRanks, byCode, order[left], order[right]) <= 0)) {
+                        buffer[k] = order[left++];
+                    } else {
+                        buffer[k] = order[right++];
+                    }
+                }
+            }
+            int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+
+    private static int[] identity(int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+}
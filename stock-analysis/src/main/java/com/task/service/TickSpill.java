@@ -0,0 +1,347 @@
+package com.task.service;
+
+import com.task.model.TickStore;
+import com.task.parser.ByteStringDictionary;
+import com.task.parser.CompressedTickReader;
+import com.task.parser.TickCsvParser;
+import com.task.parser.TickFilter;
+import com.task.parser.TickRow;
+import com.task.parser.TickRowHandler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The accepted rows of a tick file, hash-partitioned by instrument into temporary files so they
+ * can be analysed one partition at a time.
+ *
+ * The file is parsed once, as a stream, and every accepted row is appended to the partition of
+ * its code as a fixed-size binary record holding dictionary ids and primitive columns. Only the
+ * dictionaries and one write buffer per partition stay in memory. Every row of an instrument ends
+ * up in the same partition, so each partition's metrics are complete on their own.
+ *
+ * The spill files live in a directory of their own, removed by {@link #close()}. A spill that
+ * fails or is cancelled while being written removes its files before the exception propagates.
+ */
+public final class TickSpill implements Closeable {
+
+    /** Bytes of one spilled row. */
+    static final int RECORD_BYTES = 4 * Double.BYTES + 7 * Integer.BYTES;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final Path[] partitionFiles;
+    private final long[] partitionRows;
+    private final TickCsvParser parser;
+    private long[] codeRows = new long[16];
+    private int[] codePartitions = new int[16];
+
+    private TickSpill(Path directory, int partitions, TickCsvParser parser) {
+        this.directory = directory;
+        this.partitionFiles = new Path[partitions];
+        this.partitionRows = new long[partitions];
+        this.parser = parser;
+        Arrays.fill(codePartitions, -1);
+        for (int partition = 0; partition < partitions; partition++) {
+            partitionFiles[partition] = directory.resolve("partition-" + partition + ".bin");
+        }
+    }
+
+    /**
+     * Parses a file and spills its accepted rows.
+     *
+     * @param file The tick file.
+     * @param filter Rows to keep.
+     * @param partitions Number of partition files.
+     * @param parent Directory the spill directory is created in.
+     * @param progress Tracker of the run, or null. Cancelling it stops the spill with a
+     *                 {@link java.util.concurrent.CancellationException}.
+     * @return The spilled rows; close it to remove the files.
+     * @throws IOException If the file can't be read or a partition can't be written.
+     */
+    public static TickSpill write(Path file, TickFilter filter, int partitions, Path parent, AnalysisProgress progress)
+            throws IOException {
+        return write(file, filter, partitions, parent, progress, null);
+    }
+
+    /**
+     * Parses a file and spills its accepted rows, decompressing a gzip or BGZF file with the
+     * given reader, or a single-threaded one when it is null.
+     */
+    public static TickSpill write(Path file, TickFilter filter, int partitions, Path parent, AnalysisProgress progress,
+                                  CompressedTickReader decompressor) throws IOException {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be positive: " + partitions);
+        }
+        Files.createDirectories(parent);
+        TickCsvParser parser = new TickCsvParser();
+        parser.setFilter(filter);
+        parser.setDecompressor(decompressor);
+        TickSpill spill = new TickSpill(Files.createTempDirectory(parent, "spill"), partitions, parser);
+        try {
+            spill.writePartitions(file, progress);
+            return spill;
+        } catch (IOException | RuntimeException | Error e) {
+            spill.close();
+            throw e;
+        }
+    }
+
+    private void writePartitions(Path file, AnalysisProgress progress) throws IOException {
+        DataOutputStream[] outputs = new DataOutputStream[partitionFiles.length];
+        try {
+            for (int partition = 0; partition < outputs.length; partition++) {
+                outputs[partition] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partitionFiles[partition]), BUFFER_BYTES));
+            }
+            Spiller spiller = new Spiller(outputs, progress);
+            try {
+                parser.parse(file, spiller);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (progress != null) {
+                progress.addLoaded(spiller.rows, parser.getBytesRead() - spiller.reportedOffset);
+                progress.addRejected(parser.getRowsFiltered());
+            }
+        } finally {
+            IOException failure = null;
+            for (DataOutputStream output : outputs) {
+                try {
+                    if (output != null) {
+                        output.close();
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Appends each row to its partition and reports progress in batches.
+     */
+    private class Spiller implements TickRowHandler {
+        private final DataOutputStream[] outputs;
+        private final AnalysisProgress progress;
+        private long reportedOffset;
+        private int rows;
+
+        Spiller(DataOutputStream[] outputs, AnalysisProgress progress) {
+            this.outputs = outputs;
+            this.progress = progress;
+        }
+
+        @Override
+        public void onRow(TickRow row) {
+            int codeId = row.getCodeId();
+            int partition = partitionOf(codeId);
+            try {
+                DataOutputStream output = outputs[partition];
+                output.writeInt(codeId);
+                output.writeDouble(row.getBidPrice());
+                output.writeDouble(row.getAskPrice());
+                output.writeDouble(row.getTradePrice());
+                output.writeInt(row.getBidVolume());
+                output.writeInt(row.getAskVolume());
+                output.writeInt(row.getTradeVolume());
+                output.writeInt(row.getUpdateType());
+                output.writeInt(row.getDateId());
+                output.writeDouble(row.getTimeInSecondsPastMidnight());
+                output.writeInt(row.getConditionId());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            partitionRows[partition]++;
+            codeRows[codeId]++;
+            if (progress != null && ++rows == AnalysisProgress.REPORT_EVERY_ROWS) {
+                progress.addLoaded(rows, row.getLineEnd() - reportedOffset);
+                progress.checkCancelled();
+                reportedOffset = row.getLineEnd();
+                rows = 0;
+            }
+        }
+    }
+
+    private int partitionOf(int codeId) {
+        if (codeId >= codeRows.length) {
+            int capacity = Math.max(codeId + 1, codeRows.length * 2);
+            codeRows = Arrays.copyOf(codeRows, capacity);
+            int known = codePartitions.length;
+            codePartitions = Arrays.copyOf(codePartitions, capacity);
+            Arrays.fill(codePartitions, known, capacity, -1);
+        }
+        int partition = codePartitions[codeId];
+        if (partition < 0) {
+            // spread the hash's high bits, consecutive codes often differ in one character
+            int hash = parser.getCodes().get(codeId).hashCode() * 0x9E3779B9;
+            partition = Math.floorMod(hash ^ (hash >>> 16), partitionFiles.length);
+            codePartitions[codeId] = partition;
+        }
+        return partition;
+    }
+
+    public int getPartitionCount() {
+        return partitionFiles.length;
+    }
+
+    /**
+     * @return Rows spilled to a partition.
+     */
+    public long getRows(int partition) {
+        return partitionRows[partition];
+    }
+
+    /**
+     * @return Rows spilled to every partition.
+     */
+    public long getRows() {
+        long rows = 0;
+        for (long partitionRow : partitionRows) {
+            rows += partitionRow;
+        }
+        return rows;
+    }
+
+    /**
+     * @return Number of instruments with spilled rows.
+     */
+    public int getCodeCount() {
+        int count = 0;
+        for (int codeId = 0; codeId < parser.getCodes().size(); codeId++) {
+            if (rowsOf(codeId) > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public ByteStringDictionary getCodes() {
+        return parser.getCodes();
+    }
+
+    public long getRowsSkipped() { return parser.getRowsSkipped(); }
+    public long getFieldsDefaulted() { return parser.getFieldsDefaulted(); }
+    public long getBytesRead() { return parser.getBytesRead(); }
+
+    /**
+     * Splits the instruments of a partition into groups of at most {@code maxRows} rows, so a
+     * partition that outgrew the memory budget is loaded in several reads. An instrument is never
+     * split: one with more rows than that makes a group of its own.
+     *
+     * @param partition The partition.
+     * @param maxRows Most rows to load at once.
+     * @return The code ids of each group.
+     */
+    public List<BitSet> codeGroups(int partition, long maxRows) {
+        List<BitSet> groups = new ArrayList<>();
+        BitSet group = new BitSet();
+        long groupRows = 0;
+        for (int codeId = 0; codeId < parser.getCodes().size(); codeId++) {
+            long rows = rowsOf(codeId);
+            if (rows == 0 || codePartitions[codeId] != partition) {
+                continue;
+            }
+            if (groupRows > 0 && groupRows + rows > maxRows) {
+                groups.add(group);
+                group = new BitSet();
+                groupRows = 0;
+            }
+            group.set(codeId);
+            groupRows += rows;
+        }
+        if (groupRows > 0) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    /**
+     * Reads the rows of some instruments of a partition, in file order.
+     *
+     * @param partition The partition.
+     * @param codeIds The instruments to load, all of them in this partition.
+     * @return A store sharing the spill's dictionaries.
+     * @throws IOException If the partition file can't be read.
+     */
+    public TickStore load(int partition, BitSet codeIds) throws IOException {
+        long selected = 0;
+        for (int codeId = codeIds.nextSetBit(0); codeId >= 0; codeId = codeIds.nextSetBit(codeId + 1)) {
+            selected += rowsOf(codeId);
+        }
+        if (selected > Integer.MAX_VALUE - 8) {
+            throw new IOException("Partition " + partition + " holds too many rows for one store: " + selected);
+        }
+        int size = (int) selected;
+        int[] codes = new int[size];
+        double[] bidPrices = new double[size];
+        double[] askPrices = new double[size];
+        double[] tradePrices = new double[size];
+        int[] bidVolumes = new int[size];
+        int[] askVolumes = new int[size];
+        int[] tradeVolumes = new int[size];
+        int[] updateTypes = new int[size];
+        int[] dateIds = new int[size];
+        double[] times = new double[size];
+        int[] conditionIds = new int[size];
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(partitionFiles[partition]), BUFFER_BYTES))) {
+            int row = 0;
+            for (long record = 0; record < partitionRows[partition]; record++) {
+                int codeId = input.readInt();
+                if (!codeIds.get(codeId)) {
+                    input.skipBytes(RECORD_BYTES - Integer.BYTES);
+                    continue;
+                }
+                codes[row] = codeId;
+                bidPrices[row] = input.readDouble();
+                askPrices[row] = input.readDouble();
+                tradePrices[row] = input.readDouble();
+                bidVolumes[row] = input.readInt();
+                askVolumes[row] = input.readInt();
+                tradeVolumes[row] = input.readInt();
+                updateTypes[row] = input.readInt();
+                dateIds[row] = input.readInt();
+                times[row] = input.readDouble();
+                conditionIds[row] = input.readInt();
+                row++;
+            }
+        }
+        return TickStore.wrap(parser.getCodes(), parser.getDates(), parser.getConditions(), size, codes, bidPrices,
+                askPrices, tradePrices, bidVolumes, askVolumes, tradeVolumes, updateTypes, dateIds, times, conditionIds);
+    }
+
+    private long rowsOf(int codeId) {
+        return codeId < codeRows.length ? codeRows[codeId] : 0;
+    }
+
+    /**
+     * Removes the spill files and their directory.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
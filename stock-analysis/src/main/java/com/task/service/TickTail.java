@@ -0,0 +1,172 @@
+package com.task.service;
+
+import com.task.metrics.InstrumentMetrics;
+import com.task.metrics.QuantileEngine;
+import com.task.metrics.RunningInstrumentMetrics;
+import com.task.parser.TickCsvParser;
+import com.task.parser.TickFilter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Follows a tick file that is being appended to and keeps the metrics of every instrument up
+ * to date.
+ *
+ * Each {@link #poll()} parses only the complete lines written since the last one, starting at
+ * the offset where it stopped, and feeds them to a {@link RunningInstrumentMetrics} per
+ * instrument. A line still being written is left for the next poll. The parser and its
+ * dictionaries are kept between polls, so code ids stay stable and a poll costs time in
+ * proportion to the new bytes, not to the size of the file.
+ *
+ * A file that shrinks was truncated or replaced, and is followed again from its start.
+ */
+public class TickTail {
+
+    private static final int SCAN_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final TickFilter filter;
+    private final QuantileEngine quantileEngine;
+    private final double[] gapPercentiles;
+
+    private TickCsvParser parser;
+    private RunningInstrumentMetrics[] instruments;
+    private long offset;
+    private long rowsAccepted;
+    private long polls;
+    private long updatedAt;
+
+    /**
+     * @param file The growing tick file.
+     * @param filter Rows to keep, for example {@link DataService#ANALYSIS_FILTER}.
+     * @param quantileEngine Creates the sketches behind medians; only a bounded sketch keeps the
+     *                       state from growing with the file, see {@link QuantileEngine#logHistogram(double)}.
+     * @param gapPercentiles Extra percentiles of the trade and tick-change gaps.
+     */
+    public TickTail(Path file, TickFilter filter, QuantileEngine quantileEngine, double[] gapPercentiles) {
+        this.file = file;
+        this.filter = filter;
+        this.quantileEngine = quantileEngine;
+        this.gapPercentiles = gapPercentiles.clone();
+        reset();
+    }
+
+    private void reset() {
+        parser = new TickCsvParser();
+        parser.setFilter(filter);
+        instruments = new RunningInstrumentMetrics[16];
+        offset = 0;
+        rowsAccepted = 0;
+    }
+
+    /**
+     * Reads the lines completed since the last poll.
+     *
+     * @return The metrics of the instruments that received rows, ordered by stock code; empty
+     *         when nothing new was written.
+     * @throws IOException If the file can't be read.
+     */
+    public synchronized List<InstrumentMetrics> poll() throws IOException {
+        polls++;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                System.err.println(file + " shrank from " + offset + " to " + size + " bytes, following it from the start");
+                reset();
+            }
+            long end = lastLineEnd(channel, offset, size);
+            if (end <= offset) {
+                return new ArrayList<>();
+            }
+            BitSet updated = new BitSet();
+            parser.parse(channel, offset, end, row -> {
+                int codeId = row.getCodeId();
+                if (codeId >= instruments.length) {
+                    instruments = Arrays.copyOf(instruments, Math.max(codeId + 1, instruments.length * 2));
+                }
+                RunningInstrumentMetrics instrument = instruments[codeId];
+                if (instrument == null) {
+                    instrument = new RunningInstrumentMetrics(row.getBloombergCode(), quantileEngine);
+                    instruments[codeId] = instrument;
+                }
+                instrument.add(row.getTimeInSecondsPastMidnight(), row.getUpdateType(), row.getTradePrice(),
+                        row.getTradeVolume(), row.getBidPrice(), row.getAskPrice());
+                updated.set(codeId);
+                rowsAccepted++;
+            });
+            offset = end;
+            updatedAt = System.currentTimeMillis();
+            return metrics(updated);
+        }
+    }
+
+    /**
+     * @return One past the last newline in [from, size), or {@code from} when there is none yet.
+     */
+    private static long lastLineEnd(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BYTES);
+        long blockEnd = size;
+        while (blockEnd > from) {
+            long blockStart = Math.max(from, blockEnd - SCAN_BYTES);
+            buffer.clear();
+            buffer.limit((int) (blockEnd - blockStart));
+            while (buffer.hasRemaining() && channel.read(buffer, blockStart + buffer.position()) >= 0) {
+                // keep reading until the block is full
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return blockStart + i + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return from;
+    }
+
+    /**
+     * @return The metrics of every instrument seen so far, ordered by stock code.
+     */
+    public synchronized List<InstrumentMetrics> snapshot() {
+        BitSet all = new BitSet();
+        for (int codeId = 0; codeId < instruments.length; codeId++) {
+            if (instruments[codeId] != null) {
+                all.set(codeId);
+            }
+        }
+        return metrics(all);
+    }
+
+    private List<InstrumentMetrics> metrics(BitSet codeIds) {
+        List<InstrumentMetrics> metrics = new ArrayList<>(codeIds.cardinality());
+        for (int codeId = codeIds.nextSetBit(0); codeId >= 0; codeId = codeIds.nextSetBit(codeId + 1)) {
+            metrics.add(instruments[codeId].toInstrumentMetrics(gapPercentiles));
+        }
+        metrics.sort(Comparator.comparing(InstrumentMetrics::getStockCode));
+        return metrics;
+    }
+
+    public Path getFile() { return file; }
+
+    /**
+     * @return Bytes of the file consumed so far; the next poll starts here.
+     */
+    public synchronized long getOffset() { return offset; }
+
+    public synchronized long getRowsAccepted() { return rowsAccepted; }
+    public synchronized long getRowsRejected() { return parser.getRowsFiltered() + parser.getRowsSkipped(); }
+    public synchronized long getPolls() { return polls; }
+
+    /**
+     * @return When the last rows were read, in epoch milliseconds; 0 before any.
+     */
+    public synchronized long getUpdatedAt() { return updatedAt; }
+}
@@ -0,0 +1,82 @@
+package com.task;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.task.generator.TickGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchRunnerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+    @Test
+    public void writesSingleFileAndBatchReportsInEveryFormat() throws IOException {
+        Path inputs = Files.createDirectory(tempDir.resolve("inputs"));
+        Path day1 = inputs.resolve("scandi-1.csv");
+        Path day2 = inputs.resolve("scandi-2.csv");
+        new TickGenerator().instruments(10).rowsPerDay(4_000).days(1).write(day1);
+        new TickGenerator().seed(7).instruments(10).rowsPerDay(4_000).days(1).write(day2);
+
+        Path csv = tempDir.resolve("report.csv");
+        assertEquals(BatchRunner.EXIT_OK, run("--output=" + csv, "--threads=1",
+                "--stock-analysis.cache.enabled=false", day1.toString()));
+        List<String> csvLines = Files.readAllLines(csv);
+        assertEquals("\"Stock Code\",\"Metric\",\"Value\"", csvLines.get(0));
+        assertEquals(10 * 10, csvLines.size() - 1);
+        assertTrue(log.toString().contains("ms from JVM start to the first row"), log.toString());
+
+        Path json = tempDir.resolve("report.json");
+        assertEquals(BatchRunner.EXIT_OK, run("--output=" + json, day1.toString()));
+        JsonNode rows = new ObjectMapper().readTree(json.toFile());
+        assertEquals(csvLines.size() - 1, rows.size());
+        assertEquals("\"" + rows.get(0).get("Stock Code").asText() + "\",\"" + rows.get(0).get("Metric").asText()
+                + "\",\"" + rows.get(0).get("Value").asText() + "\"", csvLines.get(1));
+
+        // a directory and a file inside it are one batch of two files
+        Path tsv = tempDir.resolve("batch.out");
+        assertEquals(BatchRunner.EXIT_OK, run("--output=" + tsv, "--format=tsv", "--file-threads=2",
+                inputs.toString(), day2.toString()));
+        List<String> tsvLines = Files.readAllLines(tsv);
+        assertEquals("\"File\"\t\"Stock Code\"\t\"Metric\"\t\"Value\"", tsvLines.get(0));
+        assertEquals(3 * 10 * 10, tsvLines.size() - 1);
+        assertTrue(tsvLines.get(1).startsWith("\"scandi-1.csv\"\t"));
+        assertTrue(tsvLines.get(tsvLines.size() - 1).startsWith("\"ALL\"\t"));
+    }
+
+    @Test
+    public void exitCodesTellUsageMissingInputsAndOutputFailuresApart() throws IOException {
+        Path input = tempDir.resolve("scandi.csv");
+        new TickGenerator().instruments(3).rowsPerDay(500).days(1).write(input);
+
+        assertEquals(BatchRunner.EXIT_USAGE, run());
+        assertEquals(BatchRunner.EXIT_USAGE, run("--format=xml", input.toString()));
+        assertEquals(BatchRunner.EXIT_USAGE, run("--threads=many", input.toString()));
+        assertEquals(BatchRunner.EXIT_USAGE, run("--file-threads=0", input.toString()));
+        assertEquals(BatchRunner.EXIT_USAGE, run("--verbose=true", input.toString()));
+
+        assertEquals(BatchRunner.EXIT_NO_INPUT, run(tempDir.resolve("missing.csv").toString()));
+        assertEquals(BatchRunner.EXIT_NO_INPUT, run(tempDir.resolve("*.txt").toString()));
+
+        assertEquals(BatchRunner.EXIT_OUTPUT_FAILED, run("--output=" + tempDir.resolve("missing/report.csv"), input.toString()));
+        assertEquals(BatchRunner.EXIT_OK, run("--output=" + tempDir.resolve("report.csv"), input.toString()));
+    }
+
+    private int run(String... args) {
+        log.reset();
+        return BatchRunner.run(args, new PrintStream(log, true));
+    }
+}
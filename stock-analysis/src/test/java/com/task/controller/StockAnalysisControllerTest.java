@@ -0,0 +1,79 @@
+package com.task.controller;
+
+import com.task.service.TailService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class StockAnalysisControllerTest {
+
+    private static final String ROW = "ERICB SS Equity,0,72.25,72.4,72.3,900,200,100,1,0,20170424,%d.5,72.35,,XT\n";
+
+    @TempDir
+    Path tempDir;
+
+    private final TailService tailService = new TailService();
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(tailService, "pollMillis", 20L);
+        ReflectionTestUtils.setField(tailService, "maxFiles", 2);
+        ReflectionTestUtils.setField(tailService, "quantileRelativeAccuracy", 0.01);
+        ReflectionTestUtils.invokeMethod(tailService, "startPoller");
+        StockAnalysisController controller = new StockAnalysisController();
+        ReflectionTestUtils.setField(controller, "tailService", tailService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(tailService, "stopPoller");
+    }
+
+    @Test
+    public void tailStreamSendsASnapshotThenUpdatesAndEndsOnUnfollow() throws Exception {
+        Path file = tempDir.resolve("feed.csv");
+        Files.write(file, String.format(ROW, 30_000).getBytes(StandardCharsets.UTF_8));
+
+        MvcResult stream = mockMvc.perform(get("/tail/stream").param("filePath", file.toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        awaitContent(stream.getResponse(), "event:snapshot");
+
+        Files.write(file, String.format(ROW, 30_010).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        // the event name and its data are written separately, wait for the data
+        awaitContent(stream.getResponse(), "\"rowsAccepted\":2");
+        assertTrue(stream.getResponse().getContentAsString().contains("event:update"));
+
+        mockMvc.perform(delete("/tail").param("filePath", file.toString())).andExpect(status().isNoContent());
+        // the stream completes, so the async request ends
+        stream.getAsyncResult(10_000);
+        mockMvc.perform(delete("/tail").param("filePath", file.toString())).andExpect(status().isNotFound());
+    }
+
+    private static void awaitContent(MockHttpServletResponse response, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!response.getContentAsString().contains(expected)) {
+            assertTrue(System.currentTimeMillis() < deadline, "no " + expected + " in " + response.getContentAsString());
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.task.generator;
+
+import com.sun.net.httpserver.HttpServer;
+import com.task.model.StockData;
+import com.task.service.DataService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TickGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void sameSeedWritesTheSameRowsInTheScandiLayout() throws IOException {
+        TickGenerator generator = new TickGenerator().rowsPerDay(5_000).days(3).instruments(20);
+        String first = generate(generator);
+        assertEquals(first, generate(generator));
+        assertNotEquals(first, generate(generator.seed(43)));
+
+        Path file = tempDir.resolve("generated.csv");
+        assertEquals(15_000, generator.write(file));
+        List<StockData> rows = new DataService().loadCSVData(file.toString());
+        assertEquals(15_000, rows.size());
+        // three trading days from a Monday, each in time order within the session
+        assertEquals(Arrays.asList("20170424", "20170425", "20170426"),
+                Arrays.asList(rows.get(0).getDate(), rows.get(5_000).getDate(), rows.get(14_999).getDate()));
+        for (int i = 1; i < rows.size(); i++) {
+            if (rows.get(i).getDate().equals(rows.get(i - 1).getDate())) {
+                assertTrue(rows.get(i).getTimeInSecondsPastMidnight() >= rows.get(i - 1).getTimeInSecondsPastMidnight());
+            }
+            assertTrue(rows.get(i).getTimeInSecondsPastMidnight() >= 8 * 3600);
+            assertTrue(rows.get(i).getTimeInSecondsPastMidnight() <= 18.5 * 3600);
+        }
+    }
+
+    @Test
+    public void knobsShapeTheRows() throws IOException {
+        Map<String, Double> mix = new HashMap<>();
+        mix.put("XT", 1.0);
+        mix.put("R", 3.0);
+        TickGenerator generator = new TickGenerator().rowsPerDay(40_000).days(1).instruments(100).skew(1.5)
+                .auctionWindows(Collections.singletonList(new int[]{9 * 3600, 9 * 3600 + 600})).auctionShare(0.25)
+                .tradeShare(0.5).crossedQuoteRate(0.2).conditionMix(mix).malformedRate(0.03);
+        String[] lines = generate(generator).split("\n");
+        assertEquals(40_000, lines.length);
+
+        Map<String, Integer> perInstrument = new HashMap<>();
+        int wellFormed = 0;
+        int auction = 0;
+        int trades = 0;
+        int crossed = 0;
+        int repeatOffer = 0;
+        for (String line : lines) {
+            String[] fields = line.split(",", -1);
+            if (fields.length != 15 || !fields[2].matches("[0-9.]+")) {
+                continue;
+            }
+            wellFormed++;
+            perInstrument.merge(fields[0], 1, Integer::sum);
+            double time = Double.parseDouble(fields[11]);
+            if (time >= 9 * 3600 && time <= 9 * 3600 + 600) {
+                auction++;
+            }
+            if (fields[8].equals("1")) {
+                trades++;
+                if (fields[14].equals("R")) {
+                    repeatOffer++;
+                }
+            } else if (Double.parseDouble(fields[2]) > Double.parseDouble(fields[3])) {
+                crossed++;
+            }
+        }
+        assertEquals(0.97, wellFormed / 40_000.0, 0.01);
+        assertEquals(0.25, auction / (double) wellFormed, 0.01);
+        assertEquals(0.5, trades / (double) wellFormed, 0.02);
+        assertEquals(0.2, crossed / (double) (wellFormed - trades), 0.02);
+        assertEquals(0.75, repeatOffer / (double) trades, 0.02);
+        // Zipf with s = 1.5 over 100 instruments puts about 40% of the rows on the first
+        assertEquals(0.4, perInstrument.get("INSTR0 SS Equity") / (double) wellFormed, 0.03);
+    }
+
+    @Test
+    public void replayCallsTheEndpointForEveryRequest() throws Exception {
+        List<String> paths = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/analyze", exchange -> {
+            paths.add(exchange.getRequestURI().getQuery());
+            byte[] body = "Analysis completed. Check the report.".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            Path a = tempDir.resolve("a.csv");
+            new TickGenerator().rowsPerDay(100).days(1).write(a);
+            Path b = Files.write(tempDir.resolve("b.csv"), new byte[0]);
+            TickReplay replay = new TickReplay().baseUrl("http://localhost:" + server.getAddress().getPort())
+                    .rate(200).threads(2).requests(6);
+            replay.run(Arrays.asList(a, b));
+
+            assertEquals(6, replay.getCompleted());
+            assertEquals(0, replay.getFailed());
+            assertEquals(Collections.singletonMap(200, 6), replay.getStatuses());
+            assertEquals(3, paths.stream().filter(query -> query.endsWith("a.csv")).count());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String generate(TickGenerator generator) throws IOException {
+        StringWriter writer = new StringWriter();
+        generator.write(writer);
+        return writer.toString();
+    }
+}
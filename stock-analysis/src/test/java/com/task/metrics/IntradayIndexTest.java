@@ -0,0 +1,115 @@
+package com.task.metrics;
+
+import com.task.model.TickStore;
+import com.task.service.DataService;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IntradayIndexTest {
+
+    private static final int DAY = 24 * 60 * 60;
+
+    private final DataService dataService = new DataService();
+
+    @Test
+    public void hourRollupOfFineBucketsMatchesHourBuckets() throws IOException {
+        TickStore data = loadSample();
+        int[] offsets = dataService.groupByCode(data);
+        QuantileEngine engine = QuantileEngine.logHistogram(0.01);
+        IntradayIndex fine = IntradayIndex.build(data, offsets, 5, engine);
+        IntradayIndex hourly = IntradayIndex.build(data, offsets, 60, engine);
+        assertTrue(fine.getBucketCount() > hourly.getBucketCount());
+
+        for (String code : fine.getStockCodes()) {
+            List<MetricBucket> rolledUp = fine.query(code, null, 0, DAY, 60);
+            List<MetricBucket> expected = hourly.query(code, null, 0, DAY, 60);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected.size(), rolledUp.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSameMetrics(expected.get(i), rolledUp.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void dayRollupMatchesKernelPerDate() throws IOException {
+        TickStore data = loadSample();
+        int[] offsets = dataService.groupByCode(data);
+        IntradayIndex index = IntradayIndex.build(data, offsets, 5, QuantileEngine.exact());
+        InstrumentMetricsKernel kernel = new InstrumentMetricsKernel();
+
+        for (int codeId = 0; codeId < offsets.length - 1; codeId++) {
+            int from = offsets[codeId];
+            while (from < offsets[codeId + 1]) {
+                int to = from;
+                while (to < offsets[codeId + 1] && data.getDateId(to) == data.getDateId(from)) {
+                    to++;
+                }
+                String code = data.getBloombergCode(from);
+                InstrumentMetrics expected = kernel.compute(code, data, from, to);
+                List<MetricBucket> days = index.query(code, data.getDate(from), 0, DAY, IntradayIndex.MINUTES_PER_DAY);
+                assertEquals(1, days.size());
+                MetricBucket day = days.get(0);
+
+                assertEquals(expected.getMeanTimeBetweenTrades(), day.getMeanTimeBetweenTrades(), 1e-9);
+                assertEquals(expected.getMedianTimeBetweenTrades(), day.getMedianTimeBetweenTrades());
+                assertEquals(expected.getLongestTimeBetweenTrades(), day.getLongestTimeBetweenTrades());
+                assertEquals(expected.getMeanTimeBetweenTickChanges(), day.getMeanTimeBetweenTickChanges(), 1e-9);
+                assertEquals(expected.getMedianTimeBetweenTickChanges(), day.getMedianTimeBetweenTickChanges());
+                assertEquals(expected.getLongestTimeBetweenTickChanges(), day.getLongestTimeBetweenTickChanges());
+                assertEquals(expected.getMeanBidAskSpread(), day.getMeanBidAskSpread(), 1e-9);
+                assertEquals(expected.getMedianBidAskSpread(), day.getMedianBidAskSpread());
+                assertEquals(expected.getRoundNumberTradePercentage(), day.getRoundNumberTradePercentage());
+                assertEquals(expected.getRoundNumberVolumePercentage(), day.getRoundNumberVolumePercentage());
+                from = to;
+            }
+        }
+    }
+
+    @Test
+    public void rangeQueriesOnlyReturnOverlappingBuckets() throws IOException {
+        TickStore data = loadSample();
+        IntradayIndex index = IntradayIndex.build(data, dataService.groupByCode(data), 5, QuantileEngine.exact());
+        String code = index.getStockCodes().get(0);
+
+        List<MetricBucket> all = index.query(code, null, 0, DAY, 5);
+        MetricBucket first = all.get(0);
+        List<MetricBucket> range = index.query(code, first.getDate(), first.getStartSecond() + 1, first.getStartSecond() + 2, 5);
+        assertEquals(1, range.size());
+        assertEquals(first.getStartSecond(), range.get(0).getStartSecond());
+        assertTrue(index.query(code, first.getDate(), 5, 5, 5).isEmpty());
+        assertTrue(index.query("UNKNOWN", null, 0, DAY, 5).isEmpty());
+    }
+
+    private static void assertSameMetrics(MetricBucket expected, MetricBucket actual) {
+        assertEquals(expected.getDate(), actual.getDate());
+        assertEquals(expected.getStartSecond(), actual.getStartSecond());
+        assertEquals(expected.getTrades(), actual.getTrades());
+        assertEquals(expected.getTickChanges(), actual.getTickChanges());
+        assertEquals(expected.getSpreadCount(), actual.getSpreadCount());
+        assertEquals(expected.getMeanTimeBetweenTrades(), actual.getMeanTimeBetweenTrades(), 1e-9);
+        assertEquals(expected.getMedianTimeBetweenTrades(), actual.getMedianTimeBetweenTrades());
+        assertEquals(expected.getLongestTimeBetweenTrades(), actual.getLongestTimeBetweenTrades());
+        assertEquals(expected.getMeanTimeBetweenTickChanges(), actual.getMeanTimeBetweenTickChanges(), 1e-9);
+        assertEquals(expected.getMedianTimeBetweenTickChanges(), actual.getMedianTimeBetweenTickChanges());
+        assertEquals(expected.getLongestTimeBetweenTickChanges(), actual.getLongestTimeBetweenTickChanges());
+        assertEquals(expected.getMeanBidAskSpread(), actual.getMeanBidAskSpread(), 1e-9);
+        assertEquals(expected.getMedianBidAskSpread(), actual.getMedianBidAskSpread());
+        assertEquals(expected.getRoundNumberTradePercentage(), actual.getRoundNumberTradePercentage());
+        assertEquals(expected.getRoundNumberVolumePercentage(), actual.getRoundNumberVolumePercentage());
+    }
+
+    private TickStore loadSample() throws IOException {
+        URL resource = getClass().getClassLoader().getResource("scandi.csv");
+        TickStore data = dataService.loadTickStore(Paths.get(resource.getPath()).toString(), DataService.ANALYSIS_FILTER, null);
+        return dataService.sortDataByDateTime(data);
+    }
+}
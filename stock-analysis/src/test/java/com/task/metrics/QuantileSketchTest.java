@@ -0,0 +1,119 @@
+package com.task.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QuantileSketchTest {
+
+    private static final double[] FRACTIONS = {0, 0.1, 0.25, 0.5, 0.9, 0.99, 1};
+
+    @Test
+    public void exactMatchesSortedArray() {
+        Random random = new Random(3);
+        for (int n = 1; n < 300; n += 7) {
+            double[] values = randomGaps(random, n);
+            ExactQuantiles exact = new ExactQuantiles();
+            for (double value : values) {
+                exact.add(value);
+            }
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+
+            double median = n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2.0;
+            assertEquals(median, exact.quantile(0.5), "median of " + n);
+            for (double q : FRACTIONS) {
+                assertEquals(interpolated(sorted, q), exact.quantile(q), 1e-9, "q=" + q + " of " + n);
+            }
+        }
+    }
+
+    @Test
+    public void exactHandlesEmptyAndRepeatedValues() {
+        ExactQuantiles exact = new ExactQuantiles();
+        assertEquals(0, exact.quantile(0.5));
+        for (int i = 0; i < 1000; i++) {
+            exact.add(i % 3 == 0 ? 1.5 : 2.5);
+        }
+        assertEquals(2.5, exact.quantile(0.5));
+        assertEquals(1.5, exact.quantile(0.1));
+    }
+
+    @Test
+    public void sketchStaysWithinRelativeAccuracy() {
+        Random random = new Random(5);
+        double accuracy = 0.01;
+        double[] values = randomGaps(random, 100_000);
+        LogHistogramSketch sketch = new LogHistogramSketch(accuracy);
+        for (double value : values) {
+            sketch.add(value);
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        assertEquals(values.length, sketch.count());
+        for (double q : FRACTIONS) {
+            double expected = interpolated(sorted, q);
+            assertTrue(Math.abs(sketch.quantile(q) - expected) <= accuracy * expected + 1e-12,
+                    "q=" + q + " expected " + expected + " got " + sketch.quantile(q));
+        }
+    }
+
+    @Test
+    public void mergedSketchesEqualOneSketchOfAllValues() {
+        Random random = new Random(9);
+        LogHistogramSketch all = new LogHistogramSketch(0.02);
+        LogHistogramSketch merged = new LogHistogramSketch(0.02);
+        for (int part = 0; part < 4; part++) {
+            LogHistogramSketch partial = new LogHistogramSketch(0.02);
+            // spread the parts over different magnitudes so buckets have to grow both ways
+            double scale = Math.pow(100, part - 2);
+            for (double value : randomGaps(random, 5_000)) {
+                all.add(value * scale);
+                partial.add(value * scale);
+            }
+            merged.merge(partial);
+        }
+        all.add(0);
+        merged.add(0);
+        all.add(-3);
+        merged.add(-3);
+
+        assertEquals(all.count(), merged.count());
+        for (double q : FRACTIONS) {
+            assertEquals(all.quantile(q), merged.quantile(q), "q=" + q);
+        }
+        assertEquals(-3, all.quantile(0), 3 * 0.02);
+    }
+
+    @Test
+    public void sketchMemoryIsBounded() {
+        LogHistogramSketch sketch = new LogHistogramSketch(0.01, 64);
+        for (int exponent = -300; exponent <= 300; exponent++) {
+            sketch.add(Math.pow(10, exponent));
+        }
+        assertTrue(sketch.estimatedBytes() <= 2 * 64 * Long.BYTES);
+        // the largest values keep their accuracy when the lowest buckets are folded
+        assertEquals(1e300, sketch.quantile(1), 1e300 * 0.01);
+    }
+
+    private static double[] randomGaps(Random random, int n) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            // heavy tailed, like gaps between trades
+            values[i] = Math.round(-Math.log(1 - random.nextDouble()) * 5000) / 1000.0 + 0.001;
+        }
+        return values;
+    }
+
+    private static double interpolated(double[] sorted, double q) {
+        double rank = q * (sorted.length - 1);
+        int lower = (int) Math.floor(rank);
+        int upper = (int) Math.ceil(rank);
+        return sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+    }
+}
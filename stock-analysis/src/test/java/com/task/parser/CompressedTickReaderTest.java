@@ -0,0 +1,162 @@
+package com.task.parser;
+
+import com.task.generator.TickGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressedTickReaderTest {
+
+    // the smallest buffer, so lines are cut by buffer ends all the time
+    private static final int SMALL_BUFFER = 64 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void gzipAndBgzfFilesParseLikeThePlainFile() throws IOException {
+        TickGenerator generator = new TickGenerator().instruments(20).rowsPerDay(20_000).days(2).malformedRate(0.01);
+        Path plain = tempDir.resolve("scandi.csv");
+        generator.write(plain);
+        Path bgzf = tempDir.resolve("scandi.csv.gz");
+        generator.write(bgzf);
+        // two gzip members, as cat a.gz b.gz gives
+        byte[] bytes = Files.readAllBytes(plain);
+        Path gzip = tempDir.resolve("scandi-members.gz");
+        try (OutputStream out = Files.newOutputStream(gzip)) {
+            out.write(gzip(Arrays.copyOfRange(bytes, 0, bytes.length / 3)));
+            out.write(gzip(Arrays.copyOfRange(bytes, bytes.length / 3, bytes.length)));
+        }
+
+        assertEquals(CompressedTickReader.Format.PLAIN, CompressedTickReader.detect(plain));
+        assertEquals(CompressedTickReader.Format.BGZF, CompressedTickReader.detect(bgzf));
+        assertEquals(CompressedTickReader.Format.GZIP, CompressedTickReader.detect(gzip));
+        assertTrue(Files.size(bgzf) < Files.size(plain) / 3);
+
+        TickCsvParser expected = new TickCsvParser();
+        List<String> rows = parse(expected, plain, null);
+        assertTrue(expected.getRowsSkipped() > 0);
+
+        ExecutorService inflaters = Executors.newFixedThreadPool(3);
+        try {
+            for (Path file : Arrays.asList(gzip, bgzf)) {
+                TickCsvParser parser = new TickCsvParser();
+                List<Long> lineEnds = new ArrayList<>();
+                CompressedTickReader reader = new CompressedTickReader(inflaters, 3, 2, 2 * SMALL_BUFFER);
+                assertEquals(rows, parse(parser, file, reader, lineEnds));
+                assertEquals(expected.getRowsSkipped(), parser.getRowsSkipped());
+                assertEquals(expected.getFieldsDefaulted(), parser.getFieldsDefaulted());
+                // progress is counted in bytes of the compressed file
+                assertEquals(Files.size(file), parser.getBytesRead());
+                for (int i = 1; i < lineEnds.size(); i++) {
+                    assertTrue(lineEnds.get(i) >= lineEnds.get(i - 1), file + " row " + i);
+                }
+                assertTrue(lineEnds.get(lineEnds.size() - 1) <= Files.size(file));
+            }
+            // the parser finds compressed files by itself
+            TickCsvParser parser = new TickCsvParser();
+            assertEquals(rows, parse(parser, bgzf, null));
+        } finally {
+            inflaters.shutdownNow();
+        }
+    }
+
+    @Test
+    public void carriesQuotedAndVeryLongLinesAcrossBuffers() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 4_000; i++) {
+            content.append("\"ERICB SS Equity\",0,\"72.25\",72.4,72.3,900,200,100,1,0,20170424,29188.600,72.35,\"a,\"\"b\"\"\",XT\r\n");
+            if (i == 1_000) {
+                // longer than three buffers, a malformed row to skip
+                char[] garbage = new char[3 * SMALL_BUFFER + 17];
+                Arrays.fill(garbage, 'x');
+                content.append(garbage).append('\n');
+            }
+        }
+        // no trailing newline on the last row
+        content.append("VOLVB SS Equity,0,129.5,129.7,,400,100,,3,0,20170425,61300.125,129.6,,");
+        Path plain = Files.write(tempDir.resolve("quoted.csv"), content.toString().getBytes(StandardCharsets.UTF_8));
+        Path gzip = Files.write(tempDir.resolve("quoted.csv.gz"), gzip(Files.readAllBytes(plain)));
+
+        TickCsvParser expected = new TickCsvParser();
+        List<String> rows = parse(expected, plain, null);
+        TickCsvParser actual = new TickCsvParser();
+        assertEquals(rows, parse(actual, gzip, new CompressedTickReader(null, 1, 3, SMALL_BUFFER)));
+        assertEquals(4_001, rows.size());
+        assertEquals(1, actual.getRowsSkipped());
+    }
+
+    @Test
+    public void stopsTheReaderWhenParsingFailsAndReportsCorruptBlocks() throws IOException {
+        Path bgzf = tempDir.resolve("day.csv.gz");
+        new TickGenerator().instruments(5).rowsPerDay(50_000).days(1).write(bgzf);
+        ExecutorService inflaters = Executors.newFixedThreadPool(2);
+        try {
+            CompressedTickReader reader = new CompressedTickReader(inflaters, 2, 4, SMALL_BUFFER);
+            int[] rows = new int[1];
+            assertThrows(IllegalStateException.class, () -> reader.parse(bgzf, new TickCsvParser(), row -> {
+                if (++rows[0] == 100) {
+                    throw new IllegalStateException("stop");
+                }
+            }));
+            assertFalse(Thread.getAllStackTraces().keySet().stream()
+                    .anyMatch(thread -> thread.getName().startsWith("decompress-") && thread.isAlive()));
+
+            // flip a byte in the middle of the compressed data of a block
+            byte[] bytes = Files.readAllBytes(bgzf);
+            bytes[bytes.length / 2] ^= 0x55;
+            Path corrupt = Files.write(tempDir.resolve("corrupt.csv.gz"), bytes);
+            assertThrows(ZipException.class, () -> reader.parse(corrupt, new TickCsvParser(), row -> { }));
+        } finally {
+            inflaters.shutdownNow();
+        }
+    }
+
+    private static List<String> parse(TickCsvParser parser, Path file, CompressedTickReader reader) throws IOException {
+        return parse(parser, file, reader, new ArrayList<>());
+    }
+
+    private static List<String> parse(TickCsvParser parser, Path file, CompressedTickReader reader, List<Long> lineEnds)
+            throws IOException {
+        List<String> rows = new ArrayList<>();
+        TickRowHandler handler = row -> {
+            rows.add(row.getBloombergCode() + "," + row.getBidPrice() + "," + row.getAskPrice() + "," + row.getTradePrice()
+                    + "," + row.getBidVolume() + "," + row.getAskVolume() + "," + row.getTradeVolume() + ","
+                    + row.getUpdateType() + "," + row.getDate() + "," + row.getTimeInSecondsPastMidnight() + ","
+                    + row.getConditionCodes());
+            lineEnds.add(row.getLineEnd());
+        };
+        if (reader == null) {
+            parser.parse(file, handler);
+        } else {
+            reader.parse(file, parser, handler);
+        }
+        return rows;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,161 @@
+package com.task.parser;
+
+import com.opencsv.exceptions.CsvException;
+import com.task.model.StockData;
+import com.task.service.DataService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TickCsvParserTest {
+
+    private static final String ROW_1 = "ERICB SS Equity,0,72.25,72.4,72.3,900,200,100,1,0,20170424,29188.600,72.35,,XT";
+    private static final String ROW_2 = "VOLVB SS Equity,0,129.5,129.7,,400,100,,3,0,20170425,61300.125,129.6,,";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void matchesOpenCsvOnSampleFile() throws IOException, CsvException {
+        URL resource = getClass().getClassLoader().getResource("scandi.csv");
+        String filePath = Paths.get(resource.getPath()).toString();
+        DataService dataService = new DataService();
+
+        List<StockData> expected = dataService.loadCSVDataWithOpenCsv(filePath);
+        List<StockData> actual = dataService.loadCSVData(filePath);
+
+        assertSameRows(expected, actual);
+    }
+
+    @Test
+    public void handlesQuotesCrlfAndMissingTrailingNewline() throws IOException, CsvException {
+        String content = "\"ERICB SS Equity\",0,\"72.25\",72.4,72.3,900,200,100,1,0,20170424,29188.600,72.35,\"a,\"\"b\"\"\",XT\r\n"
+                + ROW_2 + "\r\n"
+                + ROW_1;
+        Path file = write(content);
+
+        List<StockData> expected = new DataService().loadCSVDataWithOpenCsv(file.toString());
+        List<StockData> actual = parse(file, TickCsvParser.DEFAULT_SEGMENT_SIZE);
+
+        assertEquals(3, actual.size());
+        assertEquals("ERICB SS Equity", actual.get(0).getBloombergCode());
+        assertEquals(72.25, actual.get(0).getBidPrice());
+        assertEquals("XT", actual.get(0).getConditionCodes());
+        assertEquals("", actual.get(1).getConditionCodes());
+        assertSameRows(expected, actual);
+    }
+
+    @Test
+    public void carriesLinesAcrossMappedWindows() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            content.append(i % 2 == 0 ? ROW_1 : ROW_2).append('\n');
+        }
+        Path file = write(content.toString());
+
+        // a window barely larger than one line forces a split inside almost every row
+        List<StockData> rows = parse(file, ROW_1.length() + 7);
+
+        assertEquals(50, rows.size());
+        assertEquals("VOLVB SS Equity", rows.get(49).getBloombergCode());
+        assertEquals(61300.125, rows.get(49).getTimeInSecondsPastMidnight());
+    }
+
+    @Test
+    public void skipsShortRowsAndDefaultsBadNumbers() throws IOException {
+        Path file = write("\n" + "too,short\n" + ROW_1.replace("72.25", "n/a") + "\n");
+        TickCsvParser parser = new TickCsvParser();
+        List<StockData> rows = new ArrayList<>();
+
+        parser.parse(file, row -> rows.add(toStockData(row)));
+
+        assertEquals(1, rows.size());
+        assertEquals(0.0, rows.get(0).getBidPrice());
+        assertEquals(1, parser.getRowsSkipped());
+        assertEquals(1, parser.getFieldsDefaulted());
+    }
+
+    @Test
+    public void pushedDownFilterMatchesListFilters() throws IOException {
+        String content = ROW_1 + "\n"
+                // crossed quote, inside the 09:00-17:00 window, inside at the exact bound, not a trade
+                + ROW_1.replace("72.25,72.4", "72.5,72.4") + "\n"
+                + ROW_1.replace("29188.600", "40000") + "\n"
+                + ROW_1.replace("29188.600", "61200") + "\n"
+                + ROW_1.replace(",1,0,2017", ",3,0,2017") + "\n"
+                // quoted XT is accepted, other condition codes are not
+                + ROW_1.replace(",XT", ",\"XT\"") + "\n"
+                + ROW_1.replace(",XT", ",R") + "\n"
+                + ROW_1.replace(",XT", ",") + "\n"
+                + ROW_2 + "\n";
+        Path file = write(content);
+        DataService dataService = new DataService();
+        List<StockData> expected = dataService.filterByConditionCode(dataService.filterAuctionPeriods(parse(file, TickCsvParser.DEFAULT_SEGMENT_SIZE)));
+
+        TickCsvParser parser = new TickCsvParser();
+        parser.setFilter(DataService.ANALYSIS_FILTER);
+        List<StockData> actual = new ArrayList<>();
+        parser.parse(file, row -> actual.add(toStockData(row)));
+
+        assertEquals(3, actual.size());
+        assertSameRows(expected, actual);
+        assertEquals(6, parser.getRowsFiltered());
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = tempDir.resolve("ticks.csv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<StockData> parse(Path file, int segmentSize) throws IOException {
+        List<StockData> rows = new ArrayList<>();
+        new TickCsvParser(segmentSize).parse(file, row -> rows.add(toStockData(row)));
+        return rows;
+    }
+
+    private static StockData toStockData(TickRow row) {
+        StockData data = new StockData();
+        data.setBloombergCode(row.getBloombergCode());
+        data.setBidPrice(row.getBidPrice());
+        data.setAskPrice(row.getAskPrice());
+        data.setTradePrice(row.getTradePrice());
+        data.setBidVolume(row.getBidVolume());
+        data.setAskVolume(row.getAskVolume());
+        data.setTradeVolume(row.getTradeVolume());
+        data.setUpdateType(row.getUpdateType());
+        data.setDate(row.getDate());
+        data.setTimeInSecondsPastMidnight(row.getTimeInSecondsPastMidnight());
+        data.setConditionCodes(row.getConditionCodes());
+        return data;
+    }
+
+    private static void assertSameRows(List<StockData> expected, List<StockData> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            StockData e = expected.get(i);
+            StockData a = actual.get(i);
+            assertEquals(e.getBloombergCode(), a.getBloombergCode(), "code of row " + i);
+            assertEquals(e.getBidPrice(), a.getBidPrice(), "bid of row " + i);
+            assertEquals(e.getAskPrice(), a.getAskPrice(), "ask of row " + i);
+            assertEquals(e.getTradePrice(), a.getTradePrice(), "trade of row " + i);
+            assertEquals(e.getBidVolume(), a.getBidVolume(), "bid volume of row " + i);
+            assertEquals(e.getAskVolume(), a.getAskVolume(), "ask volume of row " + i);
+            assertEquals(e.getTradeVolume(), a.getTradeVolume(), "trade volume of row " + i);
+            assertEquals(e.getUpdateType(), a.getUpdateType(), "update type of row " + i);
+            assertEquals(e.getDate(), a.getDate(), "date of row " + i);
+            assertEquals(e.getTimeInSecondsPastMidnight(), a.getTimeInSecondsPastMidnight(), "time of row " + i);
+            assertEquals(e.getConditionCodes(), a.getConditionCodes(), "condition codes of row " + i);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.task.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "stock-analysis.jobs.concurrency=1",
+        "stock-analysis.jobs.queue-capacity=1",
+        "stock-analysis.jobs.retained-jobs=2"
+})
+public class AnalysisJobServiceTest {
+
+    @MockBean
+    private MetricsService metricsService;
+
+    @Autowired
+    private AnalysisJobService analysisJobService;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void releaseBlockedJobs() {
+        release.countDown();
+    }
+
+    @Test
+    public void jobKeepsItsOwnResults() throws Exception {
+        List<String[]> first = Collections.singletonList(new String[]{"A", "Mean Bid-Ask Spread", "0.1"});
+        List<String[]> second = Collections.singletonList(new String[]{"B", "Mean Bid-Ask Spread", "0.2"});
+        when(metricsService.analyzeFile(eq("first.csv"), any())).thenReturn(first);
+        when(metricsService.analyzeFile(eq("second.csv"), any())).thenReturn(second);
+
+        AnalysisJob firstJob = analysisJobService.submit("first.csv");
+        AnalysisJob secondJob = analysisJobService.submit("second.csv");
+        awaitFinished(firstJob);
+        awaitFinished(secondJob);
+
+        assertEquals(AnalysisJob.Status.SUCCEEDED, firstJob.getStatus());
+        assertEquals("A", firstJob.getResults().get(0)[0]);
+        assertEquals("B", secondJob.getResults().get(0)[0]);
+    }
+
+    @Test
+    public void submissionsBeyondTheQueueAreRejected() throws Exception {
+        blockUntilReleased();
+        AnalysisJob running = analysisJobService.submit("running.csv");
+        awaitStatus(running, AnalysisJob.Status.RUNNING);
+        AnalysisJob queued = analysisJobService.submit("queued.csv");
+
+        assertThrows(RejectedExecutionException.class, () -> analysisJobService.submit("rejected.csv"));
+        assertEquals(AnalysisJob.Status.QUEUED, queued.getStatus());
+
+        release.countDown();
+        awaitFinished(running);
+        awaitFinished(queued);
+        assertEquals(AnalysisJob.Status.SUCCEEDED, queued.getStatus());
+    }
+
+    @Test
+    public void cancelStopsRunningAndQueuedJobs() throws Exception {
+        when(metricsService.analyzeFile(anyString(), any())).thenAnswer(invocation -> {
+            AnalysisProgress progress = invocation.getArgument(1);
+            while (true) {
+                progress.checkCancelled();
+                Thread.sleep(5);
+            }
+        });
+        AnalysisJob running = analysisJobService.submit("running.csv");
+        awaitStatus(running, AnalysisJob.Status.RUNNING);
+        AnalysisJob queued = analysisJobService.submit("queued.csv");
+
+        analysisJobService.cancel(queued.getId());
+        analysisJobService.cancel(running.getId());
+
+        assertEquals(AnalysisJob.Status.CANCELLED, queued.getStatus());
+        assertEquals(AnalysisJob.Status.CANCELLED, running.getStatus());
+        assertTrue(running.getProgress().isCancelled());
+        // the worker is free again once the running job has noticed
+        doReturn(Collections.emptyList()).when(metricsService).analyzeFile(anyString(), any());
+        AnalysisJob next = analysisJobService.submit("next.csv");
+        awaitFinished(next);
+        assertEquals(AnalysisJob.Status.SUCCEEDED, next.getStatus());
+    }
+
+    @Test
+    public void failedJobsReportTheirErrorAndOldJobsAreEvicted() throws Exception {
+        when(metricsService.analyzeFile(anyString(), any())).thenThrow(new IOException("no such file"));
+        AnalysisJob failed = analysisJobService.submit("missing.csv");
+        awaitFinished(failed);
+        assertEquals(AnalysisJob.Status.FAILED, failed.getStatus());
+        assertEquals("no such file", failed.getError());
+
+        for (int i = 0; i < 3; i++) {
+            awaitFinished(analysisJobService.submit("missing.csv"));
+        }
+        assertNull(analysisJobService.getJob(failed.getId()));
+    }
+
+    private void blockUntilReleased() throws Exception {
+        when(metricsService.analyzeFile(anyString(), any())).thenAnswer(invocation -> {
+            if (!release.await(10, TimeUnit.SECONDS)) {
+                throw new CancellationException();
+            }
+            return Collections.emptyList();
+        });
+    }
+
+    private static void awaitFinished(AnalysisJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!job.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(job.isFinished(), "job " + job.getFilePath() + " is still " + job.getStatus());
+    }
+
+    private static void awaitStatus(AnalysisJob job, AnalysisJob.Status status) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (job.getStatus() != status && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(status, job.getStatus());
+    }
+}
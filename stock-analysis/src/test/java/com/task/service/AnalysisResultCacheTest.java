@@ -0,0 +1,153 @@
+package com.task.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AnalysisResultCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Test
+    public void servesUnchangedFilesAndEvictsLeastRecentlyUsed() throws IOException {
+        Path a = Files.write(tempDir.resolve("a.csv"), "a".getBytes());
+        Path b = Files.write(tempDir.resolve("b.csv"), "b".getBytes());
+        Path c = Files.write(tempDir.resolve("c.csv"), "c".getBytes());
+        long entryBytes = AnalysisResultCache.estimateBytes(rows("x"));
+        AnalysisResultCache cache = new AnalysisResultCache(2 * entryBytes);
+
+        List<String[]> first = get(cache, a, "all rows");
+        assertSame(first, get(cache, a, "all rows"));
+        get(cache, a, "code in [X]");
+        assertEquals(2, runs.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // a changed file is analysed again and its old results are dropped
+        Files.write(a, "aa".getBytes());
+        Files.setLastModifiedTime(a, FileTime.fromMillis(System.currentTimeMillis() + 5_000));
+        get(cache, a, "all rows");
+        assertEquals(3, runs.get());
+        assertEquals(2, cache.getInvalidations());
+        assertEquals(1, cache.getEntryCount());
+
+        // two entries fit: reading b keeps it recent, so c evicts a
+        get(cache, b, "all rows");
+        get(cache, a, "all rows");
+        get(cache, b, "all rows");
+        get(cache, c, "all rows");
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2 * entryBytes, cache.getBytes());
+        get(cache, b, "all rows");
+        assertEquals(5, runs.get());
+        get(cache, a, "all rows");
+        assertEquals(6, runs.get());
+
+        assertEquals(1, cache.invalidate(tempDir.resolve(".").resolve("b.csv").toString()));
+        assertEquals(1, cache.invalidateAll());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void concurrentRequestsShareOneRun() throws Exception {
+        Path file = Files.write(tempDir.resolve("day.csv"), "day".getBytes());
+        AnalysisResultCache cache = new AnalysisResultCache(1 << 20);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService requests = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String[]>>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(requests.submit(() -> cache.get(file.toString(), "all rows", new AnalysisProgress(), () -> {
+                    runs.incrementAndGet();
+                    await(release);
+                    return rows("x");
+                })));
+            }
+            awaitShared(cache, 3);
+            release.countDown();
+            for (Future<List<String[]>> result : results) {
+                assertSame(results.get(0).get(), result.get());
+            }
+            assertEquals(1, runs.get());
+            assertEquals(1, cache.getMisses());
+
+            // a waiter starts its own run when the run it joined is cancelled
+            Path other = Files.write(tempDir.resolve("other.csv"), "other".getBytes());
+            CountDownLatch cancel = new CountDownLatch(1);
+            Future<List<String[]>> cancelled = requests.submit(() -> cache.get(other.toString(), "all rows", new AnalysisProgress(), () -> {
+                await(cancel);
+                throw new CancellationException();
+            }));
+            awaitMisses(cache, 2);
+            Future<List<String[]>> joined = requests.submit(() -> cache.get(other.toString(), "all rows", new AnalysisProgress(), () -> rows("y")));
+            AnalysisProgress abandoned = new AnalysisProgress();
+            Future<List<String[]>> gaveUp = requests.submit(() -> cache.get(other.toString(), "all rows", abandoned, () -> rows("z")));
+            awaitShared(cache, 5);
+            abandoned.cancel();
+            assertTrue(assertThrows(Exception.class, gaveUp::get).getCause() instanceof CancellationException);
+            cancel.countDown();
+            assertTrue(assertThrows(Exception.class, cancelled::get).getCause() instanceof CancellationException);
+            assertEquals("y", joined.get().get(0)[0]);
+        } finally {
+            release.countDown();
+            requests.shutdownNow();
+        }
+    }
+
+    private List<String[]> get(AnalysisResultCache cache, Path file, String options) throws IOException {
+        return cache.get(file.toString(), options, new AnalysisProgress(), () -> {
+            runs.incrementAndGet();
+            return rows("x");
+        });
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static List<String[]> rows(String code) {
+        return Collections.singletonList(new String[]{code, "Mean Bid-Ask Spread", "0.1"});
+    }
+
+    private static void awaitShared(AnalysisResultCache cache, long shared) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (cache.getShared() < shared && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(shared, cache.getShared());
+    }
+
+    private static void awaitMisses(AnalysisResultCache cache, long misses) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (cache.getMisses() < misses && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(misses, cache.getMisses());
+    }
+}
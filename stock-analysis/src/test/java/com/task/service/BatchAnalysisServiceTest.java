@@ -0,0 +1,166 @@
+package com.task.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+public class BatchAnalysisServiceTest {
+
+    @Autowired
+    private BatchAnalysisService batchAnalysisService;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private AnalysisResultCache resultCache;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void filesMatchSingleAnalysesAndCombineWithoutRows() throws IOException {
+        List<Path> days = splitSampleByDate();
+        Path sample = sample();
+
+        BatchResult result = batchAnalysisService.analyze(tempDir.toString());
+
+        assertEquals(days, new ArrayList<>(result.getFileResults().keySet()));
+        for (Path day : days) {
+            assertRowsEqual(metricsService.analyzeFile(day.toString()), result.getFileResults().get(day));
+        }
+
+        // spreads and round numbers don't depend on gaps, so they match the whole sample
+        Map<String, Double> whole = byCodeAndMetric(metricsService.analyzeFile(sample.toString()));
+        Map<String, Double> combined = byCodeAndMetric(result.getCombinedResults());
+        assertEquals(whole.keySet(), combined.keySet());
+        for (Map.Entry<String, Double> expected : whole.entrySet()) {
+            double actual = combined.get(expected.getKey());
+            if (expected.getKey().endsWith("Mean Bid-Ask Spread") || expected.getKey().contains("Round Number")) {
+                assertEquals(expected.getValue(), actual, 1e-9, expected.getKey());
+            } else if (expected.getKey().endsWith("Median Bid-Ask Spread")) {
+                assertEquals(expected.getValue(), actual, expected.getValue() * 0.01, expected.getKey());
+            }
+        }
+        // and the longest gaps are the longest of any day
+        for (Map.Entry<String, Double> entry : combined.entrySet()) {
+            if (entry.getKey().contains("Longest")) {
+                double longest = Double.NEGATIVE_INFINITY;
+                for (Path day : days) {
+                    longest = Math.max(longest, byCodeAndMetric(result.getFileResults().get(day)).get(entry.getKey()));
+                }
+                assertEquals(longest, entry.getValue(), entry.getKey());
+            }
+        }
+    }
+
+    @Test
+    public void combinedGapsSpanDatesWithinAFileAsThePerFileGapsDo() throws IOException {
+        // the sample holds several dates in one file
+        Path sample = Files.copy(sample(), tempDir.resolve("sample.csv"));
+
+        BatchResult result = batchAnalysisService.analyze(sample.toString());
+
+        Map<String, Double> file = byCodeAndMetric(result.getFileResults().get(sample));
+        Map<String, Double> combined = byCodeAndMetric(result.getCombinedResults());
+        assertEquals(file.keySet(), combined.keySet());
+        for (Map.Entry<String, Double> expected : file.entrySet()) {
+            double actual = combined.get(expected.getKey());
+            if (expected.getKey().contains("Median")) {
+                assertEquals(expected.getValue(), actual, expected.getValue() * 0.01, expected.getKey());
+            } else {
+                assertEquals(expected.getValue(), actual, Math.abs(expected.getValue()) * 1e-9, expected.getKey());
+            }
+        }
+
+        // the file's rows and buckets come from the result cache the second time
+        long hits = resultCache.getHits();
+        BatchResult again = batchAnalysisService.analyze(sample.toString());
+        assertEquals(hits + 1, resultCache.getHits());
+        assertRowsEqual(result.getCombinedResults(), again.getCombinedResults());
+    }
+
+    @Test
+    public void resolvesGlobsAndDirectories() throws IOException {
+        List<Path> days = splitSampleByDate();
+        Files.write(tempDir.resolve("notes.txt"), "not ticks".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(days, BatchAnalysisService.resolveInputs(tempDir.toString()));
+        assertEquals(days, BatchAnalysisService.resolveInputs(tempDir.resolve("day-*.csv").toString()));
+        assertEquals(days.subList(1, 2), BatchAnalysisService.resolveInputs(tempDir.resolve("day-*25.csv").toString()));
+        assertThrows(NoSuchFileException.class, () -> BatchAnalysisService.resolveInputs(tempDir.resolve("night-*.csv").toString()));
+    }
+
+    @Test
+    public void directoriesIncludeGzipFiles() throws IOException {
+        List<Path> days = splitSampleByDate();
+        Path last = days.get(days.size() - 1);
+        Path gzip = tempDir.resolve(last.getFileName() + ".gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            Files.copy(last, out);
+        }
+        Files.delete(last);
+        List<Path> inputs = new ArrayList<>(days.subList(0, days.size() - 1));
+        inputs.add(gzip);
+
+        assertEquals(inputs, BatchAnalysisService.resolveInputs(tempDir.toString()));
+        BatchResult result = batchAnalysisService.analyze(tempDir.toString());
+        assertEquals(inputs, new ArrayList<>(result.getFileResults().keySet()));
+        assertRowsEqual(metricsService.analyzeFile(gzip.toString()), result.getFileResults().get(gzip));
+    }
+
+    private List<Path> splitSampleByDate() throws IOException {
+        Map<String, List<String>> linesByDate = Files.readAllLines(sample(), StandardCharsets.UTF_8).stream()
+                .collect(Collectors.groupingBy(line -> line.split(",", -1)[10]));
+        List<Path> days = new ArrayList<>();
+        for (String date : new TreeSet<>(linesByDate.keySet())) {
+            Path day = tempDir.resolve("day-" + date + ".csv");
+            Files.write(day, linesByDate.get(date), StandardCharsets.UTF_8);
+            days.add(day);
+        }
+        return days;
+    }
+
+    private Path sample() {
+        URL resource = getClass().getClassLoader().getResource("scandi.csv");
+        return Paths.get(resource.getPath());
+    }
+
+    private static Map<String, Double> byCodeAndMetric(List<String[]> rows) {
+        Map<String, Double> values = new HashMap<>();
+        for (String[] row : rows) {
+            values.put(row[0] + " / " + row[1], Double.parseDouble(row[2].replace("%", "")));
+        }
+        return values;
+    }
+
+    private static void assertRowsEqual(List<String[]> expected, List<String[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i), Arrays.toString(expected.get(i)));
+        }
+    }
+}
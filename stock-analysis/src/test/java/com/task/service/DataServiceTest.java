@@ -0,0 +1,147 @@
+package com.task.service;
+
+import com.task.model.StockData;
+import com.task.model.TickStore;
+import com.task.generator.TickGenerator;
+import com.task.parser.BgzfOutputStream;
+import com.task.parser.TickFilter;
+import com.task.parser.TickSample;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataServiceTest {
+
+    private final DataService dataService = new DataService();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void tickStorePipelineMatchesListPipeline() throws IOException {
+        String filePath = samplePath();
+
+        List<StockData> list = dataService.loadCSVData(filePath);
+        list = dataService.filterAuctionPeriods(list);
+        list = dataService.filterByConditionCode(list);
+        list = dataService.sortDataByDateTime(list);
+        Map<String, List<StockData>> expected = list.stream().collect(Collectors.groupingBy(StockData::getBloombergCode));
+
+        TickStore store = dataService.loadTickStore(filePath);
+        store = dataService.filterAuctionPeriods(store);
+        store = dataService.filterByConditionCode(store);
+        store = dataService.sortDataByDateTime(store);
+        int[] offsets = dataService.groupByCode(store);
+
+        assertTrue(store.size() > 0);
+        assertEquals(list.size(), store.size());
+        for (int codeId = 0; codeId < offsets.length - 1; codeId++) {
+            List<StockData> group = expected.get(store.getCodes().get(codeId));
+            int from = offsets[codeId];
+            int to = offsets[codeId + 1];
+            assertEquals(group == null ? 0 : group.size(), to - from);
+            for (int row = from; row < to; row++) {
+                StockData e = group.get(row - from);
+                assertEquals(e.getBloombergCode(), store.getBloombergCode(row));
+                assertEquals(e.getDate(), store.getDate(row));
+                assertEquals(e.getTimeInSecondsPastMidnight(), store.getTimeInSecondsPastMidnight(row));
+                assertEquals(e.getTradePrice(), store.getTradePrice(row));
+                assertEquals(e.getTradeVolume(), store.getTradeVolume(row));
+                assertEquals(e.getBidPrice(), store.getBidPrice(row));
+                assertEquals(e.getAskPrice(), store.getAskPrice(row));
+            }
+        }
+    }
+
+    @Test
+    public void pushedDownFilterMatchesFilteringAfterLoad() throws IOException {
+        String filePath = samplePath();
+        TickStore expected = dataService.filterByConditionCode(dataService.filterAuctionPeriods(dataService.loadTickStore(filePath)));
+        TickStore actual = dataService.loadTickStore(filePath, DataService.ANALYSIS_FILTER, null);
+
+        assertTrue(actual.size() > 0);
+        assertEquals(expected.size(), actual.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals(expected.getBloombergCode(row), actual.getBloombergCode(row));
+            assertEquals(expected.getDate(row), actual.getDate(row));
+            assertEquals(expected.getTimeInSecondsPastMidnight(row), actual.getTimeInSecondsPastMidnight(row));
+            assertEquals(expected.getTradePrice(row), actual.getTradePrice(row));
+            assertEquals(expected.getConditionCodes(row), actual.getConditionCodes(row));
+        }
+        // only codes with surviving rows are interned
+        assertTrue(actual.getCodes().size() <= expected.getCodes().size());
+    }
+
+    @Test
+    public void compressedFilesLoadLikePlainOnes() throws IOException {
+        String filePath = samplePath();
+        byte[] bytes = Files.readAllBytes(Paths.get(filePath));
+        Path gzip = tempDir.resolve("scandi.csv.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            out.write(bytes);
+        }
+        Path bgzf = tempDir.resolve("scandi.bgz");
+        try (OutputStream out = new BgzfOutputStream(Files.newOutputStream(bgzf))) {
+            out.write(bytes);
+        }
+        TickStore expected = dataService.loadTickStore(filePath, DataService.ANALYSIS_FILTER, null);
+
+        for (Path file : new Path[]{gzip, bgzf}) {
+            AnalysisProgress progress = new AnalysisProgress();
+            TickStore actual = dataService.loadTickStore(file.toString(), DataService.ANALYSIS_FILTER, progress);
+            assertEquals(expected.size(), actual.size());
+            for (int row = 0; row < expected.size(); row++) {
+                assertEquals(expected.getBloombergCode(row), actual.getBloombergCode(row));
+                assertEquals(expected.getTimeInSecondsPastMidnight(row), actual.getTimeInSecondsPastMidnight(row));
+                assertEquals(expected.getTradePrice(row), actual.getTradePrice(row));
+            }
+            assertEquals(Files.size(file), progress.getTotalBytes());
+            assertEquals(Files.size(file), progress.getBytesRead());
+            assertEquals(dataService.loadCSVData(filePath).size(), dataService.loadCSVData(file.toString()).size());
+        }
+
+        // a compressed file is sized by its text, not by its size on disk
+        assertEquals(bytes.length, TickSample.of(gzip, TickFilter.ALL).getTextBytes());
+        assertEquals(TickSample.of(Paths.get(filePath), DataService.ANALYSIS_FILTER).estimateAcceptedRows(),
+                TickSample.of(bgzf, DataService.ANALYSIS_FILTER).estimateAcceptedRows());
+    }
+
+    @Test
+    public void keepsFilesWhoseAnalysedRowsFitTheBudgetInMemory() throws IOException {
+        Path file = tempDir.resolve("scandi-day.csv");
+        new TickGenerator().instruments(50).rowsPerDay(300_000).days(1).write(file);
+        long kept = dataService.loadTickStore(file.toString(), DataService.ANALYSIS_FILTER, null).size();
+        long estimate = TickSample.of(file, DataService.ANALYSIS_FILTER).estimateAcceptedRows();
+        assertTrue(Math.abs(estimate - kept) < kept * 0.3, estimate + " estimated, " + kept + " kept");
+
+        // the filter drops most rows, so a budget well under the file's size holds the rest
+        long budget = Files.size(file) / 4;
+        assertTrue(kept * DataService.ANALYSED_ROW_BYTES * 2 < budget);
+        ReflectionTestUtils.setField(dataService, "memoryBudgetBytes", budget);
+        assertFalse(dataService.isOutOfCore(file.toString()));
+        assertTrue(dataService.isOutOfCore(file.toString(), TickFilter.ALL));
+
+        ReflectionTestUtils.setField(dataService, "memoryBudgetBytes", kept * DataService.ANALYSED_ROW_BYTES / 2);
+        assertTrue(dataService.isOutOfCore(file.toString()));
+    }
+
+    private String samplePath() {
+        URL resource = getClass().getClassLoader().getResource("scandi.csv");
+        return Paths.get(resource.getPath()).toString();
+    }
+}
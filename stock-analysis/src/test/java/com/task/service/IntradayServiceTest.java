@@ -0,0 +1,80 @@
+package com.task.service;
+
+import com.task.metrics.IntradayIndex;
+import com.task.model.TickStore;
+import com.task.parser.TickFilter;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IntradayServiceTest {
+
+    @Test
+    public void concurrentFirstQueriesShareOneBuild() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        DataService slowLoads = new DataService() {
+            @Override
+            public TickStore loadTickStore(String filePath, TickFilter filter, AnalysisProgress progress) throws IOException {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return super.loadTickStore(filePath, filter, progress);
+            }
+        };
+        IntradayService service = new IntradayService();
+        ReflectionTestUtils.setField(service, "dataService", slowLoads);
+        ReflectionTestUtils.setField(service, "bucketMinutes", 5);
+        ReflectionTestUtils.setField(service, "retainedIndexes", 4);
+        ReflectionTestUtils.setField(service, "quantileRelativeAccuracy", 0.01);
+        String file = Paths.get(getClass().getClassLoader().getResource("scandi.csv").getPath()).toString();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<IntradayIndex>> queries = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                queries.add(executor.submit(() -> service.getIndex(file)));
+            }
+            // one query is inside the build, the other three have joined it before it may finish
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            awaitShared(service, 3);
+            release.countDown();
+            IntradayIndex index = queries.get(0).get();
+            for (Future<IntradayIndex> query : queries) {
+                assertSame(index, query.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertSame(service.getIndex(file), service.getIndex(file));
+        assertEquals(1, loads.get());
+    }
+
+    private static void awaitShared(IntradayService service, long shared) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (service.getShared() < shared && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(shared, service.getShared());
+    }
+}
@@ -0,0 +1,165 @@
+package com.task.service;
+
+import com.opencsv.exceptions.CsvException;
+import com.task.generator.TickGenerator;
+import com.task.model.StockData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class MetricsServiceTest {
+
+    @Autowired
+    private DataService dataService;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private AnalysisResultCache resultCache;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void matchesReferenceOnSampleFile() throws IOException, CsvException {
+        URL resource = getClass().getClassLoader().getResource("scandi.csv");
+        assertMatchesReference(Paths.get(resource.getPath()).toString());
+    }
+
+    @Test
+    public void matchesReferenceOnRandomisedFile() throws IOException, CsvException {
+        assertMatchesReference(writeRandomFile(tempDir.resolve("random.csv")).toString());
+    }
+
+    @Test
+    public void outOfCoreRunMatchesInMemoryRunAndRemovesItsSpill() throws IOException {
+        Path file = writeRandomFile(tempDir.resolve("random.csv"));
+        List<String[]> inMemory = metricsService.analyzeFile(file.toString());
+
+        Path spillDirectory = tempDir.resolve("spill");
+        // every run below has to go through the spill rather than the cached rows
+        ReflectionTestUtils.setField(resultCache, "enabled", false);
+        ReflectionTestUtils.setField(dataService, "outOfCoreMode", "always");
+        // a few instruments per load, so partitions are read in several groups
+        ReflectionTestUtils.setField(dataService, "memoryBudgetBytes", 3000L * DataService.ANALYSED_ROW_BYTES);
+        ReflectionTestUtils.setField(dataService, "spillDirectory", spillDirectory.toString());
+        try {
+            AnalysisProgress progress = new AnalysisProgress();
+            List<String[]> outOfCore = metricsService.analyzeFile(file.toString(), progress);
+            assertArrayEquals(inMemory.toArray(), outOfCore.toArray());
+            assertEquals(progress.getInstrumentsTotal(), progress.getInstrumentsDone());
+            assertEquals(0, Files.list(spillDirectory).count());
+
+            AnalysisProgress cancelled = new AnalysisProgress();
+            cancelled.cancel();
+            assertThrows(CancellationException.class, () -> metricsService.analyzeFile(file.toString(), cancelled));
+            assertEquals(0, Files.list(spillDirectory).count());
+        } finally {
+            ReflectionTestUtils.setField(resultCache, "enabled", true);
+            ReflectionTestUtils.setField(dataService, "outOfCoreMode", "auto");
+            ReflectionTestUtils.setField(dataService, "memoryBudgetBytes", 0L);
+        }
+    }
+
+    private static Path writeRandomFile(Path file) throws IOException {
+        // repeated timestamps, out-of-order rows, several dates, zero bids and round prices
+        Random random = new Random(11);
+        StringBuilder line = new StringBuilder(128);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 20_000; i++) {
+                double price = random.nextInt(4) == 0 ? 10 * (1 + random.nextInt(30)) : 50 + random.nextInt(2000) / 100.0;
+                double bid = random.nextInt(20) == 0 ? 0 : price - random.nextInt(5) / 100.0;
+                double ask = price + random.nextInt(5) / 100.0;
+                double time = random.nextBoolean() ? 28800 + random.nextInt(3600000) / 1000.0 : 61200 + random.nextInt(7200000) / 1000.0;
+                line.setLength(0);
+                TickGenerator.appendRow(line, "CODE" + random.nextInt(12), bid, ask, price, 100, 100, random.nextInt(30) * 5,
+                        random.nextInt(3) == 0 ? 2 : 1, "2017042" + random.nextInt(3), time, 0,
+                        random.nextInt(4) == 0 ? "R" : random.nextBoolean() ? "XT" : "");
+                writer.append(line).append('\n');
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void rowsAreGroupedAndOrderedByStockCode() throws IOException {
+        URL resource = getClass().getClassLoader().getResource("scandi.csv");
+        String filePath = Paths.get(resource.getPath()).toString();
+        List<String[]> rows = metricsService.analyzeFile(filePath);
+
+        for (int i = 1; i < rows.size(); i++) {
+            assertTrue(rows.get(i - 1)[0].compareTo(rows.get(i)[0]) <= 0, "row " + i + " is out of order");
+        }
+        // a second run must produce exactly the same rows in the same order
+        assertArrayEquals(rows.toArray(), metricsService.analyzeFile(filePath).toArray());
+    }
+
+    @Test
+    public void reportsProgressAndStopsWhenCancelled() throws IOException {
+        URL resource = getClass().getClassLoader().getResource("scandi.csv");
+        // a fresh path, so the load isn't served from the tick cache
+        Path file = Files.copy(Paths.get(resource.getPath()), tempDir.resolve("progress.csv"));
+        AnalysisProgress progress = new AnalysisProgress();
+        List<String[]> rows = metricsService.analyzeFile(file.toString(), progress);
+
+        List<StockData> all = dataService.loadCSVData(file.toString());
+        int kept = dataService.filterByConditionCode(dataService.filterAuctionPeriods(all)).size();
+        assertEquals(AnalysisProgress.Stage.DONE, progress.getStage());
+        assertEquals(Files.size(file), progress.getTotalBytes());
+        assertEquals(Files.size(file), progress.getBytesRead());
+        assertEquals(kept, progress.getRowsLoaded());
+        assertEquals(kept, progress.getRowsRetained());
+        assertEquals(all.size() - kept, progress.getRowsRejected());
+        assertEquals(rows.size() / 10, progress.getInstrumentsDone());
+        assertEquals(progress.getInstrumentsTotal(), progress.getInstrumentsDone());
+        List<String> stages = new ArrayList<>();
+        progress.getStageTimings().forEach(timing -> stages.add(timing.getStage()));
+        assertEquals(Arrays.asList("load", "sort", "group", "metrics"), stages);
+        assertEquals(all.size() - kept, progress.getStageTimings().get(0).getRowsRejected());
+
+        AnalysisProgress cancelled = new AnalysisProgress();
+        cancelled.cancel();
+        assertThrows(CancellationException.class, () -> metricsService.analyzeFile(file.toString(), cancelled));
+    }
+
+    private void assertMatchesReference(String filePath) throws IOException, CsvException {
+        Map<String, String> expected = byCodeAndMetric(new ReferenceMetrics().analyzeFile(dataService, filePath));
+        Map<String, String> actual = byCodeAndMetric(metricsService.analyzeFile(filePath));
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+
+    private static Map<String, String> byCodeAndMetric(List<String[]> rows) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String[] row : rows) {
+            values.put(row[0] + " / " + row[1], row[2]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,178 @@
+package com.task.service;
+
+import com.task.model.TickStore;
+import com.task.parser.TickCsvParser;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelTickLoaderTest {
+
+    private static ExecutorService executor;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void quotedFieldsAcrossChunkBoundaries() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            content.append("\"CODE,").append(i % 3).append("\",0,\"1.5\",1.6,1.55,100,100,10,1,\"x,\"\"y\"\"\",20170424,")
+                    .append(28800 + i).append(".5,1.5,\"\",\"XT\"\n");
+        }
+        assertSameAsSequentialForEveryChunkCount(write(content.toString()));
+    }
+
+    @Test
+    public void quotedLineBreaksAcrossChunkBoundaries() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            // most of the bytes are inside the quoted line breaks, so most cuts land there
+            content.append("CODE").append(i % 4).append(",0,1.5,1.6,1.55,100,100,10,1,0,20170424,")
+                    .append(28800 + i).append(",1.5,,\"X\n\n\n\n\n\n\n\n\n\nT\"\n");
+        }
+        Path file = write(content.toString());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            byte[] bytes = Files.readAllBytes(file);
+            long[] bounds = ParallelTickLoader.splitPoints(channel, 16, 1);
+            assertTrue(Arrays.stream(bounds).anyMatch(bound -> bound > 0 && bound < bytes.length && bytes[(int) bound] == '\n'),
+                    "no cut inside a quoted field");
+        }
+        assertSameAsSequentialForEveryChunkCount(file);
+        assertEquals("X\n\n\n\n\n\n\n\n\n\nT", load(file, 16).getConditionCodes(39));
+
+        AnalysisProgress progress = new AnalysisProgress();
+        ParallelTickLoader loader = new ParallelTickLoader(executor, 16, 1);
+        loader.setProgress(progress);
+        assertEquals(40, loader.load(file).size());
+        assertEquals(40, progress.getRowsLoaded());
+        assertEquals(Files.size(file), progress.getBytesRead());
+        assertEquals(0, loader.getRowsSkipped());
+        assertTrue(loader.getRangesReparsed() > 0);
+    }
+
+    @Test
+    public void crlfLineEndingsAcrossChunkBoundaries() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            content.append("CODE").append(i % 5).append(",0,1.5,1.6,1.55,100,100,10,1,0,20170424,")
+                    .append(28800 + i).append(",1.5,,XT\r\n");
+        }
+        Path file = write(content.toString());
+        assertSameAsSequentialForEveryChunkCount(file);
+        assertEquals("XT", load(file, 7).getConditionCodes(39));
+        ParallelTickLoader loader = new ParallelTickLoader(executor, 7, 1);
+        loader.load(file);
+        assertEquals(0, loader.getRangesReparsed());
+    }
+
+    @Test
+    public void lastLineWithoutTrailingNewline() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 39; i++) {
+            content.append("CODE").append(i % 2).append(",0,1.5,1.6,1.55,100,100,10,1,0,20170424,").append(28800 + i).append(",1.5,,\n");
+        }
+        content.append("LAST,0,1.5,1.6,1.55,100,100,10,1,0,20170424,99999,1.5,,R");
+        Path file = write(content.toString());
+
+        assertSameAsSequentialForEveryChunkCount(file);
+        TickStore store = load(file, 16);
+        assertEquals(40, store.size());
+        assertEquals("LAST", store.getBloombergCode(39));
+        assertEquals("R", store.getConditionCodes(39));
+    }
+
+    @Test
+    public void progressCoversEveryRowAndByte() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 40_000; i++) {
+            content.append("CODE").append(i % 5).append(",0,1.5,1.6,1.55,100,100,10,1,0,20170424,").append(28800 + i).append(",1.5,,XT\n");
+        }
+        content.append("short,row\n");
+        Path file = write(content.toString());
+        for (int chunks = 1; chunks <= 4; chunks++) {
+            AnalysisProgress progress = new AnalysisProgress();
+            ParallelTickLoader loader = new ParallelTickLoader(executor, chunks, 1);
+            loader.setProgress(progress);
+            loader.load(file);
+            assertEquals(40_000, progress.getRowsLoaded(), chunks + " chunks");
+            assertEquals(Files.size(file), progress.getBytesRead(), chunks + " chunks");
+        }
+
+        AnalysisProgress cancelled = new AnalysisProgress();
+        cancelled.cancel();
+        ParallelTickLoader loader = new ParallelTickLoader(executor, 2, 1);
+        loader.setProgress(cancelled);
+        assertThrows(CancellationException.class, () -> loader.load(file));
+    }
+
+    @Test
+    public void splitPointsStartOnLineBoundaries() throws IOException {
+        Path file = write("a,b\nccccccccc,d\ne\n\nf,g");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = ParallelTickLoader.splitPoints(channel, 8, 1);
+            byte[] bytes = Files.readAllBytes(file);
+            assertEquals(0, bounds[0]);
+            assertEquals(bytes.length, bounds[bounds.length - 1]);
+            for (int i = 1; i < bounds.length - 1; i++) {
+                assertEquals('\n', bytes[(int) bounds[i] - 1], "bound " + bounds[i] + " is not a line start");
+            }
+        }
+    }
+
+    private void assertSameAsSequentialForEveryChunkCount(Path file) throws IOException {
+        TickCsvParser parser = new TickCsvParser();
+        TickStore expected = new TickStore(parser.getCodes(), parser.getDates(), parser.getConditions());
+        parser.parse(file, expected::add);
+
+        for (int chunks = 1; chunks <= 16; chunks++) {
+            TickStore actual = load(file, chunks);
+            assertEquals(expected.size(), actual.size(), chunks + " chunks");
+            for (int row = 0; row < expected.size(); row++) {
+                String where = chunks + " chunks, row " + row;
+                assertEquals(expected.getBloombergCode(row), actual.getBloombergCode(row), where);
+                assertEquals(expected.getBidPrice(row), actual.getBidPrice(row), where);
+                assertEquals(expected.getTradeVolume(row), actual.getTradeVolume(row), where);
+                assertEquals(expected.getDate(row), actual.getDate(row), where);
+                assertEquals(expected.getTimeInSecondsPastMidnight(row), actual.getTimeInSecondsPastMidnight(row), where);
+                assertEquals(expected.getConditionCodes(row), actual.getConditionCodes(row), where);
+            }
+        }
+    }
+
+    private TickStore load(Path file, int chunks) throws IOException {
+        return new ParallelTickLoader(executor, chunks, 1).load(file);
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = tempDir.resolve("ticks.csv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,58 @@
+package com.task.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PipelineInstrumentationTest {
+
+    @Test
+    public void recordsStagesToProgressAndRegistry() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PipelineInstrumentation instrumentation = new PipelineInstrumentation();
+        ReflectionTestUtils.setField(instrumentation, "meterRegistry", registry);
+        AnalysisProgress progress = new AnalysisProgress();
+
+        PipelineInstrumentation.StageStart load = instrumentation.start("load");
+        byte[][] garbage = new byte[64][];
+        for (int i = 0; i < garbage.length; i++) {
+            garbage[i] = new byte[16 * 1024];
+        }
+        instrumentation.finish(load, progress, 1000, 400, 65536);
+        instrumentation.recordInstrument(5_000);
+
+        StageTiming timing = progress.getStageTimings().get(0);
+        assertEquals("load", timing.getStage());
+        assertEquals(600, timing.getRowsRejected());
+        assertEquals(65536, timing.getBytesRead());
+        assertTrue(timing.getNanos() > 0);
+        assertTrue(timing.getAllocatedBytes() == -1 || timing.getAllocatedBytes() >= 64 * 16 * 1024, "allocated " + timing.getAllocatedBytes());
+
+        Timer timer = registry.find(PipelineInstrumentation.STAGE_TIMER).tag("stage", "load").timer();
+        assertEquals(1, timer.count());
+        assertEquals(400, registry.find("stock.analysis.stage.rows.out").tag("stage", "load").summary().totalAmount());
+        assertEquals(1, registry.find(PipelineInstrumentation.INSTRUMENT_TIMER).timer().count());
+    }
+
+    @Test
+    public void recordsNothingWhenDisabled() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PipelineInstrumentation instrumentation = new PipelineInstrumentation();
+        ReflectionTestUtils.setField(instrumentation, "meterRegistry", registry);
+        ReflectionTestUtils.setField(instrumentation, "enabled", false);
+        AnalysisProgress progress = new AnalysisProgress();
+
+        PipelineInstrumentation.StageStart load = instrumentation.start("load");
+        instrumentation.finish(load, progress, 10, 5, 100);
+        instrumentation.recordInstrument(5_000);
+
+        assertNull(load);
+        assertTrue(progress.getStageTimings().isEmpty());
+        assertTrue(registry.getMeters().isEmpty());
+    }
+}
@@ -0,0 +1,197 @@
+package com.task.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.task.service.TickTailTest.append;
+import static com.task.service.TickTailTest.assertSameMetrics;
+import static com.task.service.TickTailTest.feed;
+import static com.task.service.TickTailTest.fullRun;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TailServiceTest {
+
+    private static final Object CLOSED = new Object();
+
+    @TempDir
+    Path tempDir;
+
+    private final TailService service = new TailService();
+
+    @AfterEach
+    void stopService() {
+        service.stopPoller();
+    }
+
+    @Test
+    public void followersOfAFileShareItsCatchUpAndFailedFollowsAreForgotten() throws Exception {
+        Path file = tempDir.resolve("feed.csv");
+        Files.write(file, feed(6, 20_000).getBytes(StandardCharsets.UTF_8));
+        start(60_000L, 256);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<TailSnapshot>> follows = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                follows.add(executor.submit(() -> {
+                    start.await();
+                    return service.follow(file.toString());
+                }));
+            }
+            start.countDown();
+            for (Future<TailSnapshot> follow : follows) {
+                // every follower gets the state after the catch-up, never a partial one
+                TailSnapshot snapshot = follow.get();
+                assertEquals(Files.size(file), snapshot.getOffset());
+                assertSameMetrics(fullRun(file), snapshot.getInstruments());
+            }
+            assertEquals(1, service.getFollowed().size());
+
+            // a missing file fails its catch-up and doesn't keep the second slot
+            Path missing = tempDir.resolve("missing.csv");
+            assertThrows(IOException.class, () -> service.follow(missing.toString()));
+            assertThrows(IOException.class, () -> service.follow(missing.toString()));
+            assertEquals(1, service.getFollowed().size());
+            Files.write(missing, feed(2, 100).getBytes(StandardCharsets.UTF_8));
+            assertEquals(Files.size(missing), service.follow(missing.toString()).getOffset());
+            assertEquals(2, service.getFollowed().size());
+            assertTrue(service.unfollow(missing.toString()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void subscribersGetASnapshotThenUpdatesAndAreClosedOnUnfollow() throws Exception {
+        Path file = tempDir.resolve("feed.csv");
+        // the analysis filter drops rows from 09:00, this feed ends before
+        String feed = feed(4, 300);
+        int half = feed.indexOf('\n', feed.length() / 2) + 1;
+        Files.write(file, feed.substring(0, half).getBytes(StandardCharsets.UTF_8));
+        start(20L, 256);
+
+        BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        service.subscribe(file.toString(), recorder(events));
+        TailSnapshot snapshot = (TailSnapshot) next(events);
+        assertEquals(half, snapshot.getOffset());
+
+        append(file, feed.substring(half));
+        TailSnapshot update = (TailSnapshot) next(events);
+        assertEquals(feed.length(), update.getOffset());
+        assertTrue(update.getRowsAccepted() > snapshot.getRowsAccepted());
+
+        assertTrue(service.unfollow(file.toString()));
+        assertSame(CLOSED, next(events));
+        assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+
+        // a subscriber of a file that fails to poll is closed with the error
+        service.subscribe(file.toString(), recorder(events));
+        assertTrue(next(events) instanceof TailSnapshot);
+        Files.delete(file);
+        assertTrue(next(events) instanceof IOException);
+        assertTrue(service.getFollowed().isEmpty());
+    }
+
+    @Test
+    public void aSlowSubscriberDoesNotHoldUpPollingAndIsDroppedOnceBehind() throws Exception {
+        Path file = tempDir.resolve("feed.csv");
+        String feed = feed(4, 300);
+        Files.write(file, new byte[0]);
+        start(10L, 2);
+
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<Object> slowEvents = new LinkedBlockingQueue<>();
+        service.subscribe(file.toString(), new TailService.Listener() {
+            @Override
+            public void onSnapshot(TailSnapshot snapshot) throws Exception {
+                // stuck in its first send, as a client that stopped reading is
+                release.await();
+            }
+
+            @Override
+            public void onClose(Throwable cause) {
+                slowEvents.add(cause == null ? CLOSED : cause);
+            }
+        });
+        BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        service.subscribe(file.toString(), recorder(events));
+        assertTrue(next(events) instanceof TailSnapshot);
+
+        // each append is read by its own poll, the fast subscriber sees every one
+        int written = 0;
+        for (int i = 1; i <= 5; i++) {
+            int end = feed.indexOf('\n', feed.length() * i / 5 - 1) + 1;
+            append(file, feed.substring(written, end));
+            written = end;
+            assertEquals(written, ((TailSnapshot) next(events)).getOffset());
+        }
+        release.countDown();
+        assertTrue(next(slowEvents) instanceof IllegalStateException);
+
+        // a subscriber that throws is closed with its exception
+        BlockingQueue<Object> failed = new LinkedBlockingQueue<>();
+        IOException gone = new IOException("client gone");
+        service.subscribe(file.toString(), new TailService.Listener() {
+            @Override
+            public void onSnapshot(TailSnapshot snapshot) throws IOException {
+                throw gone;
+            }
+
+            @Override
+            public void onClose(Throwable cause) {
+                failed.add(cause);
+            }
+        });
+        assertSame(gone, next(failed));
+    }
+
+    private void start(long pollMillis, int maxQueuedUpdates) {
+        ReflectionTestUtils.setField(service, "pollMillis", pollMillis);
+        ReflectionTestUtils.setField(service, "maxFiles", 2);
+        ReflectionTestUtils.setField(service, "quantileRelativeAccuracy", 0.01);
+        ReflectionTestUtils.setField(service, "gapPercentiles", new double[]{90});
+        ReflectionTestUtils.setField(service, "maxQueuedUpdates", maxQueuedUpdates);
+        service.startPoller();
+    }
+
+    private static TailService.Listener recorder(BlockingQueue<Object> events) {
+        return new TailService.Listener() {
+            @Override
+            public void onSnapshot(TailSnapshot snapshot) {
+                events.add(snapshot);
+            }
+
+            @Override
+            public void onClose(Throwable cause) {
+                events.add(cause == null ? CLOSED : cause);
+            }
+        };
+    }
+
+    private static Object next(BlockingQueue<Object> events) throws InterruptedException {
+        Object event = events.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event, "no event within 10 seconds");
+        return event;
+    }
+}
@@ -0,0 +1,126 @@
+package com.task.service;
+
+import com.task.generator.TickGenerator;
+import com.task.model.TickStore;
+import com.task.parser.TickFilter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TickBlockIndexTest {
+
+    private static final long BLOCK_BYTES = 4096;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void selectiveLoadsMatchFilteringTheWholeFile() throws IOException {
+        Path file = writeGroupedByCode(tempDir.resolve("ticks.csv"), 8, 3, 400);
+        DataService dataService = dataService();
+        TickFilter[] selections = {
+                DataService.ANALYSIS_FILTER.allowCodes("CODE3"),
+                DataService.ANALYSIS_FILTER.allowCodes("CODE3", "CODE6").allowDates("20170425"),
+                DataService.ANALYSIS_FILTER.requireTimeWindow(61200, 64800),
+                TickFilter.ALL.allowDates("20170426").requireTimeWindow(0, 30000),
+                TickFilter.ALL.allowCodes("MISSING"),
+        };
+        for (TickFilter selection : selections) {
+            TickStore expected = new DataService().loadTickStore(file.toString());
+            expected.retainRows(row -> selection.accepts(expected, row));
+            TickStore actual = dataService.loadTickStore(file.toString(), selection, new AnalysisProgress());
+            assertSameRows(expected, actual, selection.describe());
+        }
+    }
+
+    @Test
+    public void singleInstrumentReadsAFractionOfTheFile() throws IOException {
+        Path file = writeGroupedByCode(tempDir.resolve("ticks.csv"), 8, 3, 400);
+        TickBlockIndex index = dataService().buildBlockIndex(file, BLOCK_BYTES);
+
+        long[] ranges = index.ranges(TickFilter.ALL.allowCodes("CODE3"));
+        long bytes = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            bytes += ranges[i + 1] - ranges[i];
+        }
+        assertTrue(bytes > 0);
+        assertTrue(bytes < Files.size(file) / 4, bytes + " of " + Files.size(file) + " bytes");
+        assertEquals(0, index.ranges(TickFilter.ALL.allowCodes("MISSING")).length);
+    }
+
+    @Test
+    public void storedIndexIsReusedUntilTheFileChanges() throws IOException {
+        Path file = writeGroupedByCode(tempDir.resolve("ticks.csv"), 4, 1, 200);
+        TickBlockIndexCache cache = new TickBlockIndexCache(tempDir.resolve("cache"), BLOCK_BYTES);
+        DataService dataService = new DataService();
+        int[] builds = new int[1];
+        TickBlockIndexCache.Builder builder = blockBytes -> {
+            builds[0]++;
+            return dataService.buildBlockIndex(file, blockBytes);
+        };
+
+        TickBlockIndex first = cache.load(file, builder);
+        TickBlockIndex second = cache.load(file, builder);
+        assertEquals(1, builds[0]);
+        assertEquals(first.getBlockCount(), second.getBlockCount());
+        assertTrue(Files.exists(cache.indexFileFor(file)));
+
+        writeGroupedByCode(file, 6, 1, 200);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        TickBlockIndex rebuilt = cache.load(file, builder);
+        assertEquals(2, builds[0]);
+        assertTrue(rebuilt.ranges(TickFilter.ALL.allowCodes("CODE5")).length > 0);
+    }
+
+    private DataService dataService() {
+        DataService dataService = new DataService();
+        ReflectionTestUtils.setField(dataService, "blockIndexCache", new TickBlockIndexCache(tempDir.resolve("cache"), BLOCK_BYTES));
+        return dataService;
+    }
+
+    private static Path writeGroupedByCode(Path file, int codes, int dates, int rowsPerCodeAndDate) throws IOException {
+        Random random = new Random(5);
+        StringBuilder line = new StringBuilder(128);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int code = 0; code < codes; code++) {
+                for (int date = 0; date < dates; date++) {
+                    double time = 28000;
+                    for (int i = 0; i < rowsPerCodeAndDate; i++) {
+                        time += random.nextInt(200);
+                        double price = 50 + random.nextInt(500) / 100.0;
+                        line.setLength(0);
+                        TickGenerator.appendRow(line, "CODE" + code, price - 0.01, price + 0.01, price, 100, 100,
+                                10 * (1 + random.nextInt(9)), random.nextInt(4) == 0 ? 3 : 1, String.valueOf(20170424 + date),
+                                time, 0, random.nextBoolean() ? "XT" : "");
+                        writer.append(line).append('\n');
+                    }
+                }
+            }
+        }
+        return file;
+    }
+
+    private static void assertSameRows(TickStore expected, TickStore actual, String selection) {
+        assertEquals(expected.size(), actual.size(), selection);
+        for (int row = 0; row < expected.size(); row++) {
+            String where = selection + ", row " + row;
+            assertEquals(expected.getBloombergCode(row), actual.getBloombergCode(row), where);
+            assertEquals(expected.getDate(row), actual.getDate(row), where);
+            assertEquals(expected.getTimeInSecondsPastMidnight(row), actual.getTimeInSecondsPastMidnight(row), where);
+            assertEquals(expected.getTradePrice(row), actual.getTradePrice(row), where);
+            assertEquals(expected.getTradeVolume(row), actual.getTradeVolume(row), where);
+            assertEquals(expected.getConditionCodes(row), actual.getConditionCodes(row), where);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.task.service;
+
+import com.task.model.TickStore;
+import com.task.parser.TickCsvParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TickFileCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger parses = new AtomicInteger();
+
+    @Test
+    public void cachedStoreMatchesParsedStore() throws IOException {
+        Path file = write(rows(500, "XT"));
+        TickFileCache cache = new TickFileCache(tempDir.resolve("cache"), true);
+
+        TickStore parsed = cache.load(file, () -> parse(file));
+        TickStore cached = cache.load(file, () -> parse(file));
+
+        assertEquals(1, parses.get());
+        assertEquals(parsed.size(), cached.size());
+        for (int row = 0; row < parsed.size(); row++) {
+            String where = "row " + row;
+            assertEquals(parsed.getBloombergCode(row), cached.getBloombergCode(row), where);
+            assertEquals(parsed.getBidPrice(row), cached.getBidPrice(row), where);
+            assertEquals(parsed.getAskPrice(row), cached.getAskPrice(row), where);
+            assertEquals(parsed.getTradePrice(row), cached.getTradePrice(row), where);
+            assertEquals(parsed.getBidVolume(row), cached.getBidVolume(row), where);
+            assertEquals(parsed.getAskVolume(row), cached.getAskVolume(row), where);
+            assertEquals(parsed.getTradeVolume(row), cached.getTradeVolume(row), where);
+            assertEquals(parsed.getUpdateType(row), cached.getUpdateType(row), where);
+            assertEquals(parsed.getDate(row), cached.getDate(row), where);
+            assertEquals(parsed.getTimeInSecondsPastMidnight(row), cached.getTimeInSecondsPastMidnight(row), where);
+            assertEquals(parsed.getConditionCodes(row), cached.getConditionCodes(row), where);
+        }
+        assertEquals(parsed.getCodes().size(), cached.getCodes().size());
+    }
+
+    @Test
+    public void changedSourceIsParsedAgain() throws IOException {
+        Path file = write(rows(200, "XT"));
+        FileTime modified = Files.getLastModifiedTime(file);
+        TickFileCache cache = new TickFileCache(tempDir.resolve("cache"), true);
+        cache.load(file, () -> parse(file));
+
+        // same size and timestamp, different content
+        write(rows(200, "AB"));
+        Files.setLastModifiedTime(file, modified);
+        TickStore reloaded = cache.load(file, () -> parse(file));
+
+        assertEquals(2, parses.get());
+        assertEquals("AB", reloaded.getConditionCodes(0));
+        cache.load(file, () -> parse(file));
+        assertEquals(2, parses.get());
+    }
+
+    @Test
+    public void corruptCacheIsRebuilt() throws IOException {
+        Path file = write(rows(300, "XT"));
+        TickFileCache cache = new TickFileCache(tempDir.resolve("cache"), true);
+        TickStore parsed = cache.load(file, () -> parse(file));
+
+        Path cacheFile = cache.cacheFileFor(file);
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile.toFile(), "rw")) {
+            raf.seek(raf.length() / 2);
+            int b = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(b ^ 0x10);
+        }
+        TickStore rebuilt = cache.load(file, () -> parse(file));
+        assertEquals(2, parses.get());
+        assertEquals(parsed.getTradePrice(150), rebuilt.getTradePrice(150));
+
+        // a truncated cache is detected too
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile.toFile(), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        cache.load(file, () -> parse(file));
+        assertEquals(3, parses.get());
+        cache.load(file, () -> parse(file));
+        assertEquals(3, parses.get());
+    }
+
+    @Test
+    public void concurrentLoadsParseOnce() throws Exception {
+        Path file = write(rows(2000, ""));
+        TickFileCache cache = new TickFileCache(tempDir.resolve("cache"), true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<TickStore>> loads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                loads.add(executor.submit(() -> {
+                    start.await();
+                    return cache.load(file, () -> parse(file));
+                }));
+            }
+            start.countDown();
+            for (Future<TickStore> load : loads) {
+                assertEquals(2000, load.get().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, parses.get());
+        try (Stream<Path> files = Files.list(tempDir.resolve("cache"))) {
+            assertTrue(files.noneMatch(p -> p.toString().endsWith(".tmp") || p.toString().endsWith(".lock")
+                    && !p.getFileName().toString().equals("builds.lock")));
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedFilesAreEvictedOverTheSizeLimit() throws IOException {
+        Path first = write(tempDir.resolve("first.csv"), rows(300, "XT"));
+        Path second = write(tempDir.resolve("second.csv"), rows(300, "XT"));
+        Path third = write(tempDir.resolve("third.csv"), rows(300, "XT"));
+        TickFileCache cache = new TickFileCache(tempDir.resolve("cache"), true);
+        cache.load(first, () -> parse(first));
+        long size = Files.size(cache.cacheFileFor(first));
+        ReflectionTestUtils.setField(cache, "maxBytes", 2 * size);
+        cache.load(second, () -> parse(second));
+        // first was used long ago, a hit makes it the most recent again
+        Files.setLastModifiedTime(cache.cacheFileFor(first), FileTime.fromMillis(0));
+        Files.setLastModifiedTime(cache.cacheFileFor(second), FileTime.fromMillis(1000));
+        cache.load(first, () -> parse(first));
+        assertEquals(2, parses.get());
+
+        cache.load(third, () -> parse(third));
+        assertTrue(Files.exists(cache.cacheFileFor(first)));
+        assertTrue(Files.exists(cache.cacheFileFor(third)));
+        assertFalse(Files.exists(cache.cacheFileFor(second)));
+
+        // files unused for longer than the age limit go regardless of size
+        ReflectionTestUtils.setField(cache, "maxBytes", 0L);
+        ReflectionTestUtils.setField(cache, "maxAgeDays", 1);
+        Files.setLastModifiedTime(cache.cacheFileFor(third), FileTime.fromMillis(0));
+        cache.load(second, () -> parse(second));
+        assertEquals(4, parses.get());
+        assertFalse(Files.exists(cache.cacheFileFor(third)));
+        assertTrue(Files.exists(cache.cacheFileFor(first)));
+        assertTrue(Files.exists(cache.cacheFileFor(second)));
+    }
+
+    @Test
+    public void oddRowCountsKeepColumnsAlignedWithoutThePayloadChecksum() throws IOException {
+        Path file = write(rows(301, "XT"));
+        TickFileCache cache = new TickFileCache(tempDir.resolve("cache"), false);
+        TickStore parsed = cache.load(file, () -> parse(file));
+        TickStore cached = cache.load(file, () -> parse(file));
+
+        assertEquals(1, parses.get());
+        assertEquals(301, cached.size());
+        assertEquals(parsed.getConditionCodes(300), cached.getConditionCodes(300));
+        assertEquals(parsed.getTradeVolume(300), cached.getTradeVolume(300));
+        // header, 4 double and 7 padded int columns, then the dictionaries and trailer
+        Path cacheFile = cache.cacheFileFor(file);
+        long columns = 64 + 4 * 301 * 8 + 7 * 302 * 4;
+        assertTrue(Files.size(cacheFile) > columns);
+        assertEquals(0, Files.size(cacheFile) % 8);
+        try (Stream<Path> files = Files.list(tempDir.resolve("cache"))) {
+            // builds lock a byte of one permanent file instead of leaving a file per cache
+            assertTrue(files.noneMatch(p -> p.toString().endsWith(".lock")
+                    && !p.getFileName().toString().equals("builds.lock")));
+        }
+
+        // a truncated cache is still caught by its length
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile.toFile(), "rw")) {
+            raf.setLength(raf.length() - 8);
+        }
+        cache.load(file, () -> parse(file));
+        assertEquals(2, parses.get());
+    }
+
+    private TickStore parse(Path file) throws IOException {
+        parses.incrementAndGet();
+        TickCsvParser parser = new TickCsvParser();
+        TickStore store = new TickStore(parser.getCodes(), parser.getDates(), parser.getConditions());
+        parser.parse(file, store::add);
+        return store;
+    }
+
+    private static String rows(int count, String condition) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            content.append("CODE").append(i % 7).append(" SS Equity,0,").append(100 + i % 13).append(".25,")
+                    .append(101 + i % 11).append(".5,").append(100 + i % 17).append(".75,")
+                    .append(i % 300).append(',').append(i % 500).append(',').append(i % 90).append(',')
+                    .append(i % 3).append(",0,2017042").append(i % 2).append(',')
+                    .append(28800 + i * 3.5).append(",1,,").append(condition).append('\n');
+        }
+        return content.toString();
+    }
+
+    private Path write(String content) throws IOException {
+        return write(tempDir.resolve("ticks.csv"), content);
+    }
+
+    private static Path write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,111 @@
+package com.task.service;
+
+import com.task.model.TickStore;
+import com.task.parser.ByteStringDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TickSorterTest {
+
+    @Test
+    public void matchesStableComparatorSortOnEveryShape() {
+        Random random = new Random(17);
+        for (String shape : new String[]{"random", "time-ordered", "grouped", "ties", "sub-microsecond", "negative"}) {
+            for (int size : new int[]{0, 1, 2, 50, 5_000}) {
+                TickStore data = store(random, shape, size);
+                for (boolean byCode : new boolean[]{false, true}) {
+                    int[] expected = referenceOrder(data, byCode);
+                    int[] actual = TickSorter.sortOrder(data, byCode);
+                    if (actual == null) {
+                        actual = expected.length == 0 ? new int[0] : identity(expected.length);
+                    }
+                    assertArrayEquals(expected, actual, shape + ", " + size + " rows, byCode=" + byCode);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sortedInputIsLeftAlone() {
+        TickStore data = store(new Random(3), "grouped", 1_000);
+        data.permute(referenceOrder(data, true));
+        assertNull(TickSorter.sortOrder(data, true));
+        assertNull(TickSorter.sortOrder(store(new Random(3), "time-ordered", 1_000), false));
+    }
+
+    private static TickStore store(Random random, String shape, int size) {
+        ByteStringDictionary codes = new ByteStringDictionary();
+        ByteStringDictionary dates = new ByteStringDictionary();
+        ByteStringDictionary conditions = new ByteStringDictionary();
+        // interned out of order so date ids and date ranks differ
+        for (String date : new String[]{"20170426", "20170424", "20170425"}) {
+            dates.intern(date);
+        }
+        for (int code = 0; code < 7; code++) {
+            codes.intern("CODE" + (7 - code));
+        }
+        conditions.intern("");
+        int[] codeIds = new int[size];
+        int[] dateIds = new int[size];
+        double[] times = new double[size];
+        double time = 28_800;
+        for (int row = 0; row < size; row++) {
+            codeIds[row] = random.nextInt(7);
+            switch (shape) {
+                case "time-ordered":
+                    dateIds[row] = 1;
+                    time += random.nextInt(3) / 10.0;
+                    times[row] = time;
+                    break;
+                case "grouped":
+                    codeIds[row] = row * 7 / Math.max(1, size);
+                    dateIds[row] = 1;
+                    times[row] = 28_800 + (row % 100) * 0.5;
+                    break;
+                case "ties":
+                    dateIds[row] = random.nextInt(3);
+                    times[row] = 28_800 + random.nextInt(5);
+                    break;
+                case "sub-microsecond":
+                    dateIds[row] = 0;
+                    times[row] = 28_800 + random.nextInt(3) * 1e-8;
+                    break;
+                case "negative":
+                    dateIds[row] = random.nextInt(3);
+                    times[row] = random.nextInt(10) == 0 ? -1 : random.nextDouble() * 86_400;
+                    break;
+                default:
+                    dateIds[row] = random.nextInt(3);
+                    times[row] = Math.round(random.nextDouble() * 86_400_000) / 1000.0;
+            }
+        }
+        return TickStore.wrap(codes, dates, conditions, size, codeIds, new double[size], new double[size], new double[size],
+                new int[size], new int[size], new int[size], new int[size], dateIds, times, new int[size]);
+    }
+
+    private static int[] referenceOrder(TickStore data, boolean byCode) {
+        int[] ranks = data.getDates().ranks();
+        Integer[] rows = new Integer[data.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        Comparator<Integer> byDateTime = Comparator.<Integer>comparingInt(row -> ranks[data.getDateId(row)])
+                .thenComparingDouble(data::getTimeInSecondsPastMidnight);
+        Arrays.sort(rows, byCode ? Comparator.<Integer>comparingInt(data::getCodeId).thenComparing(byDateTime) : byDateTime);
+        return Arrays.stream(rows).mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] identity(int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+}
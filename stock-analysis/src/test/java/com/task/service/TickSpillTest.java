@@ -0,0 +1,106 @@
+package com.task.service;
+
+import com.task.generator.TickGenerator;
+import com.task.model.TickStore;
+import com.task.parser.TickFilter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TickSpillTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void everyInstrumentLandsWholeInOnePartition() throws IOException {
+        Path file = writeInterleaved(tempDir.resolve("ticks.csv"), 40, 5_000);
+        TickStore expected = new DataService().loadTickStore(file.toString(), DataService.ANALYSIS_FILTER, null);
+        Path spillDirectory = tempDir.resolve("spill");
+
+        try (TickSpill spill = TickSpill.write(file, DataService.ANALYSIS_FILTER, 7, spillDirectory, null)) {
+            assertEquals(expected.size(), spill.getRows());
+            Map<String, Integer> partitionOfCode = new HashMap<>();
+            int rows = 0;
+            for (int partition = 0; partition < spill.getPartitionCount(); partition++) {
+                for (BitSet codeIds : spill.codeGroups(partition, 500)) {
+                    TickStore loaded = spill.load(partition, codeIds);
+                    assertTrue(loaded.size() <= 500 || codeIds.cardinality() == 1);
+                    Set<String> codes = new HashSet<>();
+                    codeIds.stream().forEach(codeId -> codes.add(spill.getCodes().get(codeId)));
+                    TickStore groupRows = new DataService().loadTickStore(file.toString(), DataService.ANALYSIS_FILTER, null);
+                    groupRows.retainRows(row -> codes.contains(groupRows.getBloombergCode(row)));
+                    assertEquals(groupRows.size(), loaded.size());
+                    for (int row = 0; row < loaded.size(); row++) {
+                        Integer previous = partitionOfCode.put(loaded.getBloombergCode(row), partition);
+                        assertTrue(previous == null || previous == partition, loaded.getBloombergCode(row));
+                        assertRowEquals(groupRows, loaded, row);
+                    }
+                    rows += loaded.size();
+                }
+            }
+            assertEquals(expected.size(), rows);
+            assertEquals(40, partitionOfCode.size());
+        }
+        assertEquals(0, Files.list(spillDirectory).count());
+    }
+
+    @Test
+    public void cancelledSpillRemovesItsFiles() throws IOException {
+        Path file = writeInterleaved(tempDir.resolve("ticks.csv"), 10, 3 * AnalysisProgress.REPORT_EVERY_ROWS);
+        Path spillDirectory = tempDir.resolve("spill");
+        AnalysisProgress progress = new AnalysisProgress();
+        progress.cancel();
+
+        assertThrows(CancellationException.class, () -> TickSpill.write(file, TickFilter.ALL, 4, spillDirectory, progress));
+        assertEquals(0, Files.list(spillDirectory).count());
+        assertEquals(AnalysisProgress.REPORT_EVERY_ROWS, progress.getRowsLoaded());
+    }
+
+    private static void assertRowEquals(TickStore expected, TickStore actual, int row) {
+        String where = actual.getBloombergCode(row) + ", row " + row;
+        assertEquals(expected.getBloombergCode(row), actual.getBloombergCode(row), where);
+        assertEquals(expected.getDate(row), actual.getDate(row), where);
+        assertEquals(expected.getTimeInSecondsPastMidnight(row), actual.getTimeInSecondsPastMidnight(row), where);
+        assertEquals(expected.getBidPrice(row), actual.getBidPrice(row), where);
+        assertEquals(expected.getAskPrice(row), actual.getAskPrice(row), where);
+        assertEquals(expected.getTradePrice(row), actual.getTradePrice(row), where);
+        assertEquals(expected.getTradeVolume(row), actual.getTradeVolume(row), where);
+        assertEquals(expected.getUpdateType(row), actual.getUpdateType(row), where);
+        assertEquals(expected.getConditionCodes(row), actual.getConditionCodes(row), where);
+    }
+
+    private static Path writeInterleaved(Path file, int codes, int rows) throws IOException {
+        Random random = new Random(23);
+        StringBuilder line = new StringBuilder(128);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            double time = 28000;
+            for (int i = 0; i < rows; i++) {
+                time += random.nextInt(3);
+                double price = 50 + random.nextInt(500) / 100.0;
+                line.setLength(0);
+                TickGenerator.appendRow(line, "CODE" + random.nextInt(codes), price - 0.01, price + 0.01, price, 100, 100,
+                        10 * (1 + random.nextInt(9)), random.nextInt(4) == 0 ? 3 : 1, String.valueOf(20170424 + random.nextInt(2)),
+                        time, 0, random.nextBoolean() ? "XT" : "");
+                writer.append(line).append('\n');
+            }
+        }
+        return file;
+    }
+}
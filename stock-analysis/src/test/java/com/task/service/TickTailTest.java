@@ -0,0 +1,119 @@
+package com.task.service;
+
+import com.task.generator.TickGenerator;
+import com.task.metrics.InstrumentMetrics;
+import com.task.metrics.InstrumentMetricsKernel;
+import com.task.metrics.QuantileEngine;
+import com.task.model.TickStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TickTailTest {
+
+    private static final QuantileEngine SKETCHES = QuantileEngine.logHistogram(0.01);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void pollsReadAppendedLinesAndMatchAFullRun() throws IOException {
+        Path file = tempDir.resolve("feed.csv");
+        String feed = feed(6, 3_000);
+        Files.write(file, new byte[0]);
+        TickTail tail = new TickTail(file, DataService.ANALYSIS_FILTER, SKETCHES, new double[]{90});
+
+        Random random = new Random(2);
+        int written = 0;
+        while (written < feed.length()) {
+            // appends end mid-line, the partial line waits for the next poll
+            int next = Math.min(feed.length(), written + 1 + random.nextInt(8_000));
+            append(file, feed.substring(written, next));
+            written = next;
+            List<InstrumentMetrics> updated = tail.poll();
+            assertEquals(feed.lastIndexOf('\n', written - 1) + 1, tail.getOffset());
+            for (int i = 1; i < updated.size(); i++) {
+                assertTrue(updated.get(i - 1).getStockCode().compareTo(updated.get(i).getStockCode()) < 0);
+            }
+        }
+        assertTrue(tail.poll().isEmpty());
+        assertSameMetrics(fullRun(file), tail.snapshot());
+
+        // a rewritten, shorter file is followed again from its start
+        Files.write(file, feed(2, 200).getBytes(StandardCharsets.UTF_8));
+        tail.poll();
+        assertEquals(Files.size(file), tail.getOffset());
+        assertSameMetrics(fullRun(file), tail.snapshot());
+    }
+
+    static List<InstrumentMetrics> fullRun(Path file) throws IOException {
+        DataService dataService = new DataService();
+        TickStore data = dataService.sortByCodeDateTime(dataService.loadTickStore(file.toString(), DataService.ANALYSIS_FILTER, null));
+        int[] groupOffsets = dataService.groupByCode(data);
+        InstrumentMetricsKernel kernel = new InstrumentMetricsKernel(SKETCHES, new double[]{90});
+        List<InstrumentMetrics> metrics = new ArrayList<>();
+        for (int codeId = 0; codeId < groupOffsets.length - 1; codeId++) {
+            if (groupOffsets[codeId + 1] > groupOffsets[codeId]) {
+                metrics.add(kernel.compute(data.getCodes().get(codeId), data, groupOffsets[codeId], groupOffsets[codeId + 1]));
+            }
+        }
+        metrics.sort(Comparator.comparing(InstrumentMetrics::getStockCode));
+        return metrics;
+    }
+
+    static void assertSameMetrics(List<InstrumentMetrics> expected, List<InstrumentMetrics> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            InstrumentMetrics e = expected.get(i);
+            InstrumentMetrics a = actual.get(i);
+            String code = e.getStockCode();
+            assertEquals(code, a.getStockCode());
+            assertEquals(e.getMeanTimeBetweenTrades(), a.getMeanTimeBetweenTrades(), 1e-9, code);
+            assertEquals(e.getMedianTimeBetweenTrades(), a.getMedianTimeBetweenTrades(), code);
+            assertEquals(e.getLongestTimeBetweenTrades(), a.getLongestTimeBetweenTrades(), code);
+            assertEquals(e.getMeanTimeBetweenTickChanges(), a.getMeanTimeBetweenTickChanges(), 1e-9, code);
+            assertEquals(e.getMedianTimeBetweenTickChanges(), a.getMedianTimeBetweenTickChanges(), code);
+            assertEquals(e.getLongestTimeBetweenTickChanges(), a.getLongestTimeBetweenTickChanges(), code);
+            assertEquals(e.getMeanBidAskSpread(), a.getMeanBidAskSpread(), 1e-9, code);
+            assertEquals(e.getMedianBidAskSpread(), a.getMedianBidAskSpread(), code);
+            assertEquals(e.getRoundNumberTradePercentage(), a.getRoundNumberTradePercentage(), code);
+            assertEquals(e.getRoundNumberVolumePercentage(), a.getRoundNumberVolumePercentage(), code);
+            assertEquals(e.getTradeGapPercentiles()[0], a.getTradeGapPercentiles()[0], code);
+            assertEquals(e.getTickGapPercentiles()[0], a.getTickGapPercentiles()[0], code);
+        }
+    }
+
+    /**
+     * @return A feed in time order, as a live file is written: interleaved codes, repeated
+     *         times, auction rows and rejected condition codes.
+     */
+    static String feed(int codes, int rows) {
+        Random random = new Random(rows);
+        StringBuilder feed = new StringBuilder();
+        double time = 28_000;
+        for (int i = 0; i < rows; i++) {
+            time += random.nextInt(4) == 0 ? 0 : random.nextInt(3000) / 100.0;
+            double price = random.nextInt(5) == 0 ? 10 * (1 + random.nextInt(9)) : 50 + random.nextInt(500) / 100.0;
+            TickGenerator.appendRow(feed, "CODE" + random.nextInt(codes), price - 0.01, price + 0.01, price, 100, 100,
+                    5 * (1 + random.nextInt(9)), random.nextInt(4) == 0 ? 3 : 1, "20170424", time, 0,
+                    random.nextInt(5) == 0 ? "R" : "XT").append('\n');
+        }
+        return feed.toString();
+    }
+
+    static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}